@@ -19,6 +19,7 @@ package org.forgerock.openidm.audit.impl;
 import static org.forgerock.json.resource.Requests.copyOfQueryRequest;
 import static org.forgerock.json.resource.Requests.newCreateRequest;
 import static org.forgerock.json.resource.Requests.newReadRequest;
+import static org.forgerock.json.resource.Responses.newResourceResponse;
 import static org.forgerock.util.promise.Promises.newResultPromise;
 
 import javax.inject.Inject;
@@ -41,6 +42,9 @@ import org.forgerock.util.promise.Promise;
 /**
  * Audit event handler for Repository.  This is implemented to use the router where the resourcePath is
  * hardcoded to be "repo/audit".
+ * <p>
+ * With buffering enabled, events are written to the repository in batches by a {@link RepositoryAuditEventWriter}
+ * rather than by the threads publishing them.
  */
 public class RepositoryAuditEventHandler extends AuditEventHandlerBase {
     /**
@@ -53,6 +57,11 @@ public class RepositoryAuditEventHandler extends AuditEventHandlerBase {
      */
     private final ConnectionFactory connectionFactory;
 
+    /**
+     * The writer of the buffered events, or null if buffering is not enabled.
+     */
+    private final RepositoryAuditEventWriter writer;
+
     @Inject
     public RepositoryAuditEventHandler(
             final RepositoryAuditEventHandlerConfiguration configuration,
@@ -61,16 +70,24 @@ public class RepositoryAuditEventHandler extends AuditEventHandlerBase {
         super(configuration.getName(), eventTopicsMetaData, configuration.getTopics(), configuration.isEnabled());
         this.resourcePath = ResourcePath.valueOf(configuration.getResourcePath());
         this.connectionFactory = connectionFactory;
+        this.writer = configuration.getBuffering() != null && configuration.getBuffering().isEnabled()
+                ? new RepositoryAuditEventWriter(configuration.getName(), resourcePath, connectionFactory,
+                        configuration.getBuffering())
+                : null;
     }
 
     @Override
     public void startup() throws ResourceException {
-        // do nothing
+        if (writer != null) {
+            writer.start();
+        }
     }
 
     @Override
     public void shutdown() throws ResourceException {
-        // do nothing
+        if (writer != null) {
+            writer.stop();
+        }
     }
 
     @Override
@@ -79,6 +96,9 @@ public class RepositoryAuditEventHandler extends AuditEventHandlerBase {
             final JsonValue auditEventContent) {
         try {
             final String auditEventId = auditEventContent.get(ResourceResponse.FIELD_CONTENT_ID).asString();
+            if (writer != null && writer.publish(auditEventTopic, auditEventContent)) {
+                return newResultPromise(newResourceResponse(auditEventId, null, auditEventContent));
+            }
             return newResultPromise(connectionFactory.getConnection().create(new AuditingContext(context),
                     newCreateRequest(
                             resourcePath.concat(auditEventTopic),
@@ -22,12 +22,27 @@ import org.forgerock.audit.events.handlers.EventHandlerConfiguration;
 
 /**
  * Configuration class for RepositoryAuditEventHandler.
+ * <p>
+ * Events are written to the repository by the publishing thread, unless buffering is enabled:
+ * <pre>
+ *  {
+ *    "buffering" : {
+ *      "enabled" : true,
+ *      "maxSize" : 5000,
+ *      "maxBatchedEvents" : 100,
+ *      "maxDelay" : 100,
+ *      "overflowPolicy" : "block"
+ *    }
+ *  }
+ * </pre>
  * @see RepositoryAuditEventHandler
  */
 @JsonIgnoreProperties(ignoreUnknown=true)
 public class RepositoryAuditEventHandlerConfiguration extends EventHandlerConfiguration {
     private static final String REPO_AUDIT_PATH = "repo/audit";
 
+    private BufferingConfiguration buffering = new BufferingConfiguration();
+
     /**
      * Returns the fixed path to repository audits.
      * @return #REPO_AUDIT_PATH
@@ -37,8 +52,120 @@ public class RepositoryAuditEventHandlerConfiguration extends EventHandlerConfig
         return REPO_AUDIT_PATH;
     }
 
+    /**
+     * Returns the configuration of the write-behind buffer of the events.
+     *
+     * @return the buffering configuration
+     */
+    public BufferingConfiguration getBuffering() {
+        return buffering;
+    }
+
+    /**
+     * Sets the configuration of the write-behind buffer of the events.
+     *
+     * @param buffering the buffering configuration
+     */
+    public void setBuffering(BufferingConfiguration buffering) {
+        this.buffering = buffering;
+    }
+
     @Override
     public boolean isUsableForQueries() {
         return true;
     }
+
+    /**
+     * What to do with an event published while the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait for room in the buffer */
+        block,
+        /** Discard the event */
+        drop
+    }
+
+    /**
+     * Configuration of the write-behind buffer, from which a writer thread writes the events to the repository in
+     * batches.
+     */
+    @JsonIgnoreProperties(ignoreUnknown=true)
+    public static class BufferingConfiguration {
+        private boolean enabled = false;
+        private int maxSize = 5000;
+        private int maxBatchedEvents = 100;
+        private long maxDelay = 100;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.block;
+
+        /**
+         * @return whether events are buffered and written by a writer thread
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * @param enabled whether events are buffered and written by a writer thread
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * @return the maximum number of events waiting in the buffer
+         */
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        /**
+         * @param maxSize the maximum number of events waiting in the buffer
+         */
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * @return the maximum number of events written to the repository at once
+         */
+        public int getMaxBatchedEvents() {
+            return maxBatchedEvents;
+        }
+
+        /**
+         * @param maxBatchedEvents the maximum number of events written to the repository at once
+         */
+        public void setMaxBatchedEvents(int maxBatchedEvents) {
+            this.maxBatchedEvents = maxBatchedEvents;
+        }
+
+        /**
+         * @return the maximum time in milliseconds an event waits in the buffer for other events to batch with
+         */
+        public long getMaxDelay() {
+            return maxDelay;
+        }
+
+        /**
+         * @param maxDelay the maximum time in milliseconds an event waits in the buffer for other events to batch
+         *        with
+         */
+        public void setMaxDelay(long maxDelay) {
+            this.maxDelay = maxDelay;
+        }
+
+        /**
+         * @return what to do with an event published while the buffer is full
+         */
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        /**
+         * @param overflowPolicy what to do with an event published while the buffer is full
+         */
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,392 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.audit.impl;
+
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Requests.newActionRequest;
+import static org.forgerock.json.resource.Requests.newCreateRequest;
+import static org.forgerock.json.resource.ResourceResponse.FIELD_CONTENT_ID;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.forgerock.audit.AuditingContext;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ActionResponse;
+import org.forgerock.json.resource.ConnectionFactory;
+import org.forgerock.json.resource.NotSupportedException;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourcePath;
+import org.forgerock.openidm.audit.impl.RepositoryAuditEventHandlerConfiguration.BufferingConfiguration;
+import org.forgerock.openidm.audit.impl.RepositoryAuditEventHandlerConfiguration.OverflowPolicy;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes audit events to the repository behind the threads publishing them.
+ * <p>
+ * Published events wait in a bounded buffer, from which a writer thread writes them in batches of up to
+ * {@code maxBatchedEvents} events, through the {@code batch} action of the repository, one action per topic. A batch
+ * is written as soon as it is full, or once its first event waited {@code maxDelay} milliseconds. If the repository
+ * does not support the {@code batch} action, or a batch as a whole fails, the events are created one at a time.
+ * <p>
+ * When the buffer is full, publishing an event waits for room, or discards the event, according to the
+ * {@link OverflowPolicy}. Until they are written, buffered events can not be read or queried from the repository,
+ * and they are lost if the process dies; stopping the writer writes the events left in the buffer.
+ */
+public class RepositoryAuditEventWriter implements RepositoryAuditEventWriterMBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryAuditEventWriter.class);
+
+    /** Prefix of the name of the MBean of a writer, followed by the handler name */
+    static final String MBEAN_NAME_PREFIX = "org.forgerock.openidm.audit:type=RepositoryAuditBuffer,name=";
+
+    private static final String ACTION_BATCH = "batch";
+
+    /** Interval at which the waiting writer thread checks whether it was stopped */
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** Time to wait for the writer thread to write the buffered events when stopped */
+    private static final long STOP_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * An event waiting in the buffer.
+     */
+    private static final class PendingEvent {
+        final String topic;
+        final JsonValue content;
+        final long queuedAt;
+
+        PendingEvent(String topic, JsonValue content) {
+            this.topic = topic;
+            this.content = content;
+            this.queuedAt = System.nanoTime();
+        }
+    }
+
+    private final String name;
+    private final ResourcePath resourcePath;
+    private final ConnectionFactory connectionFactory;
+    private final BlockingQueue<PendingEvent> buffer;
+    private final int capacity;
+    private final int maxBatchedEvents;
+    private final long maxDelayNanos;
+    private final OverflowPolicy overflowPolicy;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    /** Only used by the thread writing the events */
+    private boolean batchSupported = true;
+    private long droppedReported = 0;
+
+    private volatile boolean running = false;
+    private Thread writerThread;
+
+    /**
+     * Creates a writer, which is started by {@link #start()}.
+     *
+     * @param name the name of the audit event handler
+     * @param resourcePath the repository path the topics of the events are written under
+     * @param connectionFactory the connection factory to the repository
+     * @param configuration the buffering configuration
+     */
+    RepositoryAuditEventWriter(String name, ResourcePath resourcePath, ConnectionFactory connectionFactory,
+            BufferingConfiguration configuration) {
+        this.name = name;
+        this.resourcePath = resourcePath;
+        this.connectionFactory = connectionFactory;
+        this.capacity = Math.max(1, configuration.getMaxSize());
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchedEvents = Math.max(1, configuration.getMaxBatchedEvents());
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, configuration.getMaxDelay()));
+        this.overflowPolicy = configuration.getOverflowPolicy() != null
+                ? configuration.getOverflowPolicy()
+                : OverflowPolicy.block;
+    }
+
+    /**
+     * Starts the writer thread and registers the MBean of the writer.
+     */
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeEvents();
+            }
+        }, "audit-writer-" + name);
+        writerThread.setDaemon(true);
+        writerThread.start();
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = getObjectName();
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(this, objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to register the MBean of audit event writer {}", name, e);
+        }
+    }
+
+    /**
+     * Stops accepting events, writes the buffered events, and unregisters the MBean of the writer.
+     */
+    synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writerThread.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            logger.warn("Audit event writer {} did not stop within {}ms, {} events are left unwritten",
+                    name, STOP_TIMEOUT_MILLIS, buffer.size());
+        } else {
+            // events published while the writer thread was stopping
+            writeRemainingEvents();
+        }
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = getObjectName();
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to unregister the MBean of audit event writer {}", name, e);
+        }
+    }
+
+    private ObjectName getObjectName() throws JMException {
+        return new ObjectName(MBEAN_NAME_PREFIX + ObjectName.quote(name));
+    }
+
+    /**
+     * Buffers an event to be written by the writer thread.
+     *
+     * @param topic the topic of the event
+     * @param content the event
+     * @return true if the event was buffered or dropped, false if the writer is not running or the publishing thread
+     *         was interrupted while waiting for room in the buffer, and the event has to be written by the caller
+     */
+    boolean publish(String topic, JsonValue content) {
+        if (!running) {
+            return false;
+        }
+        final PendingEvent event = new PendingEvent(topic, content);
+        if (overflowPolicy == OverflowPolicy.drop) {
+            if (!buffer.offer(event)) {
+                dropped.incrementAndGet();
+            }
+            return true;
+        }
+        try {
+            while (!buffer.offer(event, POLL_NANOS, TimeUnit.NANOSECONDS)) {
+                if (!running) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Writes the buffered events in batches until the writer is stopped and the buffer is empty.
+     */
+    private void writeEvents() {
+        final List<PendingEvent> batch = new ArrayList<>(maxBatchedEvents);
+        while (running || !buffer.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                // the writer thread is only stopped by stop(), write what was collected
+                logger.debug("Audit event writer {} interrupted", name);
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    write(batch);
+                } catch (RuntimeException e) {
+                    failed.addAndGet(batch.size());
+                    logger.error("Failed to write {} audit events", batch.size(), e);
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Collects the next batch of events, waiting for the first one, and then for the batch to fill up until the first
+     * one waited {@code maxDelay}.
+     */
+    private void collect(List<PendingEvent> batch) throws InterruptedException {
+        final PendingEvent first = buffer.poll(POLL_NANOS, TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        buffer.drainTo(batch, maxBatchedEvents - batch.size());
+        final long deadline = first.queuedAt + maxDelayNanos;
+        while (running && batch.size() < maxBatchedEvents) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            final PendingEvent next = buffer.poll(Math.min(remaining, POLL_NANOS), TimeUnit.NANOSECONDS);
+            if (next != null) {
+                batch.add(next);
+                buffer.drainTo(batch, maxBatchedEvents - batch.size());
+            }
+        }
+    }
+
+    /**
+     * Writes the events left in the buffer on the calling thread.
+     */
+    private void writeRemainingEvents() {
+        final List<PendingEvent> batch = new ArrayList<>(maxBatchedEvents);
+        while (buffer.drainTo(batch, maxBatchedEvents) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes a batch of events, one batch action per topic.
+     */
+    private void write(List<PendingEvent> batch) {
+        final Map<String, List<JsonValue>> byTopic = new LinkedHashMap<>();
+        for (PendingEvent event : batch) {
+            List<JsonValue> events = byTopic.get(event.topic);
+            if (events == null) {
+                events = new ArrayList<>();
+                byTopic.put(event.topic, events);
+            }
+            events.add(event.content);
+        }
+        for (Map.Entry<String, List<JsonValue>> topic : byTopic.entrySet()) {
+            write(topic.getKey(), topic.getValue());
+        }
+        batches.incrementAndGet();
+
+        final long droppedNow = dropped.get();
+        if (droppedNow > droppedReported) {
+            logger.warn("Audit event buffer of {} is full, {} events were dropped", name, droppedNow - droppedReported);
+            droppedReported = droppedNow;
+        }
+    }
+
+    private void write(String topic, List<JsonValue> events) {
+        final Context context = new AuditingContext(new RootContext());
+        if (batchSupported && events.size() > 1) {
+            final List<Object> requests = new ArrayList<>(events.size());
+            for (JsonValue event : events) {
+                requests.add(object(
+                        field("operation", "create"),
+                        field(FIELD_CONTENT_ID, event.get(FIELD_CONTENT_ID).asString()),
+                        field("content", event.getObject())));
+            }
+            try {
+                final ActionResponse response = connectionFactory.getConnection().action(context,
+                        newActionRequest(resourcePath.concat(topic), ACTION_BATCH)
+                                .setContent(json(object(field("requests", requests)))));
+                for (JsonValue result : response.getJsonContent().defaultTo(array())) {
+                    if (result.get("success").defaultTo(false).asBoolean()) {
+                        written.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                        logger.warn("Failed to write audit event to {}: {}", topic, result.get("error"));
+                    }
+                }
+                return;
+            } catch (NotSupportedException e) {
+                logger.info("{} does not support batches, audit events are written one at a time", resourcePath);
+                logger.debug("Batch action failed", e);
+                batchSupported = false;
+            } catch (ResourceException e) {
+                logger.warn("Failed to write a batch of {} audit events to {}, writing them one at a time",
+                        events.size(), topic, e);
+            }
+        }
+        for (JsonValue event : events) {
+            try {
+                connectionFactory.getConnection().create(context, newCreateRequest(resourcePath.concat(topic),
+                        event.get(FIELD_CONTENT_ID).asString(), event));
+                written.incrementAndGet();
+            } catch (ResourceException e) {
+                failed.incrementAndGet();
+                logger.error("Failed to write audit event to {}", topic, e);
+            }
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return buffer.size();
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getWrittenEvents() {
+        return written.get();
+    }
+
+    @Override
+    public long getFailedEvents() {
+        return failed.get();
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.get();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.audit.impl;
+
+/**
+ * Provides JMX access to the write-behind buffer of a {@link RepositoryAuditEventHandler}.
+ */
+public interface RepositoryAuditEventWriterMBean {
+
+    /**
+     * Gets the number of events waiting in the buffer.
+     * @return the number of buffered events.
+     */
+    int getQueueDepth();
+
+    /**
+     * Gets the maximum number of events waiting in the buffer.
+     * @return the capacity of the buffer.
+     */
+    int getCapacity();
+
+    /**
+     * Gets the number of events written to the repository.
+     * @return the number of written events.
+     */
+    long getWrittenEvents();
+
+    /**
+     * Gets the number of events that failed to be written to the repository.
+     * @return the number of failed events.
+     */
+    long getFailedEvents();
+
+    /**
+     * Gets the number of events discarded because the buffer was full.
+     * @return the number of dropped events.
+     */
+    long getDroppedEvents();
+
+    /**
+     * Gets the number of batches of events written to the repository.
+     * @return the number of batches.
+     */
+    long getBatches();
+}
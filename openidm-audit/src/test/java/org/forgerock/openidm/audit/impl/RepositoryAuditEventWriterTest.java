@@ -0,0 +1,239 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.audit.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Responses.newActionResponse;
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ActionRequest;
+import org.forgerock.json.resource.ActionResponse;
+import org.forgerock.json.resource.BadRequestException;
+import org.forgerock.json.resource.Connection;
+import org.forgerock.json.resource.ConnectionFactory;
+import org.forgerock.json.resource.CreateRequest;
+import org.forgerock.json.resource.NotSupportedException;
+import org.forgerock.json.resource.ResourcePath;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.openidm.audit.impl.RepositoryAuditEventHandlerConfiguration.BufferingConfiguration;
+import org.forgerock.openidm.audit.impl.RepositoryAuditEventHandlerConfiguration.OverflowPolicy;
+import org.forgerock.services.context.Context;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the write-behind of audit events by the {@link RepositoryAuditEventWriter}.
+ */
+public class RepositoryAuditEventWriterTest {
+
+    private static final ResourcePath REPO_AUDIT = ResourcePath.valueOf("repo/audit");
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    /** Performs a batch action, every request succeeding */
+    private static final Answer<ActionResponse> BATCH = new Answer<ActionResponse>() {
+        @Override
+        public ActionResponse answer(InvocationOnMock invocation) throws Throwable {
+            ActionRequest request = (ActionRequest) invocation.getArguments()[1];
+            JsonValue results = json(array());
+            for (JsonValue item : request.getContent().get("requests")) {
+                results.add(object(field("success", true),
+                        field("result", item.get("content").getObject())));
+            }
+            return newActionResponse(results);
+        }
+    };
+
+    private Connection connection;
+    private ConnectionFactory connectionFactory;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        connection = mock(Connection.class);
+        connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.getConnection()).thenReturn(connection);
+        when(connection.action(any(Context.class), any(ActionRequest.class))).thenAnswer(BATCH);
+        when(connection.create(any(Context.class), any(CreateRequest.class))).thenAnswer(
+                new Answer<ResourceResponse>() {
+                    @Override
+                    public ResourceResponse answer(InvocationOnMock invocation) throws Throwable {
+                        CreateRequest request = (CreateRequest) invocation.getArguments()[1];
+                        return newResourceResponse(request.getNewResourceId(), "0", request.getContent());
+                    }
+                });
+    }
+
+    private RepositoryAuditEventWriter newWriter(String name, int maxSize, int maxBatchedEvents, long maxDelay,
+            OverflowPolicy overflowPolicy) {
+        BufferingConfiguration configuration = new BufferingConfiguration();
+        configuration.setEnabled(true);
+        configuration.setMaxSize(maxSize);
+        configuration.setMaxBatchedEvents(maxBatchedEvents);
+        configuration.setMaxDelay(maxDelay);
+        configuration.setOverflowPolicy(overflowPolicy);
+        return new RepositoryAuditEventWriter(name, REPO_AUDIT, connectionFactory, configuration);
+    }
+
+    private static JsonValue event(String id) {
+        return json(object(field("_id", id), field("eventName", "test")));
+    }
+
+    @Test
+    public void testWritesFullBatchOneActionPerTopic() throws Exception {
+        RepositoryAuditEventWriter writer = newWriter("full", 100, 3, 60000, OverflowPolicy.block);
+        writer.start();
+        try {
+            assertThat(writer.publish("access", event("a1"))).isTrue();
+            assertThat(writer.publish("activity", event("b1"))).isTrue();
+            assertThat(writer.publish("access", event("a2"))).isTrue();
+
+            ArgumentCaptor<ActionRequest> batch = ArgumentCaptor.forClass(ActionRequest.class);
+            verify(connection, timeout(TIMEOUT_MILLIS)).action(any(Context.class), batch.capture());
+            verify(connection, timeout(TIMEOUT_MILLIS)).create(any(Context.class), any(CreateRequest.class));
+            assertThat(batch.getValue().getResourcePath()).isEqualTo("repo/audit/access");
+            assertThat(batch.getValue().getAction()).isEqualTo("batch");
+            List<Object> requests = batch.getValue().getContent().get("requests").asList();
+            assertThat(requests).hasSize(2);
+            assertThat(batch.getValue().getContent().get("requests").get(1).get("_id").asString()).isEqualTo("a2");
+        } finally {
+            writer.stop();
+        }
+        assertThat(writer.getWrittenEvents()).isEqualTo(3);
+        assertThat(writer.getBatches()).isEqualTo(1);
+    }
+
+    @Test
+    public void testWritesPartialBatchAfterMaxDelay() throws Exception {
+        RepositoryAuditEventWriter writer = newWriter("delay", 100, 100, 50, OverflowPolicy.block);
+        writer.start();
+        try {
+            writer.publish("access", event("a1"));
+            writer.publish("access", event("a2"));
+
+            verify(connection, timeout(TIMEOUT_MILLIS)).action(any(Context.class), any(ActionRequest.class));
+            assertThat(writer.getQueueDepth()).isEqualTo(0);
+        } finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void testCreatesEventsOneAtATimeWithoutBatchSupport() throws Exception {
+        doThrow(new NotSupportedException("Action operations are not supported"))
+                .when(connection).action(any(Context.class), any(ActionRequest.class));
+        RepositoryAuditEventWriter writer = newWriter("nobatch", 100, 2, 60000, OverflowPolicy.block);
+        writer.start();
+        try {
+            writer.publish("access", event("a1"));
+            writer.publish("access", event("a2"));
+            verify(connection, timeout(TIMEOUT_MILLIS).times(2)).create(any(Context.class), any(CreateRequest.class));
+            writer.publish("access", event("a3"));
+            writer.publish("access", event("a4"));
+            verify(connection, timeout(TIMEOUT_MILLIS).times(4)).create(any(Context.class), any(CreateRequest.class));
+        } finally {
+            writer.stop();
+        }
+        verify(connection, times(1)).action(any(Context.class), any(ActionRequest.class));
+        assertThat(writer.getWrittenEvents()).isEqualTo(4);
+    }
+
+    @Test
+    public void testKeepsBatchingAfterBadRequest() throws Exception {
+        doThrow(new BadRequestException("Invalid batch")).doAnswer(BATCH)
+                .when(connection).action(any(Context.class), any(ActionRequest.class));
+        RepositoryAuditEventWriter writer = newWriter("badbatch", 100, 2, 60000, OverflowPolicy.block);
+        writer.start();
+        try {
+            writer.publish("access", event("a1"));
+            writer.publish("access", event("a2"));
+            // the failed batch is written one event at a time
+            verify(connection, timeout(TIMEOUT_MILLIS).times(2)).create(any(Context.class), any(CreateRequest.class));
+            writer.publish("access", event("a3"));
+            writer.publish("access", event("a4"));
+            verify(connection, timeout(TIMEOUT_MILLIS).times(2)).action(any(Context.class), any(ActionRequest.class));
+        } finally {
+            writer.stop();
+        }
+        verify(connection, times(2)).create(any(Context.class), any(CreateRequest.class));
+    }
+
+    @Test
+    public void testDropsEventsWhenFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<ResourceResponse>() {
+            @Override
+            public ResourceResponse answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                CreateRequest request = (CreateRequest) invocation.getArguments()[1];
+                return newResourceResponse(request.getNewResourceId(), "0", request.getContent());
+            }
+        }).when(connection).create(any(Context.class), any(CreateRequest.class));
+        RepositoryAuditEventWriter writer = newWriter("drop", 1, 1, 0, OverflowPolicy.drop);
+        writer.start();
+        try {
+            writer.publish("access", event("a1"));
+            // the writer is now blocked writing the first event
+            verify(connection, timeout(TIMEOUT_MILLIS)).create(any(Context.class), any(CreateRequest.class));
+            assertThat(writer.publish("access", event("a2"))).isTrue();
+            assertThat(writer.publish("access", event("a3"))).isTrue();
+
+            assertThat(writer.getQueueDepth()).isEqualTo(1);
+            assertThat(writer.getDroppedEvents()).isEqualTo(1);
+        } finally {
+            release.countDown();
+            writer.stop();
+        }
+        assertThat(writer.getWrittenEvents()).isEqualTo(2);
+    }
+
+    @Test
+    public void testStopWritesBufferedEvents() throws Exception {
+        RepositoryAuditEventWriter writer = newWriter("stop", 100, 100, 60000, OverflowPolicy.block);
+        writer.start();
+        writer.publish("access", event("a1"));
+        writer.publish("access", event("a2"));
+        writer.publish("access", event("a3"));
+
+        writer.stop();
+
+        ArgumentCaptor<ActionRequest> batch = ArgumentCaptor.forClass(ActionRequest.class);
+        verify(connection).action(any(Context.class), batch.capture());
+        assertThat(batch.getValue().getContent().get("requests").asList()).hasSize(3);
+        assertThat(writer.getWrittenEvents()).isEqualTo(3);
+        // events published once stopped are left to the caller
+        assertThat(writer.publish("access", event("a4"))).isFalse();
+        verify(connection, never()).create(any(Context.class), any(CreateRequest.class));
+    }
+}
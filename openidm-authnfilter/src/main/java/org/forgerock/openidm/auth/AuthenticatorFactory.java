@@ -65,7 +65,8 @@ public class AuthenticatorFactory implements Function<JsonValue, Authenticator>
                     jsonValue.get(QUERY_ID).required().asString(),
                     jsonValue.get(PROPERTY_MAPPING).get(AUTHENTICATION_ID).required().asString(),
                     jsonValue.get(PROPERTY_MAPPING).get(USER_CREDENTIAL).required().asString(),
-                    jsonValue.get(PROPERTY_MAPPING).get(USER_ROLES).asString());
+                    jsonValue.get(PROPERTY_MAPPING).get(USER_ROLES).asString(),
+                    CredentialCache.fromConfig(jsonValue.get(CredentialCache.CREDENTIAL_CACHE)));
         } else if (!jsonValue.get(USERNAME_PROPERTY).isNull()
                 && !jsonValue.get(PASSWORD_PROPERTY).isNull()) {
             return new StaticAuthenticator(
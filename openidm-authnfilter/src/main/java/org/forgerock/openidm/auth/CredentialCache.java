@@ -0,0 +1,218 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.auth;
+
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.util.time.TimeService;
+
+/**
+ * Bounded cache of the credentials a {@link ResourceQueryAuthenticator} verified, so that clients authenticating
+ * every request, as with basic authentication, do not cost a query and a password hash each time.
+ * <p>
+ * A credential is never stored: each entry holds an HMAC of the presented password, keyed with a random key that
+ * only lives in memory, along with the user resource and its revision. A password presented again for the same user
+ * within the time to live is authenticated without querying the user. Once the entry expired the user is queried
+ * again, and the password is only hashed again if the revision of the user changed meanwhile. A changed revision,
+ * such as a changed password or a deactivated account, thus takes effect on the user's first authentication after
+ * the time to live, at the latest.
+ */
+class CredentialCache {
+
+    /** Property of the auth module holding the cache configuration; the cache is disabled if absent */
+    static final String CREDENTIAL_CACHE = "credentialCache";
+    /** Property of the cache configuration holding the maximum number of users cached */
+    static final String MAX_ENTRIES = "maxEntries";
+    /** Property of the cache configuration holding the time to live of an entry, in seconds */
+    static final String MAX_AGE_SECONDS = "maxAgeSeconds";
+
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final long DEFAULT_MAX_AGE_SECONDS = 60;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final int maxEntries;
+    private final long maxAgeMillis;
+    private final TimeService timeService;
+    private final SecretKeySpec key;
+
+    /** The entries by username, least recently used first, guarded by itself */
+    private final Map<String, Entry> entries;
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries the maximum number of users cached
+     * @param maxAgeSeconds the time to live of an entry, in seconds
+     * @param timeService the clock the entries expire by
+     */
+    CredentialCache(int maxEntries, long maxAgeSeconds, TimeService timeService) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxAgeMillis = TimeUnit.SECONDS.toMillis(Math.max(0, maxAgeSeconds));
+        this.timeService = timeService;
+        final byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, HMAC_ALGORITHM);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CredentialCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Creates the cache configured for an auth module.
+     *
+     * @param config the {@link #CREDENTIAL_CACHE} configuration of the auth module
+     * @return the cache, or null if the configuration is absent
+     */
+    static CredentialCache fromConfig(JsonValue config) {
+        if (config.isNull()) {
+            return null;
+        }
+        return new CredentialCache(
+                config.get(MAX_ENTRIES).defaultTo(DEFAULT_MAX_ENTRIES).asInteger(),
+                config.get(MAX_AGE_SECONDS).defaultTo(DEFAULT_MAX_AGE_SECONDS).asLong(),
+                TimeService.SYSTEM);
+    }
+
+    /**
+     * Returns the user resource a password was verified for, if it was within the time to live.
+     *
+     * @param username the presented username
+     * @param password the presented password
+     * @return a copy of the user resource, or null if the password was not verified recently for the user
+     */
+    ResourceResponse get(String username, String password) {
+        final Entry entry;
+        synchronized (entries) {
+            entry = entries.get(username);
+        }
+        if (entry == null || timeService.now() >= entry.expiresAt || !entry.matches(digest(password))) {
+            return null;
+        }
+        return copy(entry.resource);
+    }
+
+    /**
+     * Tells whether a password was verified for the user resource just queried, that is for the same revision of
+     * it, and renews the entry if so.
+     *
+     * @param username the presented username
+     * @param password the presented password
+     * @param resource the user resource queried
+     * @return true if the password was verified for the same revision of the user resource
+     */
+    boolean isVerified(String username, String password, ResourceResponse resource) {
+        final Entry entry;
+        synchronized (entries) {
+            entry = entries.get(username);
+        }
+        if (entry == null) {
+            return false;
+        }
+        if (!isSameRevision(entry.resource, resource)) {
+            invalidate(username);
+            return false;
+        }
+        if (!entry.matches(digest(password))) {
+            return false;
+        }
+        put(username, password, resource);
+        return true;
+    }
+
+    /**
+     * Records that a password was verified for a user resource.
+     *
+     * @param username the presented username
+     * @param password the presented password
+     * @param resource the user resource the password was verified against
+     */
+    void put(String username, String password, ResourceResponse resource) {
+        if (resource.getRevision() == null || maxAgeMillis == 0) {
+            // without a revision a change of the credential could not be told
+            return;
+        }
+        final Entry entry = new Entry(digest(password), copy(resource), timeService.now() + maxAgeMillis);
+        synchronized (entries) {
+            entries.put(username, entry);
+        }
+    }
+
+    /**
+     * Forgets the password verified for a user.
+     *
+     * @param username the presented username
+     */
+    void invalidate(String username) {
+        synchronized (entries) {
+            entries.remove(username);
+        }
+    }
+
+    private static boolean isSameRevision(ResourceResponse cached, ResourceResponse queried) {
+        return cached.getRevision().equals(queried.getRevision())
+                && cached.getId() != null && cached.getId().equals(queried.getId());
+    }
+
+    private static ResourceResponse copy(ResourceResponse resource) {
+        return newResourceResponse(resource.getId(), resource.getRevision(), resource.getContent().copy());
+    }
+
+    private byte[] digest(String password) {
+        try {
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC_ALGORITHM + " is not available", e);
+        }
+    }
+
+    /**
+     * A password verified for a user.
+     */
+    private static class Entry {
+        private final byte[] digest;
+        private final ResourceResponse resource;
+        private final long expiresAt;
+
+        private Entry(byte[] digest, ResourceResponse resource, long expiresAt) {
+            this.digest = digest;
+            this.resource = resource;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean matches(byte[] presented) {
+            return MessageDigest.isEqual(digest, presented);
+        }
+    }
+}
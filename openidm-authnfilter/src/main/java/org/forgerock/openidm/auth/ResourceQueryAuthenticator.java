@@ -52,6 +52,7 @@ class ResourceQueryAuthenticator implements Authenticator {
     private final String userRolesProperty;
     private final String authenticationIdProperty;
     private final String userCredentialProperty;
+    private final CredentialCache credentialCache;
 
     /**
      * Constructs an instance of the ResourceQueryAuthenticator.
@@ -62,9 +63,11 @@ class ResourceQueryAuthenticator implements Authenticator {
      * @param authenticationIdProperty The user id property.
      * @param userCredentialProperty The user credential property.
      * @param userRolesProperty The property for reading authorization roles
+     * @param credentialCache The cache of verified credentials, or null to verify every authentication.
      */
     public ResourceQueryAuthenticator(Provider<CryptoService> cryptoService, Provider<ConnectionFactory> connectionFactory,
-            String queryOnResource, String queryId,  String authenticationIdProperty, String userCredentialProperty, String userRolesProperty) {
+            String queryOnResource, String queryId,  String authenticationIdProperty, String userCredentialProperty, String userRolesProperty,
+            CredentialCache credentialCache) {
 
         Reject.ifNull(cryptoService, "CryptoService is null");
         Reject.ifNull(connectionFactory, "ConnectionFactory is null");
@@ -80,6 +83,7 @@ class ResourceQueryAuthenticator implements Authenticator {
         this.authenticationIdProperty = authenticationIdProperty;
         this.userCredentialProperty = userCredentialProperty;
         this.userRolesProperty = userRolesProperty;
+        this.credentialCache = credentialCache;
     }
 
     /**
@@ -100,11 +104,26 @@ class ResourceQueryAuthenticator implements Authenticator {
             throw new InternalServerErrorException("No CryptoService available");
         }
 
+        if (credentialCache != null && password != null) {
+            final ResourceResponse cached = credentialCache.get(username, password);
+            if (cached != null) {
+                logger.debug("Authentication succeeded for {} with a recently verified credential", username);
+                return AuthenticatorResult.authenticationSuccess(cached);
+            }
+        }
+
         final ResourceResponse resource = getResource(username, context);
         if (resource != null) {
+            if (credentialCache != null && password != null
+                    && credentialCache.isVerified(username, password, resource)) {
+                logger.debug("Authentication succeeded for {} with a credential verified for the same revision",
+                        username);
+                return AuthenticatorResult.authenticationSuccess(resource);
+            }
             if (cryptoService.isHashed(resource.getContent().get(userCredentialProperty))) {
                 try {
                     if (cryptoService.matches(password, resource.getContent().get(userCredentialProperty))) {
+                        cacheVerified(username, password, resource);
                         return AuthenticatorResult.authenticationSuccess(resource);
                     }
                 } catch (JsonCryptoException jce) {
@@ -117,6 +136,7 @@ class ResourceQueryAuthenticator implements Authenticator {
                     return AuthenticatorResult.FAILED;
                 } else if (userInfo.checkCredential(password)) {
                     logger.debug("Authentication succeeded for {}", username);
+                    cacheVerified(username, password, resource);
                     return AuthenticatorResult.authenticationSuccess(resource);
                 }
             }
@@ -125,6 +145,12 @@ class ResourceQueryAuthenticator implements Authenticator {
         return AuthenticatorResult.FAILED;
     }
 
+    private void cacheVerified(String username, String password, ResourceResponse resource) {
+        if (credentialCache != null && password != null) {
+            credentialCache.put(username, password, resource);
+        }
+    }
+
     private ResourceResponse getResource(String username, Context context) throws ResourceException {
         QueryRequest request = Requests.newQueryRequest(queryOnResource)
                 .setQueryId(queryId)
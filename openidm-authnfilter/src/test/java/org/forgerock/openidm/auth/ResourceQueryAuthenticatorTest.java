@@ -0,0 +1,199 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.auth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collection;
+
+import javax.inject.Provider;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.Connection;
+import org.forgerock.json.resource.ConnectionFactory;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.openidm.crypto.CryptoService;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.forgerock.util.time.TimeService;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the credential cache of the {@link ResourceQueryAuthenticator}.
+ */
+public class ResourceQueryAuthenticatorTest {
+
+    private static final JsonValue HASHED_PASSWORD = json(object(field("$crypto", object())));
+
+    private Connection connection;
+    private CryptoService cryptoService;
+    private TimeService timeService;
+    private ResourceResponse user;
+    private long now;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        connection = mock(Connection.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ((Collection<ResourceResponse>) invocation.getArguments()[2]).add(user);
+                return null;
+            }
+        }).when(connection).query(any(Context.class), any(QueryRequest.class), any(Collection.class));
+
+        cryptoService = mock(CryptoService.class);
+        when(cryptoService.isHashed(any(JsonValue.class))).thenReturn(true);
+        when(cryptoService.matches(anyString(), any(JsonValue.class))).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                return "Passw0rd".equals(invocation.getArguments()[0]);
+            }
+        });
+
+        timeService = mock(TimeService.class);
+        when(timeService.now()).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                return now;
+            }
+        });
+
+        user = user("1");
+        now = 0;
+    }
+
+    private static ResourceResponse user(String revision) {
+        return newResourceResponse("bjensen", revision,
+                json(object(field("userName", "bjensen"), field("password", HASHED_PASSWORD.getObject()))));
+    }
+
+    private ResourceQueryAuthenticator newAuthenticator(CredentialCache credentialCache) {
+        return new ResourceQueryAuthenticator(
+                new Provider<CryptoService>() {
+                    @Override
+                    public CryptoService get() {
+                        return cryptoService;
+                    }
+                },
+                new Provider<ConnectionFactory>() {
+                    @Override
+                    public ConnectionFactory get() {
+                        return connectionFactory();
+                    }
+                },
+                "managed/user", "credential-query", "username", "password", null, credentialCache);
+    }
+
+    private ConnectionFactory connectionFactory() {
+        final ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.getConnection()).thenReturn(connection);
+        return connectionFactory;
+    }
+
+    private boolean authenticate(ResourceQueryAuthenticator authenticator, String password) throws Exception {
+        return authenticator.authenticate("bjensen", password, new RootContext()).isAuthenticated();
+    }
+
+    private void verifyQueriesAndHashes(int queries, int hashes) throws Exception {
+        verify(connection, times(queries)).query(any(Context.class), any(QueryRequest.class), any(Collection.class));
+        verify(cryptoService, times(hashes)).matches(anyString(), any(JsonValue.class));
+    }
+
+    @Test
+    public void testVerifiesEveryAuthenticationWithoutCache() throws Exception {
+        ResourceQueryAuthenticator authenticator = newAuthenticator(null);
+
+        assertThat(authenticate(authenticator, "Passw0rd")).isTrue();
+        assertThat(authenticate(authenticator, "Passw0rd")).isTrue();
+
+        verifyQueriesAndHashes(2, 2);
+    }
+
+    @Test
+    public void testRepeatedAuthenticationSkipsQueryAndHash() throws Exception {
+        ResourceQueryAuthenticator authenticator = newAuthenticator(new CredentialCache(10, 60, timeService));
+
+        assertThat(authenticate(authenticator, "Passw0rd")).isTrue();
+        now = 59999;
+        assertThat(authenticate(authenticator, "Passw0rd")).isTrue();
+
+        verifyQueriesAndHashes(1, 1);
+    }
+
+    @Test
+    public void testOtherPasswordIsVerified() throws Exception {
+        ResourceQueryAuthenticator authenticator = newAuthenticator(new CredentialCache(10, 60, timeService));
+
+        assertThat(authenticate(authenticator, "Passw0rd")).isTrue();
+        assertThat(authenticate(authenticator, "wrong")).isFalse();
+
+        verifyQueriesAndHashes(2, 2);
+    }
+
+    @Test
+    public void testExpiredEntryIsRenewedForSameRevision() throws Exception {
+        ResourceQueryAuthenticator authenticator = newAuthenticator(new CredentialCache(10, 60, timeService));
+
+        assertThat(authenticate(authenticator, "Passw0rd")).isTrue();
+        now = 60000;
+        assertThat(authenticate(authenticator, "Passw0rd")).isTrue();
+        now = 90000;
+        assertThat(authenticate(authenticator, "Passw0rd")).isTrue();
+
+        verifyQueriesAndHashes(2, 1);
+    }
+
+    @Test
+    public void testChangedRevisionIsVerifiedAgain() throws Exception {
+        ResourceQueryAuthenticator authenticator = newAuthenticator(new CredentialCache(10, 60, timeService));
+
+        assertThat(authenticate(authenticator, "Passw0rd")).isTrue();
+        user = user("2");
+        now = 60000;
+        assertThat(authenticate(authenticator, "Passw0rd")).isTrue();
+
+        verifyQueriesAndHashes(2, 2);
+    }
+
+    @Test
+    public void testCachedResourceIsCopied() throws Exception {
+        ResourceQueryAuthenticator authenticator = newAuthenticator(new CredentialCache(10, 60, timeService));
+
+        authenticator.authenticate("bjensen", "Passw0rd", new RootContext()).getResource()
+                .getContent().put("userName", "changed");
+        ResourceResponse cached = authenticator.authenticate("bjensen", "Passw0rd", new RootContext()).getResource();
+
+        assertThat(cached.getContent().get("userName").asString()).isEqualTo("bjensen");
+        assertThat(cached.getRevision()).isEqualTo("1");
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.benchmarks;
+
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.script.engine.ScriptEngineFactory;
+import org.forgerock.script.javascript.RhinoScriptEngineFactory;
+import org.forgerock.script.registry.ScriptRegistryImpl;
+
+/**
+ * Synthetic data and components shared by the benchmarks.
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {
+        // prevent instantiation
+    }
+
+    /**
+     * Creates a managed user as stored in the repository, with the usual mix of searchable strings, a boolean and
+     * a multi-valued property.
+     *
+     * @param i the number of the user, making its user name and mail unique
+     * @return the user
+     */
+    public static JsonValue user(int i) {
+        return json(object(
+                field("userName", "user" + i),
+                field("givenName", "Given" + i),
+                field("sn", "Surname" + i),
+                field("mail", "user" + i + "@example.com"),
+                field("telephoneNumber", "+1 555 01" + String.format("%04d", i % 10000)),
+                field("accountStatus", "active"),
+                field("active", Boolean.TRUE),
+                field("roles", array("openidm-authorized", "internal/role/" + (i % 10))),
+                field("description", "Synthetic user number " + i + " created for benchmarking")));
+    }
+
+    /**
+     * Creates a script registry evaluating JavaScript, the default script language of OpenIDM, outside of OSGi.
+     *
+     * @return the script registry
+     */
+    public static ScriptRegistryImpl newScriptRegistry() {
+        Map<String, Object> configuration = new HashMap<>(1);
+        configuration.put(RhinoScriptEngineFactory.LANGUAGE_NAME, new HashMap<String, Object>());
+        return new ScriptRegistryImpl(configuration,
+                Collections.<ScriptEngineFactory>singleton(new RhinoScriptEngineFactory()), null, null);
+    }
+
+    /**
+     * Creates the configuration of an inline JavaScript script.
+     *
+     * @param source the source of the script
+     * @return the script configuration
+     */
+    public static JsonValue javascript(String source) {
+        return json(object(
+                field("type", RhinoScriptEngineFactory.LANGUAGE_NAME),
+                field("source", source)));
+    }
+}
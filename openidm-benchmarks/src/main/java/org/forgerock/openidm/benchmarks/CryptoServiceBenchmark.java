@@ -0,0 +1,87 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.benchmarks;
+
+import static org.forgerock.json.JsonValue.json;
+
+import java.security.Key;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.crypto.JsonCryptoException;
+import org.forgerock.json.crypto.JsonDecryptFunction;
+import org.forgerock.json.crypto.simple.SimpleDecryptor;
+import org.forgerock.json.crypto.simple.SimpleKeySelector;
+import org.forgerock.openidm.core.ServerConstants;
+import org.forgerock.openidm.crypto.impl.CryptoServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encrypts and decrypts a password with the {@link CryptoServiceImpl}, using the default cipher and an in-memory AES
+ * key in place of the keystore.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoServiceBenchmark {
+
+    private static final String ALIAS = "openidm-sym-default";
+
+    private CryptoServiceImpl cryptoService;
+    private JsonValue password;
+    private JsonValue encrypted;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        final Key key = generator.generateKey();
+        SimpleKeySelector keySelector = new SimpleKeySelector() {
+            @Override
+            public Key select(String alias) throws JsonCryptoException {
+                return ALIAS.equals(alias) ? key : null;
+            }
+        };
+        cryptoService = new CryptoServiceImpl(keySelector, new JsonDecryptFunction(new SimpleDecryptor(keySelector)));
+        password = json("Passw0rd");
+        encrypted = encrypt();
+    }
+
+    @Benchmark
+    public JsonValue encrypt() throws JsonCryptoException {
+        return cryptoService.encrypt(password, ServerConstants.SECURITY_CRYPTOGRAPHY_DEFAULT_CIPHER, ALIAS);
+    }
+
+    @Benchmark
+    public JsonValue decrypt() {
+        return cryptoService.decrypt(encrypted);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.benchmarks;
+
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.openidm.repo.QueryConstants.PAGED_RESULTS_OFFSET;
+import static org.forgerock.openidm.repo.QueryConstants.PAGE_SIZE;
+import static org.forgerock.openidm.repo.QueryConstants.QUERY_FILTER;
+import static org.forgerock.openidm.repo.QueryConstants.SORT_KEYS;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.QueryFilters;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.openidm.repo.jdbc.impl.GenericTableHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creates, updates and queries managed users through the {@link GenericTableHandler} on an in-memory H2 database
+ * in MySQL mode, each operation in its own transaction.
+ * <p>
+ * The schema is the generic object schema of the MySQL repository. The properties table is updated incrementally,
+ * as the default update deletes the properties with a MySQL-only multi-table {@code DELETE}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenericTableHandlerBenchmark {
+
+    private static final String TYPE = "managed/user";
+
+    private static final String[] SCHEMA = {
+        "CREATE SCHEMA IF NOT EXISTS openidm",
+        "CREATE TABLE openidm.objecttypes ("
+                + "id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY, "
+                + "objecttype VARCHAR(255) NULL, "
+                + "UNIQUE (objecttype))",
+        "CREATE TABLE openidm.genericobjects ("
+                + "id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY, "
+                + "objecttypes_id BIGINT NOT NULL, "
+                + "objectid VARCHAR(255) NOT NULL, "
+                + "rev VARCHAR(38) NOT NULL, "
+                + "fullobject CLOB NULL, "
+                + "UNIQUE (objecttypes_id, objectid), "
+                + "FOREIGN KEY (objecttypes_id) REFERENCES openidm.objecttypes (id) ON DELETE CASCADE)",
+        "CREATE TABLE openidm.genericobjectproperties ("
+                + "genericobjects_id BIGINT NOT NULL, "
+                + "propkey VARCHAR(255) NOT NULL, "
+                + "proptype VARCHAR(32) NULL, "
+                + "propvalue VARCHAR(2000) NULL, "
+                + "FOREIGN KEY (genericobjects_id) REFERENCES openidm.genericobjects (id) ON DELETE CASCADE)",
+        "CREATE INDEX idx_genericobjectproperties_prop ON openidm.genericobjectproperties (propkey, propvalue)"
+    };
+
+    /** Number of users created before the measurements, which are updated and queried */
+    @Param("1000")
+    public int objects;
+
+    private Connection connection;
+    private GenericTableHandler tableHandler;
+    private String[] revisions;
+    private int next;
+    private int created;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:openidm-benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+        }
+        connection.setAutoCommit(false);
+        tableHandler = newTableHandler(true);
+        revisions = new String[objects];
+        for (int i = 0; i < objects; i++) {
+            tableHandler.create(TYPE + "/" + i, TYPE, String.valueOf(i), Benchmarks.user(i).asMap(), connection);
+            revisions[i] = "0";
+        }
+        connection.commit();
+        created = objects;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    /**
+     * Creates a table handler for the generic object tables.
+     *
+     * @param incrementalPropertyUpdates whether the properties of updated objects are written incrementally
+     * @return the table handler
+     */
+    static GenericTableHandler newTableHandler(boolean incrementalPropertyUpdates) {
+        JsonValue tableConfig = json(object(
+                field("mainTable", "genericobjects"),
+                field("propertiesTable", "genericobjectproperties"),
+                field("searchableDefault", Boolean.TRUE),
+                field("incrementalPropertyUpdates", incrementalPropertyUpdates)));
+        return new GenericTableHandler(tableConfig, "openidm", json(object()), json(object()), 1, null);
+    }
+
+    @Benchmark
+    public Map<String, Object> create() throws Exception {
+        int i = created++;
+        Map<String, Object> user = Benchmarks.user(i).asMap();
+        tableHandler.create(TYPE + "/" + i, TYPE, String.valueOf(i), user, connection);
+        connection.commit();
+        return user;
+    }
+
+    @Benchmark
+    public Map<String, Object> update() throws Exception {
+        int i = next++ % objects;
+        Map<String, Object> user = Benchmarks.user(i).asMap();
+        user.put("description", "Updated " + next);
+        tableHandler.update(TYPE + "/" + i, TYPE, String.valueOf(i), revisions[i], user, connection);
+        connection.commit();
+        revisions[i] = (String) user.get("_rev");
+        return user;
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> query() throws ResourceException, SQLException {
+        Map<String, Object> params = new HashMap<>();
+        params.put(QUERY_FILTER, QueryFilters.parse("userName eq \"user" + (next++ % objects) + "\""));
+        params.put(PAGE_SIZE, 10);
+        params.put(PAGED_RESULTS_OFFSET, 0);
+        params.put(SORT_KEYS, Collections.emptyList());
+        List<Map<String, Object>> result = tableHandler.query(TYPE, params, connection);
+        connection.commit();
+        return result;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.benchmarks;
+
+import static org.forgerock.json.resource.PatchOperation.add;
+import static org.forgerock.json.resource.PatchOperation.remove;
+import static org.forgerock.json.resource.PatchOperation.replace;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.PatchOperation;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.openidm.patch.JsonValuePatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Applies a typical managed object patch with {@link JsonValuePatch}.
+ * <p>
+ * The patch is applied to a copy of the user, so {@link #copy()} gives the share of the copy in {@link #apply()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonValuePatchBenchmark {
+
+    private JsonValue user;
+    private List<PatchOperation> operations;
+
+    @Setup
+    public void setUp() {
+        user = Benchmarks.user(42);
+        operations = Arrays.asList(
+                replace("/mail", "bjensen@example.com"),
+                replace("/accountStatus", "inactive"),
+                add("/roles/-", "internal/role/auditor"),
+                remove("/telephoneNumber"));
+    }
+
+    @Benchmark
+    public JsonValue copy() {
+        return user.copy();
+    }
+
+    @Benchmark
+    public JsonValue apply() throws ResourceException {
+        JsonValue subject = user.copy();
+        JsonValuePatch.apply(subject, operations);
+        return subject;
+    }
+}
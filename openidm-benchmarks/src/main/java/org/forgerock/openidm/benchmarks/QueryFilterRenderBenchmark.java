@@ -0,0 +1,87 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.benchmarks;
+
+import static org.forgerock.openidm.repo.QueryConstants.PAGED_RESULTS_OFFSET;
+import static org.forgerock.openidm.repo.QueryConstants.PAGE_SIZE;
+import static org.forgerock.openidm.repo.QueryConstants.SORT_KEYS;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.resource.QueryFilters;
+import org.forgerock.json.resource.SortKey;
+import org.forgerock.openidm.core.ServerConstants;
+import org.forgerock.openidm.repo.jdbc.impl.GenericTableHandler;
+import org.forgerock.util.query.QueryFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders a query filter as SQL for the generic object tables, which the {@code GenericSQLQueryFilterVisitor} does for
+ * every filtered query of the JDBC repository.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryFilterRenderBenchmark {
+
+    private GenericTableHandler tableHandler;
+    private QueryFilter<JsonPointer> simpleFilter;
+    private QueryFilter<JsonPointer> compoundFilter;
+
+    @Setup
+    public void setUp() {
+        tableHandler = GenericTableHandlerBenchmark.newTableHandler(false);
+        simpleFilter = QueryFilters.parse("userName eq \"bjensen\"");
+        compoundFilter = QueryFilters.parse("(userName sw \"bjen\" or mail co \"example.com\") "
+                + "and accountStatus eq \"active\" and !(roles pr) and sn gt \"J\"");
+    }
+
+    @Benchmark
+    public String renderSimple() {
+        return tableHandler.renderQueryFilter(simpleFilter, new HashMap<String, Object>(), params());
+    }
+
+    @Benchmark
+    public String renderCompound() {
+        return tableHandler.renderQueryFilter(compoundFilter, new HashMap<String, Object>(), params());
+    }
+
+    private Map<String, Object> params() {
+        Map<String, Object> params = new HashMap<>();
+        params.put(PAGED_RESULTS_OFFSET, "0");
+        params.put(PAGE_SIZE, "50");
+        params.put(ServerConstants.RESOURCE_NAME, "managed/user");
+        params.put(SORT_KEYS, Arrays.asList(SortKey.ascendingOrder("sn"), SortKey.descendingOrder("givenName")));
+        return params;
+    }
+}
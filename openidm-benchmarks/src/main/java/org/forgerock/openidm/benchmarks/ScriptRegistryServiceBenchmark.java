@@ -0,0 +1,90 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.openidm.script.impl.ScriptRegistryService;
+import org.forgerock.script.ScriptEntry;
+import org.forgerock.script.registry.ScriptRegistryImpl;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluates a small transformation script, as used in mappings, through {@link ScriptRegistryService#execScript}.
+ * <p>
+ * {@link #takeAndExecScript()} also looks the script up by its configuration, as the script endpoint and inline
+ * scripts of a mapping do for every evaluation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptRegistryServiceBenchmark {
+
+    private static final String SOURCE =
+            "var name = content.givenName + ' ' + content.sn; ({ displayName: name, mail: content.mail.toLowerCase() });";
+
+    private ScriptRegistryImpl scriptRegistry;
+    private ScriptRegistryService scriptRegistryService;
+    private JsonValue scriptConfig;
+    private ScriptEntry scriptEntry;
+    private Context context;
+    private JsonValue user;
+
+    @Setup
+    public void setUp() throws Exception {
+        scriptRegistry = Benchmarks.newScriptRegistry();
+        scriptRegistryService = new ScriptRegistryService();
+        scriptConfig = Benchmarks.javascript(SOURCE);
+        scriptEntry = scriptRegistry.takeScript(scriptConfig);
+        context = new RootContext();
+        user = Benchmarks.user(42);
+    }
+
+    @Benchmark
+    public JsonValue execScript() throws ResourceException {
+        return scriptRegistryService.execScript(context, scriptEntry, bindings());
+    }
+
+    @Benchmark
+    public JsonValue takeAndExecScript() throws Exception {
+        return scriptRegistryService.execScript(context, scriptRegistry.takeScript(scriptConfig), bindings());
+    }
+
+    private Map<String, Object> bindings() {
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("content", user);
+        return bindings;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.policy;
+
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.Bindings;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ActionRequest;
+import org.forgerock.json.resource.CreateRequest;
+import org.forgerock.json.resource.DeleteRequest;
+import org.forgerock.json.resource.NotSupportedException;
+import org.forgerock.json.resource.PatchRequest;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.ReadRequest;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.UpdateRequest;
+import org.forgerock.openidm.benchmarks.Benchmarks;
+import org.forgerock.openidm.script.ScriptCustomizer;
+import org.forgerock.openidm.script.ScriptedRequestHandler;
+import org.forgerock.script.registry.ScriptRegistryImpl;
+import org.forgerock.script.scope.Function;
+import org.forgerock.script.scope.Parameter;
+import org.forgerock.script.source.DirectoryContainer;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Validates managed users against the standard policies of their schema, natively with the compiled
+ * {@link ResourcePolicy} and with the bundled {@code policy.js} evaluated by Rhino through a
+ * {@link ScriptedRequestHandler}, as the policy service does.
+ * <p>
+ * The script is read from {@code bin/defaults/script} of openidm-zip, found relative to the working directory unless
+ * the {@code openidm.benchmarks.script.directory} system property names another directory. As in the policy service
+ * the script reads the managed object configuration for every request, served here from memory without additional
+ * policies. Half of the users fail the password policies. Lives in the package of the policy service to reach its
+ * package-private validators.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolicyValidationBenchmark {
+
+    private static final String RESOURCE_PATH = "managed/user/*";
+    private static final Object STRING = array("string");
+    private static final String SCRIPT_DIRECTORY = "openidm-zip/src/main/resources/bin/defaults/script";
+
+    /** Number of users validated in turn */
+    @Param("1000")
+    public int objects;
+
+    private JsonValue resource;
+    private ResourcePolicy resourcePolicy;
+    private ScriptedRequestHandler scriptedHandler;
+    private Context context;
+    private JsonValue[] users;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        resource = json(object(
+                field("resource", RESOURCE_PATH),
+                field("properties", array(
+                        property("userName",
+                                policy("required", null),
+                                policy("not-empty", null),
+                                policy("valid-type", object(field("types", STRING))),
+                                policy("cannot-contain-characters", object(field("forbiddenChars", array("/"))))),
+                        property("givenName",
+                                policy("required", null),
+                                policy("valid-type", object(field("types", STRING))),
+                                policy("valid-name-format", null)),
+                        property("sn",
+                                policy("required", null),
+                                policy("valid-type", object(field("types", STRING))),
+                                policy("valid-name-format", null)),
+                        property("mail",
+                                policy("required", null),
+                                policy("valid-type", object(field("types", STRING))),
+                                policy("valid-email-address-format", null)),
+                        property("telephoneNumber",
+                                policy("valid-type", object(field("types", array("string", "null")))),
+                                policy("valid-phone-format", null)),
+                        property("password",
+                                policy("required", null),
+                                policy("not-empty", null),
+                                policy("at-least-X-capitals", object(field("numCaps", 1))),
+                                policy("at-least-X-numbers", object(field("numNums", 1))),
+                                policy("minimum-length", object(field("minLength", 8))),
+                                policy("cannot-contain-others",
+                                        object(field("disallowedFields", array("userName", "givenName", "sn")))))))));
+        resourcePolicy = ResourcePolicy.compile(resource);
+
+        ScriptRegistryImpl scriptRegistry = Benchmarks.newScriptRegistry();
+        scriptRegistry.addSourceUnit(new DirectoryContainer("default", scriptDirectory().toURI().toURL()));
+        scriptRegistry.put("openidm", openidmFunctions());
+        scriptedHandler = new ScriptedRequestHandler(
+                scriptRegistry.takeScript(json(object(field("type", "text/javascript"), field("name", "policy.js")))),
+                new PolicyScriptCustomizer(resource));
+        context = new RootContext();
+
+        users = new JsonValue[objects];
+        for (int i = 0; i < objects; i++) {
+            users[i] = Benchmarks.user(i).put("password", i % 2 == 0 ? "Passw0rd" + i : "password");
+        }
+    }
+
+    private static File scriptDirectory() {
+        String property = System.getProperty("openidm.benchmarks.script.directory");
+        for (File directory : property != null
+                ? new File[] { new File(property) }
+                : new File[] { new File(SCRIPT_DIRECTORY), new File("..", SCRIPT_DIRECTORY) }) {
+            if (new File(directory, "policy.js").isFile()) {
+                return directory;
+            }
+        }
+        throw new IllegalStateException("policy.js not found, set openidm.benchmarks.script.directory to "
+                + SCRIPT_DIRECTORY + " of the source tree");
+    }
+
+    /**
+     * @return the {@code openidm} functions used by {@code policy.js}, reading a managed object configuration
+     *         without additional policies
+     */
+    private static Map<String, Object> openidmFunctions() {
+        final JsonValue managedConfig = json(object(field("objects", array())));
+        Map<String, Object> openidm = new HashMap<>();
+        openidm.put("read", new Function<JsonValue>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public JsonValue call(Parameter scope, Function<?> callback, Object... arguments) {
+                return "config/managed".equals(arguments[0]) ? managedConfig : null;
+            }
+        });
+        return openidm;
+    }
+
+    private static Object property(String name, Object... policies) {
+        return object(field("name", name), field("policies", array(policies)));
+    }
+
+    private static Object policy(String policyId, Object params) {
+        return params != null
+                ? object(field("policyId", policyId), field("params", params))
+                : object(field("policyId", policyId));
+    }
+
+    @Benchmark
+    public JsonValue compiled() throws Exception {
+        return resourcePolicy.validateObject(
+                new PolicyEvaluation(context, null, null, null, RESOURCE_PATH, nextUser()));
+    }
+
+    @Benchmark
+    public JsonValue script() throws ResourceException {
+        ActionRequest request = Requests.newActionRequest(RESOURCE_PATH, "validateObject").setContent(nextUser());
+        return scriptedHandler.handleAction(context, request).getOrThrowUninterruptibly().getJsonContent();
+    }
+
+    private JsonValue nextUser() {
+        return users[next++ % objects];
+    }
+
+    /**
+     * Binds the request and the policy configuration of the resource, as the policy service does for an action.
+     */
+    private static final class PolicyScriptCustomizer implements ScriptCustomizer {
+
+        private final JsonValue resources;
+
+        PolicyScriptCustomizer(JsonValue resource) {
+            this.resources = json(array(resource.getObject()));
+        }
+
+        @Override
+        public void handleAction(Context context, ActionRequest request, Bindings bindings) {
+            bindings.put("context", context);
+            bindings.put("request", request);
+            bindings.put("resources", resources.copy().getObject());
+        }
+
+        @Override
+        public void handleCreate(Context context, CreateRequest request, Bindings bindings)
+                throws ResourceException {
+            throw new NotSupportedException();
+        }
+
+        @Override
+        public void handleRead(Context context, ReadRequest request, Bindings bindings) throws ResourceException {
+            throw new NotSupportedException();
+        }
+
+        @Override
+        public void handleUpdate(Context context, UpdateRequest request, Bindings bindings)
+                throws ResourceException {
+            throw new NotSupportedException();
+        }
+
+        @Override
+        public void handleDelete(Context context, DeleteRequest request, Bindings bindings)
+                throws ResourceException {
+            throw new NotSupportedException();
+        }
+
+        @Override
+        public void handlePatch(Context context, PatchRequest request, Bindings bindings) throws ResourceException {
+            throw new NotSupportedException();
+        }
+
+        @Override
+        public void handleQuery(Context context, QueryRequest request, Bindings bindings) throws ResourceException {
+            throw new NotSupportedException();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.repo.jdbc.impl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openidm.benchmarks.Benchmarks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads the {@code fullobject} column of a generic object from an in-memory H2 database and parses it, either from
+ * the String returned by {@link ResultSet#getString(String)} or from the driver's character stream as
+ * {@link ObjectMappers#readObject(ResultSet, String)} does.
+ * <p>
+ * The objects are managed users padded with attributes up to the given size. Run with {@code -prof gc} to compare
+ * the allocation rates of both ways of parsing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FullObjectParseBenchmark {
+
+    /** Approximate size of the serialized object in kilobytes */
+    @Param({ "1", "64", "1024" })
+    public int kilobytes;
+
+    private Connection connection;
+    private PreparedStatement select;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:openidm-fullobject;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE genericobjects (id BIGINT NOT NULL PRIMARY KEY, fullobject CLOB NULL)");
+        }
+        try (PreparedStatement insert =
+                connection.prepareStatement("INSERT INTO genericobjects (id, fullobject) VALUES (1, ?)")) {
+            insert.setString(1, ObjectMappers.WRITER.writeValueAsString(object(kilobytes * 1024)));
+            insert.executeUpdate();
+        }
+        select = connection.prepareStatement("SELECT fullobject FROM genericobjects WHERE id = 1");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        select.close();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    /**
+     * Creates a managed user with additional attributes, to reach the given serialized size.
+     *
+     * @param size the minimal size of the serialized object in characters
+     * @return the object
+     */
+    private static Map<String, Object> object(int size) throws Exception {
+        Map<String, Object> object = new LinkedHashMap<>(Benchmarks.user(0).asMap());
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            value.append("Synthetic attribute value ");
+        }
+        int length = ObjectMappers.WRITER.writeValueAsString(object).length();
+        for (int i = 0; length < size; i++) {
+            String key = "attribute" + i;
+            object.put(key, value.toString() + i);
+            // "key":"value",
+            length += key.length() + value.length() + String.valueOf(i).length() + 6;
+        }
+        return object;
+    }
+
+    @Benchmark
+    public Map<String, Object> parseString() throws Exception {
+        try (ResultSet rs = select.executeQuery()) {
+            rs.next();
+            return ObjectMappers.OBJECT_READER.readValue(rs.getString("fullobject"));
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> parseStream() throws Exception {
+        try (ResultSet rs = select.executeQuery()) {
+            rs.next();
+            return ObjectMappers.readObject(rs, "fullobject");
+        }
+    }
+}
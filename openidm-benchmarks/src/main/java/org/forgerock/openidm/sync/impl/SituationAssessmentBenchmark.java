@@ -0,0 +1,136 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.sync.impl;
+
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Router.uriTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ConnectionFactory;
+import org.forgerock.json.resource.MemoryBackend;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.Resources;
+import org.forgerock.json.resource.Router;
+import org.forgerock.openidm.benchmarks.Benchmarks;
+import org.forgerock.openidm.util.Scripts;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Assesses the situation of source objects of a mapping, as the source phase of a reconciliation does for every
+ * source object.
+ * <p>
+ * Links are given to the operations as the prefetched links of a reconciliation are, and the targets are read from an
+ * in-memory resource set, so a third of the objects are {@link Situation#CONFIRMED}, a third {@link Situation#MISSING}
+ * and a third {@link Situation#ABSENT}. Lives in the package of the sync operations to reach their package-private
+ * state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SituationAssessmentBenchmark {
+
+    private static final String SOURCE = "system/ldap/account";
+    private static final String TARGET = "managed/user";
+
+    /** Number of source objects assessed in turn */
+    @Param("1000")
+    public int objects;
+
+    private ConnectionFactory connectionFactory;
+    private ObjectMapping mapping;
+    private Context context;
+    private JsonValue[] sources;
+    private Link[] links;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        Scripts.init(Benchmarks.newScriptRegistry());
+
+        Router router = new Router();
+        router.addRoute(uriTemplate(TARGET), new MemoryBackend());
+        connectionFactory = Resources.newInternalConnectionFactory(router);
+        context = new RootContext();
+        ObjectSetContext.push(context);
+
+        mapping = new ObjectMapping(connectionFactory, json(object(
+                field("name", "systemLdapAccounts_managedUser"),
+                field("source", SOURCE),
+                field("target", TARGET),
+                field("onRecon", Benchmarks.javascript("null;").getObject()),
+                field("defaultMapping", Benchmarks.javascript("null;").getObject()),
+                field("postMapping", Benchmarks.javascript("null;").getObject()))));
+
+        sources = new JsonValue[objects];
+        links = new Link[objects];
+        for (int i = 0; i < objects; i++) {
+            String sourceId = "uid=user" + i + ",ou=people,dc=example,dc=com";
+            sources[i] = Benchmarks.user(i).put("_id", sourceId);
+            if (i % 3 == 2) {
+                // not linked
+                continue;
+            }
+            Link link = new Link(mapping);
+            link._id = "link" + i;
+            link.sourceId = sourceId;
+            link.targetId = String.valueOf(i);
+            link.setLinkQualifier(Link.DEFAULT_LINK_QUALIFIER);
+            link.initialized = true;
+            links[i] = link;
+            if (i % 3 == 0) {
+                connectionFactory.getConnection().create(context,
+                        Requests.newCreateRequest(TARGET, link.targetId, Benchmarks.user(i)));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ObjectSetContext.clear();
+    }
+
+    @Benchmark
+    public Situation assessSituation() throws SynchronizationException {
+        int i = next++ % objects;
+        SourceSyncOperation operation = new SourceSyncOperation(mapping, context);
+        operation.sourceObjectAccessor = new LazyObjectAccessor(connectionFactory, SOURCE,
+                sources[i].get("_id").asString(), sources[i]);
+        operation.initializeLink(links[i]);
+        operation.assessSituation();
+        return operation.situation;
+    }
+}
@@ -63,6 +63,9 @@ import org.forgerock.openidm.core.PropertyUtil;
 import org.forgerock.openidm.core.ServerConstants;
 import org.forgerock.openidm.repo.RepositoryService;
 import org.forgerock.openidm.router.IDMConnectionFactory;
+import org.forgerock.openidm.smartevent.EventEntry;
+import org.forgerock.openidm.smartevent.Name;
+import org.forgerock.openidm.smartevent.Publisher;
 import org.forgerock.openidm.util.DateUtil;
 import org.forgerock.services.context.Context;
 import org.forgerock.util.promise.Promise;
@@ -121,6 +124,28 @@ public class ClusterManager implements RequestHandler, ClusterManagementService
      */
     private static final ResourcePath EVENTS_RESOURCE_CONTAINER = new ResourcePath("cluster", "events");
 
+    /**
+     * Resource name of the per-instance counters of events sent, which an instance reads to know whether it has
+     * pending events before querying them
+     */
+    private static final ResourcePath EVENT_COUNTERS_RESOURCE_CONTAINER = new ResourcePath("cluster", "eventCounters");
+
+    /**
+     * Number of check-ins after which pending events are queried even if the event counter did not change, to pick
+     * up events whose sender failed before counting them
+     */
+    private static final int EVENT_SWEEP_CHECKINS = 12;
+
+    /**
+     * Number of attempts at incrementing the event counter of an instance before leaving the event to the sweep
+     */
+    private static final int EVENT_COUNTER_RETRIES = 10;
+
+    /** Event names for monitoring the phases of the check-in loop */
+    static final Name EVENT_CHECK_IN = Name.get("openidm/internal/cluster/checkIn");
+    static final Name EVENT_PROCESS_PENDING_EVENTS = Name.get("openidm/internal/cluster/processPendingEvents");
+    static final Name EVENT_FIND_FAILED_INSTANCES = Name.get("openidm/internal/cluster/findFailedInstances");
+
     /**
      * The instance ID
      */
@@ -164,6 +189,27 @@ public class ClusterManager implements RequestHandler, ClusterManagementService
      */
     private boolean firstCheckin = true;
 
+    /**
+     * The running state this instance last wrote, with its revision, so the next check-in can renew the lease with a
+     * single write; null if the state has to be read again
+     */
+    private InstanceState leaseState = null;
+
+    /**
+     * The event counter of this instance when its pending events were last processed, -1 if never
+     */
+    private long processedEventCounter = -1;
+
+    /**
+     * A flag to indicate if events were left pending by the last processing, to be retried
+     */
+    private boolean eventsPending = false;
+
+    /**
+     * The number of check-ins since pending events were last queried
+     */
+    private int checkinsSinceEventQuery = 0;
+
     /**
      * A flag to indicate if this instance has failed
      */
@@ -391,7 +437,7 @@ public class ClusterManager implements RequestHandler, ClusterManagementService
             ResourcePath resourcePath = STATES_RESOURCE_CONTAINER.child(instanceId);
             UpdateRequest updateRequest = newUpdateRequest(resourcePath.toString(), json(instanceState.toMap()));
             updateRequest.setRevision(instanceState.getRevision());
-            repoService.update(updateRequest);
+            instanceState.setRevision(repoService.update(updateRequest).getRevision());
         }
     }
     
@@ -459,6 +505,13 @@ public class ClusterManager implements RequestHandler, ClusterManagementService
      * @return the InstanceState object, or null if an expected failure (MVCC) was encountered
      */
     private InstanceState checkIn() {
+        if (leaseState != null) {
+            InstanceState renewed = renewLease(leaseState);
+            if (renewed != null) {
+                return renewed;
+            }
+        }
+
         final InstanceState state;
         try {
             logger.debug("Getting instance state for {}", instanceId);
@@ -497,6 +550,7 @@ public class ClusterManager implements RequestHandler, ClusterManagementService
             }
             updateInstanceState(instanceId, state);
             logger.debug("Instance {} state updated successfully", instanceId);
+            leaseState = state;
         } catch (ResourceException e) {
             if (e.getCode() != ResourceException.CONFLICT) {
                 logger.warn("Error updating instance timestamp", e);
@@ -509,11 +563,34 @@ public class ClusterManager implements RequestHandler, ClusterManagementService
         return state;
     }
 
+    /**
+     * Renews the lease of this instance by writing the running state it last wrote with an updated timestamp, without
+     * reading it first.
+     *
+     * @param state the running state last written by this instance
+     * @return the renewed state, or null if the state changed since it was written (e.g. another instance started
+     *         recovering this one) and has to be read again
+     */
+    private InstanceState renewLease(InstanceState state) {
+        leaseState = null;
+        state.updateTimestamp();
+        try {
+            updateInstanceState(instanceId, state);
+            logger.debug("Instance {} lease renewed", instanceId);
+            leaseState = state;
+            return state;
+        } catch (ResourceException e) {
+            logger.debug("Failed to renew the lease of instance {}, reading its state", instanceId, e);
+            return null;
+        }
+    }
+
     /**
      * Performs an instance check-out, setting the state to down if it is currently running.
      */
     private void checkOut() {
         logger.debug("checkOut()");
+        leaseState = null;
         final InstanceState state;
         try {
             logger.debug("Getting instance state for {}", instanceId);
@@ -679,6 +756,8 @@ public class ClusterManager implements RequestHandler, ClusterManagementService
                     CreateRequest createRequest = newCreateRequest(EVENTS_RESOURCE_CONTAINER.toString(), newEvent);
                     ResourceResponse result = repoService.create(createRequest);
                     logger.debug("Creating cluster event {}", result.getId());
+                    // Count the event only once created, so an instance seeing the count can query it
+                    incrementEventCounter(instanceId);
                 }
             }
         } catch (ResourceException e) {
@@ -686,11 +765,65 @@ public class ClusterManager implements RequestHandler, ClusterManagementService
         }
     }
     
+    /**
+     * Increments the counter of events sent to an instance.
+     *
+     * @param instanceId the id of the instance the event was sent to
+     */
+    private void incrementEventCounter(String instanceId) {
+        String resourcePath = EVENT_COUNTERS_RESOURCE_CONTAINER.child(instanceId).toString();
+        for (int attempt = 0; attempt < EVENT_COUNTER_RETRIES; attempt++) {
+            try {
+                JsonValue counter = readFromRepo(resourcePath);
+                if (counter.isNull()) {
+                    repoService.create(newCreateRequest(EVENT_COUNTERS_RESOURCE_CONTAINER.toString(), instanceId,
+                            json(object(field("count", 1L)))));
+                } else {
+                    UpdateRequest updateRequest = newUpdateRequest(resourcePath,
+                            json(object(field("count", counter.get("count").defaultTo(0L).asLong() + 1))));
+                    updateRequest.setRevision(counter.get("_rev").asString());
+                    repoService.update(updateRequest);
+                }
+                return;
+            } catch (ResourceException e) {
+                logger.debug("Failed to increment the event counter of instance {}, retrying", instanceId, e);
+            }
+        }
+        logger.warn("Failed to increment the event counter of instance {}, the event will be processed later",
+                instanceId);
+    }
+
+    /**
+     * Reads the counter of events sent to this instance.
+     *
+     * @return the number of events sent to this instance, or null if it could not be read
+     */
+    private Long readEventCounter() {
+        try {
+            JsonValue counter = readFromRepo(EVENT_COUNTERS_RESOURCE_CONTAINER.child(instanceId).toString());
+            return counter.isNull() ? 0L : counter.get("count").defaultTo(0L).asLong();
+        } catch (ResourceException e) {
+            logger.debug("Failed to read the event counter of instance {}", instanceId, e);
+            return null;
+        }
+    }
+
     /**
      * Finds and processes any pending cluster events for this node.  The event will then 
      * be deleting if the processing was successful.
+     * <p>
+     * Events are only queried if the counter of events sent to this instance moved since they were last processed,
+     * if events were left pending, or every {@value #EVENT_SWEEP_CHECKINS} check-ins.
      */
     private void processPendingEvents() {
+        Long eventCounter = readEventCounter();
+        if (++checkinsSinceEventQuery < EVENT_SWEEP_CHECKINS && !eventsPending
+                && eventCounter != null && eventCounter == processedEventCounter) {
+            logger.debug("No new cluster events");
+            return;
+        }
+        checkinsSinceEventQuery = 0;
+        eventsPending = false;
         try {
             // Find all pending cluster events for this instance
             logger.debug("Querying cluster events");
@@ -729,11 +862,16 @@ public class ClusterManager implements RequestHandler, ClusterManagementService
                         repoService.delete(deleteRequest);
                     } catch (ResourceException e) {
                         logger.error("Error deleting cluster event " + resource.getId(), e);
+                        eventsPending = true;
                     }
+                } else {
+                    eventsPending = true;
                 }
             }
+            processedEventCounter = eventCounter != null ? eventCounter : -1;
         } catch (ResourceException e) {
             logger.error("Error processing cluster events", e);
+            eventsPending = true;
         }
     }
 
@@ -773,7 +911,13 @@ public class ClusterManager implements RequestHandler, ClusterManagementService
                     try {
                         // Check in this instance
                         logger.debug("Instance check-in");
-                        InstanceState state = checkIn();
+                        EventEntry measure = Publisher.start(EVENT_CHECK_IN, instanceId, null);
+                        InstanceState state;
+                        try {
+                            state = checkIn();
+                        } finally {
+                            measure.end();
+                        }
                         if (state == null) {
                             if (!failed) {
                                 logger.debug("This instance has failed");
@@ -804,11 +948,22 @@ public class ClusterManager implements RequestHandler, ClusterManagementService
                         currentState = state;
 
                         // Check for pending cluster events
-                        processPendingEvents();
-                        
+                        measure = Publisher.start(EVENT_PROCESS_PENDING_EVENTS, instanceId, null);
+                        try {
+                            processPendingEvents();
+                        } finally {
+                            measure.end();
+                        }
+
                         // Find failed instances
                         logger.debug("Finding failed instances");
-                        Map<String, InstanceState> failedInstances = findFailedInstances();
+                        Map<String, InstanceState> failedInstances;
+                        measure = Publisher.start(EVENT_FIND_FAILED_INSTANCES, instanceId, null);
+                        try {
+                            failedInstances = findFailedInstances();
+                        } finally {
+                            measure.end();
+                        }
                         logger.debug("{} failed instances found", failedInstances.size());
                         if (failedInstances.size() > 0) {
                             logger.info("Attempting recovery");
@@ -204,6 +204,10 @@ public class InstanceState {
     public String getRevision() {
         return rev;
     }
+
+    public void setRevision(String rev) {
+        this.rev = rev;
+    }
     
     public void clearShutdown() {
         shutdown = 0L;
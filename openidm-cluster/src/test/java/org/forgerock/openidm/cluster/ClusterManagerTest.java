@@ -52,12 +52,13 @@ public class ClusterManagerTest {
                 field("instanceCheckInOffset", "0"),
                 field("enabled", true)));
 
+    private MockRepositoryService mockRepoService = null;
     private RequestHandler clusterHandler = null;
     private ClusterManagementService node = null;
 
     @BeforeMethod
     public void setUp() throws ResourceException, InterruptedException {
-    	final MockRepositoryService mockRepoService = new MockRepositoryService();
+    	mockRepoService = new MockRepositoryService();
         final IDMConnectionFactory idmConnectionFactory =
                 new IDMConnectionFactoryWrapper(Resources.newInternalConnectionFactory(mockRepoService));
 
@@ -110,6 +111,21 @@ public class ClusterManagerTest {
     	Assertions.assertThat(node.isStarted()).isTrue();
     }
 
+    @Test
+    public void testSendEventCountsEventForOtherInstances() throws Exception {
+        mockRepoService.create(Requests.newCreateRequest("cluster/states", "other-node",
+                json(new InstanceState("other-node").toMap())));
+
+        node.sendEvent(new ClusterEvent(ClusterEventType.RECOVERY_INITIATED, "test-node"));
+        node.sendEvent(new ClusterEvent(ClusterEventType.RECOVERY_INITIATED, "test-node"));
+
+        // the other instance reads the counter to know it has pending events, no counter is kept for the sender
+        final ResourceResponse counter = mockRepoService.read(Requests.newReadRequest("cluster/eventCounters/other-node"));
+        Assertions.assertThat(counter.getContent().get("count").asLong()).isEqualTo(2L);
+        Assertions.assertThat(mockRepoService.read(Requests.newReadRequest("cluster/eventCounters")).getContent()
+                .isDefined("test-node")).isFalse();
+    }
+
     @Test(expectedExceptions = IllegalStateException.class)
     public void testNoClusterNodeIdInConfig() throws Exception  {
         final ClusterManager clusterManager = new ClusterManager();
@@ -37,6 +37,7 @@ import org.forgerock.json.resource.QueryRequest;
 import org.forgerock.json.resource.QueryResourceHandler;
 import org.forgerock.json.resource.QueryResponse;
 import org.forgerock.json.resource.ReadRequest;
+import org.forgerock.json.resource.Request;
 import org.forgerock.json.resource.RequestHandler;
 import org.forgerock.json.resource.Requests;
 import org.forgerock.json.resource.ResourceException;
@@ -45,7 +46,9 @@ import org.forgerock.json.resource.Responses;
 import org.forgerock.json.resource.UpdateRequest;
 import org.forgerock.openidm.cluster.ClusterManager;
 import org.forgerock.openidm.cluster.InstanceState;
+import org.forgerock.openidm.repo.BatchResult;
 import org.forgerock.openidm.repo.RepositoryService;
+import org.forgerock.openidm.repo.util.Batches;
 import org.forgerock.util.promise.Promise;
 import org.forgerock.util.promise.Promises;
 
@@ -60,7 +63,8 @@ public class MockRepositoryService implements RepositoryService, RequestHandler
 		this.repoMap = json(object(
                 field("cluster", object(
                     field("states", object()),
-                    field("events", object())
+                    field("events", object()),
+                    field("eventCounters", object())
 				))));
 	}
 
@@ -100,6 +104,12 @@ public class MockRepositoryService implements RepositoryService, RequestHandler
 		return newResourceResponse(request.getResourcePath(), null, content);
 	}
 
+	@Override
+	public List<BatchResult> batch(List<? extends Request> requests)
+			throws ResourceException {
+		return Batches.performSequentially(this, requests);
+	}
+
 	@Override
 	public List<ResourceResponse> query(QueryRequest request)
 			throws ResourceException {
@@ -70,6 +70,7 @@ import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.json.resource.SortKey;
 import org.forgerock.json.resource.UpdateRequest;
 import org.forgerock.openidm.audit.util.ActivityLogger;
+import org.forgerock.openidm.audit.util.QueryResultSummary;
 import org.forgerock.openidm.audit.util.RouterActivityLogger;
 import org.forgerock.openidm.audit.util.Status;
 import org.forgerock.openidm.core.IdentityServer;
@@ -893,36 +894,55 @@ class ManagedObjectSet implements CollectionResourceProvider, ScriptListener, Ma
         try {
             final JsonValue joined = json(object());
 
-            /*
-             * Create set only containing the head of request fields
-             * Allows for a relationship to be fetched when only an expansion is requested.
-             * ie. a field of foo/name will retrieve the foo relationship
-             */
-            final Set<JsonPointer> fieldHeads = new HashSet<>();
-            for (JsonPointer field : requestFields) {
-                // A blank _fields param can yield a single '/' (empty) pointer
-                if (!field.isEmpty()) {
-                    fieldHeads.add(new JsonPointer(field.get(0)));
+            for (Map.Entry<JsonPointer, RelationshipProvider> entry
+                    : requestedRelationshipProviders(requestFields).entrySet()) {
+                final JsonPointer field = entry.getKey();
+                final RelationshipProvider provider = entry.getValue();
+
+                try {
+                    joined.put(field, provider.getRelationshipValueForResource(context,
+                            resourceId).getOrThrow().getObject());
+                } catch (NotFoundException e) {
+                    logger.debug("No {} relationships found for {}", field, resourceId);
+                    joined.put(field, null);
                 }
             }
 
-            for (Map.Entry<JsonPointer, RelationshipProvider> entry : relationshipProviders.entrySet()) {
-                final JsonPointer field = entry.getKey();
-                final RelationshipProvider provider = entry.getValue();
+            return joined;
+        } finally {
+            measure.end();
+        }
+    }
 
-                if (requestFields.contains(SchemaField.FIELD_ALL_RELATIONSHIPS)
-                        || provider.getSchemaField().isReturnedByDefault()
-                        || fieldHeads.contains(field)) { // only check head of request fields (see above)
-                    try {
-                        joined.put(field, provider.getRelationshipValueForResource(context,
-                                resourceId).getOrThrow().getObject());
-                    } catch (NotFoundException e) {
-                        logger.debug("No {} relationships found for {}", field, resourceId);
-                        joined.put(field, null);
-                    }
-                } else {
-                    // relationship was not requested or set to return by default
-                    logger.debug("Relationship field {} skipped", field);
+    /**
+     * Fetch the current relationship(s) of several resources for relationship fields set to be returned by default
+     * or specified in the request fields. Each relationship field is fetched for all resources at once rather than
+     * with a query per resource.
+     *
+     * @param context The current context
+     * @param resourceIds The ids of the resources to fetch relationships of
+     * @param requestFields The fields requested in the initial request
+     * @return A map of each resource id to a {@link JsonValue} map containing all relationship fields and their values
+     * @throws ResourceException if the relationships could not be fetched
+     */
+    private Map<String, JsonValue> fetchRelationshipFields(final Context context, final List<String> resourceIds,
+            final List<JsonPointer> requestFields) throws ResourceException {
+        EventEntry measure = Publisher.start(Name.get("openidm/internal/managed/set/fetchRelationshipFieldsBatch"),
+                resourceIds, context);
+
+        try {
+            final Map<String, JsonValue> joined = new HashMap<>();
+            for (String resourceId : resourceIds) {
+                joined.put(resourceId, json(object()));
+            }
+
+            for (Map.Entry<JsonPointer, RelationshipProvider> entry
+                    : requestedRelationshipProviders(requestFields).entrySet()) {
+                final JsonPointer field = entry.getKey();
+                final Map<String, JsonValue> values =
+                        entry.getValue().getRelationshipValuesForResources(context, resourceIds);
+                for (Map.Entry<String, JsonValue> value : values.entrySet()) {
+                    joined.get(value.getKey()).put(field, value.getValue().getObject());
                 }
             }
 
@@ -932,6 +952,47 @@ class ManagedObjectSet implements CollectionResourceProvider, ScriptListener, Ma
         }
     }
 
+    /**
+     * Selects the relationship fields to return: those set to be returned by default or specified in the request
+     * fields.
+     *
+     * @param requestFields The fields requested in the initial request
+     * @return The providers of the relationship fields to return, by field
+     */
+    private Map<JsonPointer, RelationshipProvider> requestedRelationshipProviders(
+            final List<JsonPointer> requestFields) {
+        final Map<JsonPointer, RelationshipProvider> requested = new LinkedHashMap<>();
+
+        /*
+         * Create set only containing the head of request fields
+         * Allows for a relationship to be fetched when only an expansion is requested.
+         * ie. a field of foo/name will retrieve the foo relationship
+         */
+        final Set<JsonPointer> fieldHeads = new HashSet<>();
+        for (JsonPointer field : requestFields) {
+            // A blank _fields param can yield a single '/' (empty) pointer
+            if (!field.isEmpty()) {
+                fieldHeads.add(new JsonPointer(field.get(0)));
+            }
+        }
+
+        for (Map.Entry<JsonPointer, RelationshipProvider> entry : relationshipProviders.entrySet()) {
+            final JsonPointer field = entry.getKey();
+            final RelationshipProvider provider = entry.getValue();
+
+            if (requestFields.contains(SchemaField.FIELD_ALL_RELATIONSHIPS)
+                    || provider.getSchemaField().isReturnedByDefault()
+                    || fieldHeads.contains(field)) { // only check head of request fields (see above)
+                requested.put(field, provider);
+            } else {
+                // relationship was not requested or set to return by default
+                logger.debug("Relationship field {} skipped", field);
+            }
+        }
+
+        return requested;
+    }
+
     /**
      * This will traverse the jsonValue and validate that all relationship references are valid and available for
      * assignment.
@@ -1254,8 +1315,7 @@ class ManagedObjectSet implements CollectionResourceProvider, ScriptListener, Ma
         // The onRetrieve script should only be run queries that return full managed objects
         final boolean onRetrieve = executeOnRetrieve != null && Boolean.parseBoolean(executeOnRetrieve);
 
-        final List<Map<String,Object>> results = new ArrayList<Map<String,Object>>();
-        final ResourceException[] ex = new ResourceException[]{null};
+        final QueryResultSummary results = new QueryResultSummary();
         try {
             // Create new QueryRequest to send to the repository
             // Does not include any fields specified in the current request
@@ -1272,49 +1332,19 @@ class ManagedObjectSet implements CollectionResourceProvider, ScriptListener, Ma
                 repoRequest.setAdditionalParameter(key, request.getAdditionalParameter(key));
             }
         	
+            final QueryResultHandler resultHandler =
+                    new QueryResultHandler(managedContext, request, handler, onRetrieve, results);
         	QueryResponse queryResponse = connectionFactory.getConnection().query(managedContext, repoRequest,
-            		new QueryResourceHandler() {
-                @Override
-                public boolean handleResource(ResourceResponse resource) {
-                    ResourceResponse resourceResponse = null;
-                    // Check if the onRetrieve script should be run
-                    if (onRetrieve) {
-                        try {
-                            onRetrieve(managedContext, request, resource.getId(), resource);
-                        } catch (ResourceException e) {
-                        	ex[0] = e;
-                            return false;
-                        }
-                    }
-                    if (ServerConstants.QUERY_ALL_IDS.equals(request.getQueryId())) {
-                        // Don't populate relationships if this is a query-all-ids query.
-                        resourceResponse = resource;    
-                    } else {
-                        // Populate the relationship fields
-                        try {
-                            JsonValue relationships = fetchRelationshipFields(managedContext, resource.getId(), request.getFields());
-                            resource.getContent().asMap().putAll(relationships.asMap());
-                            resourceResponse = prepareResponse(managedContext, resource, request.getFields());
-                        } catch (ResourceException e) {
-                            ex[0] = e;
-                            return false;
-                        } catch (Exception e) {
-                            ex[0] = new InternalServerErrorException(e.getMessage(), e);
-                            return false;
-                        }
-                    }
-                    results.add(resourceResponse.getContent().asMap());
-                    return handler.handleResource(prepareResponse(managedContext, resourceResponse, request.getFields()));
-                }
-            });
-        	
-        	if(ex[0] != null) {
-            	return ex[0].asPromise();
+                    resultHandler);
+            resultHandler.flush();
+
+        	if (resultHandler.getException() != null) {
+            	return resultHandler.getException().asPromise();
         	}
         	
             activityLogger.log(managedContext, request, 
             		"query: " + request.getQueryId() + ", parameters: " + request.getAdditionalParameters(), 
-            		request.getQueryId(), null, new JsonValue(results), Status.SUCCESS);
+            		request.getQueryId(), null, results.toJsonValue(), Status.SUCCESS);
             
         	return queryResponse.asPromise();
 
@@ -1325,6 +1355,107 @@ class ManagedObjectSet implements CollectionResourceProvider, ScriptListener, Ma
         }
     }
 
+    /**
+     * Handles the managed objects returned by a repo query, populating their relationship fields before passing them
+     * on to the handler of the managed object query.
+     * <p>
+     * If relationship fields are to be returned, the objects are buffered and the relationships of each batch of up
+     * to {@link RelationshipProvider#MAX_RESOURCES_PER_QUERY} objects are fetched with one query per relationship
+     * field, rather than with one query per object and field. The objects are passed on in the order of the repo
+     * query.
+     */
+    private final class QueryResultHandler implements QueryResourceHandler {
+        private final Context managedContext;
+        private final QueryRequest request;
+        private final QueryResourceHandler handler;
+        private final boolean onRetrieve;
+        private final boolean populateRelationships;
+        private final QueryResultSummary results;
+        private final List<ResourceResponse> batch = new ArrayList<>();
+        private ResourceException exception;
+        private boolean stopped;
+
+        QueryResultHandler(Context managedContext, QueryRequest request, QueryResourceHandler handler,
+                boolean onRetrieve, QueryResultSummary results) {
+            this.managedContext = managedContext;
+            this.request = request;
+            this.handler = handler;
+            this.onRetrieve = onRetrieve;
+            this.results = results;
+            // Don't populate relationships if this is a query-all-ids query.
+            this.populateRelationships = !ServerConstants.QUERY_ALL_IDS.equals(request.getQueryId())
+                    && !requestedRelationshipProviders(request.getFields()).isEmpty();
+        }
+
+        @Override
+        public boolean handleResource(ResourceResponse resource) {
+            // Check if the onRetrieve script should be run
+            if (onRetrieve) {
+                try {
+                    onRetrieve(managedContext, request, resource.getId(), resource);
+                } catch (ResourceException e) {
+                    exception = e;
+                    return false;
+                }
+            }
+            if (!populateRelationships) {
+                return handle(ServerConstants.QUERY_ALL_IDS.equals(request.getQueryId())
+                        ? resource
+                        : prepareResponse(managedContext, resource, request.getFields()));
+            }
+            batch.add(resource);
+            return batch.size() < RelationshipProvider.MAX_RESOURCES_PER_QUERY || flush();
+        }
+
+        /**
+         * Populates the relationship fields of the buffered objects and passes them on to the query handler.
+         *
+         * @return true if the query handler accepts more objects
+         */
+        boolean flush() {
+            if (batch.isEmpty() || stopped || exception != null) {
+                batch.clear();
+                return !stopped && exception == null;
+            }
+            try {
+                final List<String> resourceIds = new ArrayList<>(batch.size());
+                for (ResourceResponse resource : batch) {
+                    resourceIds.add(resource.getId());
+                }
+                final Map<String, JsonValue> relationships =
+                        fetchRelationshipFields(managedContext, resourceIds, request.getFields());
+                for (ResourceResponse resource : batch) {
+                    resource.getContent().asMap().putAll(relationships.get(resource.getId()).asMap());
+                    if (!handle(prepareResponse(managedContext, resource, request.getFields()))) {
+                        break;
+                    }
+                }
+            } catch (ResourceException e) {
+                exception = e;
+            } catch (Exception e) {
+                exception = new InternalServerErrorException(e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+            return !stopped && exception == null;
+        }
+
+        private boolean handle(ResourceResponse resourceResponse) {
+            results.add(resourceResponse.getId(), resourceResponse.getContent().asMap());
+            if (!handler.handleResource(prepareResponse(managedContext, resourceResponse, request.getFields()))) {
+                stopped = true;
+            }
+            return !stopped;
+        }
+
+        /**
+         * @return the exception that ended the query, or null if none occurred
+         */
+        ResourceException getException() {
+            return exception;
+        }
+    }
+
     @Override
     public Promise<ActionResponse, ResourceException> actionInstance(Context context, String resourceId,
     		ActionRequest request) {
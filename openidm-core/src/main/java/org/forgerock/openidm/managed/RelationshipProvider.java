@@ -28,10 +28,12 @@ import static org.forgerock.util.promise.Promises.newResultPromise;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.forgerock.http.routing.UriRouterContext;
@@ -47,6 +49,8 @@ import org.forgerock.json.resource.DeleteRequest;
 import org.forgerock.json.resource.InternalServerErrorException;
 import org.forgerock.json.resource.PatchRequest;
 import org.forgerock.json.resource.PreconditionFailedException;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
 import org.forgerock.json.resource.ReadRequest;
 import org.forgerock.json.resource.Request;
 import org.forgerock.json.resource.RequestHandler;
@@ -58,12 +62,16 @@ import org.forgerock.json.resource.UpdateRequest;
 import org.forgerock.openidm.audit.util.ActivityLogger;
 import org.forgerock.openidm.audit.util.Status;
 import org.forgerock.openidm.patch.JsonValuePatch;
+import org.forgerock.openidm.smartevent.EventEntry;
+import org.forgerock.openidm.smartevent.Name;
+import org.forgerock.openidm.smartevent.Publisher;
 import org.forgerock.services.context.Context;
 import org.forgerock.util.AsyncFunction;
 import org.forgerock.util.Function;
 import org.forgerock.util.promise.NeverThrowsException;
 import org.forgerock.util.promise.Promise;
 import org.forgerock.util.promise.ResultHandler;
+import org.forgerock.util.query.QueryFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -84,6 +92,16 @@ public abstract class RelationshipProvider {
      */
     protected final ManagedObjectSetService managedObjectSetService;
     
+    /** Maximum number of resources whose relationships are fetched with a single repo query */
+    static final int MAX_RESOURCES_PER_QUERY = 100;
+
+    /**
+     * Maximum number of resources whose relationships are fetched with a single query filter, when the repo has no
+     * {@link #RELATIONSHIPS_QUERY_ID} query. A generic table joins its properties table once per filter term, and a
+     * reverse relationship takes two terms per resource, so this keeps the query under the 61 joins MySQL allows.
+     */
+    static final int MAX_RESOURCES_PER_FILTER = 25;
+
     /** Used for accessing the repo */
     protected final ConnectionFactory connectionFactory;
 
@@ -102,9 +120,15 @@ public abstract class RelationshipProvider {
 
     /** An optimized relationship query ID */
     protected static final String RELATIONSHIP_QUERY_ID = "find-relationships-for-resource";
+
+    /** An optimized query ID for the relationships of several resources */
+    protected static final String RELATIONSHIPS_QUERY_ID = "find-relationships-for-resources";
     
     /** A query field representing the full path of the managed object instance of this relationship field  */
     protected static final String QUERY_FIELD_RESOURCE_PATH = "fullResourceId";
+
+    /** A query field representing the comma separated full paths of several managed object instances */
+    protected static final String QUERY_FIELD_RESOURCE_PATHS = "fullResourceIds";
     
     /** A query field representing the field name of this relationship field  */
     protected static final String QUERY_FIELD_FIELD_NAME = "resourceFieldName";
@@ -144,6 +168,9 @@ public abstract class RelationshipProvider {
      */
     protected final RelationshipValidator relationshipValidator;
 
+    /** Whether the repo is configured with the {@link #RELATIONSHIPS_QUERY_ID} query, until a query shows otherwise */
+    private volatile boolean relationshipsQueryConfigured = true;
+
     /**
      * Returns a Function to format a resource from the repository to that expected by the provider consumer. This is 
      * simply a wrapper of {@link #formatResponseNoException} with a {@link ResourceException} in the signature to
@@ -201,43 +228,54 @@ public abstract class RelationshipProvider {
                 
                 @Override
                 public ResourceResponse apply(final ResourceResponse raw) {
-                    final JsonValue rawContent = raw.getContent();
-                    final JsonValue formatted = json(object());
-                    final Map<String, Object> properties = new LinkedHashMap<>();
-                    final Map<String, Object> repoProperties = rawContent.get(REPO_FIELD_PROPERTIES).asMap();
-                    final String ref;
-
-                    // set the field reference
-                    if (schemaField.isReverseRelationship()
-                            && !rawContent.get(REPO_FIELD_FIRST_ID).asString().equals(resourceFullPath)) {
-                        ref = rawContent.get(REPO_FIELD_FIRST_ID).asString();
-                    } else {
-                        ref = rawContent.get(REPO_FIELD_SECOND_ID).asString();
-                    }
-
-                    if (repoProperties != null) {
-                        properties.putAll(repoProperties);
-                    }
-
-                    properties.put(FIELD_CONTENT_ID, raw.getId());
-                    properties.put(FIELD_CONTENT_REVISION, raw.getRevision());
-
-                    formatted.put(SchemaField.FIELD_REFERENCE, ref);
-                    formatted.put(SchemaField.FIELD_PROPERTIES, properties);
-
-                    // If has error, append error flag and message.
-                    if (rawContent.get(REFERENCE_ERROR).defaultTo(false).asBoolean()) {
-                        formatted.put(REFERENCE_ERROR, true);
-                        formatted.put(REFERENCE_ERROR_MESSAGE,
-                                rawContent.get(REFERENCE_ERROR_MESSAGE).defaultTo("").asString());
-                    }
-
-                    // Return the resource without _id or _rev
-                    return newResourceResponse(null, null, formatted);
+                    return formatRelationship(raw, resourceFullPath);
                 }
             };
     }
 
+    /**
+     * Formats a relationship as stored in the repo into the relationship representation of the given resource.
+     *
+     * @param raw the relationship read from the repo
+     * @param resourceFullPath the full path of the resource the relationship is formatted for, eg. managed/user/bjensen
+     * @return the formatted relationship, without _id or _rev
+     */
+    protected ResourceResponse formatRelationship(final ResourceResponse raw, final String resourceFullPath) {
+        final JsonValue rawContent = raw.getContent();
+        final JsonValue formatted = json(object());
+        final Map<String, Object> properties = new LinkedHashMap<>();
+        final Map<String, Object> repoProperties = rawContent.get(REPO_FIELD_PROPERTIES).asMap();
+        final String ref;
+
+        // set the field reference
+        if (schemaField.isReverseRelationship()
+                && !rawContent.get(REPO_FIELD_FIRST_ID).asString().equals(resourceFullPath)) {
+            ref = rawContent.get(REPO_FIELD_FIRST_ID).asString();
+        } else {
+            ref = rawContent.get(REPO_FIELD_SECOND_ID).asString();
+        }
+
+        if (repoProperties != null) {
+            properties.putAll(repoProperties);
+        }
+
+        properties.put(FIELD_CONTENT_ID, raw.getId());
+        properties.put(FIELD_CONTENT_REVISION, raw.getRevision());
+
+        formatted.put(SchemaField.FIELD_REFERENCE, ref);
+        formatted.put(SchemaField.FIELD_PROPERTIES, properties);
+
+        // If has error, append error flag and message.
+        if (rawContent.get(REFERENCE_ERROR).defaultTo(false).asBoolean()) {
+            formatted.put(REFERENCE_ERROR, true);
+            formatted.put(REFERENCE_ERROR_MESSAGE,
+                    rawContent.get(REFERENCE_ERROR_MESSAGE).defaultTo("").asString());
+        }
+
+        // Return the resource without _id or _rev
+        return newResourceResponse(null, null, formatted);
+    }
+
     /**
      * On a create of a relationship, this will sync the referenced object after the update is completed.
      */
@@ -335,6 +373,158 @@ public abstract class RelationshipProvider {
     public abstract Promise<JsonValue, ResourceException> getRelationshipValueForResource(Context context, 
             String resourceId);
 
+    /**
+     * Get the full relationship representations for this provider of several resources at once. The relationships
+     * of up to {@link #MAX_RESOURCES_PER_QUERY} resources are fetched with a single {@link #RELATIONSHIPS_QUERY_ID}
+     * repo query and joined to their resources in memory, rather than issuing one query per resource. If the repo
+     * does not define that query, or a resource path cannot be passed in its list parameter, the relationships are
+     * fetched with query filters of up to {@link #MAX_RESOURCES_PER_FILTER} resources instead.
+     *
+     * @param context Context of this request
+     * @param resourceIds Ids of the resources to fetch relationships on
+     *
+     * @return the full representation of the relationship of each supplied resourceId, as returned by
+     *         {@link #getRelationshipValueForResource(Context, String)}, or a null value if a singleton relationship
+     *         is not set
+     * @throws ResourceException if an error occurred querying the relationships
+     */
+    public Map<String, JsonValue> getRelationshipValuesForResources(final Context context,
+            final Collection<String> resourceIds) throws ResourceException {
+        EventEntry measure = Publisher.start(
+                Name.get("openidm/internal/relationship/getRelationshipValuesForResources"), null, context);
+
+        try {
+            final Map<String, List<ResourceResponse>> relationshipsByPath = new LinkedHashMap<>();
+            for (String resourceId : resourceIds) {
+                relationshipsByPath.put(resourceContainer.child(resourceId).toString(),
+                        new ArrayList<ResourceResponse>());
+            }
+
+            final List<String> listedPaths = new ArrayList<>();
+            final List<String> filteredPaths = new ArrayList<>();
+            for (String resourcePath : relationshipsByPath.keySet()) {
+                // the list parameter of a query is split on commas and unquoted
+                if (resourcePath.indexOf(',') < 0 && resourcePath.indexOf('\'') < 0) {
+                    listedPaths.add(resourcePath);
+                } else {
+                    filteredPaths.add(resourcePath);
+                }
+            }
+
+            final QueryResourceHandler handler = relationshipsHandler(relationshipsByPath);
+            for (int from = 0; from < listedPaths.size(); from += MAX_RESOURCES_PER_QUERY) {
+                final List<String> batch = listedPaths.subList(from,
+                        Math.min(from + MAX_RESOURCES_PER_QUERY, listedPaths.size()));
+                if (!relationshipsQueryConfigured) {
+                    filteredPaths.addAll(batch);
+                    continue;
+                }
+                final QueryRequest queryRequest = Requests.newQueryRequest(REPO_RESOURCE_PATH)
+                        .setQueryId(RELATIONSHIPS_QUERY_ID)
+                        .setAdditionalParameter(QUERY_FIELD_RESOURCE_PATHS, StringUtils.join(batch, ","))
+                        .setAdditionalParameter(QUERY_FIELD_FIELD_NAME, schemaField.getName());
+                try {
+                    getConnection().query(context, queryRequest, handler);
+                } catch (BadRequestException e) {
+                    logger.warn("Repo query {} failed, fetching relationships with query filters instead: {}",
+                            RELATIONSHIPS_QUERY_ID, e.getMessage());
+                    relationshipsQueryConfigured = false;
+                    filteredPaths.addAll(batch);
+                }
+            }
+
+            for (int from = 0; from < filteredPaths.size(); from += MAX_RESOURCES_PER_FILTER) {
+                final List<String> batch = filteredPaths.subList(from,
+                        Math.min(from + MAX_RESOURCES_PER_FILTER, filteredPaths.size()));
+                final QueryRequest queryRequest = Requests.newQueryRequest(REPO_RESOURCE_PATH)
+                        .setQueryFilter(relationshipsFilter(batch));
+                getConnection().query(context, queryRequest, handler);
+            }
+
+            final Map<String, JsonValue> values = new LinkedHashMap<>();
+            for (String resourceId : resourceIds) {
+                final String resourceFullPath = resourceContainer.child(resourceId).toString();
+                values.put(resourceId,
+                        toRelationshipValue(resourceFullPath, relationshipsByPath.get(resourceFullPath)));
+            }
+            return values;
+        } finally {
+            measure.end();
+        }
+    }
+
+    /**
+     * Returns a handler adding the queried relationships of this provider's field to the lists of their resources.
+     *
+     * @param relationshipsByPath the relationships of the queried resources, by full resource path
+     * @return the query handler
+     */
+    private QueryResourceHandler relationshipsHandler(final Map<String, List<ResourceResponse>> relationshipsByPath) {
+        final Set<String> handled = new HashSet<>();
+        return new QueryResourceHandler() {
+            @Override
+            public boolean handleResource(ResourceResponse relationship) {
+                // The query returns a reverse relationship between two queried resources once for each of them
+                if (relationship.getId() != null && !handled.add(relationship.getId())) {
+                    return true;
+                }
+                final JsonValue content = relationship.getContent();
+                // A reverse relationship between two queried resources belongs to both of them
+                if (schemaField.getName().equals(content.get(REPO_FIELD_FIRST_PROPERTY_NAME).asString())) {
+                    addRelationship(relationshipsByPath, content.get(REPO_FIELD_FIRST_ID).asString(), relationship);
+                }
+                if (schemaField.isReverseRelationship()
+                        && schemaField.getName().equals(content.get(REPO_FIELD_SECOND_PROPERTY_NAME).asString())) {
+                    addRelationship(relationshipsByPath, content.get(REPO_FIELD_SECOND_ID).asString(), relationship);
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Builds the query filter matching the relationships of this provider's field for any of the given resources.
+     *
+     * @param resourcePaths the full paths of the resources
+     * @return the query filter
+     */
+    private QueryFilter<JsonPointer> relationshipsFilter(final List<String> resourcePaths) {
+        final List<QueryFilter<JsonPointer>> firstIds = new ArrayList<>(resourcePaths.size());
+        final List<QueryFilter<JsonPointer>> secondIds = new ArrayList<>(resourcePaths.size());
+        for (String resourcePath : resourcePaths) {
+            firstIds.add(QueryFilter.equalTo(new JsonPointer(REPO_FIELD_FIRST_ID), resourcePath));
+            secondIds.add(QueryFilter.equalTo(new JsonPointer(REPO_FIELD_SECOND_ID), resourcePath));
+        }
+        final QueryFilter<JsonPointer> firstFilter = QueryFilter.and(
+                QueryFilter.equalTo(new JsonPointer(REPO_FIELD_FIRST_PROPERTY_NAME), schemaField.getName()),
+                QueryFilter.or(firstIds));
+        if (!schemaField.isReverseRelationship()) {
+            // A direct relationship is only stored with the managed object as firstId
+            return firstFilter;
+        }
+        return QueryFilter.or(firstFilter, QueryFilter.and(
+                QueryFilter.equalTo(new JsonPointer(REPO_FIELD_SECOND_PROPERTY_NAME), schemaField.getName()),
+                QueryFilter.or(secondIds)));
+    }
+
+    private static void addRelationship(final Map<String, List<ResourceResponse>> relationshipsByPath,
+            final String resourceFullPath, final ResourceResponse relationship) {
+        final List<ResourceResponse> relationships = relationshipsByPath.get(resourceFullPath);
+        if (relationships != null) {
+            relationships.add(relationship);
+        }
+    }
+
+    /**
+     * Joins the relationships of a resource, as read from the repo, into the value of the relationship field.
+     *
+     * @param resourceFullPath the full path of the resource, eg. managed/user/bjensen
+     * @param relationships the relationships of the resource for this provider's field, possibly empty
+     * @return the value of the relationship field, as returned by
+     *         {@link #getRelationshipValueForResource(Context, String)}
+     */
+    protected abstract JsonValue toRelationshipValue(String resourceFullPath, List<ResourceResponse> relationships);
+
     /**
      * Set the supplied {@link JsonValue} as the current state of this relationship. This will support updating any 
      * existing relationship (_id is present) and remove any relationship not present in the value from the repository.
@@ -108,6 +108,20 @@ class SingletonRelationshipProvider extends RelationshipProvider implements Sing
         }
     }
     
+    /** {@inheritDoc} */
+    @Override
+    protected JsonValue toRelationshipValue(final String resourceFullPath,
+            final List<ResourceResponse> relationships) {
+        if (relationships.isEmpty()) {
+            return json(null);
+        } else if (relationships.size() == 1) {
+            return formatRelationship(relationships.get(0), resourceFullPath).getContent();
+        } else {
+            return formatRelationship(markMultipleReferences(resourceFullPath, relationships), resourceFullPath)
+                    .getContent();
+        }
+    }
+
     /**
      * Queries relationships, returning the relationship associated with this providers resource path and the specified 
      * relationship field.
@@ -134,22 +148,7 @@ class SingletonRelationshipProvider extends RelationshipProvider implements Sing
             } else if (relationships.size() == 1) {
                 return newResultPromise(formatResponse(context, queryRequest).apply(relationships.get(0)));
             } else {
-                // This is a singleton relationship with more than 1 reference - this is an error.
-                // Collect all the erroneous references and add them to the error message.
-                List<String> errorReferences = new ArrayList<>();
-                for (ResourceResponse relationship : relationships) {
-                    JsonValue content = relationship.getContent();
-                    if (schemaField.isReverseRelationship() &&
-                            content.get(REPO_FIELD_FIRST_ID).defaultTo("").asString().equals(resourceFullPath)) {
-                        errorReferences.add(content.get(REPO_FIELD_SECOND_ID).asString());
-                    } else {
-                        errorReferences.add(content.get(REPO_FIELD_FIRST_ID).asString());
-                    }
-                }
-                ResourceResponse relationship = relationships.get(0);
-                relationship.getContent().add(RelationshipUtil.REFERENCE_ERROR, true);
-                relationship.getContent().add(RelationshipUtil.REFERENCE_ERROR_MESSAGE,
-                        "Multiple references found for singleton relationship " + errorReferences);
+                ResourceResponse relationship = markMultipleReferences(resourceFullPath, relationships);
                 return newResultPromise(formatResponse(context, queryRequest).apply(relationship));
             }
         } catch (ResourceException e) {
@@ -157,6 +156,35 @@ class SingletonRelationshipProvider extends RelationshipProvider implements Sing
         }
     }
 
+    /**
+     * Flags the first of several relationships found for this singleton relationship as an error, listing all the
+     * erroneous references in the error message.
+     *
+     * @param resourceFullPath the full path of the resource the relationships were found for
+     * @param relationships the relationships found, as read from the repo
+     * @return the first relationship, with the error flag and message added
+     */
+    private ResourceResponse markMultipleReferences(final String resourceFullPath,
+            final List<ResourceResponse> relationships) {
+        // This is a singleton relationship with more than 1 reference - this is an error.
+        // Collect all the erroneous references and add them to the error message.
+        List<String> errorReferences = new ArrayList<>();
+        for (ResourceResponse relationship : relationships) {
+            JsonValue content = relationship.getContent();
+            if (schemaField.isReverseRelationship() &&
+                    content.get(REPO_FIELD_FIRST_ID).defaultTo("").asString().equals(resourceFullPath)) {
+                errorReferences.add(content.get(REPO_FIELD_SECOND_ID).asString());
+            } else {
+                errorReferences.add(content.get(REPO_FIELD_FIRST_ID).asString());
+            }
+        }
+        ResourceResponse relationship = relationships.get(0);
+        relationship.getContent().add(RelationshipUtil.REFERENCE_ERROR, true);
+        relationship.getContent().add(RelationshipUtil.REFERENCE_ERROR_MESSAGE,
+                "Multiple references found for singleton relationship " + errorReferences);
+        return relationship;
+    }
+
     @Override
     public Promise<JsonValue, ResourceException> setRelationshipValueForResource(final boolean clearExisting,
             final Context context, final String resourceId, final JsonValue value) {
@@ -0,0 +1,233 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.sync.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forgerock.openidm.audit.util.Status;
+
+/**
+ * Limits the number of recon tasks in flight, adapting the limit to the observed task latency and failure rate.
+ * <p>
+ * The limit follows an additive-increase/multiplicative-decrease scheme evaluated once per window of
+ * {@code limit} completed tasks: if the window saw too many failures, or the recent task latency rose above
+ * {@code latencyTolerance} times its long term average (or above an absolute maximum, if configured), the limit is
+ * multiplied by the backoff ratio; otherwise it grows by one, up to the configured maximum. Since tasks beyond the
+ * number of task threads only queue up, the effective concurrency towards the source and target systems is the
+ * smaller of the limit and the number of threads.
+ * <p>
+ * One instance is shared by all phases and partitions of a reconciliation run. Permits are taken by the feeding
+ * threads and returned by the task threads once a task completes, so a feeder never waits on its own tasks.
+ */
+class AdaptiveFeedLimit {
+
+    /** Default ratio the limit is multiplied with on congestion */
+    static final double DEFAULT_BACKOFF_RATIO = 0.75;
+
+    /** Default factor by which the recent latency may exceed the long term latency before backing off */
+    static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+    /** Default ratio of failed tasks in a window tolerated before backing off */
+    static final double DEFAULT_MAX_ERROR_RATE = 0.2;
+
+    /** Weight of a new sample in the recent latency average */
+    private static final double RECENT_LATENCY_WEIGHT = 0.2;
+
+    /** Weight of a new sample in the long term latency average */
+    private static final double BASELINE_LATENCY_WEIGHT = 0.01;
+
+    private final AdjustableSemaphore permits;
+    /** The permits held, counted apart from the semaphore whose available permits turn negative on a decrease */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final int minLimit;
+    private final int maxLimit;
+    private final int taskThreads;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final long maxLatencyNanos;
+    private final double maxErrorRate;
+    private final ReconciliationStatistic stats;
+
+    // Guarded by this
+    private int limit;
+    private int windowSamples;
+    private int windowTaskFailures;
+    private int windowStartFailures;
+    private double recentLatency;
+    private double baselineLatency;
+    private int increases;
+    private int decreases;
+
+    /**
+     * Creates the limit.
+     *
+     * @param taskThreads the number of threads executing the tasks
+     * @param maxLimit the maximum number of tasks in flight
+     * @param latencyTolerance the factor by which the recent latency may exceed the long term latency
+     * @param maxLatencyMillis the maximum recent latency in milliseconds, or 0 for none
+     * @param maxErrorRate the ratio of failed tasks in a window tolerated before backing off
+     * @param stats the statistics of the reconciliation run, counting the failed reconciliations of single objects
+     */
+    AdaptiveFeedLimit(int taskThreads, int maxLimit, double latencyTolerance, long maxLatencyMillis,
+            double maxErrorRate, ReconciliationStatistic stats) {
+        this.taskThreads = taskThreads;
+        this.minLimit = 1;
+        this.maxLimit = Math.max(minLimit, maxLimit);
+        this.backoffRatio = DEFAULT_BACKOFF_RATIO;
+        this.latencyTolerance = latencyTolerance;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        this.maxErrorRate = maxErrorRate;
+        this.stats = stats;
+        // start with a queue as deep as the thread pool, to keep the threads busy between completion and refill
+        this.limit = Math.max(minLimit, Math.min(this.maxLimit, 2 * taskThreads));
+        this.permits = new AdjustableSemaphore(limit);
+        this.windowStartFailures = stats.getStatusProcessed(Status.FAILURE);
+    }
+
+    /**
+     * Waits for the permit to submit a task.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the permit was acquired, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        if (permits.tryAcquire(timeout, unit)) {
+            inFlight.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Wraps a task to return its permit and record its latency and outcome on completion.
+     *
+     * @param task the task to submit after acquiring a permit
+     * @return the wrapped task
+     */
+    <T> Callable<T> limit(final Callable<T> task) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                final long start = System.nanoTime();
+                boolean failed = true;
+                try {
+                    T result = task.call();
+                    failed = false;
+                    return result;
+                } finally {
+                    onSample(System.nanoTime() - start, failed);
+                    release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the permit of a task that was not submitted after all.
+     */
+    void release() {
+        inFlight.decrementAndGet();
+        permits.release();
+    }
+
+    synchronized void onSample(long latencyNanos, boolean failed) {
+        if (windowSamples == 0 && baselineLatency == 0) {
+            recentLatency = latencyNanos;
+            baselineLatency = latencyNanos;
+        } else {
+            recentLatency += RECENT_LATENCY_WEIGHT * (latencyNanos - recentLatency);
+            baselineLatency += BASELINE_LATENCY_WEIGHT * (latencyNanos - baselineLatency);
+        }
+        if (failed) {
+            windowTaskFailures++;
+        }
+        if (++windowSamples >= limit) {
+            endWindow();
+        }
+    }
+
+    /**
+     * Adjusts the limit at the end of a window of samples.
+     */
+    private void endWindow() {
+        int failures = stats.getStatusProcessed(Status.FAILURE);
+        int windowFailures = windowTaskFailures + failures - windowStartFailures;
+        boolean congested = recentLatency > latencyTolerance * baselineLatency
+                || (maxLatencyNanos > 0 && recentLatency > maxLatencyNanos);
+        if (congested || windowFailures > maxErrorRate * windowSamples) {
+            int newLimit = Math.max(minLimit, (int) (limit * backoffRatio));
+            if (newLimit < limit) {
+                permits.reducePermits(limit - newLimit);
+                limit = newLimit;
+                decreases++;
+            }
+        } else if (limit < maxLimit) {
+            permits.release();
+            limit++;
+            increases++;
+        }
+        windowSamples = 0;
+        windowTaskFailures = 0;
+        windowStartFailures = failures;
+    }
+
+    /**
+     * @return the current maximum number of tasks in flight
+     */
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the current state of the limit, for the recon progress
+     */
+    synchronized Map<String, Object> asMap() {
+        Map<String, Object> state = new LinkedHashMap<String, Object>();
+        state.put("limit", limit);
+        state.put("concurrency", Math.min(limit, taskThreads));
+        state.put("inFlight", inFlight.get());
+        state.put("minLimit", minLimit);
+        state.put("maxLimit", maxLimit);
+        state.put("recentLatencyMillis", TimeUnit.NANOSECONDS.toMillis((long) recentLatency));
+        state.put("baselineLatencyMillis", TimeUnit.NANOSECONDS.toMillis((long) baselineLatency));
+        state.put("increases", increases);
+        state.put("decreases", decreases);
+        return state;
+    }
+
+    /**
+     * Exposes {@link Semaphore#reducePermits(int)} to shrink the limit without waiting for tasks to complete.
+     */
+    private static final class AdjustableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        AdjustableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.sync.impl;
+
+import static org.forgerock.json.JsonValue.json;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.openidm.sync.impl.ReconciliationStatistic.DurationMetric;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.query.QueryFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Correlates the source objects of a reconciliation on the {@code correlationKey} of the mapping in batches, rather
+ * than with one target query per source object.
+ * <p>
+ * As the source entries are fed to the source phase, the keys of a batch of {@code correlationBatchSize} unlinked
+ * source objects are gathered and resolved with target queries matching any of them, each matching at most
+ * {@value Correlation.Key#MAX_VALUES_PER_FILTER} values to stay under the join limit of the repositories. Keys that are
+ * not case sensitive are matched on their normalized values on both sides, see {@link Correlation.Key#queryValues}.
+ * If the target phase already loaded the full target objects, the keys are instead looked up in an in-memory index of
+ * those objects and no query is made at all. Each {@link SourceSyncOperation} then {@link #take takes} its hits
+ * instead of correlating on its own.
+ * <p>
+ * The hits reflect the target objects as they were when the batch was queried or the targets were loaded, so a target
+ * created by the reconciliation itself is not correlated to the source objects of the same batch. Source objects whose
+ * values were not pre-queried, or whose batch query failed, are correlated one at a time as before.
+ */
+class BulkCorrelation {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkCorrelation.class);
+
+    /**
+     * The default number of source objects correlated together, so that the single values of their keys are matched
+     * with one query
+     */
+    static final int DEFAULT_BATCH_SIZE = Correlation.Key.MAX_VALUES_PER_FILTER;
+
+    private final ObjectMapping objectMapping;
+    private final ReconciliationContext reconContext;
+    private final Context context;
+    private final LinkIndex allLinks;
+    private final Map<String, Correlation.Key> keys;
+    private final int batchSize;
+    private final boolean correlateEmptyTargetSet;
+
+    /** The hits of the prefetched source objects, by link qualifier and source id */
+    private final ConcurrentMap<String, JsonValue> hits = new ConcurrentHashMap<>();
+
+    /** The target objects loaded by the target phase by link qualifier and key value, if they were loaded */
+    private volatile Map<String, Map<String, List<Object>>> targetIndex;
+
+    /**
+     * Creates the bulk correlation of a reconciliation run.
+     *
+     * @param objectMapping the mapping being reconciled
+     * @param keys the correlation keys of the mapping by link qualifier
+     * @param reconContext the context of the reconciliation run
+     * @param context the context to query the targets in
+     * @param allLinks the prefetched links, or null if not prefetched
+     */
+    BulkCorrelation(ObjectMapping objectMapping, Map<String, Correlation.Key> keys,
+            ReconciliationContext reconContext, Context context, LinkIndex allLinks) {
+        this.objectMapping = objectMapping;
+        this.keys = keys;
+        this.reconContext = reconContext;
+        this.context = context;
+        this.allLinks = allLinks;
+        JsonValue config = objectMapping.getConfig();
+        this.batchSize = Math.max(1, config.get("correlationBatchSize").defaultTo(DEFAULT_BATCH_SIZE).asInteger());
+        this.correlateEmptyTargetSet = config.get("correlateEmptyTargetSet").defaultTo(false).asBoolean();
+    }
+
+    /**
+     * Returns the source entries of a source phase, correlating each batch of them before it is handed out.
+     *
+     * @param entries the source entries
+     * @return the same entries
+     */
+    Iterator<ResultEntry> prefetching(final Iterator<ResultEntry> entries) {
+        return new Iterator<ResultEntry>() {
+            private final Deque<ResultEntry> batch = new ArrayDeque<>();
+
+            @Override
+            public boolean hasNext() {
+                return !batch.isEmpty() || entries.hasNext();
+            }
+
+            @Override
+            public ResultEntry next() {
+                if (batch.isEmpty()) {
+                    while (batch.size() < batchSize && entries.hasNext()) {
+                        batch.add(entries.next());
+                    }
+                    if (batch.isEmpty()) {
+                        throw new NoSuchElementException();
+                    }
+                    correlate(batch);
+                }
+                return batch.remove();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Correlates a batch of source entries, recording the hits of each unlinked source object.
+     */
+    private void correlate(Deque<ResultEntry> batch) {
+        if (getTargetIndex() != null
+                || (!correlateEmptyTargetSet && reconContext.getTargets() != null
+                        && reconContext.getTargets().isEmpty())) {
+            // served from the loaded targets, or nothing to correlate with
+            return;
+        }
+        for (Map.Entry<String, Correlation.Key> qualifierKey : keys.entrySet()) {
+            final String linkQualifier = qualifierKey.getKey();
+            final Correlation.Key key = qualifierKey.getValue();
+            final Map<String, Map<String, Object>> sourceValues = new LinkedHashMap<>();
+            final Set<Object> queryValues = new LinkedHashSet<>();
+            for (ResultEntry entry : batch) {
+                if (entry.getValue() == null || isLinked(linkQualifier, entry.getId())) {
+                    continue;
+                }
+                Map<String, Object> values = key.sourceValues(entry.getValue());
+                sourceValues.put(entry.getId(), values);
+                queryValues.addAll(key.queryValues(values));
+            }
+            if (sourceValues.isEmpty()) {
+                continue;
+            }
+
+            final Map<String, List<Object>> targetsByValue = new HashMap<>();
+            try {
+                queryTargets(key, queryValues, targetsByValue);
+            } catch (ResourceException e) {
+                LOGGER.warn("Failed to correlate a batch of {} source objects of mapping {}, "
+                        + "correlating them one at a time", sourceValues.size(), objectMapping.getName(), e);
+                continue;
+            }
+            for (Map.Entry<String, Map<String, Object>> source : sourceValues.entrySet()) {
+                hits.put(hitKey(linkQualifier, source.getKey()), matches(targetsByValue, source.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Queries the targets with any of the values of a key, at most {@value Correlation.Key#MAX_VALUES_PER_FILTER}
+     * values per query, and indexes them by their normalized key values.
+     */
+    private void queryTargets(final Correlation.Key key, Set<Object> queryValues,
+            final Map<String, List<Object>> targetsByValue) throws ResourceException {
+        // a target matching values of several queries is only indexed once
+        final Set<String> targetIds = new HashSet<>();
+        for (QueryFilter<JsonPointer> filter : key.targetFilters(queryValues)) {
+            final long queryStart = ObjectMapping.startNanoTime(reconContext);
+            try {
+                objectMapping.getConnectionFactory().getConnection().query(context,
+                        Requests.newQueryRequest(objectMapping.getTargetObjectSet()).setQueryFilter(filter),
+                        new QueryResourceHandler() {
+                            @Override
+                            public boolean handleResource(ResourceResponse resource) {
+                                if (resource.getId() == null || targetIds.add(resource.getId())) {
+                                    index(targetsByValue, key, resource.getContent());
+                                }
+                                return true;
+                            }
+                        });
+            } finally {
+                ObjectMapping.addDuration(reconContext, DurationMetric.bulkCorrelationQuery, queryStart);
+            }
+        }
+    }
+
+    private boolean isLinked(String linkQualifier, String sourceId) {
+        return allLinks != null
+                && allLinks.get(linkQualifier, objectMapping.getLinkType().normalizeSourceId(sourceId)) != null;
+    }
+
+    /**
+     * Returns and forgets the targets correlated to a source object.
+     *
+     * @param sourceId the id of the source object
+     * @param linkQualifier the link qualifier to correlate for
+     * @param sourceObject the source object
+     * @return the correlated target objects, or null if the source object was not correlated in bulk
+     */
+    JsonValue take(String sourceId, String linkQualifier, JsonValue sourceObject) {
+        Map<String, Map<String, List<Object>>> index = getTargetIndex();
+        if (index != null) {
+            Correlation.Key key = keys.get(linkQualifier);
+            return key == null ? null : matches(index.get(linkQualifier), key.sourceValues(sourceObject));
+        }
+        return hits.remove(hitKey(linkQualifier, sourceId));
+    }
+
+    /**
+     * Forgets the hits of a source object that were not taken, e.g. because the object was not valid for the mapping.
+     *
+     * @param sourceId the id of the source object
+     */
+    void release(String sourceId) {
+        if (!hits.isEmpty()) {
+            for (String linkQualifier : keys.keySet()) {
+                hits.remove(hitKey(linkQualifier, sourceId));
+            }
+        }
+    }
+
+    /**
+     * @return the target objects loaded by the target phase by link qualifier and key value, or null if the target
+     *         objects were not loaded
+     */
+    private Map<String, Map<String, List<Object>>> getTargetIndex() {
+        Map<String, Map<String, List<Object>>> index = targetIndex;
+        if (index == null && reconContext.hasTargetsValues() && reconContext.getTargets() != null) {
+            synchronized (this) {
+                index = targetIndex;
+                if (index == null) {
+                    index = new HashMap<>();
+                    for (Map.Entry<String, Correlation.Key> qualifierKey : keys.entrySet()) {
+                        Map<String, List<Object>> targetsByValue = new HashMap<>();
+                        for (JsonValue target : reconContext.getTargets().values()) {
+                            index(targetsByValue, qualifierKey.getValue(), target);
+                        }
+                        index.put(qualifierKey.getKey(), targetsByValue);
+                    }
+                    LOGGER.debug("Indexed {} loaded targets of mapping {} for correlation",
+                            reconContext.getTargets().size(), objectMapping.getName());
+                    targetIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private static void index(Map<String, List<Object>> targetsByValue, Correlation.Key key, JsonValue target) {
+        for (String value : key.targetValues(target).keySet()) {
+            List<Object> targets = targetsByValue.get(value);
+            if (targets == null) {
+                targets = new ArrayList<>(1);
+                targetsByValue.put(value, targets);
+            }
+            targets.add(target.getObject());
+        }
+    }
+
+    /**
+     * @return the distinct targets matching any of the values, as a list of target objects
+     */
+    private static JsonValue matches(Map<String, List<Object>> targetsByValue, Map<String, Object> values) {
+        List<Object> matches = new ArrayList<>(1);
+        for (String value : values.keySet()) {
+            List<Object> targets = targetsByValue.get(value);
+            if (targets != null) {
+                for (Object target : targets) {
+                    // a target matching several values of a multi-valued key is only counted once
+                    if (!containsSame(matches, target)) {
+                        matches.add(target);
+                    }
+                }
+            }
+        }
+        return json(matches);
+    }
+
+    private static boolean containsSame(List<Object> list, Object object) {
+        for (Object element : list) {
+            if (element == object) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String hitKey(String linkQualifier, String sourceId) {
+        return linkQualifier + '\u0000' + sourceId;
+    }
+}
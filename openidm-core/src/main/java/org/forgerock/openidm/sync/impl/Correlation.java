@@ -21,14 +21,23 @@ import static org.forgerock.json.JsonValue.json;
 import javax.script.ScriptException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
+import org.forgerock.json.JsonPointer;
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.JsonValueException;
 import org.forgerock.json.resource.QueryRequest;
 import org.forgerock.json.resource.QueryResourceHandler;
 import org.forgerock.json.resource.QueryResponse;
+import org.forgerock.json.resource.Requests;
 import org.forgerock.json.resource.ResourceException;
 import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.openidm.sync.SynchronizationException;
@@ -38,11 +47,29 @@ import org.forgerock.openidm.util.Scripts;
 import org.forgerock.script.exception.ScriptThrownException;
 import org.forgerock.services.context.Context;
 import org.forgerock.util.Reject;
+import org.forgerock.util.query.QueryFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A class used to store and execute correlation queries and scripts.
+ * <p>
+ * Instead of a query or script, a mapping can correlate on a {@code correlationKey}, a source property whose values
+ * are matched for equality with a target property:
+ * <pre>
+ *     "correlationKey" : {
+ *         "source" : "mail",
+ *         "target" : "mail",
+ *         "caseSensitive" : false
+ *     }
+ * </pre>
+ * The values of a key that is not case sensitive are compared in lower case on both sides. As a repository may compare
+ * values case sensitively, the targets are queried with each source value both as given and in lower case, so such a
+ * repository only correlates the targets whose value is stored in either form.
+ * <p>
+ * A list of keys, each with a {@code linkQualifier}, can be given as for correlation queries. As the target query of
+ * a key is known without running a script, reconciliation correlates the source objects on a key in batches, see
+ * {@link BulkCorrelation}.
  */
 class Correlation {
 
@@ -51,6 +78,7 @@ class Correlation {
     private enum CorrelationType {
         correlationQuery,
         correlationScript,
+        correlationKey,
         none
     }
 
@@ -66,6 +94,11 @@ class Correlation {
      */
     private Script correlationScript;
 
+    /**
+     * A Map of correlation keys where the keys are {@link String} instances representing link qualifiers.
+     */
+    private Map<String, Key> correlationKeys;
+
     /**
      * The type of the correlation
      */
@@ -85,8 +118,11 @@ class Correlation {
         JsonValue config = objectMapping.getConfig();
         JsonValue correlationQueryValue = config.get("correlationQuery");
         JsonValue correlationScriptValue = config.get("correlationScript");
+        JsonValue correlationKeyValue = config.get("correlationKey");
         if (!correlationQueryValue.isNull() && !correlationScriptValue.isNull()) {
             throw new JsonValueException(config, "Cannot configure both correlationQuery and correlationScript in a single mapping");
+        } else if (!correlationKeyValue.isNull() && !(correlationQueryValue.isNull() && correlationScriptValue.isNull())) {
+            throw new JsonValueException(config, "Cannot configure correlationKey together with correlationQuery or correlationScript in a single mapping");
         } else if (!correlationQueryValue.isNull()) {
             correlationQueries = new HashMap<>();
             type = CorrelationType.correlationQuery;
@@ -102,6 +138,9 @@ class Correlation {
         } else if (!correlationScriptValue.isNull()) {
             type = CorrelationType.correlationScript;
             correlationScript = Scripts.newScript(correlationScriptValue);
+        } else if (!correlationKeyValue.isNull()) {
+            type = CorrelationType.correlationKey;
+            correlationKeys = Key.parse(correlationKeyValue);
         } else {
             type = CorrelationType.none;
         }
@@ -119,6 +158,8 @@ class Correlation {
             return correlationQueries.get(linkQualifier) != null;
         case correlationScript:
             return true;
+        case correlationKey:
+            return correlationKeys.get(linkQualifier) != null;
         default:
             return false;
         }
@@ -148,6 +189,24 @@ class Correlation {
             case correlationScript:
                 // Execute the correlationScript and return the results corresponding to the given linkQualifier
                 return execScript(type.toString(), correlationScript, scope, context);
+            case correlationKey:
+                // Query the targets whose key matches one of the source's key values
+                final Key key = correlationKeys.get(linkQualifier);
+                final Map<String, Object> values = key.sourceValues(json(scope.get("source")));
+                final List<Object> targets = new ArrayList<>();
+                final Set<String> targetIds = new HashSet<>();
+                for (QueryFilter<JsonPointer> filter : key.targetFilters(key.queryValues(values))) {
+                    for (Object target : queryTargetObjectSet(Requests.newQueryRequest(
+                            objectMapping.getTargetObjectSet()).setQueryFilter(filter))) {
+                        // a target matching values of several filters is only counted once
+                        final JsonValue targetObject = json(target);
+                        final String targetId = targetObject.get(ResourceResponse.FIELD_CONTENT_ID).asString();
+                        if (key.matches(values, targetObject) && (targetId == null || targetIds.add(targetId))) {
+                            targets.add(target);
+                        }
+                    }
+                }
+                return json(targets);
             default:
                 return null;
             }
@@ -182,11 +241,17 @@ class Correlation {
             throws SynchronizationException {
         try {
             Map<String, Object> result = new HashMap<>(1);
-            final Collection<Object> list = new ArrayList<>();
-            result.put(QueryResponse.FIELD_RESULT, list);
+            result.put(QueryResponse.FIELD_RESULT, queryTargetObjectSet(RequestUtil.buildQueryRequestFromParameterMap(
+                    objectMapping.getTargetObjectSet(), queryParameters)));
+            return result;
+        } catch (ResourceException ose) {
+            throw new SynchronizationException(ose);
+        }
+    }
 
-            QueryRequest request = RequestUtil.buildQueryRequestFromParameterMap(objectMapping.getTargetObjectSet(),
-                    queryParameters);
+    private List<Object> queryTargetObjectSet(QueryRequest request) throws SynchronizationException {
+        try {
+            final List<Object> list = new ArrayList<>();
             objectMapping.getConnectionFactory().getConnection().query(ObjectSetContext.get(), request,
                     new QueryResourceHandler() {
                         @Override
@@ -195,9 +260,161 @@ class Correlation {
                             return true;
                         }
                     });
-            return result;
+            return list;
         } catch (ResourceException ose) {
             throw new SynchronizationException(ose);
         }
     }
+
+    /**
+     * @return the correlation keys by link qualifier, or an empty map if the mapping does not correlate on keys
+     */
+    Map<String, Key> getCorrelationKeys() {
+        return correlationKeys != null ? correlationKeys : Collections.<String, Key>emptyMap();
+    }
+
+    /**
+     * A source property whose values are matched for equality with a target property.
+     */
+    static class Key {
+
+        /**
+         * The most values matched by one target filter: a generic repository table joins its properties table once
+         * for each value, and MySQL joins at most 61 tables in a query.
+         */
+        static final int MAX_VALUES_PER_FILTER = 50;
+
+        private final JsonPointer source;
+        private final JsonPointer target;
+        private final boolean caseSensitive;
+
+        Key(JsonPointer source, JsonPointer target, boolean caseSensitive) {
+            this.source = source;
+            this.target = target;
+            this.caseSensitive = caseSensitive;
+        }
+
+        /**
+         * Parses a {@code correlationKey} configuration, either a single key or a list of keys.
+         *
+         * @param config the configuration
+         * @return the keys by link qualifier
+         * @throws JsonValueException if the configuration is invalid
+         */
+        static Map<String, Key> parse(JsonValue config) throws JsonValueException {
+            Map<String, Key> keys = new HashMap<>();
+            if (config.isList()) {
+                for (JsonValue key : config) {
+                    keys.put(key.get("linkQualifier").defaultTo(Link.DEFAULT_LINK_QUALIFIER).asString(), parseKey(key));
+                }
+            } else {
+                config.expect(Map.class);
+                keys.put(config.get("linkQualifier").defaultTo(Link.DEFAULT_LINK_QUALIFIER).asString(),
+                        parseKey(config));
+            }
+            return keys;
+        }
+
+        private static Key parseKey(JsonValue config) {
+            return new Key(config.get("source").required().asPointer(),
+                    config.get("target").required().asPointer(),
+                    config.get("caseSensitive").defaultTo(true).asBoolean());
+        }
+
+        /**
+         * @param sourceObject the source object
+         * @return the values of the key of the source object, by their normalized form
+         */
+        Map<String, Object> sourceValues(JsonValue sourceObject) {
+            return values(sourceObject, source);
+        }
+
+        /**
+         * @param targetObject the target object
+         * @return the values of the key of the target object, by their normalized form
+         */
+        Map<String, Object> targetValues(JsonValue targetObject) {
+            return values(targetObject, target);
+        }
+
+        private Map<String, Object> values(JsonValue object, JsonPointer pointer) {
+            JsonValue value = object.get(pointer);
+            if (value == null || value.isNull()) {
+                return Collections.emptyMap();
+            }
+            Map<String, Object> values = new LinkedHashMap<>();
+            if (value.isList()) {
+                for (JsonValue item : value) {
+                    if (!item.isNull()) {
+                        values.put(normalize(item.getObject()), item.getObject());
+                    }
+                }
+            } else {
+                values.put(normalize(value.getObject()), value.getObject());
+            }
+            return values;
+        }
+
+        /**
+         * @param value a value of the key
+         * @return the form in which values of the key are compared
+         */
+        String normalize(Object value) {
+            String normalized = String.valueOf(value);
+            return caseSensitive ? normalized : normalized.toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Returns the values to query the targets with. The repository may compare values with or without case, so a
+         * case insensitive key queries each value both as given and in its normalized form, and the targets returned
+         * are matched on the normalized values of both sides, see {@link #matches}.
+         *
+         * @param values the key values of a source object, by their normalized form
+         * @return the values to query the targets with
+         */
+        Set<Object> queryValues(Map<String, Object> values) {
+            Set<Object> queryValues = new LinkedHashSet<>(values.values());
+            if (!caseSensitive) {
+                queryValues.addAll(values.keySet());
+            }
+            return queryValues;
+        }
+
+        /**
+         * @param queryValues the values to query the targets with
+         * @return filters matching the targets with any of the values, each matching at most
+         *         {@value #MAX_VALUES_PER_FILTER} of them
+         */
+        List<QueryFilter<JsonPointer>> targetFilters(Collection<Object> queryValues) {
+            List<QueryFilter<JsonPointer>> filters = new ArrayList<>();
+            List<QueryFilter<JsonPointer>> terms = new ArrayList<>(MAX_VALUES_PER_FILTER);
+            for (Object value : queryValues) {
+                terms.add(QueryFilter.equalTo(target, value));
+                if (terms.size() == MAX_VALUES_PER_FILTER) {
+                    filters.add(QueryFilter.or(terms));
+                    terms = new ArrayList<>(MAX_VALUES_PER_FILTER);
+                }
+            }
+            if (terms.size() == 1) {
+                filters.add(terms.get(0));
+            } else if (!terms.isEmpty()) {
+                filters.add(QueryFilter.or(terms));
+            }
+            return filters;
+        }
+
+        /**
+         * @param values the key values of a source object, by their normalized form
+         * @param targetObject a target object
+         * @return true if the key of the target object has any of the values
+         */
+        boolean matches(Map<String, Object> values, JsonValue targetObject) {
+            for (String value : targetValues(targetObject).keySet()) {
+                if (values.containsKey(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -27,7 +27,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.forgerock.openidm.sync.SynchronizationException;
 import org.forgerock.services.context.Context;
@@ -298,32 +297,46 @@ class Link {
     }
 
     /**
-     * Queries all the links for a given mapping, indexed by the source identifier
+     * Queries all the links for a given mapping and link qualifier into a compact index.
      * <p>
-     * This method expects a {@code "links-for-linkType"} defined with a parameter of
-     * {@code "linkType"}.
+     * The query results are added to the index as they are received, without keeping a link object per result. The
+     * repository may still read the complete result set before handing it over, unless it reads it in chunks, as the
+     * JDBC repository does when a {@code queryFetchSize} is configured.
      *
      * @param mapping the mapping to look up the links for
+     * @param linkQualifier the link qualifier to look up the links for
+     * @param index the index to add the links to
+     * @return the number of links added
      * @throws SynchronizationException if the query could not be performed.
-     * @return the mapping from source identifier to the link object for it
      */
-    public static Map<String, Link> getLinksForMapping(ObjectMapping mapping, String linkQualifier) throws SynchronizationException {
-        Map<String, Link> sourceIdToLink = new ConcurrentHashMap<String, Link>();
-        if (mapping != null) {
-            JsonValue query = new JsonValue(new HashMap<String, Object>());
-            query.put(FIELD_QUERY_FILTER,
-                    QueryFilter.and(Arrays.asList(
-                            QueryFilter.equalTo("/linkType", mapping.getLinkType().getName()),
-                            QueryFilter.equalTo("/linkQualifier", linkQualifier)))
-                            .toString());
-            JsonValue queryResults = linkQuery(mapping.getConnectionFactory(), ObjectSetContext.get(), query);
-            for (JsonValue entry : queryResults) {
-                Link link = new Link(mapping);
-                link.fromJsonValue(entry);
-                sourceIdToLink.put(link.sourceId, link);
-            }
+    static int indexLinksForMapping(final ObjectMapping mapping, final String linkQualifier, final LinkIndex index)
+            throws SynchronizationException {
+        JsonValue query = new JsonValue(new HashMap<String, Object>());
+        query.put(FIELD_QUERY_FILTER,
+                QueryFilter.and(Arrays.asList(
+                        QueryFilter.equalTo("/linkType", mapping.getLinkType().getName()),
+                        QueryFilter.equalTo("/linkQualifier", linkQualifier)))
+                        .toString());
+        final int[] count = { 0 };
+        try {
+            QueryRequest request = RequestUtil.buildQueryRequestFromParameterMap(linkId(null), query.asMap());
+            mapping.getConnectionFactory().getConnection().query(ObjectSetContext.get(), request,
+                    new QueryResourceHandler() {
+                        @Override
+                        public boolean handleResource(ResourceResponse resource) {
+                            Link link = new Link(mapping);
+                            link.fromJsonValue(resource.getContent());
+                            index.add(linkQualifier, link.sourceId, link.targetId, link._id, link._rev);
+                            count[0]++;
+                            return true;
+                        }
+                    });
+        } catch (JsonValueException jve) {
+            throw new SynchronizationException("Malformed link query response", jve);
+        } catch (ResourceException ose) {
+            throw new SynchronizationException("Link query failed", ose);
         }
-        return sourceIdToLink;
+        return count[0];
     }
 
     /** Compares the given Id to the current targetId,
@@ -0,0 +1,307 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.sync.impl;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, read-mostly index of the links of a mapping, keyed by link qualifier and normalized source id.
+ * <p>
+ * Reconciliation with {@code prefetchLinks} enabled holds every link of the mapping in memory for the duration of
+ * the run. Rather than keeping a {@link Link} object (and its strings) per link, the index encodes the link fields
+ * of all links into a single byte array and locates them through an open-addressing hash table of primitive ints.
+ * Canonical lower-case UUIDs, the default format of link and managed object ids, are stored as 16 raw bytes. A
+ * {@link Link} view is only materialized when it is looked up.
+ * <p>
+ * The index is populated by a single thread; once populated it may be read concurrently, provided it was safely
+ * published to the reading threads (e.g. by submitting the readers to an executor).
+ */
+class LinkIndex {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Field tags of the record encoding */
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_UUID = 2;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final ObjectMapping mapping;
+
+    /** Link qualifiers, dictionary-encoded by their position in this list */
+    private final List<String> linkQualifiers = new ArrayList<String>();
+    private final Map<String, Integer> linkQualifierOrdinals = new HashMap<String, Integer>();
+
+    /** Encoded records, one after the other: qualifier ordinal, sourceId, targetId, _id, _rev */
+    private byte[] data = new byte[INITIAL_CAPACITY * 64];
+    private int dataSize;
+
+    /** Offset of each record in {@link #data} */
+    private int[] recordOffsets = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /** Open-addressing table holding record number + 1 (0 marks a free slot), and the hash of each slot's key */
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int[] slotHashes = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * Creates an empty index.
+     *
+     * @param mapping the mapping the materialized link views are created for
+     */
+    LinkIndex(ObjectMapping mapping) {
+        this.mapping = mapping;
+    }
+
+    /**
+     * Adds a link to the index, replacing any link previously added for the same qualifier and source id.
+     *
+     * @param linkQualifier the link qualifier
+     * @param sourceId the normalized source id
+     * @param targetId the normalized target id
+     * @param id the link id
+     * @param rev the link revision, or null
+     */
+    void add(String linkQualifier, String sourceId, String targetId, String id, String rev) {
+        int qualifier = qualifierOrdinal(linkQualifier, true);
+        int hash = hash(qualifier, sourceId);
+        int slot = findSlot(qualifier, sourceId, hash);
+        if (slots[slot] != 0) {
+            // replace: the previous record stays in the data array but is no longer reachable
+            recordOffsets[slots[slot] - 1] = dataSize;
+        } else {
+            if (size == recordOffsets.length) {
+                recordOffsets = Arrays.copyOf(recordOffsets, size * 2);
+            }
+            recordOffsets[size++] = dataSize;
+            slots[slot] = size;
+            slotHashes[slot] = hash;
+            if (size * 2 > slots.length) {
+                rehash(slots.length * 2);
+            }
+        }
+        writeVarInt(qualifier);
+        writeString(sourceId);
+        writeString(targetId);
+        writeString(id);
+        writeString(rev);
+    }
+
+    /**
+     * Looks up the link of a source object.
+     *
+     * @param linkQualifier the link qualifier
+     * @param sourceId the normalized source id
+     * @return a new link view, or null if the index holds no such link
+     */
+    Link get(String linkQualifier, String sourceId) {
+        int qualifier = qualifierOrdinal(linkQualifier, false);
+        if (qualifier < 0 || sourceId == null) {
+            return null;
+        }
+        int slot = findSlot(qualifier, sourceId, hash(qualifier, sourceId));
+        if (slots[slot] == 0) {
+            return null;
+        }
+        int[] position = { recordOffsets[slots[slot] - 1] };
+        readVarInt(position);
+        Link link = new Link(mapping);
+        link.linkQualifier = linkQualifier;
+        link.sourceId = readString(position);
+        link.targetId = readString(position);
+        link._id = readString(position);
+        link._rev = readString(position);
+        link.initialized = true;
+        return link;
+    }
+
+    /**
+     * @return the number of links held by the index
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the approximate number of bytes held by the index, for diagnostics
+     */
+    long getMemoryFootprint() {
+        return data.length + 4L * (recordOffsets.length + slots.length + slotHashes.length);
+    }
+
+    private int qualifierOrdinal(String linkQualifier, boolean create) {
+        Integer ordinal = linkQualifierOrdinals.get(linkQualifier);
+        if (ordinal == null) {
+            if (!create) {
+                return -1;
+            }
+            ordinal = linkQualifiers.size();
+            linkQualifiers.add(linkQualifier);
+            linkQualifierOrdinals.put(linkQualifier, ordinal);
+        }
+        return ordinal;
+    }
+
+    private static int hash(int qualifier, String sourceId) {
+        int h = sourceId.hashCode() * 31 + qualifier;
+        // spread the bits, the table is indexed by the low bits only
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the slot holding the given key, or the free slot where it would be inserted.
+     */
+    private int findSlot(int qualifier, String sourceId, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            if (slotHashes[slot] == hash && keyEquals(recordOffsets[slots[slot] - 1], qualifier, sourceId)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean keyEquals(int offset, int qualifier, String sourceId) {
+        int[] position = { offset };
+        return readVarInt(position) == qualifier && sourceId.equals(readString(position));
+    }
+
+    private void rehash(int capacity) {
+        int[] newSlots = new int[capacity];
+        int[] newSlotHashes = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != 0) {
+                int slot = slotHashes[i] & mask;
+                while (newSlots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                newSlots[slot] = slots[i];
+                newSlotHashes[slot] = slotHashes[i];
+            }
+        }
+        slots = newSlots;
+        slotHashes = newSlotHashes;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (dataSize + additional > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataSize + additional));
+        }
+    }
+
+    private void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            data[dataSize++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[dataSize++] = (byte) value;
+    }
+
+    private int readVarInt(int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            ensureCapacity(1);
+            data[dataSize++] = TAG_NULL;
+        } else if (isCanonicalUuid(value)) {
+            ensureCapacity(17);
+            data[dataSize++] = TAG_UUID;
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) != '-') {
+                    int high = Character.digit(value.charAt(i++), 16);
+                    int low = Character.digit(value.charAt(i), 16);
+                    data[dataSize++] = (byte) ((high << 4) | low);
+                }
+            }
+        } else {
+            byte[] bytes = value.getBytes(UTF_8);
+            ensureCapacity(1);
+            data[dataSize++] = TAG_STRING;
+            writeVarInt(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, data, dataSize, bytes.length);
+            dataSize += bytes.length;
+        }
+    }
+
+    private String readString(int[] position) {
+        byte tag = data[position[0]++];
+        switch (tag) {
+        case TAG_NULL:
+            return null;
+        case TAG_UUID:
+            char[] chars = new char[36];
+            int c = 0;
+            for (int i = 0; i < 16; i++) {
+                if (i == 4 || i == 6 || i == 8 || i == 10) {
+                    chars[c++] = '-';
+                }
+                byte b = data[position[0]++];
+                chars[c++] = HEX_DIGITS[(b >> 4) & 0xF];
+                chars[c++] = HEX_DIGITS[b & 0xF];
+            }
+            return new String(chars);
+        default:
+            int length = readVarInt(position);
+            String value = new String(data, position[0], length, UTF_8);
+            position[0] += length;
+            return value;
+        }
+    }
+
+    /**
+     * Returns whether the value is a UUID in the canonical lower-case form produced by {@link java.util.UUID},
+     * which is the only form that survives the round trip through its 16 byte encoding unchanged.
+     */
+    private static boolean isCanonicalUuid(String value) {
+        if (value.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char ch = value.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (ch != '-') {
+                    return false;
+                }
+            } else if (!((ch >= '0' && ch <= '9') || (ch >= 'a' && ch <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
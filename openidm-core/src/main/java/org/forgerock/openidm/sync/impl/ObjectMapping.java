@@ -23,14 +23,22 @@ import static org.forgerock.json.JsonValueFunctions.enumConstant;
 import static org.forgerock.json.JsonValueFunctions.setOf;
 import static org.forgerock.openidm.sync.impl.ReconciliationStatistic.DurationMetric;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.script.ScriptException;
 
@@ -90,6 +98,9 @@ class ObjectMapping {
     /** Default number of executor threads to process ReconTasks */
     private static final int DEFAULT_TASK_THREADS = 10;
 
+    /** Default maximum number of source partitions to query and reconcile concurrently */
+    private static final int DEFAULT_SOURCE_PARTITION_THREADS = 4;
+
     /** Logger */
     private static final Logger LOGGER = LoggerFactory.getLogger(ObjectMapping.class);
 
@@ -168,9 +179,27 @@ class ObjectMapping {
     /** The number of processing threads to use in reconciliation */
     private int taskThreads;
 
+    /** The relative share of the shared recon task pool this mapping gets while other recons compete */
+    private int taskPriority;
+
     /** The number of initial tasks the ReconFeeder should submit to executors */
     private int feedSize;
 
+    /** Whether to adapt the number of recon tasks in flight to the task latency and failures, up to feedSize */
+    private boolean adaptiveFeed;
+
+    /** The factor by which the recent recon task latency may exceed its average before reducing the feed */
+    private double feedLatencyTolerance;
+
+    /** The maximum recent recon task latency in milliseconds before reducing the feed, 0 for none */
+    private long feedMaxTaskLatency;
+
+    /** The ratio of failed recon tasks tolerated before reducing the feed */
+    private double feedMaxErrorRate;
+
+    /** The maximum number of source partitions to query and reconcile concurrently */
+    private int sourcePartitionThreads;
+
     /** a reference to the {@link ConnectionFactory} */
     private final ConnectionFactory connectionFactory;
 
@@ -220,7 +249,16 @@ class ObjectMapping {
         resultScript = Scripts.newScript(config.get("result"));
         prefetchLinks = config.get("prefetchLinks").defaultTo(true).asBoolean();
         taskThreads = config.get("taskThreads").defaultTo(DEFAULT_TASK_THREADS).asInteger();
+        taskPriority = config.get("taskPriority").defaultTo(1).asInteger();
         feedSize = config.get("feedSize").defaultTo(ReconFeeder.DEFAULT_FEED_SIZE).asInteger();
+        adaptiveFeed = config.get("adaptiveFeed").defaultTo(false).asBoolean();
+        feedLatencyTolerance = config.get("feedLatencyTolerance")
+                .defaultTo(AdaptiveFeedLimit.DEFAULT_LATENCY_TOLERANCE).asDouble();
+        feedMaxTaskLatency = config.get("feedMaxTaskLatency").defaultTo(0L).asLong();
+        feedMaxErrorRate = config.get("feedMaxErrorRate")
+                .defaultTo(AdaptiveFeedLimit.DEFAULT_MAX_ERROR_RATE).asDouble();
+        sourcePartitionThreads = config.get("sourcePartitionThreads")
+                .defaultTo(DEFAULT_SOURCE_PARTITION_THREADS).asInteger();
         syncEnabled = config.get("enableSync").defaultTo(true).asBoolean();
         linkingEnabled = config.get("enableLinking").defaultTo(true).asBoolean();
         reconSourceQueryPaging = config.get("reconSourceQueryPaging").defaultTo(false).asBoolean();
@@ -708,27 +746,32 @@ class ObjectMapping {
             ObjectSetContext.push(context);
             logReconStart(reconContext, context);
 
-            // Get the relevant source (and optionally target) identifiers before we assess the situations
-            stats.sourceQueryStart();
-            final long firstSourceQueryStart = startNanoTime(reconContext);
-
-            ReconQueryResult sourceQueryResult = reconContext.querySourceIter(reconSourceQueryPageSize, null);
-            Iterator<ResultEntry> sourceIter = sourceQueryResult.getIterator();
-
-            stats.addDuration(DurationMetric.sourceQuery, firstSourceQueryStart);
-            stats.sourceQueryEnd();
-            if (!sourceIter.hasNext()) {
-                if (!reconContext.getReconHandler().allowEmptySourceSet()) {
-                    LOGGER.warn("Cannot reconcile from an empty data source, unless allowEmptySourceSet is true.");
-                    reconContext.setStage(ReconStage.COMPLETED_FAILED);
-                    stats.reconEnd();
-                    logReconEndFailure(reconContext, context);
-                    return;
+            // Get the relevant source (and optionally target) identifiers before we assess the situations.
+            // The partitions of a partitioned source are queried as part of the source phase instead.
+            final boolean sourcePartitioned = reconContext.getReconHandler().getSourcePartitionCount() > 1;
+            ReconQueryResult sourceQueryResult = null;
+            Iterator<ResultEntry> sourceIter = null;
+            if (!sourcePartitioned) {
+                stats.sourceQueryStart();
+                final long firstSourceQueryStart = startNanoTime(reconContext);
+
+                sourceQueryResult = reconContext.querySourceIter(reconSourceQueryPageSize, null);
+                sourceIter = sourceQueryResult.getIterator();
+
+                stats.addDuration(DurationMetric.sourceQuery, firstSourceQueryStart);
+                stats.sourceQueryEnd();
+                if (!sourceIter.hasNext()) {
+                    if (!reconContext.getReconHandler().allowEmptySourceSet()) {
+                        LOGGER.warn("Cannot reconcile from an empty data source, unless allowEmptySourceSet is true.");
+                        reconContext.setStage(ReconStage.COMPLETED_FAILED);
+                        stats.reconEnd();
+                        logReconEndFailure(reconContext, context);
+                        return;
+                    }
                 }
             }
 
             // If we will handle a target phase, pre-load all relevant target identifiers
-            Set<String> remainingTargetIds = new LinkedHashSet<>();
             ResultIterable targetIterable =
                     new ResultIterable(Collections.<String>emptyList(), Collections.<JsonValue>emptyList());
             if (reconContext.getReconHandler().isRunTargetPhase()) {
@@ -736,31 +779,35 @@ class ObjectMapping {
                 final long targetQueryStart = startNanoTime(reconContext);
 
                 targetIterable = reconContext.queryTarget();
-                remainingTargetIds.addAll(targetIterable.getAllIds());
-                remainingTargetIds = Collections.synchronizedSet(remainingTargetIds);
 
                 stats.addDuration(DurationMetric.targetQuery, targetQueryStart);
                 stats.targetQueryEnd();
-            }            
+            }
+            RemainingTargetIds remainingTargetIds = new RemainingTargetIds(targetIterable);
 
             // Optionally get all links up front as well
-            Map<String, Map<String, Link>> allLinks = null;
+            LinkIndex allLinks = null;
             if (prefetchLinks) {
-                allLinks = new HashMap<>();
-                int totalLinkEntries = 0;
+                allLinks = new LinkIndex(ObjectMapping.this);
                 stats.linkQueryStart();
                 for (String linkQualifier : getAllLinkQualifiers(context, reconContext)) {
                     final long linkQueryStart = startNanoTime(reconContext);
-                    Map<String, Link> linksByQualifier = Link.getLinksForMapping(ObjectMapping.this, linkQualifier);
+                    Link.indexLinksForMapping(ObjectMapping.this, linkQualifier, allLinks);
                     stats.addDuration(DurationMetric.linkQuery, linkQueryStart);
-
-                    allLinks.put(linkQualifier, linksByQualifier);
-                    totalLinkEntries += linksByQualifier.size();
                 }
-                reconContext.setTotalLinkEntries(totalLinkEntries);
+                reconContext.setTotalLinkEntries(allLinks.size());
+                LOGGER.debug("Prefetched {} links for recon {} into {} bytes",
+                        allLinks.size(), reconId, allLinks.getMemoryFootprint());
                 stats.linkQueryEnd();
             }
 
+            // Correlate the unlinked source objects in batches if the mapping correlates on keys
+            final Map<String, Correlation.Key> correlationKeys = new Correlation(this).getCorrelationKeys();
+            if (!correlationKeys.isEmpty()) {
+                reconContext.setBulkCorrelation(
+                        new BulkCorrelation(this, correlationKeys, reconContext, context, allLinks));
+            }
+
             measureIdQueries.end();
 
             EventEntry measureSource = Publisher.start(EVENT_RECON_SOURCE, reconId, null);
@@ -772,23 +819,35 @@ class ObjectMapping {
             boolean queryNextPage = false;
 
             LOGGER.info("Performing source sync for recon {} on mapping {}", reconId, name);
-            do {
-                // Query next page of results if paging
-                if (queryNextPage) {
-                    LOGGER.debug("Querying next page of source ids");
-                    final long pagedSourceQueryStart = startNanoTime(reconContext);
-                    sourceQueryResult = reconContext.querySourceIter(reconSourceQueryPageSize, 
-                            sourceQueryResult.getPagingCookie());
-                    sourceIter = sourceQueryResult.getIterator();
-                    stats.addDuration(DurationMetric.sourceQuery, pagedSourceQueryStart);
+            if (sourcePartitioned) {
+                int totalSourceEntries = reconSourcePartitions(reconContext, context, allLinks, remainingTargetIds);
+                if (totalSourceEntries == 0 && !reconContext.getReconHandler().allowEmptySourceSet()) {
+                    LOGGER.warn("Cannot reconcile from an empty data source, unless allowEmptySourceSet is true.");
+                    measureSource.end();
+                    reconContext.setStage(ReconStage.COMPLETED_FAILED);
+                    stats.reconEnd();
+                    logReconEndFailure(reconContext, context);
+                    return;
                 }
-                // Perform source recon phase on current set of source ids
-                ReconPhase sourcePhase = 
-                        new ReconPhase(sourceIter, reconContext, context, allLinks, remainingTargetIds, sourceRecon);
-                sourcePhase.setFeedSize(feedSize);
-                sourcePhase.execute();
-                queryNextPage = true;
-            } while (reconSourceQueryPaging && sourceQueryResult.getPagingCookie() != null); // If paging, loop through next pages
+            } else {
+                do {
+                    // Query next page of results if paging
+                    if (queryNextPage) {
+                        LOGGER.debug("Querying next page of source ids");
+                        final long pagedSourceQueryStart = startNanoTime(reconContext);
+                        sourceQueryResult = reconContext.querySourceIter(reconSourceQueryPageSize, 
+                                sourceQueryResult.getPagingCookie());
+                        sourceIter = sourceQueryResult.getIterator();
+                        stats.addDuration(DurationMetric.sourceQuery, pagedSourceQueryStart);
+                    }
+                    // Perform source recon phase on current set of source ids
+                    ReconPhase sourcePhase = new ReconPhase(correlating(reconContext, sourceIter), reconContext,
+                            context, allLinks, remainingTargetIds, sourceRecon);
+                    sourcePhase.setFeedSize(feedSize);
+                    sourcePhase.execute();
+                    queryNextPage = true;
+                } while (reconSourceQueryPaging && sourceQueryResult.getPagingCookie() != null); // If paging, loop through next pages
+            }
 
             stats.addDuration(DurationMetric.sourcePhase, sourcePhaseStart);
             stats.sourcePhaseEnd();
@@ -800,9 +859,8 @@ class ObjectMapping {
                 EventEntry measureTarget = Publisher.start(EVENT_RECON_TARGET, reconId, null);
                 final long targetPhaseStart = startNanoTime(reconContext);
                 reconContext.setStage(ReconStage.ACTIVE_RECONCILING_TARGET);
-                targetIterable = targetIterable.removeNotMatchingEntries(remainingTargetIds);
                 stats.targetPhaseStart();
-                ReconPhase targetPhase = new ReconPhase(targetIterable.iterator(), reconContext, context,
+                ReconPhase targetPhase = new ReconPhase(remainingTargetIds.entries(), reconContext, context,
                         allLinks, null, targetRecon);
                 targetPhase.setFeedSize(feedSize);
                 targetPhase.execute();
@@ -853,7 +911,123 @@ class ObjectMapping {
 
 // TODO: cleanup orphan link objects (no matching source or target) here
     }
+
+    /**
+     * Performs the source phase of a partitioned source, querying and reconciling up to
+     * {@code sourcePartitionThreads} partitions concurrently. The partitions share the recon task executor,
+     * the statistics and the remaining target ids of the recon.
+     *
+     * @param reconContext the context specific to the reconciliation run
+     * @param context the context to reconcile in
+     * @param allLinks the prefetched links, or null if not prefetched
+     * @param remainingTargetIds the target ids not yet processed
+     * @return the total number of source entries over all partitions
+     * @throws SynchronizationException if reconciling any of the partitions failed
+     * @throws InterruptedException if the recon got interrupted, e.g. because it got canceled
+     */
+    private int reconSourcePartitions(final ReconciliationContext reconContext, final Context context,
+            final LinkIndex allLinks, final Collection<String> remainingTargetIds)
+            throws SynchronizationException, InterruptedException {
+        final int partitions = reconContext.getReconHandler().getSourcePartitionCount();
+        final int threads = Math.max(1, Math.min(partitions, sourcePartitionThreads));
+        LOGGER.info("Reconciling {} source partitions, {} at a time, for recon {} on mapping {}",
+                partitions, threads, reconContext.getReconId(), name);
+
+        final ExecutorService partitionExecutor = Executors.newFixedThreadPool(threads);
+        final CompletionService<Integer> completionService = new ExecutorCompletionService<>(partitionExecutor);
+        final List<Future<Integer>> futures = new ArrayList<>(partitions);
+        try {
+            for (int i = 0; i < partitions; i++) {
+                final int partition = i;
+                futures.add(completionService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return reconSourcePartition(reconContext, context, allLinks, remainingTargetIds, partition);
+                    }
+                }));
+            }
+            int totalEntries = 0;
+            for (int i = 0; i < partitions; i++) {
+                try {
+                    totalEntries += completionService.take().get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof SynchronizationException) {
+                        throw (SynchronizationException) cause;
+                    } else if (cause instanceof InterruptedException) {
+                        throw (InterruptedException) cause;
+                    }
+                    throw new SynchronizationException("Exception in reconciling source partition: "
+                            + cause.getMessage(), cause);
+                }
+            }
+            return totalEntries;
+        } finally {
+            // Stop the partitions still running if any partition failed
+            for (Future<Integer> future : futures) {
+                future.cancel(true);
+            }
+            partitionExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Queries, page by page if paging is enabled, and reconciles a single source partition.
+     *
+     * @param reconContext the context specific to the reconciliation run
+     * @param context the context to reconcile in
+     * @param allLinks the prefetched links, or null if not prefetched
+     * @param remainingTargetIds the target ids not yet processed
+     * @param partition the index of the partition
+     * @return the number of source entries in the partition
+     * @throws SynchronizationException if querying or reconciling the partition failed
+     * @throws InterruptedException if the recon got interrupted
+     */
+    private int reconSourcePartition(ReconciliationContext reconContext, Context context,
+            LinkIndex allLinks, Collection<String> remainingTargetIds, int partition)
+            throws SynchronizationException, InterruptedException {
+        int entries = 0;
+        String pagingCookie = null;
+        do {
+            // the query span of the source phase covers the first query of each partition, as in an unpartitioned
+            // recon, but not the reconciliation of the entries in between
+            final boolean firstPage = pagingCookie == null;
+            if (firstPage) {
+                reconContext.getStatistics().sourcePartitionQueryStart();
+            }
+            final long sourceQueryStart = startNanoTime(reconContext);
+            ReconQueryResult sourceQueryResult =
+                    reconContext.querySourcePartitionIter(partition, reconSourceQueryPageSize, pagingCookie);
+            addDuration(reconContext, DurationMetric.sourceQuery, sourceQueryStart);
+            if (firstPage) {
+                reconContext.getStatistics().sourcePartitionQueryEnd();
+            }
+            entries += sourceQueryResult.getAllIds().size();
+            pagingCookie = sourceQueryResult.getPagingCookie();
+
+            ReconPhase sourcePhase = new ReconPhase(correlating(reconContext, sourceQueryResult.getIterator()),
+                    reconContext, context, allLinks, remainingTargetIds, sourceRecon);
+            sourcePhase.setFeedSize(feedSize);
+            sourcePhase.execute();
+        } while (reconSourceQueryPaging && pagingCookie != null);
+        LOGGER.debug("Reconciled {} entries of source partition {} for recon {}",
+                entries, partition, reconContext.getReconId());
+        return entries;
+    }
     
+    /**
+     * Returns the source entries of a source phase, correlated in batches as they are fed if the mapping correlates
+     * on keys.
+     *
+     * @param reconContext the context specific to the reconciliation run
+     * @param sourceIter the source entries
+     * @return the source entries to reconcile
+     */
+    private Iterator<ResultEntry> correlating(ReconciliationContext reconContext, Iterator<ResultEntry> sourceIter) {
+        final BulkCorrelation bulkCorrelation = reconContext.getBulkCorrelation();
+        return bulkCorrelation != null ? bulkCorrelation.prefetching(sourceIter) : sourceIter;
+    }
+
     private void executeOnRecon(Context context, final ReconciliationContext reconContext) throws SynchronizationException {
         if (onReconScript != null) {
             Map<String, Object> scope = new HashMap<>();
@@ -913,6 +1087,27 @@ class ObjectMapping {
         return taskThreads;
     }
 
+    /**
+     * @return the relative share of the shared recon task pool for this mapping's reconciliations
+     */
+    int getTaskPriority() {
+        return taskPriority;
+    }
+
+    /**
+     * Creates the limit on the recon tasks in flight for a reconciliation run.
+     *
+     * @param stats the statistics of the reconciliation run
+     * @return the adaptive limit, or null if the feed should use the fixed feedSize
+     */
+    AdaptiveFeedLimit newFeedLimit(ReconciliationStatistic stats) {
+        if (!adaptiveFeed || taskThreads <= 0) {
+            return null;
+        }
+        return new AdaptiveFeedLimit(taskThreads, feedSize, feedLatencyTolerance, feedMaxTaskLatency,
+                feedMaxErrorRate, stats);
+    }
+
     /**
      * Creates an entry in the audit log.
      *
@@ -17,7 +17,6 @@
 package org.forgerock.openidm.sync.impl;
 
 import java.util.Collection;
-import java.util.Map;
 
 import org.forgerock.json.JsonValue;
 import org.forgerock.openidm.sync.SynchronizationException;
@@ -40,5 +39,5 @@ interface Recon {
      * @throws SynchronizationException if there is a failure reported in reconciling this id
      */
     void recon(String id, JsonValue entry, ReconciliationContext reconContext, Context rootContext,
-            Map<String, Map<String, Link>> allLinks, Collection<String> remainingIds) throws SynchronizationException;
+            LinkIndex allLinks, Collection<String> remainingIds) throws SynchronizationException;
 }
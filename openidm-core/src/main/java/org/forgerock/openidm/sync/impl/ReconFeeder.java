@@ -33,6 +33,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -48,6 +49,9 @@ public abstract class ReconFeeder {
      * The default feed size.
      */
     protected static int DEFAULT_FEED_SIZE = 1000;
+
+    /** How long to wait for a permit of the adaptive limit before checking the completed tasks again */
+    private static final long PERMIT_POLL_MILLIS = 100;
     
     CompletionService<Void> completionService;
     int feedSize = DEFAULT_FEED_SIZE;
@@ -77,6 +81,8 @@ public abstract class ReconFeeder {
                     translateTaskThrowable(ex);
                 }
             }
+        } else if (reconContext.getFeedLimit() != null) {
+            executeAdaptive(executor, reconContext.getFeedLimit());
         } else {
             submitted = 0;
             completionService = new ExecutorCompletionService<Void>(executor);
@@ -101,6 +107,47 @@ public abstract class ReconFeeder {
         }
     }
 
+    /**
+     * Keeps as many tasks in flight as the adaptive limit currently allows, rather than a fixed feed size.
+     * While waiting for a permit, completed tasks are checked so that failures abort the phase promptly.
+     */
+    private void executeAdaptive(Executor executor, AdaptiveFeedLimit limit)
+            throws SynchronizationException, InterruptedException {
+        submitted = 0;
+        completionService = new ExecutorCompletionService<Void>(executor);
+        int processed = 0;
+        while (entriesIter.hasNext() || processed < submitted) {
+            Future<Void> future;
+            while ((future = completionService.poll()) != null) {
+                checkCompleted(future);
+                ++processed;
+            }
+            if (entriesIter.hasNext()) {
+                reconContext.checkCanceled();
+                if (limit.tryAcquire(PERMIT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    try {
+                        completionService.submit(limit.limit(createTask(entriesIter.next())));
+                        ++submitted;
+                    } catch (RuntimeException | SynchronizationException e) {
+                        limit.release();
+                        throw e;
+                    }
+                }
+            } else if (processed < submitted) {
+                checkCompleted(completionService.take());
+                ++processed;
+            }
+        }
+    }
+
+    private void checkCompleted(Future<Void> future) throws SynchronizationException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException ex) {
+            translateTaskThrowable(ex);
+        }
+    }
+
     void submitNextIfPresent() throws SynchronizationException {
         reconContext.checkCanceled();
         if (entriesIter.hasNext()) {
@@ -18,7 +18,6 @@ package org.forgerock.openidm.sync.impl;
 
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.concurrent.Callable;
 
 import org.forgerock.openidm.sync.SynchronizationException;
@@ -29,12 +28,12 @@ import org.forgerock.services.context.Context;
  */
 class ReconPhase extends ReconFeeder {
     private final Context parentContext;
-    private final Map<String, Map<String, Link>> allLinks;
+    private final LinkIndex allLinks;
     private final Collection<String> remainingIds;
     private final Recon reconById;
 
     ReconPhase(Iterator<ResultEntry> resultIter, ReconciliationContext reconContext, Context parentContext,
-            Map<String, Map<String, Link>> allLinks, Collection<String> remainingIds, Recon reconById) {
+            LinkIndex allLinks, Collection<String> remainingIds, Recon reconById) {
         super(resultIter, reconContext);
         this.parentContext = parentContext;
         this.allLinks = allLinks;
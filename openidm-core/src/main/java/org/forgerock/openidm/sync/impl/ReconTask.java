@@ -17,7 +17,6 @@
 package org.forgerock.openidm.sync.impl;
 
 import java.util.Collection;
-import java.util.Map;
 import java.util.concurrent.Callable;
 
 import org.forgerock.json.JsonValue;
@@ -37,12 +36,12 @@ class ReconTask implements Callable<Void> {
     private final JsonValue objectEntry;
     private final ReconciliationContext reconContext;
     private final Context parentContext;
-    private final Map<String, Map<String, Link>> allLinks;
+    private final LinkIndex allLinks;
     private final Collection<String> remainingIds;
     private final Recon reconById;
 
     ReconTask(ResultEntry resultEntry, ReconciliationContext reconContext, Context parentContext,
-            Map<String, Map<String, Link>> allLinks, Collection<String> remainingIds, Recon reconById) {
+            LinkIndex allLinks, Collection<String> remainingIds, Recon reconById) {
         this.id = resultEntry.getId();
         // This value is null if it wasn't pre-queried
         this.objectEntry = resultEntry.getValue();
@@ -0,0 +1,484 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.sync.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of threads executing the tasks of all concurrent reconciliation runs.
+ * <p>
+ * Each run submits its tasks to its own {@link Lane}, which limits the number of tasks of the run executing at once
+ * to the {@code taskThreads} quota of its mapping. Idle threads pick the next task from the eligible lane that is
+ * furthest behind in a stride schedule: every dispatched task advances its lane's pass by the inverse of the
+ * mapping's {@code taskPriority}, so lanes progress in proportion to their priority however many tasks each one
+ * has queued. A lane that was idle joins at the current pass instead of claiming the turns it missed.
+ * <p>
+ * The total number of recon task threads is fixed, regardless of the number of runs and their quotas.
+ * <p>
+ * When the pool or a lane is shut down with tasks still queued, the futures of those tasks fail with a
+ * {@link RejectedExecutionException}, so that a run waiting for its tasks to complete does not wait forever.
+ */
+class ReconTaskPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReconTaskPool.class);
+
+    /** Pass increment of a lane with priority 1 */
+    private static final long STRIDE = 1 << 20;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Thread[] workers;
+    private final AtomicLong completedTasks = new AtomicLong();
+
+    // Guarded by lock
+    private final List<Lane> lanes = new ArrayList<Lane>();
+    private long globalPass;
+    private int activeTasks;
+    private boolean shutdown;
+
+    /**
+     * Creates the pool and starts its threads.
+     *
+     * @param threads the total number of threads executing recon tasks
+     */
+    ReconTaskPool(int threads) {
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            }, "recon-task-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Creates the executor for the tasks of one reconciliation run.
+     *
+     * @param name the name of the lane, e.g. the mapping name
+     * @param quota the maximum number of tasks of this lane executing at once
+     * @param priority the relative share of the pool this lane gets while other lanes compete, at least 1
+     * @return the executor of the lane, to shut down once the run completes
+     */
+    Lane newLane(String name, int quota, int priority) {
+        Lane lane = new Lane(name, Math.max(1, quota), Math.max(1, priority));
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("Recon task pool is shut down");
+            }
+            lane.pass = globalPass;
+            lanes.add(lane);
+        } finally {
+            lock.unlock();
+        }
+        return lane;
+    }
+
+    /**
+     * Stops the pool threads once their current task completes. Queued tasks are not executed: their futures fail
+     * with a {@link RejectedExecutionException}.
+     */
+    void shutdown() {
+        final List<Lane> stopped;
+        lock.lock();
+        try {
+            shutdown = true;
+            workAvailable.signalAll();
+            stopped = new ArrayList<Lane>(lanes);
+        } finally {
+            lock.unlock();
+        }
+        for (Lane lane : stopped) {
+            lane.stop(false);
+        }
+    }
+
+    private void work() {
+        Runnable task;
+        while ((task = next()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Waits for the next task of the eligible lane with the lowest pass.
+     *
+     * @return the task, wrapped to account for its completion, or null if the pool is shut down
+     */
+    private Runnable next() {
+        lock.lock();
+        try {
+            while (!shutdown) {
+                Lane next = null;
+                for (Lane lane : lanes) {
+                    if (!lane.queue.isEmpty() && lane.running < lane.quota
+                            && (next == null || lane.pass < next.pass)) {
+                        next = lane;
+                    }
+                }
+                if (next != null) {
+                    final Lane lane = next;
+                    final Runnable task = lane.queue.poll();
+                    lane.running++;
+                    lane.runners.add(Thread.currentThread());
+                    lane.pass += STRIDE / lane.priority;
+                    globalPass = Math.max(globalPass, lane.pass - STRIDE / lane.priority);
+                    activeTasks++;
+                    return new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                task.run();
+                            } catch (Throwable t) {
+                                logger.warn("Recon task of {} failed", lane.name, t);
+                            } finally {
+                                completed(lane);
+                                // clear an interrupt of the lane that arrived after the task returned
+                                Thread.interrupted();
+                            }
+                        }
+                    };
+                }
+                workAvailable.awaitUninterruptibly();
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void completed(Lane lane) {
+        completedTasks.incrementAndGet();
+        lock.lock();
+        try {
+            lane.running--;
+            lane.runners.remove(Thread.currentThread());
+            lane.completed++;
+            activeTasks--;
+            if (lane.isTerminatedLocked()) {
+                lanes.remove(lane);
+                lane.terminated.signalAll();
+            } else if (!lane.queue.isEmpty()) {
+                // the lane may have been held back by its quota
+                workAvailable.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the total number of recon task threads
+     */
+    int getThreads() {
+        return workers.length;
+    }
+
+    /**
+     * @return the number of tasks currently executing
+     */
+    int getActiveTasks() {
+        lock.lock();
+        try {
+            return activeTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread
+     */
+    int getQueuedTasks() {
+        lock.lock();
+        try {
+            int queued = 0;
+            for (Lane lane : lanes) {
+                queued += lane.queue.size();
+            }
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of tasks completed since the pool started
+     */
+    long getCompletedTasks() {
+        return completedTasks.get();
+    }
+
+    /**
+     * @return the state of each lane: its name, quota, priority, and queued, running and completed tasks
+     */
+    List<Map<String, Object>> getLaneStatistics() {
+        List<Map<String, Object>> statistics = new ArrayList<Map<String, Object>>();
+        lock.lock();
+        try {
+            for (Lane lane : lanes) {
+                Map<String, Object> laneStatistics = new LinkedHashMap<String, Object>();
+                laneStatistics.put("name", lane.name);
+                laneStatistics.put("quota", lane.quota);
+                laneStatistics.put("priority", lane.priority);
+                laneStatistics.put("queued", lane.queue.size());
+                laneStatistics.put("running", lane.running);
+                laneStatistics.put("completed", lane.completed);
+                statistics.add(laneStatistics);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return statistics;
+    }
+
+    /**
+     * The executor of one reconciliation run within the pool.
+     */
+    final class Lane extends AbstractExecutorService {
+        private final String name;
+        private final int quota;
+        private final int priority;
+        private final Condition terminated = lock.newCondition();
+
+        // Guarded by lock
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+        private final Set<LaneTask<?>> unfinished = new HashSet<LaneTask<?>>();
+        private final List<Thread> runners = new ArrayList<Thread>();
+        private int running;
+        private long completed;
+        private long pass;
+        private boolean laneShutdown;
+
+        private Lane(String name, int quota, int priority) {
+            this.name = name;
+            this.quota = quota;
+            this.priority = priority;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            lock.lock();
+            try {
+                if (laneShutdown || shutdown) {
+                    throw new RejectedExecutionException("Recon task executor of " + name + " is shut down");
+                }
+                if (queue.isEmpty() && running == 0) {
+                    // don't let an idle lane claim the turns it missed
+                    pass = Math.max(pass, globalPass);
+                }
+                queue.add(command);
+                if (running < quota) {
+                    workAvailable.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            lock.lock();
+            try {
+                laneShutdown = true;
+                if (isTerminatedLocked()) {
+                    lanes.remove(this);
+                    terminated.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Shuts down the lane, interrupting the threads running its tasks. The queued tasks are not executed: their
+         * futures fail with a {@link RejectedExecutionException} and the queued futures are cancelled.
+         *
+         * @return the queued tasks
+         */
+        @Override
+        public List<Runnable> shutdownNow() {
+            return stop(true);
+        }
+
+        /**
+         * Shuts down the lane and removes its queued tasks. Futures created by the lane whose task has not started
+         * fail with a {@link RejectedExecutionException}, and queued futures of other kinds, such as the wrappers of
+         * an {@link java.util.concurrent.ExecutorCompletionService}, are cancelled so that they complete as well.
+         *
+         * @param interrupt whether to interrupt the threads running tasks of the lane
+         * @return the queued tasks
+         */
+        private List<Runnable> stop(boolean interrupt) {
+            final List<Runnable> queued;
+            final List<LaneTask<?>> notStarted;
+            lock.lock();
+            try {
+                laneShutdown = true;
+                queued = new ArrayList<Runnable>(queue);
+                queue.clear();
+                notStarted = new ArrayList<LaneTask<?>>(unfinished);
+                if (interrupt) {
+                    for (Thread runner : runners) {
+                        runner.interrupt();
+                    }
+                }
+                if (isTerminatedLocked()) {
+                    lanes.remove(this);
+                    terminated.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+            // outside of the lock, as completing a future runs its completion callbacks
+            for (LaneTask<?> task : notStarted) {
+                task.reject();
+            }
+            for (Runnable task : queued) {
+                if (task instanceof Future) {
+                    ((Future<?>) task).cancel(false);
+                }
+            }
+            return queued;
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+            return track(new LaneTask<T>(runnable, value));
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+            return track(new LaneTask<T>(callable));
+        }
+
+        private <T> LaneTask<T> track(LaneTask<T> task) {
+            lock.lock();
+            try {
+                unfinished.add(task);
+            } finally {
+                lock.unlock();
+            }
+            return task;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            lock.lock();
+            try {
+                return laneShutdown;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            lock.lock();
+            try {
+                return isTerminatedLocked();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean isTerminatedLocked() {
+            return laneShutdown && queue.isEmpty() && running == 0;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lock();
+            try {
+                while (!isTerminatedLocked()) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = terminated.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * A future of the lane, which can be failed if the lane stops before the task started.
+         */
+        private final class LaneTask<T> extends FutureTask<T> {
+            private final AtomicBoolean claimed = new AtomicBoolean();
+
+            private LaneTask(Callable<T> callable) {
+                super(callable);
+            }
+
+            private LaneTask(Runnable runnable, T value) {
+                super(runnable, value);
+            }
+
+            @Override
+            public void run() {
+                if (claimed.compareAndSet(false, true)) {
+                    super.run();
+                }
+            }
+
+            /**
+             * Fails the task with a {@link RejectedExecutionException}, unless it already started.
+             */
+            private void reject() {
+                if (claimed.compareAndSet(false, true)) {
+                    setException(new RejectedExecutionException("Recon task executor of " + name + " is shut down"));
+                }
+            }
+
+            @Override
+            protected void done() {
+                lock.lock();
+                try {
+                    unfinished.remove(this);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
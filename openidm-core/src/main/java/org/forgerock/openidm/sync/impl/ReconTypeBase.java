@@ -117,6 +117,30 @@ public abstract class ReconTypeBase implements ReconTypeHandler {
         return allowEmptySourceSet;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The source is not partitioned by default.
+     */
+    @Override
+    public int getSourcePartitionCount() {
+        return 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The single partition of a source that is not partitioned is the complete source.
+     */
+    @Override
+    public ReconQueryResult querySource(int partition, int pageSize, String pagingCookie)
+            throws SynchronizationException {
+        if (partition != 0) {
+            throw new SynchronizationException("Source partition " + partition + " does not exist");
+        }
+        return querySource(pageSize, pagingCookie);
+    }
+
     /**
      * Calculate the effective configuration for the given configuration property
      * Properties passed with the request body are given precedence, they override the default configuration
@@ -18,12 +18,23 @@ package org.forgerock.openidm.sync.impl;
 import static org.forgerock.json.JsonValue.field;
 import static org.forgerock.json.JsonValue.json;
 import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.QueryRequest.FIELD_QUERY_FILTER;
+import static org.forgerock.json.resource.QueryRequest.FIELD_QUERY_ID;
+import static org.forgerock.json.resource.http.HttpUtils.PARAM_FIELDS;
+import static org.forgerock.json.resource.http.HttpUtils.PARAM_QUERY_FILTER;
+import static org.forgerock.json.resource.http.HttpUtils.PARAM_QUERY_ID;
+import static org.forgerock.openidm.util.RequestUtil.hasQueryFilter;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 import org.forgerock.json.JsonValue;
+import org.forgerock.json.JsonValueException;
 import org.forgerock.json.resource.BadRequestException;
+import org.forgerock.openidm.core.ServerConstants;
 import org.forgerock.openidm.sync.SynchronizationException;
 
 /**
@@ -47,6 +58,11 @@ public class ReconTypeByQuery extends ReconTypeBase {
      */
     JsonValue targetQuery;
 
+    /**
+     * The source queries of the partitions the source is split into, empty if the source is not partitioned.
+     */
+    List<JsonValue> sourcePartitionQueries;
+
     /**
      * A constructor.
      * 
@@ -58,6 +74,67 @@ public class ReconTypeByQuery extends ReconTypeBase {
 
         sourceQuery = calcEffectiveQuery("sourceQuery", reconContext.getObjectMapping().getSourceObjectSet());
         targetQuery = calcEffectiveQuery("targetQuery",  reconContext.getObjectMapping().getTargetObjectSet());
+        sourcePartitionQueries = calcPartitionQueries(calcEffectiveConfig("sourcePartitions"), sourceQuery);
+    }
+
+    /**
+     * Calculates the queries of the configured partitions. A partition is either a query filter restricting the
+     * source query, or a complete query definition of its own.
+     *
+     * @param partitionsCfg the list of partitions, may be null
+     * @param baseQuery the effective query the partitions split up
+     * @return the effective query of each partition
+     * @throws JsonValueException if a partition can not be combined with the base query
+     */
+    private List<JsonValue> calcPartitionQueries(JsonValue partitionsCfg, JsonValue baseQuery) {
+        List<JsonValue> partitionQueries = new ArrayList<>();
+        if (partitionsCfg == null || partitionsCfg.isNull()) {
+            return partitionQueries;
+        }
+        for (JsonValue partition : partitionsCfg.expect(List.class)) {
+            if (partition.isString()) {
+                partitionQueries.add(restrictQuery(baseQuery, partition.asString()));
+            } else {
+                JsonValue partitionQuery = partition.expect(Map.class).copy();
+                if (!partitionQuery.isDefined("resourceName")) {
+                    partitionQuery.put("resourceName", baseQuery.get("resourceName").getObject());
+                }
+                if (!specifiesQuery(partitionQuery)) {
+                    throw new JsonValueException(partition, "Source partition does not define a query");
+                }
+                partitionQueries.add(partitionQuery);
+            }
+        }
+        return partitionQueries;
+    }
+
+    /**
+     * Restricts the base query to the entries matching the filter.
+     *
+     * @param baseQuery the effective source query
+     * @param filter the query filter selecting the entries of a partition
+     * @return the query of the partition
+     * @throws JsonValueException if the base query is neither a query filter nor the default query for all ids
+     */
+    private JsonValue restrictQuery(JsonValue baseQuery, String filter) {
+        JsonValue partitionQuery = baseQuery.copy();
+        if (hasQueryFilter(baseQuery)) {
+            String filterField = baseQuery.isDefined(PARAM_QUERY_FILTER) ? PARAM_QUERY_FILTER : FIELD_QUERY_FILTER;
+            partitionQuery.put(filterField, "(" + baseQuery.get(filterField).asString() + ") and (" + filter + ")");
+        } else if (ServerConstants.QUERY_ALL_IDS.equals(baseQuery.get(FIELD_QUERY_ID).asString())
+                || ServerConstants.QUERY_ALL_IDS.equals(baseQuery.get(PARAM_QUERY_ID).asString())) {
+            partitionQuery.remove(FIELD_QUERY_ID);
+            partitionQuery.remove(PARAM_QUERY_ID);
+            partitionQuery.put(PARAM_QUERY_FILTER, filter);
+            if (!partitionQuery.isDefined(PARAM_FIELDS)) {
+                // Keep the partitions an id-only query, like the query they replace
+                partitionQuery.put(PARAM_FIELDS, "_id");
+            }
+        } else {
+            throw new JsonValueException(baseQuery,
+                    "Source partitions defined as query filter require the sourceQuery to be a query filter");
+        }
+        return partitionQuery;
     }
 
     /**
@@ -75,6 +152,37 @@ public class ReconTypeByQuery extends ReconTypeBase {
                 pagingCookie);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSourcePartitionCount() {
+        return Math.max(1, sourcePartitionQueries.size());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ReconQueryResult querySource(int partition, int pageSize, String pagingCookie)
+            throws SynchronizationException {
+        if (sourcePartitionQueries.isEmpty()) {
+            return super.querySource(partition, pageSize, pagingCookie);
+        }
+        if (partition < 0 || partition >= sourcePartitionQueries.size()) {
+            throw new SynchronizationException("Source partition " + partition + " does not exist");
+        }
+        JsonValue partitionQuery = sourcePartitionQueries.get(partition);
+        return query(partitionQuery.get("resourceName").asString(),
+                partitionQuery,
+                reconContext,
+                Collections.synchronizedSet(new LinkedHashSet<String>()),
+                true,
+                QuerySide.SOURCE,
+                pageSize,
+                pagingCookie);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -92,9 +200,17 @@ public class ReconTypeByQuery extends ReconTypeBase {
      */
     @Override
     public JsonValue getReconParameters() {
-        return json(object(
+        JsonValue parameters = json(object(
                 field("sourceQuery", sourceQuery.getObject()),
                 field("targetQuery", targetQuery.getObject())
         ));
+        if (!sourcePartitionQueries.isEmpty()) {
+            List<Object> partitions = new ArrayList<>();
+            for (JsonValue partitionQuery : sourcePartitionQueries) {
+                partitions.add(partitionQuery.getObject());
+            }
+            parameters.put("sourcePartitions", partitions);
+        }
+        return parameters;
     }
 }
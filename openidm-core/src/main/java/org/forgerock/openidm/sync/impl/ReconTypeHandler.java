@@ -33,6 +33,26 @@ public interface ReconTypeHandler {
      */
     ReconQueryResult querySource(int pageSize, String pagingCookie) throws SynchronizationException;
 
+    /**
+     * Returns the number of partitions the source query is split into. Partitions are disjoint subsets of the
+     * source, which can be queried and reconciled concurrently.
+     *
+     * @return the number of source partitions, 1 if the source is not partitioned
+     */
+    int getSourcePartitionCount();
+
+    /**
+     * Performs the source query of a single partition, returning a {@link ReconQueryResult} object containing
+     * the query results.
+     *
+     * @param partition the index of the partition to query, from 0 to {@link #getSourcePartitionCount()} - 1
+     * @param pageSize a page size for the query. The value should be 0 if not paging.
+     * @param pagingCookie an optional pagingCookie. The value should be null if not used.
+     * @return a {@link ReconQueryResult} object containing the query results of the partition.
+     * @throws SynchronizationException
+     */
+    ReconQueryResult querySource(int partition, int pageSize, String pagingCookie) throws SynchronizationException;
+
     /**
      * Performs a source query returning an {@link ResultIterable} object containing the query results.
      * 
@@ -55,6 +55,7 @@ public class ReconciliationContext {
     private ReconTypeHandler reconTypeHandler;
     private final ReconciliationStatistic reconStat;
     private ExecutorService executor;
+    private AdaptiveFeedLimit feedLimit;
 
     // If set, the list of all queried source Ids
     private Set<String> sourceIds;
@@ -63,6 +64,9 @@ public class ReconciliationContext {
     private Map<String, JsonValue> targets;
     // Whether the targets map contains preloaded values
     private boolean hasTargetsValues;
+
+    // If set, the bulk correlation of the source objects
+    private volatile BulkCorrelation bulkCorrelation;
     
     private Integer totalSourceEntries;
     private Integer totalTargetEntries;
@@ -97,10 +101,15 @@ public class ReconciliationContext {
         
         reconTypeHandler = createReconTypeHandler(reconAction);
 
-        // Initialize the executor for this recon, or null if no executor should be used
+        // Initialize the executor for this recon, or null if no executor should be used.
+        // Runs share the service's recon task pool, with the mapping's taskThreads as their quota.
         int noOfThreads = mapping.getTaskThreads();
         if (noOfThreads > 0) {
-            executor = Executors.newFixedThreadPool(noOfThreads);
+            ReconTaskPool taskPool = service == null ? null : service.getTaskPool();
+            executor = taskPool == null
+                    ? Executors.newFixedThreadPool(noOfThreads)
+                    : taskPool.newLane(mapping.getName(), noOfThreads, mapping.getTaskPriority());
+            feedLimit = mapping.newFeedLimit(reconStat);
         } else {
             executor = null;
         }
@@ -256,6 +265,11 @@ public class ReconciliationContext {
         linkDetail.put("created", getStatistics().getLinkCreated());
         progressDetail.put("links", linkDetail);
 
+        AdaptiveFeedLimit limit = feedLimit;
+        if (limit != null) {
+            progressDetail.put("feed", limit.asMap());
+        }
+
         return progressDetail;
     }
 
@@ -266,6 +280,13 @@ public class ReconciliationContext {
         return executor;
     }
 
+    /**
+     * @return the adaptive limit on recon tasks in flight, or null if the feed uses the fixed feed size
+     */
+    AdaptiveFeedLimit getFeedLimit() {
+        return feedLimit;
+    }
+
     /**
      * Query (and cache if necessary) sources to reconcile
      * @return the source ids to reconcile in this recon scope
@@ -277,6 +298,20 @@ public class ReconciliationContext {
         return result;
     }
     
+    /**
+     * Query (and cache if necessary) the sources of one partition to reconcile.
+     * Unlike {@link #querySourceIter(int, String)} the cached ids accumulate over all partitions and pages,
+     * as partitions are reconciled concurrently.
+     * @return the source ids to reconcile in this partition
+     * @throws SynchronizationException if getting the ids to reconcile failed
+     */
+    ReconQueryResult querySourcePartitionIter(int partition, int pageSize, String pagingCookie)
+            throws SynchronizationException {
+        ReconQueryResult result = getReconHandler().querySource(partition, pageSize, pagingCookie);
+        addSourceIds(result.getAllIds());
+        return result;
+    }
+
     /**
      * Query (and cache if necessary) targets to reconcile
      * @return the target results to reconcile in this recon scope
@@ -298,6 +333,17 @@ public class ReconciliationContext {
         this.totalSourceEntries = Integer.valueOf(sourceIds.size());
     }
     
+    /**
+     * @param sourceIds more source object ids in the reconciliation scope, adding to the ones already known
+     */
+    synchronized void addSourceIds(Collection<String> sourceIds) {
+        if (this.sourceIds == null) {
+            this.sourceIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        }
+        this.sourceIds.addAll(sourceIds);
+        this.totalSourceEntries = Integer.valueOf(this.sourceIds.size());
+    }
+
     /**
      * @param targetsIterable the result with the ids and optionally values in the target object set
      * If the target system IDs are case insensitive, the ids are kept in normalized (lower case) form
@@ -355,6 +401,20 @@ public class ReconciliationContext {
         return hasTargetsValues;
     }
 
+    /**
+     * @return the bulk correlation of the source objects, or null if the mapping does not correlate in bulk
+     */
+    BulkCorrelation getBulkCorrelation() {
+        return bulkCorrelation;
+    }
+
+    /**
+     * @param bulkCorrelation the bulk correlation of the source objects
+     */
+    void setBulkCorrelation(BulkCorrelation bulkCorrelation) {
+        this.bulkCorrelation = bulkCorrelation;
+    }
+
     /**
      * @param newStage Sets the current state and stage in the reconciliation process
      */
@@ -390,6 +450,7 @@ public class ReconciliationContext {
     private synchronized void cleanupState() {
         sourceIds = null;
         targets = null;
+        bulkCorrelation = null;
         if (executor != null) {
             executor.shutdown();
             executor = null;
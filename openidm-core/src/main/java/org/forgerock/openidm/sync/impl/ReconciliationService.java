@@ -97,6 +97,9 @@ public class ReconciliationService
     private static final String AUDIT_RECON = "audit/recon";
     private static final String SUMMARY = "summary";
 
+    /** Default number of threads shared by the tasks of all concurrent reconciliation runs */
+    private static final int DEFAULT_TASK_POOL_THREADS = 40;
+
     public enum ReconAction {
         recon, reconByQuery, reconById;
 
@@ -141,6 +144,11 @@ public class ReconciliationService
      */
     ExecutorService fullReconExecutor;
 
+    /**
+     * The pool of threads executing the tasks of all reconciliation runs.
+     */
+    ReconTaskPool taskPool;
+
     /**
      * Map from reconciliation ID to the run itself
      * In historical start order, oldest first.
@@ -450,9 +458,16 @@ public class ReconciliationService
                     IdentityServer.getInstance().getProperty("openidm.recon.maxcompletedruns", "100");
             maxCompletedRuns = Integer.parseInt(maxCompletedStr);
 
-            int maxConcurrentFullRecons = 10; // TODO: make configurable
+            int maxConcurrentFullRecons = Integer.parseInt(
+                    IdentityServer.getInstance().getProperty("openidm.recon.maxconcurrentruns", "10"));
             fullReconExecutor = Executors.newFixedThreadPool(maxConcurrentFullRecons);
 
+            // Bounds the threads of all concurrent runs; each mapping's taskThreads is its quota of this pool
+            int taskPoolThreads = Integer.parseInt(
+                    IdentityServer.getInstance().getProperty("openidm.recon.taskthreads",
+                            Integer.toString(DEFAULT_TASK_POOL_THREADS)));
+            taskPool = new ReconTaskPool(taskPoolThreads);
+
             registerMBean();
         } catch (RuntimeException ex) {
             logger.warn("Configuration invalid and could not be parsed, can not start reconciliation service: "
@@ -477,6 +492,10 @@ public class ReconciliationService
     void deactivate(ComponentContext compContext) {
         logger.debug("Deactivating Service {}", compContext);
         unregisterMBean();
+        if (taskPool != null) {
+            taskPool.shutdown();
+            taskPool = null;
+        }
         logger.info("Reconciliation service stopped.");
     }
 
@@ -489,6 +508,13 @@ public class ReconciliationService
         return ObjectSetContext.get();
     }
 
+    /**
+     * @return the pool executing the tasks of all reconciliation runs, or null if the service is not active
+     */
+    ReconTaskPool getTaskPool() {
+        return taskPool;
+    }
+
     private void registerMBean() {
         try {
             MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
@@ -593,4 +619,52 @@ public class ReconciliationService
             throw new InternalServerErrorException("Unable to get the maximum pool size in recon thread pool");
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getTaskPoolThreads() throws ResourceException {
+        return requireTaskPool().getThreads();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getActiveTasks() throws ResourceException {
+        return requireTaskPool().getActiveTasks();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getQueuedTasks() throws ResourceException {
+        return requireTaskPool().getQueuedTasks();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCompletedTasks() throws ResourceException {
+        return requireTaskPool().getCompletedTasks();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Map<String, Object>> getTaskPoolLanes() throws ResourceException {
+        return requireTaskPool().getLaneStatistics();
+    }
+
+    private ReconTaskPool requireTaskPool() throws ResourceException {
+        ReconTaskPool pool = taskPool;
+        if (pool == null) {
+            throw new InternalServerErrorException("Recon task pool is not available");
+        }
+        return pool;
+    }
 }
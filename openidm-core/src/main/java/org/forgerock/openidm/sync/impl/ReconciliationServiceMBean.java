@@ -18,6 +18,8 @@ package org.forgerock.openidm.sync.impl;
 
 import org.forgerock.json.resource.ResourceException;
 
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -66,4 +68,40 @@ public interface ReconciliationServiceMBean {
      * @throws ResourceException if there is an error getting maximum allowed number of threads.
      */
     public int getMaximumPoolSize() throws ResourceException;
+
+    /**
+     * Gets the number of threads shared by the tasks of all reconciliation runs.
+     * @return the number of threads in the recon task pool.
+     * @throws ResourceException if the recon task pool is not available.
+     */
+    public int getTaskPoolThreads() throws ResourceException;
+
+    /**
+     * Gets the number of recon tasks currently executing.
+     * @return the number of executing tasks in the recon task pool.
+     * @throws ResourceException if the recon task pool is not available.
+     */
+    public int getActiveTasks() throws ResourceException;
+
+    /**
+     * Gets the number of recon tasks waiting for a thread of the recon task pool.
+     * @return the number of queued tasks in the recon task pool.
+     * @throws ResourceException if the recon task pool is not available.
+     */
+    public int getQueuedTasks() throws ResourceException;
+
+    /**
+     * Gets the number of recon tasks completed since the recon task pool started.
+     * @return the number of completed tasks in the recon task pool.
+     * @throws ResourceException if the recon task pool is not available.
+     */
+    public long getCompletedTasks() throws ResourceException;
+
+    /**
+     * Gets the state of each reconciliation run sharing the recon task pool: the mapping name, its quota and
+     * priority, and its queued, running and completed tasks.
+     * @return the statistics of each run in the recon task pool.
+     * @throws ResourceException if the recon task pool is not available.
+     */
+    public List<Map<String, Object>> getTaskPoolLanes() throws ResourceException;
 }
@@ -43,6 +43,8 @@ public class ReconciliationStatistic {
         activePolicyPostActionScript,
         activePolicyScript,
         auditLog,
+        bulkCorrelationQuery,
+        correlationKey,
         correlationQuery,
         correlationScript,
         defaultMappingScript,
@@ -158,6 +160,24 @@ public class ReconciliationStatistic {
     public void sourceQueryEnd() {
         sourceStat.queryEndTime = System.currentTimeMillis();
     }
+
+    /**
+     * Records the start of one of several concurrent source queries, such as the queries of the source partitions,
+     * keeping the earliest start.
+     */
+    public synchronized void sourcePartitionQueryStart() {
+        long now = System.currentTimeMillis();
+        if (sourceStat.queryStartTime == 0 || now < sourceStat.queryStartTime) {
+            sourceStat.queryStartTime = now;
+        }
+    }
+
+    /**
+     * Records the end of one of several concurrent source queries, keeping the latest end.
+     */
+    public synchronized void sourcePartitionQueryEnd() {
+        sourceStat.queryEndTime = Math.max(sourceStat.queryEndTime, System.currentTimeMillis());
+    }
     
     public void targetQueryStart() {
         targetStat.queryStartTime = System.currentTimeMillis();
@@ -226,6 +246,14 @@ public class ReconciliationStatistic {
         statusProcessed.get(status).incrementAndGet();
     }
 
+    /**
+     * @param status the status to count
+     * @return The number of objects processed with the given status
+     */
+    public int getStatusProcessed(Status status) {
+        return statusProcessed.get(status).get();
+    }
+
     /**
      * @return The number of existing source objects processed
      */
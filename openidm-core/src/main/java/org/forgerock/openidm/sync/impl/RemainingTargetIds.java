@@ -0,0 +1,229 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.sync.impl;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks the target ids of a reconciliation that have not been handled by the source phase yet.
+ * <p>
+ * The set of target ids is fixed when the tracker is created; afterwards ids can only be removed. The ids are kept
+ * in an array, in the order of the target query results, and are located through a read-only open-addressing hash
+ * table. Removal only flips the bit of the id in an {@link AtomicLongArray}, so source phase tasks removing matched
+ * targets concurrently never block each other.
+ * <p>
+ * Iteration, both over the ids and over the {@link #entries() entries} for the target phase, walks the original
+ * query results and skips the removed ids, without copying the remaining ones. Iterators are weakly consistent:
+ * ids removed concurrently may or may not be returned.
+ */
+class RemainingTargetIds extends AbstractCollection<String> {
+
+    private final ResultIterable targets;
+    private final String[] ids;
+
+    /** Open-addressing table holding id index + 1 (0 marks a free slot), and the hash of each slot's id */
+    private final int[] slots;
+    private final int[] slotHashes;
+
+    /** One bit per id, set once the id is removed */
+    private final AtomicLongArray removed;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Creates a tracker holding all ids of the target query results.
+     *
+     * @param targets the target query results, with normalized ids
+     */
+    RemainingTargetIds(ResultIterable targets) {
+        this.targets = targets;
+        int count = targets.getAllIds().size();
+        ids = new String[count];
+        removed = new AtomicLongArray((count + 63) >>> 6);
+        int capacity = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+        slots = new int[capacity];
+        slotHashes = new int[capacity];
+
+        int index = 0;
+        for (ResultEntry entry : targets) {
+            String id = entry.getId();
+            ids[index] = id;
+            int hash = hash(id);
+            int slot = findSlot(id, hash);
+            if (slots[slot] == 0) {
+                slots[slot] = index + 1;
+                slotHashes[slot] = hash;
+                size.incrementAndGet();
+            } else {
+                // duplicate id, only the first occurrence is tracked
+                setRemoved(index);
+            }
+            index++;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        int index = indexOf(o);
+        return index >= 0 && !isRemoved(index);
+    }
+
+    /**
+     * Removes a target id, e.g. because it was matched by the source phase.
+     *
+     * @param o the normalized target id
+     * @return true if the id was still remaining and has been removed by this call
+     */
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index >= 0 && setRemoved(index)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        final Iterator<ResultEntry> entries = entries();
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return entries.next().getId();
+            }
+
+            @Override
+            public void remove() {
+                entries.remove();
+            }
+        };
+    }
+
+    /**
+     * Streams the remaining target entries, with their pre-queried values if the target query returned any, in
+     * the order of the target query results.
+     *
+     * @return an iterator over the remaining target entries
+     */
+    Iterator<ResultEntry> entries() {
+        final Iterator<ResultEntry> resultIter = targets.iterator();
+        return new Iterator<ResultEntry>() {
+            private int index = -1;
+            private int lastIndex = -1;
+            private ResultEntry next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && resultIter.hasNext()) {
+                    ResultEntry entry = resultIter.next();
+                    if (!isRemoved(++index)) {
+                        next = entry;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public ResultEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ResultEntry entry = next;
+                next = null;
+                lastIndex = index;
+                return entry;
+            }
+
+            @Override
+            public void remove() {
+                if (lastIndex < 0) {
+                    throw new IllegalStateException();
+                }
+                if (setRemoved(lastIndex)) {
+                    size.decrementAndGet();
+                }
+                lastIndex = -1;
+            }
+        };
+    }
+
+    private int indexOf(Object o) {
+        if (!(o instanceof String)) {
+            return -1;
+        }
+        String id = (String) o;
+        int slot = findSlot(id, hash(id));
+        return slots[slot] - 1;
+    }
+
+    private static int hash(String id) {
+        int h = id.hashCode();
+        // spread the bits, the table is indexed by the low bits only
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the slot holding the given id, or the free slot where it would be inserted.
+     */
+    private int findSlot(String id, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            if (slotHashes[slot] == hash && id.equals(ids[slots[slot] - 1])) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean isRemoved(int index) {
+        return (removed.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * Sets the removed bit of an id.
+     *
+     * @return true if the bit was not set before
+     */
+    private boolean setRemoved(int index) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        while (true) {
+            long current = removed.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (removed.compareAndSet(word, current, current | bit)) {
+                return true;
+            }
+        }
+    }
+}
@@ -16,11 +16,7 @@
 package org.forgerock.openidm.sync.impl;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.LinkedList;
-import java.util.Set;
 
 import org.forgerock.json.JsonValue;
 
@@ -49,35 +45,6 @@ public class ResultIterable implements Iterable<ResultEntry> {
         return allIds;
     }
     
-    /**
-     * Remove any entries that are not in the supplied ids
-     * @param ids of entries to keep
-     */
-    public ResultIterable removeNotMatchingEntries(Collection<String> ids) {
-        Iterator<ResultEntry> entryIter = this.iterator();
-        Set<String> newIds = new LinkedHashSet<String>();
-        JsonValue newObjList = null;
-
-        if (this.values != null) {
-            newObjList = new JsonValue(new LinkedList<>());
-
-            while (ids.size() > 0 && entryIter.hasNext()) {
-                ResultEntry entry = entryIter.next();
-                String id = entry.getId();
-                if (ids.contains(id)) {
-                    newIds.add(id);
-                    newObjList.add(entry.getValue());
-                    ids.remove(id);
-                }
-            }
-        }
-        else {
-            newIds.addAll(ids);
-        }
-        
-        return new ResultIterable(Collections.synchronizedSet(newIds), newObjList);
-    }
-
     /**
      * Get an iterator over the ids and optional values
      * @see java.lang.Iterable#iterator()
@@ -17,7 +17,6 @@
 package org.forgerock.openidm.sync.impl;
 
 import java.util.Collection;
-import java.util.Map;
 
 import org.forgerock.json.JsonValue;
 import org.forgerock.openidm.audit.util.Status;
@@ -43,7 +42,7 @@ class SourceRecon implements Recon {
      */
     @Override
     public void recon(String id, JsonValue objectEntry, ReconciliationContext reconContext, Context context,
-            Map<String, Map<String, Link>> allLinks, Collection<String> remainingIds)
+            LinkIndex allLinks, Collection<String> remainingIds)
             throws SynchronizationException {
         reconContext.checkCanceled();
         LazyObjectAccessor sourceObjectAccessor = objectEntry == null
@@ -68,7 +67,7 @@ class SourceRecon implements Recon {
             op.sourceObjectAccessor = sourceObjectAccessor;
             if (allLinks != null) {
                 String normalizedSourceId = objectMapping.getLinkType().normalizeSourceId(id);
-                op.initializeLink(allLinks.get(linkQualifier).get(normalizedSourceId));
+                op.initializeLink(allLinks.get(linkQualifier, normalizedSourceId));
             }
             auditEvent.setSourceObjectId(LazyObjectAccessor.qualifiedId(objectMapping.getSourceObjectSet(), id));
             op.reconId = reconContext.getReconId();
@@ -111,5 +110,11 @@ class SourceRecon implements Recon {
                 objectMapping.logEntry(auditEvent, reconContext);
             }
         }
+
+        // Drop the bulk correlation hits of link qualifiers that did not need them
+        final BulkCorrelation bulkCorrelation = reconContext.getBulkCorrelation();
+        if (bulkCorrelation != null) {
+            bulkCorrelation.release(id);
+        }
     }
 }
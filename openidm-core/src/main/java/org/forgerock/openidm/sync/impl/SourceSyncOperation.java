@@ -340,7 +340,16 @@ class SourceSyncOperation extends SyncOperation {
             Map<String, Object> scope = new HashMap<String, Object>();
             scope.put("source", sourceObject.asMap());
             try {
-                result = correlation.correlate(scope, getLinkQualifier(), getContext(), reconContext);
+                // Use the hits of a bulk correlation of the reconciliation if there are any for this object
+                final BulkCorrelation bulkCorrelation = reconContext != null && sourceObjectOverride == null
+                        ? reconContext.getBulkCorrelation()
+                        : null;
+                if (bulkCorrelation != null) {
+                    result = bulkCorrelation.take(getSourceObjectId(), getLinkQualifier(), sourceObject);
+                }
+                if (result == null) {
+                    result = correlation.correlate(scope, getLinkQualifier(), getContext(), reconContext);
+                }
             } finally {
                 measure.end();
             }
@@ -16,21 +16,32 @@
 package org.forgerock.openidm.managed;
 
 import static org.forgerock.json.JsonValue.*;
+import static org.forgerock.json.resource.Responses.newQueryResponse;
 import static org.forgerock.json.resource.Responses.newResourceResponse;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.*;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.resource.Connection;
 import org.forgerock.json.resource.ConnectionFactory;
 import org.forgerock.json.resource.PreconditionFailedException;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.QueryResponse;
 import org.forgerock.json.resource.ReadRequest;
 import org.forgerock.json.resource.ResourcePath;
+import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.openidm.audit.util.ActivityLogger;
 import org.forgerock.openidm.util.RelationshipUtil;
 import org.forgerock.services.context.Context;
 import org.forgerock.services.context.RootContext;
 import org.mockito.ArgumentMatcher;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
@@ -147,6 +158,57 @@ public class CollectionRelationshipProviderTest {
         }
     }
 
+    @Test
+    public void testGetRelationshipValuesForResources() throws Exception {
+        RootContext context = new RootContext();
+        Connection connection = mock(Connection.class);
+        when(connectionFactory.getConnection()).thenReturn(connection);
+
+        // the reports of mgr1 and mgr2, stored on either side of the reverse relationship
+        final List<ResourceResponse> relationships = Arrays.asList(
+                newResourceResponse("1", "0", json(object(
+                        field("firstId", "managed/user/mgr1"), field("firstPropertyName", "reports"),
+                        field("secondId", "managed/user/test1"), field("secondPropertyName", "manager")))),
+                newResourceResponse("2", "0", json(object(
+                        field("firstId", "managed/user/a"), field("firstPropertyName", "manager"),
+                        field("secondId", "managed/user/mgr2"), field("secondPropertyName", "reports")))),
+                newResourceResponse("3", "0", json(object(
+                        field("firstId", "managed/user/mgr1"), field("firstPropertyName", "reports"),
+                        field("secondId", "managed/user/mgr2"), field("secondPropertyName", "manager")))));
+        when(connection.query(any(Context.class), any(QueryRequest.class), any(QueryResourceHandler.class)))
+                .thenAnswer(new Answer<QueryResponse>() {
+                    @Override
+                    public QueryResponse answer(InvocationOnMock invocation) throws Throwable {
+                        QueryResourceHandler handler = (QueryResourceHandler) invocation.getArguments()[2];
+                        for (ResourceResponse relationship : relationships) {
+                            handler.handleResource(relationship);
+                        }
+                        return newQueryResponse();
+                    }
+                });
+
+        SchemaField schemaField = mock(SchemaField.class);
+        when(schemaField.getName()).thenReturn("reports");
+        when(schemaField.isReverseRelationship()).thenReturn(true);
+        when(schemaField.getReversePropertyName()).thenReturn("manager");
+        CollectionRelationshipProvider provider = new CollectionRelationshipProvider(connectionFactory,
+                ResourcePath.resourcePath("managed/user"), schemaField, activityLogger, managedObjectSyncService);
+
+        Map<String, JsonValue> values =
+                provider.getRelationshipValuesForResources(context, Arrays.asList("mgr1", "mgr2", "mgr3"));
+
+        // a single query fetches the relationships of all resources
+        verify(connection, times(1))
+                .query(any(Context.class), any(QueryRequest.class), any(QueryResourceHandler.class));
+        assertEquals(values.get("mgr1").size(), 2);
+        assertEquals(values.get("mgr1").get(0).get("_ref").asString(), "managed/user/test1");
+        assertEquals(values.get("mgr1").get(0).get("_refProperties").get("_id").asString(), "1");
+        assertEquals(values.get("mgr1").get(1).get("_ref").asString(), "managed/user/mgr2");
+        assertEquals(values.get("mgr2").size(), 1);
+        assertEquals(values.get("mgr2").get(0).get("_ref").asString(), "managed/user/a");
+        assertEquals(values.get("mgr3").size(), 0);
+    }
+
     private static class IsRouteMatcher extends ArgumentMatcher<ReadRequest> {
         private final String route;
 
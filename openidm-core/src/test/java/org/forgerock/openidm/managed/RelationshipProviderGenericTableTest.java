@@ -0,0 +1,277 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.managed;
+
+import static org.forgerock.json.JsonValue.*;
+import static org.forgerock.json.resource.Responses.newQueryResponse;
+import static org.forgerock.openidm.repo.QueryConstants.*;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+import java.io.File;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.Connection;
+import org.forgerock.json.resource.ConnectionFactory;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.QueryResponse;
+import org.forgerock.json.resource.ResourcePath;
+import org.forgerock.openidm.audit.util.ActivityLogger;
+import org.forgerock.openidm.repo.jdbc.impl.GenericTableHandler;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Fetches the relationships of many managed objects at once from the generic relationships table of an in-memory
+ * H2 database in MySQL mode, with the queries of the MySQL repository configuration.
+ */
+public class RelationshipProviderGenericTableTest {
+
+    private static final String TYPE = "relationships";
+
+    /** The repository configuration shipped for MySQL */
+    private static final File MYSQL_REPO_CONFIG =
+            new File("../openidm-zip/src/main/resources/db/mysql/conf/repo.jdbc.json");
+
+    /** The maximum number of tables MySQL joins in a single query */
+    private static final int MYSQL_MAX_JOINED_TABLES = 61;
+
+    private static final String[] SCHEMA = {
+        "CREATE SCHEMA IF NOT EXISTS openidm",
+        "CREATE TABLE openidm.objecttypes ("
+                + "id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY, "
+                + "objecttype VARCHAR(255) NULL, "
+                + "UNIQUE (objecttype))",
+        "CREATE TABLE openidm.relationships ("
+                + "id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY, "
+                + "objecttypes_id BIGINT NOT NULL, "
+                + "objectid VARCHAR(255) NOT NULL, "
+                + "rev VARCHAR(38) NOT NULL, "
+                + "fullobject CLOB NULL, "
+                + "UNIQUE (objecttypes_id, objectid), "
+                + "FOREIGN KEY (objecttypes_id) REFERENCES openidm.objecttypes (id) ON DELETE CASCADE)",
+        "CREATE TABLE openidm.relationshipproperties ("
+                + "relationships_id BIGINT NOT NULL, "
+                + "propkey VARCHAR(255) NOT NULL, "
+                + "proptype VARCHAR(32) NULL, "
+                + "propvalue VARCHAR(2000) NULL, "
+                + "FOREIGN KEY (relationships_id) REFERENCES openidm.relationships (id) ON DELETE CASCADE)"
+    };
+
+    /** Number of managers, more than fit in a single query */
+    private static final int MANAGERS = RelationshipProvider.MAX_RESOURCES_PER_QUERY + 20;
+
+    private java.sql.Connection db;
+    private JsonValue queriesConfig;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        db = DriverManager.getConnection("jdbc:h2:mem:relationships;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Statement statement = db.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+        }
+        queriesConfig = json(new ObjectMapper().readValue(MYSQL_REPO_CONFIG, Map.class))
+                .get("queries").get("genericTables");
+
+        GenericTableHandler tableHandler = newTableHandler(queriesConfig);
+        int id = 0;
+        for (int i = 0; i < MANAGERS; i++) {
+            // the reports of each manager, stored on either side of the reverse relationship
+            createRelationship(tableHandler, String.valueOf(id++),
+                    "managed/user/mgr" + i, "reports", "managed/user/rpt" + i + "a", "manager");
+            createRelationship(tableHandler, String.valueOf(id++),
+                    "managed/user/rpt" + i + "b", "manager", "managed/user/mgr" + i, "reports");
+        }
+        // a relationship with the reports field on both sides, belonging to both managers
+        createRelationship(tableHandler, String.valueOf(id), "managed/user/mgr0", "reports",
+                "managed/user/mgr1", "reports");
+    }
+
+    @AfterClass
+    public void tearDown() throws SQLException {
+        try (Statement statement = db.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        db.close();
+    }
+
+    @Test
+    public void testRelationshipsQuery() throws Exception {
+        GenericTableHandler tableHandler = newTableHandler(queriesConfig);
+        List<QueryRequest> requests = new ArrayList<>();
+
+        Map<String, JsonValue> values = newProvider(tableHandler, requests)
+                .getRelationshipValuesForResources(new RootContext(), managerIds());
+
+        // one list query per batch of managers
+        assertEquals(requests.size(), 2);
+        for (QueryRequest request : requests) {
+            assertEquals(request.getQueryId(), RelationshipProvider.RELATIONSHIPS_QUERY_ID);
+        }
+        assertReports(values);
+    }
+
+    @Test
+    public void testRelationshipsFilterWithoutQuery() throws Exception {
+        // a repo configuration predating the list query
+        JsonValue oldQueriesConfig = queriesConfig.copy();
+        oldQueriesConfig.remove(RelationshipProvider.RELATIONSHIPS_QUERY_ID);
+        GenericTableHandler tableHandler = newTableHandler(oldQueriesConfig);
+        List<QueryRequest> requests = new ArrayList<>();
+        RelationshipProvider provider = newProvider(tableHandler, requests);
+
+        Map<String, JsonValue> values = provider.getRelationshipValuesForResources(new RootContext(), managerIds());
+
+        // the failed list query, then one query filter per smaller batch of managers
+        int filterQueries = (MANAGERS + RelationshipProvider.MAX_RESOURCES_PER_FILTER - 1)
+                / RelationshipProvider.MAX_RESOURCES_PER_FILTER;
+        assertEquals(requests.size(), 1 + filterQueries);
+        assertEquals(requests.get(0).getQueryId(), RelationshipProvider.RELATIONSHIPS_QUERY_ID);
+        for (QueryRequest request : requests.subList(1, requests.size())) {
+            assertNotNull(request.getQueryFilter());
+            assertTrue(countJoinedTables(tableHandler, request) <= MYSQL_MAX_JOINED_TABLES);
+        }
+        assertReports(values);
+
+        // the provider does not retry the list query
+        requests.clear();
+        provider.getRelationshipValuesForResources(new RootContext(), managerIds());
+        assertEquals(requests.size(), filterQueries);
+    }
+
+    private void assertReports(Map<String, JsonValue> values) {
+        assertEquals(values.size(), MANAGERS);
+        for (int i = 0; i < MANAGERS; i++) {
+            List<String> refs = new ArrayList<>();
+            for (JsonValue report : values.get("mgr" + i)) {
+                refs.add(report.get("_ref").asString());
+            }
+            assertTrue(refs.contains("managed/user/rpt" + i + "a"), refs.toString());
+            assertTrue(refs.contains("managed/user/rpt" + i + "b"), refs.toString());
+            if (i < 2) {
+                assertTrue(refs.contains("managed/user/mgr" + (1 - i)), refs.toString());
+                assertEquals(refs.size(), 3, refs.toString());
+            } else {
+                assertEquals(refs.size(), 2, refs.toString());
+            }
+        }
+    }
+
+    private static List<String> managerIds() {
+        List<String> ids = new ArrayList<>(MANAGERS);
+        for (int i = 0; i < MANAGERS; i++) {
+            ids.add("mgr" + i);
+        }
+        return ids;
+    }
+
+    private static GenericTableHandler newTableHandler(JsonValue queriesConfig) {
+        JsonValue tableConfig = json(object(
+                field("mainTable", "relationships"),
+                field("propertiesTable", "relationshipproperties"),
+                field("searchableDefault", Boolean.TRUE)));
+        return new GenericTableHandler(tableConfig, "openidm", queriesConfig, json(object()), 1, null);
+    }
+
+    private void createRelationship(GenericTableHandler tableHandler, String id, String firstId,
+            String firstPropertyName, String secondId, String secondPropertyName) throws Exception {
+        Map<String, Object> relationship = new HashMap<>();
+        relationship.put(RelationshipProvider.REPO_FIELD_FIRST_ID, firstId);
+        relationship.put(RelationshipProvider.REPO_FIELD_FIRST_PROPERTY_NAME, firstPropertyName);
+        relationship.put(RelationshipProvider.REPO_FIELD_SECOND_ID, secondId);
+        relationship.put(RelationshipProvider.REPO_FIELD_SECOND_PROPERTY_NAME, secondPropertyName);
+        relationship.put(RelationshipProvider.REPO_FIELD_PROPERTIES, new HashMap<String, Object>());
+        tableHandler.create(TYPE + "/" + id, TYPE, id, relationship, db);
+    }
+
+    /**
+     * Creates a provider of the reverse reports relationship, whose repo queries are run by the table handler and
+     * recorded.
+     */
+    private RelationshipProvider newProvider(final GenericTableHandler tableHandler,
+            final List<QueryRequest> requests) throws Exception {
+        Connection connection = mock(Connection.class);
+        when(connection.query(any(Context.class), any(QueryRequest.class), any(QueryResourceHandler.class)))
+                .thenAnswer(new Answer<QueryResponse>() {
+                    @Override
+                    public QueryResponse answer(InvocationOnMock invocation) throws Throwable {
+                        QueryRequest request = (QueryRequest) invocation.getArguments()[1];
+                        requests.add(request);
+                        tableHandler.query(TYPE, toParams(request), db, 0,
+                                (QueryResourceHandler) invocation.getArguments()[2]);
+                        return newQueryResponse();
+                    }
+                });
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.getConnection()).thenReturn(connection);
+
+        SchemaField schemaField = mock(SchemaField.class);
+        when(schemaField.getName()).thenReturn("reports");
+        when(schemaField.isReverseRelationship()).thenReturn(true);
+        when(schemaField.getReversePropertyName()).thenReturn("manager");
+        return new CollectionRelationshipProvider(connectionFactory, ResourcePath.resourcePath("managed/user"),
+                schemaField, mock(ActivityLogger.class), mock(ManagedObjectSetService.class));
+    }
+
+    /**
+     * Returns the parameters of a query as the JDBC repository passes them to its table handlers.
+     */
+    private static Map<String, Object> toParams(QueryRequest request) {
+        Map<String, Object> params = new HashMap<>();
+        params.putAll(request.getAdditionalParameters());
+        params.put(QUERY_ID, request.getQueryId());
+        params.put(QUERY_FILTER, request.getQueryFilter());
+        params.put(PAGE_SIZE, request.getPageSize());
+        params.put(PAGED_RESULTS_OFFSET, request.getPagedResultsOffset());
+        params.put(SORT_KEYS, request.getSortKeys());
+        return params;
+    }
+
+    /**
+     * Counts the tables of the statement the table handler renders for the query filter of a request.
+     */
+    private static int countJoinedTables(GenericTableHandler tableHandler, QueryRequest request) {
+        Map<String, Object> params = toParams(request);
+        params.put(PAGE_SIZE, String.valueOf(Integer.MAX_VALUE));
+        params.put(PAGED_RESULTS_OFFSET, "0");
+        params.put("_resource", TYPE);
+        String sql = tableHandler.renderQueryFilter(request.getQueryFilter(), new HashMap<String, Object>(), params);
+        int tables = 1;
+        Matcher joins = Pattern.compile("\\bJOIN\\b").matcher(sql);
+        while (joins.find()) {
+            tables++;
+        }
+        return tables;
+    }
+}
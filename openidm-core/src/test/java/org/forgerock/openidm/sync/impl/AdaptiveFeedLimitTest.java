@@ -0,0 +1,135 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.sync.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openidm.audit.util.Status;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the additive-increase/multiplicative-decrease behavior of the {@link AdaptiveFeedLimit}.
+ */
+public class AdaptiveFeedLimitTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private AdaptiveFeedLimit newLimit(ReconciliationStatistic stats) {
+        return new AdaptiveFeedLimit(4, 20, AdaptiveFeedLimit.DEFAULT_LATENCY_TOLERANCE, 0,
+                AdaptiveFeedLimit.DEFAULT_MAX_ERROR_RATE, stats);
+    }
+
+    /** Completes a window of samples of the given latency */
+    private void window(AdaptiveFeedLimit limit, long latency, boolean failed) {
+        for (int i = limit.getLimit(); i > 0; i--) {
+            limit.onSample(latency, failed);
+        }
+    }
+
+    @Test
+    public void testIncreasesWhileHealthy() {
+        AdaptiveFeedLimit limit = newLimit(mock(ReconciliationStatistic.class));
+        assertThat(limit.getLimit()).isEqualTo(8);
+
+        window(limit, 10 * MILLIS, false);
+        assertThat(limit.getLimit()).isEqualTo(9);
+
+        for (int i = 0; i < 50; i++) {
+            window(limit, 10 * MILLIS, false);
+        }
+        assertThat(limit.getLimit()).isEqualTo(20);
+        assertThat(limit.asMap().get("concurrency")).isEqualTo(4);
+    }
+
+    @Test
+    public void testBacksOffOnLatency() {
+        AdaptiveFeedLimit limit = newLimit(mock(ReconciliationStatistic.class));
+        window(limit, 10 * MILLIS, false);
+        assertThat(limit.getLimit()).isEqualTo(9);
+
+        window(limit, 100 * MILLIS, false);
+        assertThat(limit.getLimit()).isEqualTo(6);
+        assertThat(limit.asMap().get("decreases")).isEqualTo(1);
+    }
+
+    @Test
+    public void testBacksOffOnFailedTasks() {
+        AdaptiveFeedLimit limit = newLimit(mock(ReconciliationStatistic.class));
+        for (int i = 0; i < 10; i++) {
+            window(limit, 10 * MILLIS, true);
+        }
+        assertThat(limit.getLimit()).isEqualTo(1);
+    }
+
+    @Test
+    public void testBacksOffOnFailedReconciliations() {
+        ReconciliationStatistic stats = mock(ReconciliationStatistic.class);
+        AdaptiveFeedLimit limit = newLimit(stats);
+
+        // 3 of the 8 objects reconciled in the window failed
+        when(stats.getStatusProcessed(Status.FAILURE)).thenReturn(3);
+        window(limit, 10 * MILLIS, false);
+        assertThat(limit.getLimit()).isEqualTo(6);
+
+        // no further failures
+        window(limit, 10 * MILLIS, false);
+        assertThat(limit.getLimit()).isEqualTo(7);
+    }
+
+    @Test
+    public void testPermits() throws Exception {
+        AdaptiveFeedLimit limit = new AdaptiveFeedLimit(1, 1, AdaptiveFeedLimit.DEFAULT_LATENCY_TOLERANCE, 0,
+                AdaptiveFeedLimit.DEFAULT_MAX_ERROR_RATE, mock(ReconciliationStatistic.class));
+        assertThat(limit.tryAcquire(0, TimeUnit.MILLISECONDS)).isTrue();
+        assertThat(limit.tryAcquire(0, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(limit.asMap().get("inFlight")).isEqualTo(1);
+
+        Callable<String> task = limit.limit(new Callable<String>() {
+            @Override
+            public String call() {
+                return "done";
+            }
+        });
+        assertThat(task.call()).isEqualTo("done");
+        assertThat(limit.tryAcquire(0, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
+    @Test
+    public void testInFlightAfterBackOff() throws Exception {
+        AdaptiveFeedLimit limit = newLimit(mock(ReconciliationStatistic.class));
+        for (int i = 0; i < 8; i++) {
+            assertThat(limit.tryAcquire(0, TimeUnit.MILLISECONDS)).isTrue();
+        }
+        window(limit, 10 * MILLIS, true);
+        assertThat(limit.getLimit()).isEqualTo(6);
+
+        // the tasks in flight are not affected by the smaller limit, which holds back new ones until they complete
+        assertThat(limit.asMap().get("inFlight")).isEqualTo(8);
+        assertThat(limit.tryAcquire(0, TimeUnit.MILLISECONDS)).isFalse();
+        for (int i = 0; i < 3; i++) {
+            limit.release();
+        }
+        assertThat(limit.asMap().get("inFlight")).isEqualTo(5);
+        assertThat(limit.tryAcquire(0, TimeUnit.MILLISECONDS)).isTrue();
+        assertThat(limit.tryAcquire(0, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(limit.asMap().get("inFlight")).isEqualTo(6);
+    }
+}
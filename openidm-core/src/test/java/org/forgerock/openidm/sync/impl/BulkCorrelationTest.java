@@ -0,0 +1,271 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.sync.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Router.uriTemplate;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ConnectionFactory;
+import org.forgerock.json.resource.MemoryBackend;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.Resources;
+import org.forgerock.json.resource.Router;
+import org.forgerock.openidm.sync.impl.ReconciliationStatistic.DurationMetric;
+import org.forgerock.openidm.util.Scripts;
+import org.forgerock.script.ScriptRegistry;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.forgerock.util.query.QueryFilter;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests correlating source objects on a {@code correlationKey}, one at a time and in bulk.
+ */
+public class BulkCorrelationTest {
+
+    private static final String TARGET = "managed/user";
+
+    private ConnectionFactory connectionFactory;
+    private Context context;
+    private ReconciliationContext reconContext;
+    private ReconciliationStatistic statistics;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        Scripts.init(mock(ScriptRegistry.class));
+        Router router = new Router();
+        router.addRoute(uriTemplate(TARGET), new MemoryBackend());
+        connectionFactory = Resources.newInternalConnectionFactory(router);
+        context = new RootContext();
+        ObjectSetContext.push(context);
+        for (String[] target : new String[][] {
+            { "1", "bjensen@example.com" }, { "2", "scarter@example.com" }, { "3", "jdoe@example.com" } }) {
+            connectionFactory.getConnection().create(context,
+                    Requests.newCreateRequest(TARGET, target[0], json(object(field("email", target[1])))));
+        }
+
+        reconContext = mock(ReconciliationContext.class);
+        statistics = mock(ReconciliationStatistic.class);
+        when(reconContext.getStatistics()).thenReturn(statistics);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        ObjectSetContext.clear();
+    }
+
+    private ObjectMapping newMapping(boolean caseSensitive) {
+        return newMapping(caseSensitive, 2);
+    }
+
+    private ObjectMapping newMapping(boolean caseSensitive, int batchSize) {
+        ObjectMapping mapping = new ObjectMapping(connectionFactory, json(object(
+                field("name", "sourceUser_managedUser"),
+                field("source", "system/source/user"),
+                field("target", TARGET),
+                field("correlationKey", object(
+                        field("source", "mail"),
+                        field("target", "email"),
+                        field("caseSensitive", caseSensitive))),
+                field("correlationBatchSize", batchSize))));
+        mapping.initRelationships(Collections.singletonList(mapping));
+        return mapping;
+    }
+
+    private static ResultEntry source(String id, String mail) {
+        return new ResultEntry(id, mail == null ? json(object()) : json(object(field("mail", mail))));
+    }
+
+    private static List<String> ids(JsonValue targets) {
+        List<String> ids = new ArrayList<>();
+        for (JsonValue target : targets) {
+            ids.add(target.get("_id").asString());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testCorrelatesOneSourceObject() throws Exception {
+        Correlation correlation = new Correlation(newMapping(true));
+        Map<String, Object> scope = new HashMap<>();
+        scope.put("source", object(field("mail", array("nobody@example.com", "scarter@example.com"))));
+
+        assertThat(correlation.hasCorrelation(Link.DEFAULT_LINK_QUALIFIER)).isTrue();
+        assertThat(correlation.hasCorrelation("other")).isFalse();
+        assertThat(ids(correlation.correlate(scope, Link.DEFAULT_LINK_QUALIFIER, context, null))).containsExactly("2");
+    }
+
+    @Test
+    public void testCaseInsensitiveKey() throws Exception {
+        Map<String, Object> scope = new HashMap<>();
+        scope.put("source", object(field("mail", "BJensen@Example.com")));
+
+        // the values of both sides are compared in lower case, whether or not the repository ignores case
+        assertThat(ids(new Correlation(newMapping(false)).correlate(scope, Link.DEFAULT_LINK_QUALIFIER, context, null)))
+                .containsExactly("1");
+        assertThat(ids(new Correlation(newMapping(true)).correlate(scope, Link.DEFAULT_LINK_QUALIFIER, context, null)))
+                .isEmpty();
+
+        for (boolean caseSensitive : new boolean[] { false, true }) {
+            ObjectMapping mapping = newMapping(caseSensitive);
+            BulkCorrelation bulkCorrelation = new BulkCorrelation(mapping,
+                    new Correlation(mapping).getCorrelationKeys(), reconContext, context, null);
+            bulkCorrelation.prefetching(Collections.singletonList(source("s1", "BJensen@Example.com")).iterator())
+                    .next();
+            assertThat(ids(bulkCorrelation.take("s1", Link.DEFAULT_LINK_QUALIFIER, null)))
+                    .isEqualTo(caseSensitive ? Collections.<String>emptyList() : Collections.singletonList("1"));
+        }
+    }
+
+    @Test
+    public void testTargetFiltersStayUnderJoinLimit() throws Exception {
+        Correlation.Key key = Correlation.Key.parse(json(object(field("source", "mail"), field("target", "email"))))
+                .get(Link.DEFAULT_LINK_QUALIFIER);
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            values.add("user" + i + "@example.com");
+        }
+
+        List<QueryFilter<JsonPointer>> filters = key.targetFilters(values);
+
+        assertThat(filters).hasSize(3);
+        assertThat(filters.get(0).toString().split(" eq ")).hasSize(Correlation.Key.MAX_VALUES_PER_FILTER + 1);
+        assertThat(filters.get(2).toString().split(" eq ")).hasSize(21);
+    }
+
+    @Test
+    public void testCorrelatesLargeBatchesWithSeveralQueries() throws Exception {
+        ObjectMapping mapping = newMapping(true, 120);
+        BulkCorrelation bulkCorrelation = new BulkCorrelation(mapping,
+                new Correlation(mapping).getCorrelationKeys(), reconContext, context, null);
+        List<ResultEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 117; i++) {
+            entries.add(source("s" + i, "user" + i + "@example.com"));
+        }
+        entries.add(source("bjensen", "bjensen@example.com"));
+        entries.add(source("scarter", "scarter@example.com"));
+        entries.add(source("jdoe", "jdoe@example.com"));
+
+        bulkCorrelation.prefetching(entries.iterator()).next();
+
+        verify(statistics, times(3)).addDuration(eq(DurationMetric.bulkCorrelationQuery), anyLong());
+        assertThat(ids(bulkCorrelation.take("bjensen", Link.DEFAULT_LINK_QUALIFIER, null))).containsExactly("1");
+        assertThat(ids(bulkCorrelation.take("jdoe", Link.DEFAULT_LINK_QUALIFIER, null))).containsExactly("3");
+        assertThat(bulkCorrelation.take("s0", Link.DEFAULT_LINK_QUALIFIER, null).size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testCorrelatesBatchesWithOneQuery() throws Exception {
+        ObjectMapping mapping = newMapping(true);
+        LinkIndex allLinks = new LinkIndex(mapping);
+        allLinks.add(Link.DEFAULT_LINK_QUALIFIER, "s3", "3", "link3", "0");
+        BulkCorrelation bulkCorrelation = new BulkCorrelation(mapping,
+                new Correlation(mapping).getCorrelationKeys(), reconContext, context, allLinks);
+
+        List<ResultEntry> entries = Arrays.asList(
+                source("s1", "bjensen@example.com"),
+                source("s2", "nobody@example.com"),
+                source("s3", "jdoe@example.com"),
+                source("s4", null),
+                new ResultEntry("s5", null));
+        List<String> fed = new ArrayList<>();
+        for (Iterator<ResultEntry> iter = bulkCorrelation.prefetching(entries.iterator()); iter.hasNext();) {
+            fed.add(iter.next().getId());
+        }
+
+        assertThat(fed).containsExactly("s1", "s2", "s3", "s4", "s5");
+        // the second batch only has a linked source and one without a key, the third one no pre-queried value
+        verify(statistics, times(1)).addDuration(eq(DurationMetric.bulkCorrelationQuery), anyLong());
+        assertThat(ids(bulkCorrelation.take("s1", Link.DEFAULT_LINK_QUALIFIER, null))).containsExactly("1");
+        assertThat(bulkCorrelation.take("s1", Link.DEFAULT_LINK_QUALIFIER, null)).isNull();
+        assertThat(bulkCorrelation.take("s2", Link.DEFAULT_LINK_QUALIFIER, null).size()).isEqualTo(0);
+        assertThat(bulkCorrelation.take("s3", Link.DEFAULT_LINK_QUALIFIER, null)).isNull();
+        assertThat(bulkCorrelation.take("s4", Link.DEFAULT_LINK_QUALIFIER, null).size()).isEqualTo(0);
+        assertThat(bulkCorrelation.take("s5", Link.DEFAULT_LINK_QUALIFIER, null)).isNull();
+    }
+
+    @Test
+    public void testReleaseDropsHits() throws Exception {
+        ObjectMapping mapping = newMapping(true);
+        BulkCorrelation bulkCorrelation = new BulkCorrelation(mapping,
+                new Correlation(mapping).getCorrelationKeys(), reconContext, context, null);
+        bulkCorrelation.prefetching(Collections.singletonList(source("s1", "bjensen@example.com")).iterator()).next();
+
+        bulkCorrelation.release("s1");
+
+        assertThat(bulkCorrelation.take("s1", Link.DEFAULT_LINK_QUALIFIER, null)).isNull();
+    }
+
+    @Test
+    public void testSkipsEmptyTargetSet() throws Exception {
+        ObjectMapping mapping = newMapping(true);
+        when(reconContext.getTargets()).thenReturn(Collections.<String, JsonValue>emptyMap());
+        BulkCorrelation bulkCorrelation = new BulkCorrelation(mapping,
+                new Correlation(mapping).getCorrelationKeys(), reconContext, context, null);
+
+        bulkCorrelation.prefetching(Collections.singletonList(source("s1", "bjensen@example.com")).iterator()).next();
+
+        verify(statistics, never()).addDuration(eq(DurationMetric.bulkCorrelationQuery), anyLong());
+        assertThat(bulkCorrelation.take("s1", Link.DEFAULT_LINK_QUALIFIER, null)).isNull();
+    }
+
+    @Test
+    public void testMatchesLoadedTargetsInMemory() throws Exception {
+        ObjectMapping mapping = newMapping(false);
+        Map<String, JsonValue> loaded = new HashMap<>();
+        loaded.put("1", json(object(field("_id", "1"), field("email", "BJensen@example.com"))));
+        loaded.put("2", json(object(field("_id", "2"), field("email", array("scarter@example.com", "sam@example.com")))));
+        when(reconContext.hasTargetsValues()).thenReturn(true);
+        when(reconContext.getTargets()).thenReturn(loaded);
+        BulkCorrelation bulkCorrelation = new BulkCorrelation(mapping,
+                new Correlation(mapping).getCorrelationKeys(), reconContext, context, null);
+
+        bulkCorrelation.prefetching(Collections.singletonList(source("s1", "bjensen@example.com")).iterator()).next();
+
+        verify(statistics, never()).addDuration(eq(DurationMetric.bulkCorrelationQuery), anyLong());
+        assertThat(ids(bulkCorrelation.take("s1", Link.DEFAULT_LINK_QUALIFIER,
+                json(object(field("mail", "bjensen@EXAMPLE.com")))))).containsExactly("1");
+        assertThat(ids(bulkCorrelation.take("s2", Link.DEFAULT_LINK_QUALIFIER,
+                json(object(field("mail", array("SAM@example.com", "scarter@example.com"))))))).containsExactly("2");
+        assertThat(bulkCorrelation.take("s3", Link.DEFAULT_LINK_QUALIFIER,
+                json(object(field("mail", "nobody@example.com")))).size()).isEqualTo(0);
+        assertThat(bulkCorrelation.take("s1", "other", json(object()))).isNull();
+    }
+}
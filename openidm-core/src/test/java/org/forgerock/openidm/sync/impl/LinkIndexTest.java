@@ -0,0 +1,94 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.sync.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.UUID;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link LinkIndex} encoding and lookups.
+ */
+public class LinkIndexTest {
+
+    @Test
+    public void testGet() {
+        LinkIndex index = new LinkIndex(null);
+        String linkId = UUID.randomUUID().toString();
+        index.add("default", "uid=bjensen,ou=people", "8a7f2b2e-0c1f-4a6e-9d55-b1a6c0c3f0aa", linkId, "1");
+
+        Link link = index.get("default", "uid=bjensen,ou=people");
+        assertThat(link.initialized).isTrue();
+        assertThat(link.linkQualifier).isEqualTo("default");
+        assertThat(link.sourceId).isEqualTo("uid=bjensen,ou=people");
+        assertThat(link.targetId).isEqualTo("8a7f2b2e-0c1f-4a6e-9d55-b1a6c0c3f0aa");
+        assertThat(link._id).isEqualTo(linkId);
+        assertThat(link._rev).isEqualTo("1");
+    }
+
+    @Test
+    public void testNonCanonicalIdsAreKeptVerbatim() {
+        LinkIndex index = new LinkIndex(null);
+        index.add("default", "8A7F2B2E-0C1F-4A6E-9D55-B1A6C0C3F0AA", "\u00fc-1", "42", null);
+
+        Link link = index.get("default", "8A7F2B2E-0C1F-4A6E-9D55-B1A6C0C3F0AA");
+        assertThat(link.targetId).isEqualTo("\u00fc-1");
+        assertThat(link._id).isEqualTo("42");
+        assertThat(link._rev).isNull();
+        assertThat(index.get("default", "8a7f2b2e-0c1f-4a6e-9d55-b1a6c0c3f0aa")).isNull();
+    }
+
+    @Test
+    public void testQualifiersAreSeparate() {
+        LinkIndex index = new LinkIndex(null);
+        index.add("employee", "1", "a", "l1", "0");
+        index.add("contractor", "1", "b", "l2", "0");
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.get("employee", "1").targetId).isEqualTo("a");
+        assertThat(index.get("contractor", "1").targetId).isEqualTo("b");
+        assertThat(index.get("default", "1")).isNull();
+        assertThat(index.get("employee", "2")).isNull();
+    }
+
+    @Test
+    public void testAddReplacesExistingLink() {
+        LinkIndex index = new LinkIndex(null);
+        index.add("default", "1", "a", "l1", "0");
+        index.add("default", "1", "b", "l1", "1");
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.get("default", "1").targetId).isEqualTo("b");
+        assertThat(index.get("default", "1")._rev).isEqualTo("1");
+    }
+
+    @Test
+    public void testGrow() {
+        LinkIndex index = new LinkIndex(null);
+        for (int i = 0; i < 10000; i++) {
+            index.add("default", "source" + i, "target" + i, UUID.randomUUID().toString(), String.valueOf(i));
+        }
+
+        assertThat(index.size()).isEqualTo(10000);
+        for (int i = 0; i < 10000; i++) {
+            Link link = index.get("default", "source" + i);
+            assertThat(link.targetId).isEqualTo("target" + i);
+            assertThat(link._rev).isEqualTo(String.valueOf(i));
+        }
+    }
+}
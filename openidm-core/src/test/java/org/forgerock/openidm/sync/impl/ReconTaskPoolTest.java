@@ -0,0 +1,236 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.sync.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.forgerock.openidm.sync.SynchronizationException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the quotas and priorities of the shared {@link ReconTaskPool}.
+ */
+public class ReconTaskPoolTest {
+
+    private ReconTaskPool pool;
+
+    @AfterMethod
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testQuota() throws Exception {
+        pool = new ReconTaskPool(4);
+        ReconTaskPool.Lane lane = pool.newLane("systemLdapAccounts_managedUser", 2, 1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            lane.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int current = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), current));
+                    }
+                    sleep(10);
+                    running.decrementAndGet();
+                }
+            });
+        }
+        lane.shutdown();
+
+        assertThat(lane.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(maxRunning.get()).isEqualTo(2);
+        assertThat(pool.getCompletedTasks()).isEqualTo(10);
+        assertThat(pool.getLaneStatistics()).isEmpty();
+    }
+
+    @Test
+    public void testPriority() throws Exception {
+        pool = new ReconTaskPool(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        ReconTaskPool.Lane blocker = pool.newLane("blocker", 1, 1);
+        ReconTaskPool.Lane low = pool.newLane("low", 1, 1);
+        ReconTaskPool.Lane high = pool.newLane("high", 1, 3);
+
+        // hold the only thread until both lanes have queued their tasks
+        blocker.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        started.await();
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        for (int i = 0; i < 20; i++) {
+            low.execute(record(order, "low"));
+            high.execute(record(order, "high"));
+        }
+        assertThat(pool.getQueuedTasks()).isEqualTo(40);
+        gate.countDown();
+
+        low.shutdown();
+        high.shutdown();
+        assertThat(low.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(high.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        // while both lanes had tasks queued, the high priority lane got three turns for each low priority turn
+        assertThat(Collections.frequency(order.subList(0, 20), "high")).isEqualTo(15);
+    }
+
+    @Test(expectedExceptions = RejectedExecutionException.class)
+    public void testRejectsAfterShutdown() {
+        pool = new ReconTaskPool(1);
+        ReconTaskPool.Lane lane = pool.newLane("lane", 1, 1);
+        lane.shutdown();
+        lane.execute(record(new ArrayList<String>(), "task"));
+    }
+
+    @Test
+    public void testShutdownDuringRecon() throws Exception {
+        pool = new ReconTaskPool(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        ReconciliationContext reconContext = mock(ReconciliationContext.class);
+        when(reconContext.getExcecutor()).thenReturn(pool.newLane("mapping", 1, 1));
+        List<ResultEntry> entries = new ArrayList<ResultEntry>();
+        for (int i = 0; i < 10; i++) {
+            entries.add(new ResultEntry(String.valueOf(i), null));
+        }
+        final ReconFeeder feeder = new ReconFeeder(entries.iterator(), reconContext) {
+            @Override
+            Callable<Void> createTask(ResultEntry entry) {
+                return new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        started.countDown();
+                        gate.await();
+                        return null;
+                    }
+                };
+            }
+        };
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread recon = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    feeder.execute();
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        recon.start();
+
+        // the recon waits for its first task, with the others queued, when the service is deactivated
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        pool.shutdown();
+        gate.countDown();
+
+        recon.join(TimeUnit.SECONDS.toMillis(10));
+        assertThat(recon.isAlive()).isFalse();
+        assertThat(failure.get()).isInstanceOf(SynchronizationException.class);
+        assertThat(failure.get().getCause()).isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    public void testShutdownNow() throws Exception {
+        pool = new ReconTaskPool(1);
+        ReconTaskPool.Lane lane = pool.newLane("lane", 1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Future<?> running = lane.submit(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            }
+        });
+        Future<?> queued = lane.submit(record(new ArrayList<String>(), "queued"));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(lane.shutdownNow()).hasSize(1);
+
+        // the running task is interrupted, the queued task fails without running
+        running.get(10, TimeUnit.SECONDS);
+        assertThat(interrupted.get()).isTrue();
+        try {
+            queued.get(10, TimeUnit.SECONDS);
+            throw new AssertionError("expected the queued task to be rejected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(RejectedExecutionException.class);
+        }
+        assertThat(lane.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        // the pool thread is not left interrupted for the tasks of other lanes
+        ReconTaskPool.Lane other = pool.newLane("other", 1, 1);
+        final AtomicBoolean otherInterrupted = new AtomicBoolean(true);
+        other.submit(new Runnable() {
+            @Override
+            public void run() {
+                otherInterrupted.set(Thread.currentThread().isInterrupted());
+            }
+        }).get(10, TimeUnit.SECONDS);
+        assertThat(otherInterrupted.get()).isFalse();
+    }
+
+    private static Runnable record(final List<String> order, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
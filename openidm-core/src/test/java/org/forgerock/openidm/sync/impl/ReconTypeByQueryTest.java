@@ -0,0 +1,110 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.sync.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import javax.script.Bindings;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.JsonValueException;
+import org.forgerock.openidm.util.Scripts;
+import org.forgerock.script.Script;
+import org.forgerock.script.ScriptEntry;
+import org.forgerock.script.ScriptRegistry;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the source partitioning of {@link ReconTypeByQuery}.
+ */
+public class ReconTypeByQueryTest {
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        ScriptRegistry mockScriptRegistry = mock(ScriptRegistry.class);
+        ScriptEntry mockScriptEntry = mock(ScriptEntry.class);
+        Script mockScript = mock(Script.class);
+        when(mockScript.createBindings()).thenReturn(mock(Bindings.class));
+        when(mockScriptEntry.getScript(any(Context.class))).thenReturn(mockScript);
+        when(mockScriptRegistry.takeScript(any(JsonValue.class))).thenReturn(mockScriptEntry);
+        Scripts.init(mockScriptRegistry);
+    }
+
+    private ReconTypeHandler createReconTypeHandler(JsonValue mappingConfig) throws Exception {
+        mappingConfig.put("name", "testMapping");
+        mappingConfig.put("source", "system/ldap/account");
+        mappingConfig.put("target", "managed/user");
+        mappingConfig.put("taskThreads", 0);
+        ObjectMapping mapping = new ObjectMapping(null, mappingConfig);
+        ReconciliationContext reconContext = new ReconciliationContext(ReconciliationService.ReconAction.recon,
+                mapping, new RootContext("recon"), json(object()), null, null);
+        return reconContext.getReconHandler();
+    }
+
+    @Test
+    public void testNotPartitioned() throws Exception {
+        ReconTypeHandler handler = createReconTypeHandler(json(object()));
+
+        assertThat(handler.getSourcePartitionCount()).isEqualTo(1);
+        assertThat(handler.getReconParameters().isDefined("sourcePartitions")).isFalse();
+    }
+
+    @Test
+    public void testPartitionsReplaceDefaultQuery() throws Exception {
+        ReconTypeHandler handler = createReconTypeHandler(json(object(
+                field("sourcePartitions", array("/_id sw \"a\"", "/_id sw \"b\"")))));
+
+        assertThat(handler.getSourcePartitionCount()).isEqualTo(2);
+        JsonValue partition = handler.getReconParameters().get("sourcePartitions").get(1);
+        assertThat(partition.get("_queryFilter").asString()).isEqualTo("/_id sw \"b\"");
+        assertThat(partition.get("_fields").asString()).isEqualTo("_id");
+        assertThat(partition.get("resourceName").asString()).isEqualTo("system/ldap/account");
+        assertThat(partition.isDefined("queryId")).isFalse();
+    }
+
+    @Test
+    public void testPartitionsRestrictSourceFilter() throws Exception {
+        ReconTypeHandler handler = createReconTypeHandler(json(object(
+                field("sourceQuery", object(field("_queryFilter", "active eq true"))),
+                field("sourcePartitions", array(
+                        "/_id sw \"a\"",
+                        object(field("_queryId", "query-inactive")))))));
+
+        assertThat(handler.getSourcePartitionCount()).isEqualTo(2);
+        JsonValue partitions = handler.getReconParameters().get("sourcePartitions");
+        assertThat(partitions.get(0).get("_queryFilter").asString())
+                .isEqualTo("(active eq true) and (/_id sw \"a\")");
+        assertThat(partitions.get(1).get("_queryId").asString()).isEqualTo("query-inactive");
+        assertThat(partitions.get(1).get("resourceName").asString()).isEqualTo("system/ldap/account");
+    }
+
+    @Test(expectedExceptions = JsonValueException.class)
+    public void testPartitionFilterRequiresFilterQuery() throws Exception {
+        createReconTypeHandler(json(object(
+                field("sourceQuery", object(field("_queryId", "query-active"))),
+                field("sourcePartitions", array("/_id sw \"a\"")))));
+    }
+}
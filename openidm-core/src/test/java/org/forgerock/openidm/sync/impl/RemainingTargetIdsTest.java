@@ -0,0 +1,137 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.sync.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.forgerock.json.JsonValue;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link RemainingTargetIds} tracker.
+ */
+public class RemainingTargetIdsTest {
+
+    @Test
+    public void testRemove() {
+        RemainingTargetIds remaining = new RemainingTargetIds(
+                new ResultIterable(Arrays.asList("a", "b", "c"), null));
+
+        assertThat(remaining.remove("b")).isTrue();
+        assertThat(remaining.remove("b")).isFalse();
+        assertThat(remaining.remove("unknown")).isFalse();
+        assertThat(remaining).hasSize(2);
+        assertThat(remaining.contains("b")).isFalse();
+        assertThat(remaining).containsExactly("a", "c");
+    }
+
+    @Test
+    public void testDuplicatesAreTrackedOnce() {
+        RemainingTargetIds remaining = new RemainingTargetIds(
+                new ResultIterable(Arrays.asList("a", "b", "a"), null));
+
+        assertThat(remaining).hasSize(2);
+        assertThat(remaining).containsExactly("a", "b");
+        remaining.remove("a");
+        assertThat(remaining).containsExactly("b");
+    }
+
+    @Test
+    public void testEntriesKeepValues() {
+        List<JsonValue> values = Arrays.asList(
+                json(object(field("name", "a"))),
+                json(object(field("name", "b"))),
+                json(object(field("name", "c"))));
+        RemainingTargetIds remaining = new RemainingTargetIds(
+                new ResultIterable(Arrays.asList("a", "b", "c"), values));
+        remaining.remove("a");
+
+        Iterator<ResultEntry> entries = remaining.entries();
+        ResultEntry entry = entries.next();
+        assertThat(entry.getId()).isEqualTo("b");
+        assertThat(entry.getValue().get("name").asString()).isEqualTo("b");
+        entries.remove();
+        assertThat(entries.next().getValue().get("name").asString()).isEqualTo("c");
+        assertThat(entries.hasNext()).isFalse();
+        assertThat(remaining).containsExactly("c");
+    }
+
+    @Test
+    public void testEmpty() {
+        RemainingTargetIds remaining = new RemainingTargetIds(
+                new ResultIterable(Collections.<String>emptyList(), Collections.<JsonValue>emptyList()));
+
+        assertThat(remaining).isEmpty();
+        assertThat(remaining.remove("a")).isFalse();
+        assertThat(remaining.entries().hasNext()).isFalse();
+    }
+
+    @Test
+    public void testConcurrentRemove() throws Exception {
+        final int count = 10000;
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add("id" + i);
+        }
+        final RemainingTargetIds remaining = new RemainingTargetIds(new ResultIterable(ids, null));
+
+        // every id but the multiples of 10 is removed by two competing threads
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int offset = t % 2;
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        int removed = 0;
+                        for (int i = offset; i < count + offset; i++) {
+                            int id = i % count;
+                            if (id % 10 != 0 && remaining.remove("id" + id)) {
+                                removed++;
+                            }
+                        }
+                        return removed;
+                    }
+                }));
+            }
+            int removed = 0;
+            for (Future<Integer> future : futures) {
+                removed += future.get();
+            }
+            assertThat(removed).isEqualTo(count - count / 10);
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(remaining).hasSize(count / 10);
+        for (String id : remaining) {
+            assertThat(Integer.parseInt(id.substring(2)) % 10).isEqualTo(0);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.info.health;
+
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.forgerock.api.annotations.Handler;
+import org.forgerock.api.annotations.Operation;
+import org.forgerock.api.annotations.Read;
+import org.forgerock.api.annotations.Schema;
+import org.forgerock.api.annotations.SingletonProvider;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ReadRequest;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.openidm.info.health.api.MetricsInfoResource;
+import org.forgerock.openidm.smartevent.core.LatencyHistogram;
+import org.forgerock.openidm.smartevent.core.StatisticsHandler;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.promise.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports the smartevent statistics, the reconciliation thread pools, the repository audit buffers, the script cache
+ * and the JVM memory as metrics in the OpenMetrics text format, for scraping by Prometheus or a compatible collector.
+ * <p>
+ * Reading {@code health/metrics?_fields=metrics&_mimeType=text/plain} returns the text as is, {@code _mimeType}
+ * applying to the single field selected with {@code _fields}. The metrics are taken from memory only, so the endpoint
+ * can be scraped every few seconds; the event metrics are only populated for the events enabled with
+ * {@code openidm.smartevent.enabled}.
+ * <p>
+ * The event percentiles of {@code openidm_event_latency_seconds} cover every event since startup, not a recent
+ * window, so they move slowly on a long running instance. Rate queries over the histogram buckets of
+ * {@code openidm_event_duration_seconds} give the recent percentiles.
+ */
+@SingletonProvider(@Handler(
+        id = "metricsInfoResourceProvider:0",
+        title = "Health - Metrics",
+        description = "Returns event statistics, reconciliation thread pool, audit buffer, script cache and memory "
+                + "metrics in the OpenMetrics text format.",
+        mvccSupported = false,
+        resourceSchema = @Schema(fromType = MetricsInfoResource.class)))
+public class MetricsInfoResourceProvider extends AbstractInfoResourceProvider {
+
+    private final static Logger logger = LoggerFactory.getLogger(MetricsInfoResourceProvider.class);
+
+    private static final String RECON_MBEAN_NAME = "org.forgerock.openidm.recon:type=Reconciliation";
+    private static final String AUDIT_BUFFER_MBEAN_NAMES = "org.forgerock.openidm.audit:type=RepositoryAuditBuffer,*";
+    private static final String SCRIPT_CACHE_MBEAN_NAME = "org.forgerock.openidm.script:type=CompiledScriptCache";
+
+    @Read(operationDescription = @Operation(description = "Read the metrics in the OpenMetrics text format."))
+    @Override
+    public Promise<ResourceResponse, ResourceException> readInstance(Context context, ReadRequest request) {
+        final Map<String, LatencyHistogram.Snapshot> events = StatisticsHandler.getSnapshots();
+        final OpenMetricsWriter writer = new OpenMetricsWriter()
+                .durationHistograms("openidm_event_duration_seconds",
+                        "Duration of the instrumented events, by smartevent name", events)
+                .durationSummaries("openidm_event_latency_seconds",
+                        "Percentiles of the duration of the instrumented events since startup, by smartevent name", events);
+        writeReconMetrics(writer);
+        writeAuditBufferMetrics(writer);
+        writeScriptCacheMetrics(writer);
+
+        final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        writer.gauge("openidm_jvm_heap_used_bytes", "Used heap memory",
+                memoryMXBean.getHeapMemoryUsage().getUsed())
+                .gauge("openidm_jvm_heap_committed_bytes", "Committed heap memory",
+                        memoryMXBean.getHeapMemoryUsage().getCommitted())
+                .gauge("openidm_jvm_threads", "Live threads", ManagementFactory.getThreadMXBean().getThreadCount());
+
+        final JsonValue result = json(object(field("metrics", writer.toString())));
+        return newResourceResponse("", "", result).asPromise();
+    }
+
+    /**
+     * Writes the gauges of the reconciliation thread pools, skipping the recon task pool if it is not available and
+     * all of them if reconciliation is not running.
+     */
+    private void writeReconMetrics(OpenMetricsWriter writer) {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName objectName = new ObjectName(RECON_MBEAN_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                return;
+            }
+            writer.gauge("openidm_recon_active_threads", "Active threads of the reconciliation thread pool",
+                    (Number) mBeanServer.getAttribute(objectName, "ActiveThreads"))
+                    .gauge("openidm_recon_pool_threads", "Threads of the reconciliation thread pool",
+                            (Number) mBeanServer.getAttribute(objectName, "PoolSize"))
+                    .gauge("openidm_recon_max_pool_threads", "Maximum threads of the reconciliation thread pool",
+                            (Number) mBeanServer.getAttribute(objectName, "MaximumPoolSize"));
+        } catch (JMException e) {
+            logger.debug("Unable to get reconciliation mbean", e);
+            return;
+        }
+        try {
+            writer.gauge("openidm_recon_active_tasks", "Recon tasks executing in the recon task pool",
+                    (Number) mBeanServer.getAttribute(new ObjectName(RECON_MBEAN_NAME), "ActiveTasks"))
+                    .gauge("openidm_recon_queued_tasks", "Recon tasks waiting for a thread of the recon task pool",
+                            (Number) mBeanServer.getAttribute(new ObjectName(RECON_MBEAN_NAME), "QueuedTasks"))
+                    .counter("openidm_recon_completed_tasks", "Recon tasks completed by the recon task pool",
+                            (Number) mBeanServer.getAttribute(new ObjectName(RECON_MBEAN_NAME), "CompletedTasks"));
+        } catch (JMException e) {
+            logger.debug("Recon task pool not available", e);
+        }
+    }
+
+    /**
+     * Writes the metrics of the write-behind buffers of the repository audit event handlers, labelled with the
+     * handler name, if any handler buffers its events.
+     */
+    private void writeAuditBufferMetrics(OpenMetricsWriter writer) {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        final Map<String, Number> depths = new TreeMap<>();
+        final Map<String, Number> capacities = new TreeMap<>();
+        final Map<String, Number> written = new TreeMap<>();
+        final Map<String, Number> failed = new TreeMap<>();
+        final Map<String, Number> dropped = new TreeMap<>();
+        try {
+            for (ObjectName objectName : mBeanServer.queryNames(new ObjectName(AUDIT_BUFFER_MBEAN_NAMES), null)) {
+                String handler = objectName.getKeyProperty("name");
+                if (handler.startsWith("\"")) {
+                    handler = ObjectName.unquote(handler);
+                }
+                depths.put(handler, (Number) mBeanServer.getAttribute(objectName, "QueueDepth"));
+                capacities.put(handler, (Number) mBeanServer.getAttribute(objectName, "Capacity"));
+                written.put(handler, (Number) mBeanServer.getAttribute(objectName, "WrittenEvents"));
+                failed.put(handler, (Number) mBeanServer.getAttribute(objectName, "FailedEvents"));
+                dropped.put(handler, (Number) mBeanServer.getAttribute(objectName, "DroppedEvents"));
+            }
+        } catch (JMException e) {
+            logger.debug("Unable to get audit buffer mbeans", e);
+            return;
+        }
+        if (depths.isEmpty()) {
+            return;
+        }
+        writer.gauges("openidm_audit_buffered_events", "Audit events waiting to be written to the repository",
+                "handler", depths)
+                .gauges("openidm_audit_buffer_capacity", "Maximum audit events waiting to be written", "handler",
+                        capacities)
+                .counters("openidm_audit_written_events", "Audit events written to the repository", "handler",
+                        written)
+                .counters("openidm_audit_failed_events", "Audit events that failed to be written to the repository",
+                        "handler", failed)
+                .counters("openidm_audit_dropped_events", "Audit events dropped because the buffer was full",
+                        "handler", dropped);
+    }
+
+    /**
+     * Writes the metrics of the cache of the inline scripts, if the script service is running.
+     */
+    private void writeScriptCacheMetrics(OpenMetricsWriter writer) {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName objectName = new ObjectName(SCRIPT_CACHE_MBEAN_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                return;
+            }
+            writer.gauge("openidm_script_cache_scripts", "Inline scripts in the script cache",
+                    (Number) mBeanServer.getAttribute(objectName, "Size"))
+                    .gauge("openidm_script_cache_max_scripts", "Maximum inline scripts in the script cache",
+                            (Number) mBeanServer.getAttribute(objectName, "MaxSize"))
+                    .counter("openidm_script_cache_hits", "Inline scripts taken from the script cache",
+                            (Number) mBeanServer.getAttribute(objectName, "Hits"))
+                    .counter("openidm_script_cache_misses", "Inline scripts compiled as they were not in the cache",
+                            (Number) mBeanServer.getAttribute(objectName, "Misses"))
+                    .counter("openidm_script_cache_evictions", "Inline scripts evicted from the full script cache",
+                            (Number) mBeanServer.getAttribute(objectName, "Evictions"))
+                    .gauge("openidm_script_warmed_up_scripts", "Scripts compiled by the last warm-up of the scripts",
+                            (Number) mBeanServer.getAttribute(objectName, "WarmedUpScripts"));
+        } catch (JMException e) {
+            logger.debug("Unable to get script cache mbean", e);
+        }
+    }
+}
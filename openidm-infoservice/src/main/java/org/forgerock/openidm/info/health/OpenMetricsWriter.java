@@ -0,0 +1,201 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.info.health;
+
+import java.util.Map;
+
+import org.forgerock.openidm.smartevent.core.LatencyHistogram;
+
+/**
+ * Writes metrics in the OpenMetrics text format, which Prometheus also reads as its plain text format.
+ * <p>
+ * Each metric family is written with its {@code # TYPE} and {@code # HELP} lines followed by all its samples, and
+ * {@link #toString()} terminates the exposition with {@code # EOF}.
+ */
+class OpenMetricsWriter {
+
+    /** Upper bounds, in seconds, of the buckets of the event duration histograms */
+    static final String[] DURATION_BUCKETS = {
+        "0.0005", "0.001", "0.0025", "0.005", "0.01", "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"
+    };
+
+    private static final double NANOS_PER_SECOND = 1000000000d;
+
+    private final StringBuilder out = new StringBuilder(4096);
+
+    /**
+     * Writes a gauge.
+     *
+     * @param name the metric name
+     * @param help the description of the metric
+     * @param value the current value
+     * @return this writer
+     */
+    OpenMetricsWriter gauge(String name, String help, Number value) {
+        family(name, "gauge", help);
+        sample(name, null, null, value);
+        return this;
+    }
+
+    /**
+     * Writes a counter, whose sample gets the {@code _total} suffix.
+     *
+     * @param name the metric name, without the suffix
+     * @param help the description of the metric
+     * @param value the current count
+     * @return this writer
+     */
+    OpenMetricsWriter counter(String name, String help, Number value) {
+        family(name, "counter", help);
+        sample(name + "_total", null, null, value);
+        return this;
+    }
+
+    /**
+     * Writes a gauge with a sample per value of a label.
+     *
+     * @param name the metric name
+     * @param help the description of the metric
+     * @param label the name of the label
+     * @param values the current value by label value
+     * @return this writer
+     */
+    OpenMetricsWriter gauges(String name, String help, String label, Map<String, ? extends Number> values) {
+        family(name, "gauge", help);
+        for (Map.Entry<String, ? extends Number> value : values.entrySet()) {
+            sample(name, null, label(label, value.getKey()), value.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * Writes a counter with a sample per value of a label, which get the {@code _total} suffix.
+     *
+     * @param name the metric name, without the suffix
+     * @param help the description of the metric
+     * @param label the name of the label
+     * @param values the current count by label value
+     * @return this writer
+     */
+    OpenMetricsWriter counters(String name, String help, String label, Map<String, ? extends Number> values) {
+        family(name, "counter", help);
+        for (Map.Entry<String, ? extends Number> value : values.entrySet()) {
+            sample(name + "_total", null, label(label, value.getKey()), value.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * Writes the cumulative {@link #DURATION_BUCKETS} histogram of the durations of each event, labelled with the
+     * event name.
+     *
+     * @param name the metric name
+     * @param help the description of the metric
+     * @param events the distribution of the durations of each event, by event name
+     * @return this writer
+     */
+    OpenMetricsWriter durationHistograms(String name, String help, Map<String, LatencyHistogram.Snapshot> events) {
+        family(name, "histogram", help);
+        for (Map.Entry<String, LatencyHistogram.Snapshot> event : events.entrySet()) {
+            LatencyHistogram.Snapshot snapshot = event.getValue();
+            for (String bound : DURATION_BUCKETS) {
+                sample(name + "_bucket", event.getKey(), "le=\"" + bound + "\"",
+                        snapshot.getCountAtOrBelow((long) (Double.parseDouble(bound) * NANOS_PER_SECOND)));
+            }
+            sample(name + "_bucket", event.getKey(), "le=\"+Inf\"", snapshot.getCount());
+            sample(name + "_count", event.getKey(), null, snapshot.getCount());
+            sample(name + "_sum", event.getKey(), null, snapshot.getTotal() / NANOS_PER_SECOND);
+        }
+        return this;
+    }
+
+    /**
+     * Writes the p50, p99 and p999 durations of each event since startup, labelled with the event name, as a summary.
+     *
+     * @param name the metric name
+     * @param help the description of the metric
+     * @param events the distribution of the durations of each event, by event name
+     * @return this writer
+     */
+    OpenMetricsWriter durationSummaries(String name, String help, Map<String, LatencyHistogram.Snapshot> events) {
+        family(name, "summary", help);
+        for (Map.Entry<String, LatencyHistogram.Snapshot> event : events.entrySet()) {
+            LatencyHistogram.Snapshot snapshot = event.getValue();
+            if (snapshot.getCount() > 0) {
+                for (String quantile : new String[] { "0.5", "0.99", "0.999" }) {
+                    sample(name, event.getKey(), "quantile=\"" + quantile + "\"",
+                            snapshot.getValueAtPercentile(Double.parseDouble(quantile) * 100) / NANOS_PER_SECOND);
+                }
+            }
+            sample(name + "_count", event.getKey(), null, snapshot.getCount());
+            sample(name + "_sum", event.getKey(), null, snapshot.getTotal() / NANOS_PER_SECOND);
+        }
+        return this;
+    }
+
+    private void family(String name, String type, String help) {
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    }
+
+    private void sample(String name, String event, String label, Number value) {
+        out.append(name);
+        if (event != null || label != null) {
+            out.append('{');
+            if (event != null) {
+                out.append(label("event", event));
+            }
+            if (label != null) {
+                out.append(event != null ? "," : "").append(label);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String label(String name, String value) {
+        StringBuilder label = new StringBuilder(name).append("=\"");
+        escape(label, value);
+        return label.append('"').toString();
+    }
+
+    private static void escape(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            default:
+                out.append(c);
+            }
+        }
+    }
+
+    /**
+     * @return the metrics written, terminated by {@code # EOF}
+     */
+    @Override
+    public String toString() {
+        return out.toString() + "# EOF\n";
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.info.health.api;
+
+import org.forgerock.api.annotations.Description;
+import org.forgerock.api.annotations.ReadOnly;
+
+/**
+ * Api POJO for {@link org.forgerock.openidm.info.health.MetricsInfoResourceProvider}.
+ */
+public class MetricsInfoResource {
+    private String metrics;
+
+    /**
+     * Returns the metrics in the OpenMetrics text format.
+     *
+     * @return the metrics in the OpenMetrics text format.
+     */
+    @Description("Metrics in the OpenMetrics text format, returned as is when read with "
+            + "_fields=metrics&_mimeType=text/plain. The event latency percentiles cover every event since startup, "
+            + "not a recent window")
+    @ReadOnly
+    public String getMetrics() {
+        return metrics;
+    }
+}
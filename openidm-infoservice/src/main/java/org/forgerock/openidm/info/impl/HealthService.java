@@ -58,6 +58,7 @@ import org.forgerock.openidm.core.ServerConstants;
 import org.forgerock.openidm.info.HealthInfo;
 import org.forgerock.openidm.info.health.DatabaseInfoResourceProvider;
 import org.forgerock.openidm.info.health.MemoryInfoResourceProvider;
+import org.forgerock.openidm.info.health.MetricsInfoResourceProvider;
 import org.forgerock.openidm.info.health.OsInfoResourceProvider;
 import org.forgerock.openidm.info.health.ReconInfoResourceProvider;
 import org.forgerock.openidm.osgi.ServiceTrackerListener;
@@ -283,7 +284,7 @@ public class HealthService
     };
 
     /**
-     * A router used to service requests for system health endpoints such as: os, memory, recon, jdbc.
+     * A router used to service requests for system health endpoints such as: os, memory, recon, jdbc, metrics.
      */
     private final Router router = new Router();
     
@@ -387,6 +388,7 @@ public class HealthService
         router.addRoute(uriTemplate("memory"), new MemoryInfoResourceProvider());
         router.addRoute(uriTemplate("recon"), new ReconInfoResourceProvider());
         router.addRoute(uriTemplate("jdbc"), new DatabaseInfoResourceProvider());
+        router.addRoute(uriTemplate("metrics"), new MetricsInfoResourceProvider());
 
         // Check if the framework has already started.  If so, schedule the start up
         // thread that checks the state of OpenIDM.
@@ -0,0 +1,104 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.info.health;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.forgerock.openidm.smartevent.core.LatencyHistogram;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the OpenMetrics text written by the {@link OpenMetricsWriter}.
+ */
+public class OpenMetricsWriterTest {
+
+    @Test
+    public void testGaugeAndCounter() {
+        String text = new OpenMetricsWriter()
+                .gauge("openidm_recon_active_threads", "Active threads", 3)
+                .counter("openidm_recon_completed_tasks", "Completed tasks", 42L)
+                .toString();
+
+        assertThat(text).isEqualTo("# TYPE openidm_recon_active_threads gauge\n"
+                + "# HELP openidm_recon_active_threads Active threads\n"
+                + "openidm_recon_active_threads 3\n"
+                + "# TYPE openidm_recon_completed_tasks counter\n"
+                + "# HELP openidm_recon_completed_tasks Completed tasks\n"
+                + "openidm_recon_completed_tasks_total 42\n"
+                + "# EOF\n");
+    }
+
+    @Test
+    public void testLabelledGaugesAndCounters() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        depths.put("repo", 12);
+        depths.put("repo \"2\"", 0);
+
+        String text = new OpenMetricsWriter()
+                .gauges("openidm_audit_buffered_events", "Buffered events", "handler", depths)
+                .counters("openidm_audit_dropped_events", "Dropped events", "handler",
+                        Collections.singletonMap("repo", 5L))
+                .toString();
+
+        assertThat(text).isEqualTo("# TYPE openidm_audit_buffered_events gauge\n"
+                + "# HELP openidm_audit_buffered_events Buffered events\n"
+                + "openidm_audit_buffered_events{handler=\"repo\"} 12\n"
+                + "openidm_audit_buffered_events{handler=\"repo \\\"2\\\"\"} 0\n"
+                + "# TYPE openidm_audit_dropped_events counter\n"
+                + "# HELP openidm_audit_dropped_events Dropped events\n"
+                + "openidm_audit_dropped_events_total{handler=\"repo\"} 5\n"
+                + "# EOF\n");
+    }
+
+    @Test
+    public void testDurationHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(200000L);      // 0.2 ms
+        histogram.record(20000000L);    // 20 ms
+        histogram.record(20000000000L); // 20 s
+        Map<String, LatencyHistogram.Snapshot> events =
+                Collections.singletonMap("openidm/internal/router/managed/user/read", histogram.getSnapshot());
+
+        String text = new OpenMetricsWriter()
+                .durationHistograms("openidm_event_duration_seconds", "Duration", events)
+                .toString();
+
+        String labels = "{event=\"openidm/internal/router/managed/user/read\",";
+        assertThat(text).startsWith("# TYPE openidm_event_duration_seconds histogram\n")
+                .contains("openidm_event_duration_seconds_bucket" + labels + "le=\"0.0005\"} 1\n")
+                .contains("openidm_event_duration_seconds_bucket" + labels + "le=\"0.025\"} 2\n")
+                .contains("openidm_event_duration_seconds_bucket" + labels + "le=\"10\"} 2\n")
+                .contains("openidm_event_duration_seconds_bucket" + labels + "le=\"+Inf\"} 3\n")
+                .contains("openidm_event_duration_seconds_count{event=\"openidm/internal/router/managed/user/read\"} 3\n")
+                .endsWith("# EOF\n");
+    }
+
+    @Test
+    public void testEscapesEventName() {
+        Map<String, LatencyHistogram.Snapshot> events =
+                Collections.singletonMap("a\"b\\c", new LatencyHistogram().getSnapshot());
+
+        String text = new OpenMetricsWriter().durationSummaries("openidm_event_latency_seconds", "Latency", events)
+                .toString();
+
+        assertThat(text).contains("openidm_event_latency_seconds_count{event=\"a\\\"b\\\\c\"} 0\n")
+                .doesNotContain("quantile");
+    }
+}
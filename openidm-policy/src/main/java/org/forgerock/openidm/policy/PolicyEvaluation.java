@@ -0,0 +1,191 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.policy;
+
+import static org.forgerock.json.JsonValue.json;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ConnectionFactory;
+import org.forgerock.json.resource.NotFoundException;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.openidm.crypto.CryptoService;
+import org.forgerock.services.context.Context;
+
+/**
+ * The state of the native validation of one policy request: the object validated and the services the standard
+ * policies call, as {@code openidm.read}, {@code openidm.query} and {@code openidm.decrypt} are called by the script.
+ */
+class PolicyEvaluation {
+
+    /** Stands for a property absent from the validated object, which the script sees as {@code undefined} */
+    static final Object UNDEFINED = new Object() {
+        @Override
+        public String toString() {
+            return "undefined";
+        }
+    };
+
+    private final Context context;
+    private final ConnectionFactory connectionFactory;
+    private final CryptoService cryptoService;
+    private final UniquenessChecker uniquenessChecker;
+    private final String resourcePath;
+    private final JsonValue fullObject;
+
+    /** The stored object, read at most once per request, or null until read */
+    private JsonValue storedObject;
+
+    /**
+     * Creates the state of the validation of an object.
+     *
+     * @param context the context of the policy request
+     * @param connectionFactory the connection factory to read and query resources with, may be null if no policy
+     *        needs it
+     * @param cryptoService the service decrypting encrypted values, may be null if no value is encrypted
+     * @param uniquenessChecker the checker of unique values, shared by the requests, may be null if no policy
+     *        needs it
+     * @param resourcePath the path of the validated resource, as requested of the policy service
+     * @param fullObject the validated object
+     */
+    PolicyEvaluation(Context context, ConnectionFactory connectionFactory, CryptoService cryptoService,
+            UniquenessChecker uniquenessChecker, String resourcePath, JsonValue fullObject) {
+        this.context = context;
+        this.connectionFactory = connectionFactory;
+        this.cryptoService = cryptoService;
+        this.uniquenessChecker = uniquenessChecker;
+        this.resourcePath = resourcePath;
+        this.fullObject = fullObject;
+    }
+
+    /**
+     * @return the path of the validated resource, as requested of the policy service
+     */
+    String getResourcePath() {
+        return resourcePath;
+    }
+
+    /**
+     * @return the validated object
+     */
+    JsonValue getFullObject() {
+        return fullObject;
+    }
+
+    /**
+     * Returns the stored state of the validated resource, unless the request is for a resource yet to be created.
+     *
+     * @return the stored object, empty if the resource is not stored
+     * @throws ResourceException if the resource could not be read
+     * @throws UnsupportedPolicyException if there is no connection factory
+     */
+    JsonValue getStoredObject() throws ResourceException, UnsupportedPolicyException {
+        if (storedObject == null) {
+            JsonValue stored = null;
+            if (!resourcePath.isEmpty() && !resourcePath.endsWith("/*")) {
+                stored = read(resourcePath);
+            }
+            storedObject = stored != null && stored.isMap() ? stored : json(new HashMap<String, Object>());
+        }
+        return storedObject;
+    }
+
+    /**
+     * Reads a resource.
+     *
+     * @param path the path of the resource
+     * @return the content of the resource, or null if it does not exist
+     * @throws ResourceException if the resource could not be read
+     * @throws UnsupportedPolicyException if there is no connection factory
+     */
+    JsonValue read(String path) throws ResourceException, UnsupportedPolicyException {
+        try {
+            return getConnectionFactory().getConnection()
+                    .read(context, Requests.newReadRequest(path)).getContent();
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Queries resources.
+     *
+     * @param request the query request
+     * @return the resources found
+     * @throws ResourceException if the query failed
+     * @throws UnsupportedPolicyException if there is no connection factory
+     */
+    List<ResourceResponse> query(QueryRequest request) throws ResourceException, UnsupportedPolicyException {
+        List<ResourceResponse> results = new ArrayList<>();
+        getConnectionFactory().getConnection().query(context, request, results);
+        return results;
+    }
+
+    /**
+     * Checks whether a value is held by an object of a collection other than the validated one.
+     *
+     * @param collection the path of the collection
+     * @param property the property holding the value
+     * @param value the value to check
+     * @param requestId the ID of the validated object, {@code *} or empty if it is being created
+     * @return true if another object holds the value
+     * @throws ResourceException if the collection could not be queried
+     * @throws UnsupportedPolicyException if there is no uniqueness checker or the property cannot be queried
+     */
+    boolean isTaken(String collection, String property, String value, String requestId)
+            throws ResourceException, UnsupportedPolicyException {
+        if (uniquenessChecker == null) {
+            throw new UnsupportedPolicyException("No uniqueness checker to query resources with");
+        }
+        try {
+            return uniquenessChecker.isTaken(context, collection, property, value, requestId);
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedPolicyException("Cannot query property " + property);
+        }
+    }
+
+    /**
+     * Decrypts a value if it is encrypted.
+     *
+     * @param value the value to validate
+     * @return the decrypted value, or the value itself if it is not encrypted
+     * @throws UnsupportedPolicyException if the value is encrypted and there is no crypto service
+     */
+    Object decrypt(Object value) throws UnsupportedPolicyException {
+        if (!(value instanceof Map) || !((Map<?, ?>) value).containsKey("$crypto")) {
+            return value;
+        }
+        if (cryptoService == null) {
+            throw new UnsupportedPolicyException("No crypto service to decrypt the value with");
+        }
+        JsonValue json = json(value);
+        return cryptoService.isEncrypted(json) ? cryptoService.decrypt(json).getObject() : value;
+    }
+
+    private ConnectionFactory getConnectionFactory() throws UnsupportedPolicyException {
+        if (connectionFactory == null) {
+            throw new UnsupportedPolicyException("No connection factory to read resources with");
+        }
+        return connectionFactory;
+    }
+}
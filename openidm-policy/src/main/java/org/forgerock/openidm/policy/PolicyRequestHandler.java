@@ -0,0 +1,237 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.policy;
+
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Responses.newActionResponse;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ActionRequest;
+import org.forgerock.json.resource.ActionResponse;
+import org.forgerock.json.resource.ConnectionFactory;
+import org.forgerock.json.resource.CreateRequest;
+import org.forgerock.json.resource.DeleteRequest;
+import org.forgerock.json.resource.PatchRequest;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.QueryResponse;
+import org.forgerock.json.resource.ReadRequest;
+import org.forgerock.json.resource.RequestHandler;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.json.resource.UpdateRequest;
+import org.forgerock.openidm.crypto.CryptoService;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.promise.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Handles the {@code validateObject} and {@code validateProperty} actions of the policy service natively, and
+ * delegates every other request to the handler evaluating {@code policy.js}.
+ * <p>
+ * The policies of a resource are compiled into a {@link ResourcePolicy} the first time the resource is validated,
+ * and compiled again whenever the schema of its managed object changes. Resources with policies other than the
+ * {@link StandardPolicy standard policies}, such as the policies of the additional policy files or conditional
+ * policies, are validated by the script, as are the values the native validators leave to it.
+ */
+class PolicyRequestHandler implements RequestHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(PolicyRequestHandler.class);
+
+    static final String VALIDATE_OBJECT = "validateObject";
+    static final String VALIDATE_PROPERTY = "validateProperty";
+
+    private final RequestHandler scriptedHandler;
+    private final ConnectionFactory connectionFactory;
+    private final CryptoService cryptoService;
+    private final UniquenessChecker uniquenessChecker;
+
+    /** The resources configured in policy.json */
+    private volatile JsonValue resources = json(array());
+
+    /** The compiled policies by resource configuration index and managed object name */
+    private final ConcurrentMap<String, CompiledPolicy> compiledPolicies = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the handler.
+     *
+     * @param scriptedHandler the handler evaluating the policy script
+     * @param connectionFactory the connection factory to read configurations and query resources with
+     * @param cryptoService the service decrypting encrypted values
+     */
+    PolicyRequestHandler(RequestHandler scriptedHandler, ConnectionFactory connectionFactory,
+            CryptoService cryptoService) {
+        this.scriptedHandler = scriptedHandler;
+        this.connectionFactory = connectionFactory;
+        this.cryptoService = cryptoService;
+        this.uniquenessChecker = new UniquenessChecker(connectionFactory);
+    }
+
+    /**
+     * Sets the resources configured in {@code policy.json}, discarding the policies compiled from the previous ones.
+     *
+     * @param resources the configured resources
+     */
+    void setResources(JsonValue resources) {
+        this.resources = resources.copy();
+        compiledPolicies.clear();
+    }
+
+    @Override
+    public Promise<ActionResponse, ResourceException> handleAction(Context context, ActionRequest request) {
+        final String action = request.getAction();
+        if (!VALIDATE_OBJECT.equals(action) && !VALIDATE_PROPERTY.equals(action)) {
+            return scriptedHandler.handleAction(context, request);
+        }
+        final PolicyEvaluation evaluation = new PolicyEvaluation(context, connectionFactory, cryptoService,
+                uniquenessChecker, request.getResourcePath(), request.getContent());
+        try {
+            final ResourcePolicy policy = getResourcePolicy(evaluation);
+            return newActionResponse(VALIDATE_OBJECT.equals(action)
+                    ? policy.validateObject(evaluation)
+                    : policy.validateProperties(evaluation, request.getContent())).asPromise();
+        } catch (UnsupportedPolicyException e) {
+            logger.trace("Validating {} with the policy script: {}", request.getResourcePath(), e.getMessage());
+            return scriptedHandler.handleAction(context, request);
+        } catch (ResourceException e) {
+            return e.asPromise();
+        }
+    }
+
+    /**
+     * Returns the compiled policies of the validated resource, compiling them if the resource was not validated
+     * before or the schema of its managed object changed since.
+     */
+    private ResourcePolicy getResourcePolicy(PolicyEvaluation evaluation)
+            throws ResourceException, UnsupportedPolicyException {
+        final JsonValue resources = this.resources;
+        final String resourcePath = evaluation.getResourcePath();
+        final int index = ResourcePolicy.indexOf(resources, resourcePath);
+
+        // only managed objects support additional policies
+        final String[] parts = resourcePath.split("/", -1);
+        JsonValue schema = null;
+        if ("managed".equals(parts[0]) && parts.length >= 2 && parts.length <= 3) {
+            schema = getManagedSchema(evaluation, parts[1]);
+        }
+
+        final String key = schema != null ? index + "/" + parts[1] : String.valueOf(index);
+        CompiledPolicy compiled = compiledPolicies.get(key);
+        if (compiled == null || !compiled.isCompiledFrom(schema)) {
+            final JsonValue resource = index >= 0
+                    ? resources.get(index).copy()
+                    : json(object(field("resource", resourcePath), field("properties", array())));
+            if (schema != null) {
+                ResourcePolicy.merge(resource, ResourcePolicy.getSchemaProperties(schema));
+            }
+            compiled = new CompiledPolicy(schema, resource);
+            compiledPolicies.put(key, compiled);
+        }
+        return compiled.get();
+    }
+
+    /**
+     * @return the schema of a managed object, or null if it has no schema properties
+     */
+    private JsonValue getManagedSchema(PolicyEvaluation evaluation, String objectName)
+            throws ResourceException, UnsupportedPolicyException {
+        final JsonValue managedConfig = evaluation.read("config/managed");
+        if (managedConfig == null || managedConfig.isNull()) {
+            throw new UnsupportedPolicyException("No managed object configuration");
+        }
+        for (JsonValue object : managedConfig.get("objects")) {
+            if (objectName.equals(object.get("name").getObject())) {
+                final JsonValue schema = object.get("schema");
+                return schema.isMap() && schema.get("properties").isMap() ? schema : null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Promise<ResourceResponse, ResourceException> handleCreate(Context context, CreateRequest request) {
+        return scriptedHandler.handleCreate(context, request);
+    }
+
+    @Override
+    public Promise<ResourceResponse, ResourceException> handleDelete(Context context, DeleteRequest request) {
+        return scriptedHandler.handleDelete(context, request);
+    }
+
+    @Override
+    public Promise<ResourceResponse, ResourceException> handlePatch(Context context, PatchRequest request) {
+        return scriptedHandler.handlePatch(context, request);
+    }
+
+    @Override
+    public Promise<QueryResponse, ResourceException> handleQuery(Context context, QueryRequest request,
+            QueryResourceHandler handler) {
+        return scriptedHandler.handleQuery(context, request, handler);
+    }
+
+    @Override
+    public Promise<ResourceResponse, ResourceException> handleRead(Context context, ReadRequest request) {
+        return scriptedHandler.handleRead(context, request);
+    }
+
+    @Override
+    public Promise<ResourceResponse, ResourceException> handleUpdate(Context context, UpdateRequest request) {
+        return scriptedHandler.handleUpdate(context, request);
+    }
+
+    /**
+     * The policies of a resource compiled from its configuration, or the reason they have to be validated by the
+     * script.
+     */
+    private static class CompiledPolicy {
+        private final Object schema;
+        private final ResourcePolicy policy;
+        private final String unsupported;
+
+        CompiledPolicy(JsonValue schema, JsonValue resource) {
+            this.schema = schema != null ? schema.copy().getObject() : null;
+            ResourcePolicy compiled = null;
+            String reason = null;
+            try {
+                compiled = ResourcePolicy.compile(resource);
+            } catch (UnsupportedPolicyException e) {
+                logger.debug("Policies of {} are validated by the policy script: {}",
+                        resource.get("resource").getObject(), e.getMessage());
+                reason = e.getMessage();
+            }
+            this.policy = compiled;
+            this.unsupported = reason;
+        }
+
+        boolean isCompiledFrom(JsonValue currentSchema) {
+            return currentSchema == null ? schema == null : currentSchema.getObject().equals(schema);
+        }
+
+        ResourcePolicy get() throws UnsupportedPolicyException {
+            if (policy == null) {
+                throw new UnsupportedPolicyException(unsupported);
+            }
+            return policy;
+        }
+    }
+}
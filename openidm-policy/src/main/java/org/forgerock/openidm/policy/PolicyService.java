@@ -15,6 +15,11 @@
  */
 package org.forgerock.openidm.policy;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
@@ -35,12 +40,16 @@ import org.forgerock.services.context.Context;
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.resource.ActionRequest;
 import org.forgerock.json.resource.ReadRequest;
+import org.forgerock.json.resource.RequestHandler;
 import org.forgerock.json.resource.RequestType;
 import org.forgerock.json.resource.ResourceException;
 import org.forgerock.openidm.config.enhanced.EnhancedConfig;
 import org.forgerock.openidm.core.IdentityServer;
 import org.forgerock.openidm.core.ServerConstants;
+import org.forgerock.openidm.crypto.CryptoService;
+import org.forgerock.openidm.router.IDMConnectionFactory;
 import org.forgerock.openidm.script.AbstractScriptedService;
+import org.forgerock.openidm.script.ScriptedRequestHandler;
 import org.forgerock.openidm.util.FileUtil;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -73,10 +82,24 @@ public class PolicyService extends AbstractScriptedService {
     @Reference(policy = ReferencePolicy.DYNAMIC)
     private volatile EnhancedConfig enhancedConfig;
 
+    /** The connection factory the native policy validation reads and queries resources with. */
+    @Reference
+    private IDMConnectionFactory connectionFactory;
+
+    /** Cryptographic service. */
+    @Reference
+    private CryptoService cryptoService;
+
     private ComponentContext context;
     
     private JsonValue configuration;
 
+    /** The policy script the native validators reproduce, relative to the install location. */
+    private static final String BUNDLED_POLICY_SCRIPT = "bin/defaults/script/policy.js";
+
+    /** Validates the standard policies natively, null if the native validation is disabled. */
+    private PolicyRequestHandler policyRequestHandler;
+
     public PolicyService() {
         super(EnumSet.of(RequestType.ACTION, RequestType.READ));
     }
@@ -102,13 +125,23 @@ public class PolicyService extends AbstractScriptedService {
     @Modified
     void modified(ComponentContext context) throws Exception {
         configuration = getConfiguration(context);
-        updateScriptHandler(configuration);
+        if (isNativeValidationEnabled(configuration) != (policyRequestHandler != null)) {
+            // the configured script changed to or from the bundled one, register the matching handler
+            unregisterService();
+            registerService(context.getBundleContext(), configuration);
+        } else {
+            updateScriptHandler(configuration);
+            if (policyRequestHandler != null) {
+                policyRequestHandler.setResources(configuration.get("resources"));
+            }
+        }
         logger.info("OpenIDM Policy Service component is updateScriptHandler.");
     }
 
     @Deactivate
     protected void deactivate(ComponentContext context) {
         unregisterService();
+        policyRequestHandler = null;
         this.context = null;
         logger.info("OpenIDM Policy Service component is deactivated.");
     }
@@ -117,6 +150,80 @@ public class PolicyService extends AbstractScriptedService {
         return context.getBundleContext();
     }
 
+    /**
+     * Validates objects and properties natively if the configured policy script is the bundled
+     * {@code bin/defaults/script/policy.js}, the script the native validators reproduce. Otherwise every request
+     * evaluates the policy script, unless the {@code openidm.policy.native.enabled} property is true. Setting the
+     * property to false always evaluates the policy script.
+     */
+    @Override
+    protected RequestHandler getRequestHandler(final ScriptedRequestHandler scriptedHandler) {
+        if (!isNativeValidationEnabled(configuration)) {
+            policyRequestHandler = null;
+            return scriptedHandler;
+        }
+        policyRequestHandler = new PolicyRequestHandler(scriptedHandler, connectionFactory, cryptoService);
+        policyRequestHandler.setResources(configuration.get("resources"));
+        return policyRequestHandler;
+    }
+
+    private boolean isNativeValidationEnabled(JsonValue configuration) {
+        final String enabled = IdentityServer.getInstance().getProperty("openidm.policy.native.enabled");
+        if (enabled != null) {
+            return Boolean.parseBoolean(enabled);
+        }
+        final IdentityServer server = IdentityServer.getInstance();
+        if (isBundledPolicyScript(configuration, server.getInstallLocation(), server.getProjectLocation())) {
+            return true;
+        }
+        logger.info("The policy script is not the bundled {}, validating every policy with the script",
+                BUNDLED_POLICY_SCRIPT);
+        return false;
+    }
+
+    /**
+     * Returns true if the configured policy script is a file with the same content as the bundled
+     * {@code bin/defaults/script/policy.js}. The file is looked up in the default script source directories, in the
+     * order the script registry looks it up.
+     *
+     * @param configuration the policy service configuration
+     * @param installLocation the install location
+     * @param projectLocation the project location
+     * @return true if the configured script is the bundled policy script, false otherwise
+     */
+    static boolean isBundledPolicyScript(JsonValue configuration, File installLocation, File projectLocation) {
+        final JsonValue file = configuration.get("file");
+        if (!"text/javascript".equals(configuration.get("type").asString())
+                || !configuration.get("source").isNull() || !file.isString()) {
+            return false;
+        }
+        final File bundled = new File(installLocation, BUNDLED_POLICY_SCRIPT);
+        File script = null;
+        for (File candidate : new File[] {
+                new File(new File(projectLocation, "script"), file.asString()),
+                new File(projectLocation, file.asString()),
+                new File(installLocation, file.asString()),
+                new File(bundled.getParentFile(), file.asString()) }) {
+            if (candidate.isFile()) {
+                script = candidate;
+                break;
+            }
+        }
+        if (script == null || !bundled.isFile()) {
+            return false;
+        }
+        try {
+            return MessageDigest.isEqual(digest(script), digest(bundled));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            logger.warn("Unable to compare the policy script {} with {}", script, bundled, e);
+            return false;
+        }
+    }
+
+    private static byte[] digest(File file) throws IOException, NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+    }
+
     private JsonValue getConfiguration(ComponentContext context) {
         JsonValue configuration = enhancedConfig.getConfigurationAsJson(context);
         init(configuration);
@@ -0,0 +1,434 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.policy;
+
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.openidm.policy.PolicyEvaluation.UNDEFINED;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ResourceException;
+
+/**
+ * The policies of a resource compiled into {@link StandardPolicy.Validator}s, validating objects and properties as
+ * the {@code validateObject} and {@code validateProperty} actions of {@code policy.js} do.
+ * <p>
+ * The policies of a resource are those configured for it in {@code policy.json}, merged with the policies derived
+ * from the schema of a managed object by the same rules as the script.
+ */
+class ResourcePolicy {
+
+    private static final Pattern ARRAY_PROPERTY = Pattern.compile("\\[\\*\\]$");
+    private static final Pattern LEADING_INTEGER = Pattern.compile("^\\s*([+-]?\\d+)");
+
+    private final List<PropertyPolicy> properties;
+    private final Map<String, PropertyPolicy> propertiesByName;
+
+    private ResourcePolicy(List<PropertyPolicy> properties) {
+        this.properties = properties;
+        this.propertiesByName = new HashMap<>();
+        for (PropertyPolicy property : properties) {
+            if (!propertiesByName.containsKey(property.name)) {
+                propertiesByName.put(property.name, property);
+            }
+        }
+    }
+
+    /**
+     * Compiles the policies of a resource.
+     *
+     * @param resource the policy configuration of the resource, with its {@code properties}
+     * @return the compiled policies
+     * @throws UnsupportedPolicyException if any policy of the resource has to be validated by the script
+     */
+    static ResourcePolicy compile(JsonValue resource) throws UnsupportedPolicyException {
+        final List<PropertyPolicy> properties = new ArrayList<>();
+        if (!resource.get("properties").isList()) {
+            throw new UnsupportedPolicyException("No properties configured for " + resource.get("resource"));
+        }
+        for (JsonValue property : resource.get("properties")) {
+            properties.add(PropertyPolicy.compile(property));
+        }
+        return new ResourcePolicy(properties);
+    }
+
+    /**
+     * Returns the index of the first resource configured in {@code policy.json} matching a resource path.
+     *
+     * @param resources the resources configured in {@code policy.json}
+     * @param resourcePath the path of the validated resource
+     * @return the index of the resource, or -1 if none matches
+     */
+    static int indexOf(JsonValue resources, String resourcePath) {
+        if (resources.isList()) {
+            for (int i = 0; i < resources.size(); i++) {
+                if (resourceMatches(resources.get(i).get("resource").asString(), resourcePath)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean resourceMatches(String resource1, String resource2) {
+        final String[] rsrc1 = resource1.split("/", -1);
+        final String[] rsrc2 = resource2.split("/", -1);
+        if (rsrc1.length != rsrc2.length) {
+            return false;
+        }
+        for (int i = 0; i < rsrc1.length; i++) {
+            if (!rsrc1[i].equals(rsrc2[i]) && !"*".equals(rsrc1[i]) && !"*".equals(rsrc2[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Derives the policies of the properties of a managed object from its schema, as {@code getAdditionalPolicies}
+     * of the script does.
+     *
+     * @param schema the schema of the managed object, with its {@code properties}
+     * @return the property configurations
+     */
+    static List<JsonValue> getSchemaProperties(JsonValue schema) {
+        final List<JsonValue> properties = new ArrayList<>();
+        final JsonValue required = schema.get("required");
+        for (String name : schema.get("properties").keys()) {
+            final JsonValue property = schema.get("properties").get(name);
+            final JsonValue type = property.get("type");
+            final JsonValue minLength = property.get("minLength");
+            final List<Object> policies = new ArrayList<>();
+
+            if (required.isList() && required.asList().contains(name)) {
+                policies.add(object(field("policyId", "required")));
+            }
+            if ((type.isList() && !type.asList().contains("null"))
+                    || (minLength.isNumber() && minLength.asNumber().doubleValue() > 0)) {
+                policies.add(object(field("policyId", "not-empty")));
+            }
+            if ((type.isList() && type.asList().contains("string")) || "string".equals(type.getObject())) {
+                final Integer length = parseInt(minLength.getObject());
+                if (length != null) {
+                    policies.add(object(
+                            field("policyId", "minimum-length"),
+                            field("params", object(field("minLength", length)))));
+                }
+                if (property.get("pattern").isString()) {
+                    policies.add(object(
+                            field("policyId", "regexpMatches"),
+                            field("params", object(field("regexp", property.get("pattern").asString())))));
+                }
+            }
+
+            final List<Object> types = new ArrayList<>();
+            if (type.isString()) {
+                types.add(type.asString());
+            } else if (type.isList()) {
+                types.addAll(type.asList());
+            }
+            // treat a relationship type as an object
+            for (int i = 0; i < types.size(); i++) {
+                if ("relationship".equals(types.get(i))) {
+                    types.set(i, "object");
+                }
+            }
+            policies.add(object(
+                    field("policyId", "valid-type"),
+                    field("params", object(field("types", types)))));
+
+            final JsonValue customPolicies = property.get("policies");
+            if (customPolicies.isList()) {
+                policies.addAll(customPolicies.copy().asList());
+            } else if (customPolicies.isMap()) {
+                policies.addAll(customPolicies.copy().asMap().values());
+            }
+
+            final JsonValue config = json(object(field("name", name), field("policies", policies)));
+            if (property.isDefined("conditionalPolicies")) {
+                config.put("conditionalPolicies", property.get("conditionalPolicies").copy().getObject());
+            }
+            if (property.isDefined("fallbackPolicies")) {
+                config.put("fallbackPolicies", property.get("fallbackPolicies").copy().getObject());
+            }
+            properties.add(config);
+        }
+        return properties;
+    }
+
+    /**
+     * Merges the policies derived from the schema of a managed object into the configuration of a resource, as
+     * {@code updateResourceConfig} of the script does.
+     *
+     * @param resource the policy configuration of the resource, which is updated
+     * @param schemaProperties the policies of the properties of the managed object
+     */
+    static void merge(JsonValue resource, List<JsonValue> schemaProperties) {
+        final JsonValue props = resource.get("properties");
+        for (JsonValue newProp : schemaProperties) {
+            boolean found = false;
+            for (JsonValue prop : props) {
+                if (!newProp.get("name").getObject().equals(prop.get("name").getObject())) {
+                    continue;
+                }
+                found = true;
+                if (prop.get("policies").isList() && prop.get("policies").size() > 0) {
+                    prop.put("policies", mergePolicies(prop.get("policies"), newProp.get("policies")));
+                } else {
+                    prop.put("policies", newProp.get("policies").getObject());
+                }
+                // merge the conditional policies, or overwrite them with the new ones (if any)
+                if (isNonEmptyList(prop.get("conditionalPolicies"))) {
+                    if (isNonEmptyList(newProp.get("conditionalPolicies"))) {
+                        prop.get("conditionalPolicies").asList().addAll(newProp.get("conditionalPolicies").asList());
+                    }
+                } else {
+                    prop.put("conditionalPolicies", newProp.get("conditionalPolicies").getObject());
+                }
+            }
+            if (!found) {
+                props.add(newProp.getObject());
+            }
+        }
+    }
+
+    private static List<Object> mergePolicies(JsonValue oldPolicies, JsonValue newPolicies) {
+        final List<Object> returnPolicies = new ArrayList<>(oldPolicies.asList());
+        for (JsonValue newPolicy : newPolicies) {
+            boolean found = false;
+            for (int i = 0; i < returnPolicies.size(); i++) {
+                if (newPolicy.get("policyId").getObject()
+                        .equals(json(returnPolicies.get(i)).get("policyId").getObject())) {
+                    // update old policy with new config
+                    returnPolicies.set(i, newPolicy.getObject());
+                    found = true;
+                }
+            }
+            if (!found) {
+                final JsonValue params = newPolicy.get("params");
+                returnPolicies.add(object(
+                        field("policyId", newPolicy.get("policyId").getObject()),
+                        field("params", params.isMap() ? params.copy().getObject() : object())));
+            }
+        }
+        return returnPolicies;
+    }
+
+    private static boolean isNonEmptyList(JsonValue value) {
+        return value.isList() && value.size() > 0;
+    }
+
+    /**
+     * @return the integer parsed from the start of a value as by {@code parseInt}, or null if it is not a number
+     */
+    private static Integer parseInt(Object value) {
+        if (value instanceof Number) {
+            final double d = ((Number) value).doubleValue();
+            return Double.isNaN(d) || Double.isInfinite(d) ? null : (int) d;
+        } else if (value instanceof String) {
+            final Matcher matcher = LEADING_INTEGER.matcher((String) value);
+            if (matcher.find()) {
+                try {
+                    return Integer.valueOf(matcher.group(1));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Validates all the properties of an object.
+     *
+     * @param evaluation the state of the validation of the object
+     * @return the result of the validation, with the failed policy requirements
+     * @throws ResourceException if a resource a policy depends on could not be read
+     * @throws UnsupportedPolicyException if the object has to be validated by the script
+     */
+    JsonValue validateObject(PolicyEvaluation evaluation) throws ResourceException, UnsupportedPolicyException {
+        final List<Object> failedPolicyRequirements = new ArrayList<>();
+        for (PropertyPolicy property : properties) {
+            property.validate(evaluation, getPropertyValue(evaluation.getFullObject(), property.name),
+                    failedPolicyRequirements);
+        }
+        return result(failedPolicyRequirements);
+    }
+
+    /**
+     * Validates the given values of properties of an object.
+     *
+     * @param evaluation the state of the validation of the object
+     * @param values the values by property name
+     * @return the result of the validation, with the failed policy requirements
+     * @throws ResourceException if a resource a policy depends on could not be read
+     * @throws UnsupportedPolicyException if the properties have to be validated by the script
+     */
+    JsonValue validateProperties(PolicyEvaluation evaluation, JsonValue values)
+            throws ResourceException, UnsupportedPolicyException {
+        final List<Object> failedPolicyRequirements = new ArrayList<>();
+        if (values.isList()) {
+            throw new UnsupportedPolicyException("Properties to validate are a list");
+        }
+        if (values.isMap()) {
+            for (String name : values.keys()) {
+                final PropertyPolicy property = propertiesByName.get(name);
+                if (property != null) {
+                    property.validate(evaluation, values.get(name).getObject(), failedPolicyRequirements);
+                }
+            }
+        }
+        return result(failedPolicyRequirements);
+    }
+
+    private static JsonValue result(List<Object> failedPolicyRequirements) {
+        return json(object(
+                field("result", failedPolicyRequirements.isEmpty()),
+                field("failedPolicyRequirements", failedPolicyRequirements)));
+    }
+
+    /**
+     * Returns the value of a property of an object, addressed by its slash separated path.
+     *
+     * @return the value, or {@link PolicyEvaluation#UNDEFINED} if the property is absent
+     */
+    static Object getPropertyValue(JsonValue object, String name) throws UnsupportedPolicyException {
+        Object value = object.getObject();
+        if (value == null) {
+            return null;
+        }
+        for (String address : name.split("/", -1)) {
+            // ignore a trailing array indicator
+            final String key = ARRAY_PROPERTY.matcher(address).replaceFirst("");
+            if (value instanceof Map) {
+                final Map<?, ?> map = (Map<?, ?>) value;
+                value = map.containsKey(key) ? map.get(key) : UNDEFINED;
+            } else if (value instanceof List && key.matches("0|[1-9]\\d{0,8}")) {
+                final List<?> list = (List<?>) value;
+                final int index = Integer.parseInt(key);
+                value = index < list.size() ? list.get(index) : UNDEFINED;
+            } else if ("length".equals(key) || key.matches("\\d+")) {
+                throw new UnsupportedPolicyException("Cannot address " + name + " in the object");
+            } else {
+                value = UNDEFINED;
+            }
+            if (value == null || value == UNDEFINED) {
+                return value;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * The compiled policies of a property.
+     */
+    private static class PropertyPolicy {
+        private final String name;
+        private final boolean array;
+        private final List<StandardPolicy> policies;
+        private final List<StandardPolicy.Validator> validators;
+
+        private PropertyPolicy(String name, List<StandardPolicy> policies, List<StandardPolicy.Validator> validators) {
+            this.name = name;
+            this.array = ARRAY_PROPERTY.matcher(name).find();
+            this.policies = policies;
+            this.validators = validators;
+        }
+
+        static PropertyPolicy compile(JsonValue property) throws UnsupportedPolicyException {
+            final JsonValue name = property.get("name");
+            if (!name.isString() || !property.get("policies").isList()) {
+                throw new UnsupportedPolicyException("Property without name or policies: " + property);
+            }
+            final JsonValue conditionalPolicies = property.get("conditionalPolicies");
+            if (conditionalPolicies.isNotNull() && !(conditionalPolicies.isList() && conditionalPolicies.size() == 0)) {
+                throw new UnsupportedPolicyException(
+                        "The conditions of the policies of " + name.asString() + " are scripts");
+            }
+            final List<Object> allPolicies = new ArrayList<>(property.get("policies").asList());
+            // with no conditional policies, the fallback policies always apply
+            final JsonValue fallbackPolicies = property.get("fallbackPolicies");
+            if (fallbackPolicies.isList()) {
+                allPolicies.addAll(fallbackPolicies.asList());
+            } else if (fallbackPolicies.isNotNull()) {
+                throw new UnsupportedPolicyException("The fallback policies of " + name.asString() + " are no list");
+            }
+
+            final List<StandardPolicy> policies = new ArrayList<>();
+            final List<StandardPolicy.Validator> validators = new ArrayList<>();
+            for (Object config : allPolicies) {
+                final JsonValue policy = json(config);
+                final StandardPolicy standardPolicy = StandardPolicy.forPolicyId(policy.get("policyId").isString()
+                        ? policy.get("policyId").asString()
+                        : null);
+                if (standardPolicy == null) {
+                    throw new UnsupportedPolicyException("Custom policy " + policy.get("policyId").getObject()
+                            + " of " + name.asString());
+                }
+                policies.add(standardPolicy);
+                validators.add(standardPolicy.compile(policy.get("params")));
+            }
+            return new PropertyPolicy(name.asString(), Collections.unmodifiableList(policies),
+                    Collections.unmodifiableList(validators));
+        }
+
+        /**
+         * Validates the value of the property as {@code validate} of the script does, adding the failures to the
+         * failed policy requirements of the object.
+         */
+        void validate(PolicyEvaluation evaluation, Object propValue, List<Object> failedPolicyRequirements)
+                throws ResourceException, UnsupportedPolicyException {
+            boolean required = false;
+            for (int i = 0; i < policies.size(); i++) {
+                // validate this property every time unless the policy is "validateOnlyIfPresent" and it isn't present
+                if (policies.get(i).isValidateOnlyIfPresent() && propValue == UNDEFINED) {
+                    continue;
+                }
+                final List<?> propValueContainer;
+                if (!array) {
+                    propValueContainer = Collections.singletonList(propValue);
+                } else if (propValue instanceof List) {
+                    propValueContainer = (List<?>) propValue;
+                } else if (propValue == null || propValue == UNDEFINED) {
+                    continue;
+                } else {
+                    throw new UnsupportedPolicyException("Value of array property " + name + " is not a list");
+                }
+                for (int j = 0; j < propValueContainer.size(); j++) {
+                    final Map<String, Object> failed = validators.get(i).validate(evaluation, name,
+                            evaluation.decrypt(propValueContainer.get(j)), required);
+                    if (failed != null) {
+                        required |= "REQUIRED".equals(failed.get("policyRequirement"));
+                        final String property = array ? ARRAY_PROPERTY.matcher(name).replaceFirst("[" + j + "]") : name;
+                        failedPolicyRequirements.add(object(
+                                field("property", property),
+                                field("policyRequirements", array(failed))));
+                    }
+                }
+            }
+        }
+    }
+}
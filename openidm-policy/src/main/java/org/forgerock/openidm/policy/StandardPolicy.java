@@ -0,0 +1,681 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.policy;
+
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.openidm.policy.PolicyEvaluation.UNDEFINED;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourcePath;
+import org.forgerock.json.resource.ResourceResponse;
+
+/**
+ * The standard policies of {@code policy.js}, validated natively.
+ * <p>
+ * Each policy is compiled with its parameters into a {@link Validator} which returns the same failures as the policy
+ * function of the script. Policies whose script behaviour depends on JavaScript date parsing, {@code valid-date} and
+ * {@code max-attempts-triggers-lock-cooldown}, are not standard policies here and are left to the script, as are the
+ * values the script would treat in a way this class does not reproduce, for which an
+ * {@link UnsupportedPolicyException} is thrown.
+ */
+enum StandardPolicy {
+
+    REQUIRED("required", false) {
+        @Override
+        Validator compile(JsonValue params) {
+            return new Validator() {
+                @Override
+                public Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value,
+                        boolean required) {
+                    return value == UNDEFINED ? failure("REQUIRED") : null;
+                }
+            };
+        }
+    },
+
+    NOT_EMPTY("not-empty", true) {
+        @Override
+        Validator compile(JsonValue params) {
+            return new Validator() {
+                @Override
+                public Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value,
+                        boolean required) {
+                    return value != UNDEFINED && (value == null || length(value) <= 0) ? failure("REQUIRED") : null;
+                }
+            };
+        }
+    },
+
+    UNIQUE("unique", false) {
+        @Override
+        Validator compile(JsonValue params) {
+            return new Validator() {
+                @Override
+                public Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value,
+                        boolean required) throws ResourceException, UnsupportedPolicyException {
+                    if (!hasQueryableValue(value)) {
+                        return null;
+                    }
+                    final ResourcePath path = ResourcePath.valueOf(evaluation.getResourcePath());
+                    if (path.isEmpty()) {
+                        throw new UnsupportedPolicyException("No collection to check the uniqueness in");
+                    }
+                    return evaluation.isTaken(path.parent().toString(), property, (String) value, path.leaf())
+                            ? failure("UNIQUE") : null;
+                }
+            };
+        }
+    },
+
+    NO_INTERNAL_USER_CONFLICT("no-internal-user-conflict", false) {
+        @Override
+        Validator compile(JsonValue params) {
+            return new Validator() {
+                @Override
+                public Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value,
+                        boolean required) throws ResourceException, UnsupportedPolicyException {
+                    if (!hasQueryableValue(value)) {
+                        return null;
+                    }
+                    final ResourcePath path = ResourcePath.valueOf(evaluation.getResourcePath());
+                    final QueryRequest request = Requests.newQueryRequest("repo/internal/user")
+                            .setQueryId("credential-internaluser-query")
+                            .setAdditionalParameter("username", (String) value);
+                    return isTaken(evaluation.query(request), path.isEmpty() ? null : path.leaf())
+                            ? failure("UNIQUE")
+                            : null;
+                }
+            };
+        }
+    },
+
+    REGEXP_MATCHES("regexpMatches", false) {
+        @Override
+        Validator compile(final JsonValue params) throws UnsupportedPolicyException {
+            requireParams(params, "regexp");
+            final Pattern pattern = compileRegExp(params.get("regexp"), params.get("flags"));
+            return new Validator() {
+                @Override
+                public Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value,
+                        boolean required) throws UnsupportedPolicyException {
+                    final Object text = value instanceof Number ? toJsString(value) : value;
+                    final boolean nonEmptyString = isNonEmptyString(text);
+                    if ((required || nonEmptyString) && !(nonEmptyString && find(pattern, (String) text))) {
+                        final Map<String, Object> failure = failure("MATCH_REGEXP");
+                        failure.put("regexp", params.get("regexp").getObject());
+                        failure.put("params", params.copy().getObject());
+                        if (params.isDefined("flags")) {
+                            failure.put("flags", params.get("flags").getObject());
+                        }
+                        return failure;
+                    }
+                    return null;
+                }
+            };
+        }
+    },
+
+    VALID_TYPE("valid-type", false) {
+        @Override
+        Validator compile(final JsonValue params) throws UnsupportedPolicyException {
+            requireParams(params, "types");
+            final Set<Object> types = new HashSet<>();
+            if (params.get("types").isList()) {
+                types.addAll(params.get("types").asList());
+            }
+            return new Validator() {
+                @Override
+                public Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value,
+                        boolean required) {
+                    final String type = typeOf(value);
+                    if (value != UNDEFINED && !types.contains(type)) {
+                        return failure("VALID_TYPE", object(
+                                field("invalidType", type),
+                                field("validTypes", params.get("types").copy().getObject())));
+                    }
+                    return null;
+                }
+            };
+        }
+    },
+
+    VALID_EMAIL_ADDRESS_FORMAT("valid-email-address-format", true) {
+        @Override
+        Validator compile(JsonValue params) {
+            return new PatternValidator(EMAIL_ADDRESS, "VALID_EMAIL_ADDRESS_FORMAT");
+        }
+    },
+
+    VALID_NAME_FORMAT("valid-name-format", true) {
+        @Override
+        Validator compile(JsonValue params) {
+            return new PatternValidator(NAME, "VALID_NAME_FORMAT");
+        }
+    },
+
+    VALID_PHONE_FORMAT("valid-phone-format", true) {
+        @Override
+        Validator compile(JsonValue params) {
+            return new PatternValidator(PHONE, "VALID_PHONE_FORMAT");
+        }
+    },
+
+    AT_LEAST_X_CAPITALS("at-least-X-capitals", true) {
+        @Override
+        Validator compile(JsonValue params) throws UnsupportedPolicyException {
+            requireParams(params, "numCaps");
+            return new CountValidator(params, "numCaps", "AT_LEAST_X_CAPITAL_LETTERS") {
+                @Override
+                boolean counts(char c) {
+                    // the script counts the matches of /[(A-Z)]/g, in which the parentheses are literal
+                    return (c >= 'A' && c <= 'Z') || c == '(' || c == ')';
+                }
+            };
+        }
+    },
+
+    AT_LEAST_X_NUMBERS("at-least-X-numbers", true) {
+        @Override
+        Validator compile(JsonValue params) throws UnsupportedPolicyException {
+            requireParams(params, "numNums");
+            return new CountValidator(params, "numNums", "AT_LEAST_X_NUMBERS") {
+                @Override
+                boolean counts(char c) {
+                    return c >= '0' && c <= '9';
+                }
+            };
+        }
+    },
+
+    MINIMUM_LENGTH("minimum-length", true) {
+        @Override
+        Validator compile(JsonValue params) throws UnsupportedPolicyException {
+            requireParams(params, "minLength");
+            final Object minLength = params.get("minLength").getObject();
+            final double min = toNumber(params.isDefined("minLength") ? minLength : UNDEFINED);
+            return new Validator() {
+                @Override
+                public Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value,
+                        boolean required) {
+                    final boolean nonEmptyString = isNonEmptyString(value);
+                    if ((required || nonEmptyString) && !(nonEmptyString && ((String) value).length() >= min)) {
+                        return failure("MIN_LENGTH", object(field("minLength", minLength)));
+                    }
+                    return null;
+                }
+            };
+        }
+    },
+
+    CANNOT_CONTAIN_OTHERS("cannot-contain-others", true) {
+        @Override
+        Validator compile(JsonValue params) throws UnsupportedPolicyException {
+            requireParams(params, "disallowedFields");
+            final List<String> fields = new ArrayList<>();
+            final JsonValue disallowedFields = params.get("disallowedFields");
+            if (disallowedFields.isString()) {
+                // legacy csv support
+                for (String field : disallowedFields.asString().split(",", -1)) {
+                    fields.add(field);
+                }
+            } else if (disallowedFields.isList()) {
+                for (Object field : disallowedFields.asList()) {
+                    fields.add(toJsString(field));
+                }
+            } else {
+                throw new UnsupportedPolicyException("disallowedFields is neither a list nor a string");
+            }
+            return new Validator() {
+                @Override
+                public Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value,
+                        boolean required) throws ResourceException, UnsupportedPolicyException {
+                    if (!isNonEmptyString(value)) {
+                        return null;
+                    }
+                    final JsonValue fullObject = evaluation.getFullObject();
+                    if (!fullObject.isMap()) {
+                        throw new UnsupportedPolicyException("The validated object is not an object");
+                    }
+                    final JsonValue storedObject = evaluation.getStoredObject();
+                    for (String field : fields) {
+                        // as the script does, complete the validated object with the stored fields it lacks
+                        if (!fullObject.isDefined(field) && storedObject.isDefined(field)) {
+                            fullObject.put(field, storedObject.get(field).getObject());
+                        }
+                        final Object other = fullObject.get(field).getObject();
+                        if (other instanceof String && find(compileRegExp((String) other, 0), (String) value)) {
+                            return failure("CANNOT_CONTAIN_OTHERS", object(field("disallowedFields", field)));
+                        }
+                    }
+                    return null;
+                }
+            };
+        }
+    },
+
+    CANNOT_CONTAIN_CHARACTERS("cannot-contain-characters", true) {
+        @Override
+        Validator compile(JsonValue params) throws UnsupportedPolicyException {
+            requireParams(params, "forbiddenChars");
+            final List<String> forbiddenChars = new ArrayList<>();
+            final JsonValue chars = params.get("forbiddenChars");
+            if (chars.isList()) {
+                for (Object c : chars.asList()) {
+                    forbiddenChars.add(toJsString(c));
+                }
+            } else if (chars.isString()) {
+                for (char c : chars.asString().toCharArray()) {
+                    forbiddenChars.add(String.valueOf(c));
+                }
+            } else if (chars.isNotNull()) {
+                throw new UnsupportedPolicyException("forbiddenChars is neither a list nor a string");
+            }
+            final StringBuilder joined = new StringBuilder();
+            for (String c : forbiddenChars) {
+                joined.append(joined.length() > 0 ? ", " : "").append(c);
+            }
+            final String forbidden = joined.toString();
+            return new Validator() {
+                @Override
+                public Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value,
+                        boolean required) {
+                    if (isNonEmptyString(value)) {
+                        for (String c : forbiddenChars) {
+                            if (((String) value).contains(c)) {
+                                return failure("CANNOT_CONTAIN_CHARACTERS",
+                                        object(field("forbiddenChars", forbidden)));
+                            }
+                        }
+                    }
+                    return null;
+                }
+            };
+        }
+    },
+
+    CANNOT_CONTAIN_DUPLICATES("cannot-contain-duplicates", true) {
+        @Override
+        Validator compile(JsonValue params) {
+            return new Validator() {
+                @Override
+                public Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value,
+                        boolean required) throws UnsupportedPolicyException {
+                    final List<Object> values = new ArrayList<>();
+                    if (isNonEmptyString(value)) {
+                        for (char c : ((String) value).toCharArray()) {
+                            values.add(String.valueOf(c));
+                        }
+                    } else if (value instanceof List) {
+                        values.addAll((List<?>) value);
+                    }
+                    final Set<String> checkedValues = new HashSet<>();
+                    for (Object element : values) {
+                        if (element instanceof Map || element instanceof List) {
+                            throw new UnsupportedPolicyException("Cannot compare values of " + property);
+                        }
+                        if (!checkedValues.add(toJsString(element))) {
+                            return failure("CANNOT_CONTAIN_DUPLICATES", object(field("duplicateValue", element)));
+                        }
+                    }
+                    return null;
+                }
+            };
+        }
+    },
+
+    MAPPING_EXISTS("mapping-exists", false) {
+        @Override
+        Validator compile(JsonValue params) {
+            return new Validator() {
+                @Override
+                public Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value,
+                        boolean required) throws ResourceException, UnsupportedPolicyException {
+                    final JsonValue syncConfig = evaluation.read("config/sync");
+                    if (syncConfig != null && syncConfig.isNotNull()) {
+                        if (!syncConfig.get("mappings").isList()) {
+                            throw new UnsupportedPolicyException("No mappings in the sync configuration");
+                        }
+                        for (JsonValue mapping : syncConfig.get("mappings")) {
+                            final Object name = mapping.get("name").getObject();
+                            if (name != null && name.equals(value)) {
+                                return null;
+                            }
+                        }
+                    }
+                    return failure("MAPPING_EXISTS");
+                }
+            };
+        }
+    };
+
+    /**
+     * A standard policy compiled with its parameters.
+     */
+    interface Validator {
+        /**
+         * Validates a value of a property.
+         *
+         * @param evaluation the state of the validation of the object
+         * @param property the name of the property, as configured
+         * @param value the value, {@link PolicyEvaluation#UNDEFINED} if the property is absent
+         * @param required true if an earlier policy of the property failed with the {@code REQUIRED} requirement
+         * @return the failed policy requirement, or null if the value passes the policy
+         * @throws ResourceException if a resource the policy depends on could not be read
+         * @throws UnsupportedPolicyException if the value has to be validated by the script
+         */
+        Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value, boolean required)
+                throws ResourceException, UnsupportedPolicyException;
+    }
+
+    private static final Pattern EMAIL_ADDRESS = Pattern.compile(".+@.+\\..+", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PHONE = Pattern.compile("^\\+?([0-9\\- \\(\\)])*$");
+    private static final Pattern NAME = Pattern.compile("^([A-Za'-\\u0105\\u0107\\u0119\\u0142\\u00F3\\u015B"
+            + "\\u017C\\u017A\\u0104\\u0106\\u0118\\u0141\\u00D3\\u015A\\u017B\\u0179\\u00C0\\u00C8\\u00CC\\u00D2"
+            + "\\u00D9\\u00E0\\u00E8\\u00EC\\u00F2\\u00F9\\u00C1\\u00C9\\u00CD\\u00D3\\u00DA\\u00DD\\u00E1\\u00E9"
+            + "\\u00ED\\u00F3\\u00FA\\u00FD\\u00C2\\u00CA\\u00CE\\u00D4\\u00DB\\u00E2\\u00EA\\u00EE\\u00F4\\u00FB"
+            + "\\u00C3\\u00D1\\u00D5\\u00E3\\u00F1\\u00F5\\u00C4\\u00CB\\u00CF\\u00D6\\u00DC\\u0178\\u00E4\\u00EB"
+            + "\\u00EF\\u00F6\\u00FC\\u0178\\u00A1\\u00BF\\u00E7\\u00C7\\u0152\\u0153\\u00DF\\u00D8\\u00F8\\u00C5"
+            + "\\u00E5\\u00C6\\u00E6\\u00DE\\u00FE\\u00D0\\u00F0\\-\\s])+$", Pattern.UNICODE_CHARACTER_CLASS);
+
+    private static final Map<String, StandardPolicy> BY_POLICY_ID = new HashMap<>();
+
+    static {
+        for (StandardPolicy policy : values()) {
+            BY_POLICY_ID.put(policy.policyId, policy);
+        }
+    }
+
+    private final String policyId;
+    private final boolean validateOnlyIfPresent;
+
+    StandardPolicy(String policyId, boolean validateOnlyIfPresent) {
+        this.policyId = policyId;
+        this.validateOnlyIfPresent = validateOnlyIfPresent;
+    }
+
+    /**
+     * Returns the standard policy with an ID.
+     *
+     * @param policyId the ID of the policy, as configured
+     * @return the standard policy, or null if the policy is not validated natively
+     */
+    static StandardPolicy forPolicyId(String policyId) {
+        return BY_POLICY_ID.get(policyId);
+    }
+
+    /**
+     * @return the ID of the policy, as configured
+     */
+    String getPolicyId() {
+        return policyId;
+    }
+
+    /**
+     * @return true if the policy is only validated for the properties present in the object
+     */
+    boolean isValidateOnlyIfPresent() {
+        return validateOnlyIfPresent;
+    }
+
+    /**
+     * Compiles the policy with its parameters.
+     *
+     * @param params the parameters of the policy, as configured
+     * @return the validator
+     * @throws UnsupportedPolicyException if the policy has to be validated by the script with these parameters
+     */
+    abstract Validator compile(JsonValue params) throws UnsupportedPolicyException;
+
+    /**
+     * Validates strings against a pattern.
+     */
+    private static class PatternValidator implements Validator {
+        private final Pattern pattern;
+        private final String requirement;
+
+        PatternValidator(Pattern pattern, String requirement) {
+            this.pattern = pattern;
+            this.requirement = requirement;
+        }
+
+        @Override
+        public Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value,
+                boolean required) throws UnsupportedPolicyException {
+            final boolean nonEmptyString = isNonEmptyString(value);
+            if ((required || nonEmptyString) && !(nonEmptyString && find(pattern, (String) value))) {
+                return failure(requirement);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Validates that strings have at least a number of characters of a kind.
+     */
+    private abstract static class CountValidator implements Validator {
+        private final String param;
+        private final Object minimum;
+        private final double min;
+        private final String requirement;
+
+        CountValidator(JsonValue params, String param, String requirement) {
+            this.param = param;
+            this.minimum = params.get(param).getObject();
+            this.min = toNumber(params.isDefined(param) ? minimum : UNDEFINED);
+            this.requirement = requirement;
+        }
+
+        abstract boolean counts(char c);
+
+        @Override
+        public Map<String, Object> validate(PolicyEvaluation evaluation, String property, Object value,
+                boolean required) {
+            final boolean nonEmptyString = isNonEmptyString(value);
+            int count = 0;
+            if (nonEmptyString) {
+                final String string = (String) value;
+                for (int i = 0; i < string.length(); i++) {
+                    if (counts(string.charAt(i))) {
+                        count++;
+                    }
+                }
+            }
+            // the script finds no match rather than zero matches, so a count of zero always fails
+            if ((required || nonEmptyString) && !(count > 0 && count >= min)) {
+                return failure(requirement, object(field(param, minimum)));
+            }
+            return null;
+        }
+    }
+
+    static Map<String, Object> failure(String requirement) {
+        final Map<String, Object> failure = new HashMap<>(4);
+        failure.put("policyRequirement", requirement);
+        return failure;
+    }
+
+    static Map<String, Object> failure(String requirement, Map<String, Object> params) {
+        final Map<String, Object> failure = failure(requirement);
+        failure.put("params", params);
+        return failure;
+    }
+
+    private static void requireParams(JsonValue params, String param) throws UnsupportedPolicyException {
+        if (!params.isMap()) {
+            throw new UnsupportedPolicyException("No params for policy requiring " + param);
+        }
+    }
+
+    /**
+     * Tells whether a value is queried by {@code unique} and {@code no-internal-user-conflict}.
+     */
+    private static boolean hasQueryableValue(Object value) throws UnsupportedPolicyException {
+        if (value instanceof List && !((List<?>) value).isEmpty()) {
+            throw new UnsupportedPolicyException("Cannot query a list value");
+        }
+        return isNonEmptyString(value);
+    }
+
+    /**
+     * Tells whether the objects found holding a value make it taken for the validated object, as {@code policy.js}
+     * does: they do unless the first one is the validated object itself.
+     *
+     * @param existing the objects holding the value
+     * @param requestId the ID of the validated object, {@code *} or empty if it is being created
+     * @return true if the value is taken
+     */
+    static boolean isTaken(List<ResourceResponse> existing, String requestId) {
+        if (existing.isEmpty()) {
+            return false;
+        }
+        if (requestId == null || requestId.isEmpty()) {
+            return true;
+        }
+        final Object id = existing.get(0).getContent().get("_id").getObject();
+        return id == null || !requestId.equals(toJsString(id));
+    }
+
+    private static Pattern compileRegExp(JsonValue regexp, JsonValue flags) throws UnsupportedPolicyException {
+        if (!regexp.isString() || !(flags.isNull() || flags.isString())) {
+            throw new UnsupportedPolicyException("Regular expression or flags are not strings");
+        }
+        int javaFlags = 0;
+        for (char flag : flags.defaultTo("").asString().toCharArray()) {
+            switch (flag) {
+            case 'i':
+                javaFlags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+                break;
+            case 'm':
+                javaFlags |= Pattern.MULTILINE;
+                break;
+            case 'g':
+                // no effect on testing a single value
+                break;
+            default:
+                throw new UnsupportedPolicyException("Unsupported regular expression flag " + flag);
+            }
+        }
+        return compileRegExp(regexp.asString(), javaFlags);
+    }
+
+    private static Pattern compileRegExp(String regexp, int flags) throws UnsupportedPolicyException {
+        try {
+            return Pattern.compile(regexp, flags);
+        } catch (PatternSyntaxException e) {
+            throw new UnsupportedPolicyException("Cannot compile regular expression " + regexp);
+        }
+    }
+
+    /**
+     * Finds a pattern in a string as {@code RegExp.test} does, except for strings ending with a line terminator,
+     * before which {@code $} matches in Java but not in JavaScript.
+     */
+    private static boolean find(Pattern pattern, String string) throws UnsupportedPolicyException {
+        if (!string.isEmpty()) {
+            final char last = string.charAt(string.length() - 1);
+            if (last == '\n' || last == '\r' || last == '\u0085' || last == '\u2028' || last == '\u2029') {
+                throw new UnsupportedPolicyException("Value ends with a line terminator");
+            }
+        }
+        return pattern.matcher(string).find();
+    }
+
+    private static boolean isNonEmptyString(Object value) {
+        return value instanceof String && !((String) value).isEmpty();
+    }
+
+    /**
+     * @return the {@code length} of a value, or -1 if the value has none
+     */
+    private static int length(Object value) {
+        if (value instanceof String) {
+            return ((String) value).length();
+        } else if (value instanceof List) {
+            return ((List<?>) value).size();
+        }
+        return -1;
+    }
+
+    /**
+     * @return the type of a value, as checked by {@code valid-type}
+     */
+    static String typeOf(Object value) {
+        if (value == null) {
+            return "null";
+        } else if (value == UNDEFINED) {
+            return "undefined";
+        } else if (value instanceof List) {
+            return "array";
+        } else if (value instanceof String) {
+            return "string";
+        } else if (value instanceof Number) {
+            return "number";
+        } else if (value instanceof Boolean) {
+            return "boolean";
+        }
+        return "object";
+    }
+
+    /**
+     * @return a scalar value converted to a string as JavaScript does
+     */
+    static String toJsString(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            final double d = ((Number) value).doubleValue();
+            if (d == Math.rint(d) && Math.abs(d) < 1e21) {
+                return Long.toString((long) d);
+            }
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * @return a parameter converted to a number as JavaScript does when comparing it with a number
+     */
+    static double toNumber(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        } else if (value instanceof String) {
+            final String string = ((String) value).trim();
+            if (string.isEmpty()) {
+                return 0;
+            }
+            try {
+                return Double.parseDouble(string);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+}
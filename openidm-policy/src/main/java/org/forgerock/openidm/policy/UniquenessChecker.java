@@ -0,0 +1,386 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.policy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.resource.ConnectionFactory;
+import org.forgerock.json.resource.QueryFilters;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.query.QueryFilter;
+
+/**
+ * Checks that values of a property are unique in a collection for the {@link StandardPolicy#UNIQUE unique} policy,
+ * with fewer queries than one per value when many objects are validated at once, as during a reconciliation.
+ * <p>
+ * Concurrent checks of the same property of the same collection are batched: while a query is running, the values
+ * checked meanwhile are queued, and are all queried at once by a single {@code or} filter as soon as it completes.
+ * A check with no query running is queried right away, so a lone check is not delayed. A value whose batch finds
+ * objects holding other spellings of it, such as values equal to it when compared case insensitively by the
+ * repository, is queried again on its own so it gets the same answer as a query of that value alone.
+ * <p>
+ * The values found unique within one reconciliation are also remembered until the reconciliation has been idle for
+ * {@link #OPERATION_IDLE_MILLIS}, so that two source objects with the same value are not both created because their
+ * checks ran before either was stored: the value is taken for any other object of the same reconciliation without
+ * querying again. A value stays claimed even if the object that claimed it then fails to be created.
+ */
+class UniquenessChecker {
+
+    /** Maximum number of values queried by one query */
+    static final int DEFAULT_MAX_BATCH_SIZE = 50;
+
+    /** Time after which the values claimed by a reconciliation no longer checked against are forgotten */
+    static final long OPERATION_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /** Maximum number of values remembered per reconciliation, further values are only checked by queries */
+    private static final int MAX_CLAIMS = 100000;
+
+    /** Name of the context of the reconciliation a check is made for */
+    private static final String RECON_CONTEXT = "recon";
+
+    private final ConnectionFactory connectionFactory;
+    private final int maxBatchSize;
+
+    /** The queue of the checks of each property of each collection */
+    private final ConcurrentMap<String, CheckQueue> queues = new ConcurrentHashMap<>();
+
+    /** The values claimed by each reconciliation, by reconciliation context ID */
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<>();
+    private volatile long lastExpiry = System.currentTimeMillis();
+
+    /**
+     * Creates a checker querying at most {@link #DEFAULT_MAX_BATCH_SIZE} values at once.
+     *
+     * @param connectionFactory the connection factory to query the collections with
+     */
+    UniquenessChecker(ConnectionFactory connectionFactory) {
+        this(connectionFactory, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a checker.
+     *
+     * @param connectionFactory the connection factory to query the collections with
+     * @param maxBatchSize the maximum number of values queried at once
+     */
+    UniquenessChecker(ConnectionFactory connectionFactory, int maxBatchSize) {
+        this.connectionFactory = connectionFactory;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * Checks whether a value is held by an object of a collection other than the validated one.
+     *
+     * @param context the context of the policy request
+     * @param collection the path of the collection
+     * @param property the property holding the value
+     * @param value the value to check
+     * @param requestId the ID of the validated object, {@code *} or empty if it is being created
+     * @return true if another object holds the value
+     * @throws ResourceException if the collection could not be queried
+     * @throws IllegalArgumentException if the property cannot be queried
+     */
+    boolean isTaken(Context context, String collection, String property, String value, String requestId)
+            throws ResourceException {
+        // fail before queueing the value if the property cannot be queried
+        filter(property, Collections.singleton(value));
+
+        final String claimant = requestId == null || requestId.isEmpty() || "*".equals(requestId) ? null : requestId;
+        final Operation operation = getOperation(context);
+        final String claimKey = collection + '\u0000' + property + '\u0000' + value;
+        if (operation != null && operation.isClaimedByOther(claimKey, claimant)) {
+            return true;
+        }
+        if (StandardPolicy.isTaken(check(context, collection, property, value), requestId)) {
+            return true;
+        }
+        return operation != null && !operation.claim(claimKey, claimant);
+    }
+
+    /**
+     * Builds the filter matching the objects holding any of the values, as {@code policy.js} does for one value.
+     *
+     * @param property the property holding the values
+     * @param values the values
+     * @return the filter
+     * @throws IllegalArgumentException if the property cannot be queried
+     */
+    static QueryFilter<JsonPointer> filter(String property, Collection<String> values) {
+        final StringBuilder filter = new StringBuilder();
+        for (String value : values) {
+            if (filter.length() > 0) {
+                filter.append(" or ");
+            }
+            filter.append(property).append(" eq \"").append(value.replace("\"", "\\\"")).append('"');
+        }
+        return QueryFilters.parse(filter.toString());
+    }
+
+    /**
+     * Queues a value behind the running query of its property, and returns the objects found holding it once the
+     * query of its batch completed.
+     */
+    private List<ResourceResponse> check(Context context, String collection, String property, String value)
+            throws ResourceException {
+        final String key = collection + '\u0000' + property;
+        CheckQueue queue = queues.get(key);
+        if (queue == null) {
+            final CheckQueue created = new CheckQueue(collection, property);
+            queue = queues.putIfAbsent(key, created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+
+        Batch batch;
+        boolean run = false;
+        boolean interrupted = false;
+        synchronized (queue) {
+            batch = queue.pending.peekLast();
+            if (batch == null || batch.values.size() >= maxBatchSize) {
+                batch = new Batch();
+                queue.pending.addLast(batch);
+            }
+            batch.values.add(value);
+            if (!queue.querying) {
+                // nothing is pending while no query runs, so the batch is the one just created
+                queue.querying = true;
+                queue.pending.remove(batch);
+                batch.started = true;
+                run = true;
+            }
+            while (!run && !batch.done) {
+                if (batch.promoted && !batch.started) {
+                    batch.started = true;
+                    run = true;
+                } else {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException e) {
+                        // the batch may depend on this thread to run it
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (run) {
+            Map<String, List<ResourceResponse>> found = null;
+            ResourceException failure = null;
+            try {
+                found = queryBatch(context, queue, batch.values);
+            } catch (ResourceException e) {
+                failure = e;
+            } finally {
+                synchronized (queue) {
+                    batch.found = found;
+                    batch.failure = failure;
+                    batch.done = true;
+                    final Batch next = queue.pending.pollFirst();
+                    if (next != null) {
+                        next.promoted = true;
+                    } else {
+                        queue.querying = false;
+                    }
+                    queue.notifyAll();
+                }
+            }
+        }
+
+        if (batch.failure != null) {
+            throw batch.failure;
+        }
+        if (batch.found == null) {
+            throw new IllegalStateException("The uniqueness query of " + property + " failed");
+        }
+        final List<ResourceResponse> results = batch.found.get(value);
+        return results != null ? results : Collections.<ResourceResponse>emptyList();
+    }
+
+    /**
+     * Queries the objects holding any of the values.
+     *
+     * @return the objects found, by the value they hold
+     */
+    private Map<String, List<ResourceResponse>> queryBatch(Context context, CheckQueue queue, Set<String> values)
+            throws ResourceException {
+        final Map<String, List<ResourceResponse>> found = new HashMap<>();
+        final JsonPointer pointer = new JsonPointer(queue.property);
+        Set<String> remaining = values;
+        while (!remaining.isEmpty()) {
+            final List<ResourceResponse> results = query(context, queue, remaining);
+            if (results.isEmpty()) {
+                break;
+            }
+            if (remaining.size() == 1) {
+                found.put(remaining.iterator().next(), results);
+                break;
+            }
+            final Set<String> unmatched = new LinkedHashSet<>(remaining);
+            for (ResourceResponse result : results) {
+                final Object held = result.getContent().get(pointer).getObject();
+                if (held instanceof String && remaining.contains(held)) {
+                    unmatched.remove(held);
+                    List<ResourceResponse> holders = found.get(held);
+                    if (holders == null) {
+                        holders = new ArrayList<>();
+                        found.put((String) held, holders);
+                    }
+                    holders.add(result);
+                }
+            }
+            if (unmatched.size() == remaining.size()) {
+                // none of the objects holds one of the values as queried, so which value each one matched is unknown
+                for (String value : remaining) {
+                    final List<ResourceResponse> holders = query(context, queue, Collections.singleton(value));
+                    if (!holders.isEmpty()) {
+                        found.put(value, holders);
+                    }
+                }
+                break;
+            }
+            remaining = unmatched;
+        }
+        return found;
+    }
+
+    private List<ResourceResponse> query(Context context, CheckQueue queue, Collection<String> values)
+            throws ResourceException {
+        final QueryRequest request = Requests.newQueryRequest(queue.collection)
+                .setQueryFilter(filter(queue.property, values));
+        final List<ResourceResponse> results = new ArrayList<>();
+        connectionFactory.getConnection().query(context, request, results);
+        return results;
+    }
+
+    /**
+     * @return the claims of the reconciliation the check is made for, or null if it is not made for one
+     */
+    private Operation getOperation(Context context) {
+        final long now = System.currentTimeMillis();
+        if (now - lastExpiry > OPERATION_IDLE_MILLIS) {
+            lastExpiry = now;
+            for (Iterator<Operation> it = operations.values().iterator(); it.hasNext();) {
+                if (now - it.next().lastUsed > OPERATION_IDLE_MILLIS) {
+                    it.remove();
+                }
+            }
+        }
+        if (!context.containsContext(RECON_CONTEXT)) {
+            return null;
+        }
+        final String id = context.getContext(RECON_CONTEXT).getId();
+        Operation operation = operations.get(id);
+        if (operation == null) {
+            final Operation created = new Operation();
+            operation = operations.putIfAbsent(id, created);
+            if (operation == null) {
+                operation = created;
+            }
+        }
+        operation.lastUsed = now;
+        return operation;
+    }
+
+    /**
+     * The checks of one property of one collection, guarded by the queue itself.
+     */
+    private static class CheckQueue {
+        private final String collection;
+        private final String property;
+        /** Whether a query of the property is running */
+        private boolean querying;
+        /** The batches of values waiting for the running query to complete */
+        private final Deque<Batch> pending = new ArrayDeque<>();
+
+        private CheckQueue(String collection, String property) {
+            this.collection = collection;
+            this.property = property;
+        }
+    }
+
+    /**
+     * Values queried at once, guarded by their {@link CheckQueue}.
+     */
+    private static class Batch {
+        private final Set<String> values = new LinkedHashSet<>();
+        /** Whether the batch is next to be queried, by the first of its checking threads to notice */
+        private boolean promoted;
+        private boolean started;
+        private boolean done;
+        private Map<String, List<ResourceResponse>> found;
+        private ResourceException failure;
+    }
+
+    /**
+     * The values found unique within one reconciliation, with the ID of the object each was claimed by.
+     */
+    private static class Operation {
+        /** Claimant of the values claimed by objects being created, which are all different objects */
+        private static final String CREATED = "";
+
+        private final ConcurrentMap<String, String> claims = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private volatile long lastUsed;
+
+        /**
+         * @return true if the value was claimed by an object other than the claimant, or by an object being created
+         */
+        private boolean isClaimedByOther(String key, String claimant) {
+            final String claimedBy = claims.get(key);
+            return claimedBy != null && (CREATED.equals(claimedBy) || !claimedBy.equals(claimant));
+        }
+
+        /**
+         * Claims a value for an object, unless the values claimed are too many to remember.
+         *
+         * @return false if another object claimed the value meanwhile
+         */
+        private boolean claim(String key, String claimant) {
+            if (size.get() >= MAX_CLAIMS) {
+                return !isClaimedByOther(key, claimant);
+            }
+            final String claimedBy = claims.putIfAbsent(key, claimant != null ? claimant : CREATED);
+            if (claimedBy == null) {
+                size.incrementAndGet();
+                return true;
+            }
+            return !CREATED.equals(claimedBy) && claimedBy.equals(claimant);
+        }
+    }
+}
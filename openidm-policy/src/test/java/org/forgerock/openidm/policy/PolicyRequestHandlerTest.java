@@ -0,0 +1,223 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.policy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Responses.newActionResponse;
+import static org.forgerock.json.resource.Router.uriTemplate;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ActionRequest;
+import org.forgerock.json.resource.ConnectionFactory;
+import org.forgerock.json.resource.MemoryBackend;
+import org.forgerock.json.resource.RequestHandler;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.Resources;
+import org.forgerock.json.resource.Router;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the native validation of the standard policies by {@link PolicyRequestHandler}.
+ */
+public class PolicyRequestHandlerTest {
+
+    /** The resources of the default policy.json */
+    private static final JsonValue RESOURCES = json(array(
+            object(
+                    field("resource", "repo/internal/user/*"),
+                    field("properties", array(
+                            object(
+                                    field("name", "_id"),
+                                    field("policies", array(
+                                            object(
+                                                    field("policyId", "cannot-contain-characters"),
+                                                    field("params", object(field("forbiddenChars", array("/")))))))),
+                            object(
+                                    field("name", "password"),
+                                    field("policies", array(
+                                            object(field("policyId", "required")),
+                                            object(field("policyId", "not-empty")),
+                                            object(
+                                                    field("policyId", "at-least-X-capitals"),
+                                                    field("params", object(field("numCaps", 1)))),
+                                            object(
+                                                    field("policyId", "at-least-X-numbers"),
+                                                    field("params", object(field("numNums", 1)))),
+                                            object(
+                                                    field("policyId", "minimum-length"),
+                                                    field("params", object(field("minLength", 8))))))))))));
+
+    private ConnectionFactory connectionFactory;
+    private RequestHandler scriptedHandler;
+    private PolicyRequestHandler handler;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        Router router = new Router();
+        router.addRoute(uriTemplate("config"), new MemoryBackend());
+        router.addRoute(uriTemplate("managed/user"), new MemoryBackend());
+        connectionFactory = Resources.newInternalConnectionFactory(router);
+        connectionFactory.getConnection().create(new RootContext(),
+                Requests.newCreateRequest("config", "managed", managedConfig(object(field("type", "string")))));
+        connectionFactory.getConnection().create(new RootContext(),
+                Requests.newCreateRequest("managed/user", "bjensen",
+                        json(object(field("userName", "bjensen"), field("mail", "bjensen@example.com")))));
+
+        scriptedHandler = mock(RequestHandler.class);
+        when(scriptedHandler.handleAction(any(Context.class), any(ActionRequest.class)))
+                .thenReturn(newActionResponse(json(object(field("result", true)))).asPromise());
+        handler = new PolicyRequestHandler(scriptedHandler, connectionFactory, null);
+        handler.setResources(RESOURCES);
+    }
+
+    private static JsonValue managedConfig(Object mailSchema) {
+        return json(object(field("objects", array(object(
+                field("name", "user"),
+                field("schema", object(
+                        field("required", array("userName", "mail")),
+                        field("properties", object(
+                                field("userName", object(
+                                        field("type", "string"),
+                                        field("policies", array(object(field("policyId", "unique")))))),
+                                field("mail", mailSchema))))))))));
+    }
+
+    private JsonValue validate(String resourcePath, String action, JsonValue content) throws Exception {
+        return handler.handleAction(new RootContext(),
+                Requests.newActionRequest(resourcePath, action).setContent(content)).getOrThrow().getJsonContent();
+    }
+
+    @Test
+    public void testPasswordPolicies() throws Exception {
+        JsonValue result = validate("repo/internal/user/*", PolicyRequestHandler.VALIDATE_OBJECT,
+                json(object(field("password", "secret"))));
+
+        assertThat(result.get("result").asBoolean()).isFalse();
+        assertThat(result.get("failedPolicyRequirements").getObject()).isEqualTo(array(
+                object(
+                        field("property", "password"),
+                        field("policyRequirements", array(object(
+                                field("policyRequirement", "AT_LEAST_X_CAPITAL_LETTERS"),
+                                field("params", object(field("numCaps", 1))))))),
+                object(
+                        field("property", "password"),
+                        field("policyRequirements", array(object(
+                                field("policyRequirement", "AT_LEAST_X_NUMBERS"),
+                                field("params", object(field("numNums", 1))))))),
+                object(
+                        field("property", "password"),
+                        field("policyRequirements", array(object(
+                                field("policyRequirement", "MIN_LENGTH"),
+                                field("params", object(field("minLength", 8)))))))));
+        verify(scriptedHandler, never()).handleAction(any(Context.class), any(ActionRequest.class));
+    }
+
+    @Test
+    public void testRequiredSkipsPoliciesValidatedOnlyIfPresent() throws Exception {
+        JsonValue result = validate("repo/internal/user/*", PolicyRequestHandler.VALIDATE_OBJECT,
+                json(object(field("_id", "a/b"))));
+
+        assertThat(result.get("failedPolicyRequirements").getObject()).isEqualTo(array(
+                object(
+                        field("property", "_id"),
+                        field("policyRequirements", array(object(
+                                field("policyRequirement", "CANNOT_CONTAIN_CHARACTERS"),
+                                field("params", object(field("forbiddenChars", "/"))))))),
+                object(
+                        field("property", "password"),
+                        field("policyRequirements", array(object(field("policyRequirement", "REQUIRED")))))));
+    }
+
+    @Test
+    public void testManagedObjectSchemaPolicies() throws Exception {
+        JsonValue result = validate("managed/user/*", PolicyRequestHandler.VALIDATE_OBJECT,
+                json(object(field("userName", "bjensen"), field("mail", 42))));
+
+        assertThat(result.get("failedPolicyRequirements").getObject()).isEqualTo(array(
+                object(
+                        field("property", "userName"),
+                        field("policyRequirements", array(object(field("policyRequirement", "UNIQUE"))))),
+                object(
+                        field("property", "mail"),
+                        field("policyRequirements", array(object(
+                                field("policyRequirement", "VALID_TYPE"),
+                                field("params", object(
+                                        field("invalidType", "number"),
+                                        field("validTypes", array("string"))))))))));
+
+        result = validate("managed/user/*", PolicyRequestHandler.VALIDATE_OBJECT,
+                json(object(field("userName", "scarter"), field("mail", "scarter@example.com"))));
+        assertThat(result.get("result").asBoolean()).isTrue();
+        assertThat(result.get("failedPolicyRequirements").asList()).isEmpty();
+    }
+
+    @Test
+    public void testValidateProperty() throws Exception {
+        JsonValue result = validate("managed/user/bjensen", PolicyRequestHandler.VALIDATE_PROPERTY,
+                json(object(field("mail", null))));
+
+        assertThat(result.get("failedPolicyRequirements").getObject()).isEqualTo(array(object(
+                field("property", "mail"),
+                field("policyRequirements", array(object(
+                        field("policyRequirement", "VALID_TYPE"),
+                        field("params", object(
+                                field("invalidType", "null"),
+                                field("validTypes", array("string"))))))))));
+    }
+
+    @Test
+    public void testSchemaChangeRecompilesPolicies() throws Exception {
+        JsonValue content = json(object(field("userName", "scarter"), field("mail", "scarter")));
+        assertThat(validate("managed/user/*", PolicyRequestHandler.VALIDATE_OBJECT, content)
+                .get("result").asBoolean()).isTrue();
+
+        connectionFactory.getConnection().update(new RootContext(), Requests.newUpdateRequest("config/managed",
+                managedConfig(object(
+                        field("type", "string"),
+                        field("policies", array(object(field("policyId", "valid-email-address-format"))))))));
+
+        assertThat(validate("managed/user/*", PolicyRequestHandler.VALIDATE_OBJECT, content)
+                .get("failedPolicyRequirements").getObject()).isEqualTo(array(object(
+                        field("property", "mail"),
+                        field("policyRequirements", array(object(
+                                field("policyRequirement", "VALID_EMAIL_ADDRESS_FORMAT")))))));
+    }
+
+    @Test
+    public void testCustomPolicyIsValidatedByScript() throws Exception {
+        connectionFactory.getConnection().update(new RootContext(), Requests.newUpdateRequest("config/managed",
+                managedConfig(object(
+                        field("type", "string"),
+                        field("policies", array(object(field("policyId", "mail-domain-allowed"))))))));
+
+        validate("managed/user/*", PolicyRequestHandler.VALIDATE_OBJECT,
+                json(object(field("userName", "scarter"), field("mail", "scarter@example.com"))));
+
+        verify(scriptedHandler).handleAction(any(Context.class), any(ActionRequest.class));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.policy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.forgerock.json.JsonValue;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the detection of the bundled policy script by {@link PolicyService}.
+ */
+public class PolicyServiceTest {
+
+    private static final JsonValue CONFIGURATION =
+            json(object(field("type", "text/javascript"), field("file", "policy.js")));
+
+    private File install;
+    private File project;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        install = Files.createTempDirectory("install").toFile();
+        project = Files.createTempDirectory("project").toFile();
+        Path bundled = Paths.get("../openidm-zip/src/main/resources/bin/defaults/script/policy.js");
+        Path defaults = install.toPath().resolve("bin/defaults/script");
+        Files.createDirectories(defaults);
+        Files.copy(bundled, defaults.resolve("policy.js"));
+    }
+
+    @Test
+    public void testBundledPolicyScript() {
+        assertThat(PolicyService.isBundledPolicyScript(CONFIGURATION, install, project)).isTrue();
+    }
+
+    @Test
+    public void testProjectPolicyScript() throws IOException {
+        Path script = project.toPath().resolve("script");
+        Files.createDirectories(script);
+
+        // a copy of the bundled script is the bundled script
+        Files.copy(install.toPath().resolve("bin/defaults/script/policy.js"), script.resolve("policy.js"));
+        assertThat(PolicyService.isBundledPolicyScript(CONFIGURATION, install, project)).isTrue();
+
+        Files.write(script.resolve("policy.js"), "var policyConfig = {};".getBytes(StandardCharsets.UTF_8));
+        assertThat(PolicyService.isBundledPolicyScript(CONFIGURATION, install, project)).isFalse();
+    }
+
+    @Test
+    public void testOtherPolicyScripts() {
+        assertThat(PolicyService.isBundledPolicyScript(
+                json(object(field("type", "text/javascript"), field("file", "missing.js"))), install, project))
+                .isFalse();
+        assertThat(PolicyService.isBundledPolicyScript(
+                json(object(field("type", "text/javascript"), field("source", "var policyConfig = {};"))),
+                install, project))
+                .isFalse();
+        assertThat(PolicyService.isBundledPolicyScript(
+                json(object(field("type", "groovy"), field("file", "policy.js"))), install, project))
+                .isFalse();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.policy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Router.uriTemplate;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.json.resource.MemoryBackend;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.Resources;
+import org.forgerock.json.resource.Router;
+import org.forgerock.services.context.AbstractContext;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the batching and the per reconciliation claims of {@link UniquenessChecker}.
+ */
+public class UniquenessCheckerTest {
+
+    private MemoryBackend users;
+    private UniquenessChecker checker;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        users = spy(new MemoryBackend());
+        Router router = new Router();
+        router.addRoute(uriTemplate("managed/user"), users);
+        checker = new UniquenessChecker(Resources.newInternalConnectionFactory(router));
+        for (String userName : new String[] { "bjensen", "scarter" }) {
+            router.handleCreate(new RootContext(), Requests.newCreateRequest("managed/user", userName,
+                    json(object(field("userName", userName))))).getOrThrow();
+        }
+    }
+
+    private static Context reconContext() {
+        return new AbstractContext(new RootContext(), "recon") { };
+    }
+
+    private void verifyQueries(int queries) throws Exception {
+        verify(users, times(queries))
+                .handleQuery(any(Context.class), any(QueryRequest.class), any(QueryResourceHandler.class));
+    }
+
+    @Test
+    public void testValueHeldByOtherObjectIsTaken() throws Exception {
+        assertThat(checker.isTaken(new RootContext(), "managed/user", "userName", "bjensen", "*")).isTrue();
+        assertThat(checker.isTaken(new RootContext(), "managed/user", "userName", "bjensen", "scarter")).isTrue();
+    }
+
+    @Test
+    public void testValueHeldByValidatedObjectIsNotTaken() throws Exception {
+        assertThat(checker.isTaken(new RootContext(), "managed/user", "userName", "bjensen", "bjensen")).isFalse();
+        assertThat(checker.isTaken(new RootContext(), "managed/user", "userName", "jdoe", "*")).isFalse();
+    }
+
+    @Test
+    public void testConcurrentChecksAreQueriedTogether() throws Exception {
+        final CountDownLatch firstQuery = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                firstQuery.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return invocation.callRealMethod();
+            }
+        }).when(users).handleQuery(any(Context.class), any(QueryRequest.class), any(QueryResourceHandler.class));
+
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<Boolean>> taken = new ArrayList<>();
+            taken.add(executor.submit(check("jdoe")));
+            firstQuery.await(10, TimeUnit.SECONDS);
+            for (String userName : new String[] { "bjensen", "mjones", "scarter", "\"quoted\"" }) {
+                taken.add(executor.submit(check(userName)));
+            }
+            // let the checks queue behind the running query
+            Thread.sleep(200);
+            release.countDown();
+
+            assertThat(taken.get(0).get(10, TimeUnit.SECONDS)).isFalse();
+            assertThat(taken.get(1).get(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(taken.get(2).get(10, TimeUnit.SECONDS)).isFalse();
+            assertThat(taken.get(3).get(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(taken.get(4).get(10, TimeUnit.SECONDS)).isFalse();
+        } finally {
+            executor.shutdownNow();
+        }
+        // the queued values found both bjensen and scarter, so the values found in neither are queried once again
+        verifyQueries(3);
+    }
+
+    private Callable<Boolean> check(final String userName) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return checker.isTaken(new RootContext(), "managed/user", "userName", userName, "*");
+            }
+        };
+    }
+
+    @Test
+    public void testValueClaimedWithinReconciliationIsTaken() throws Exception {
+        Context recon = reconContext();
+        assertThat(checker.isTaken(recon, "managed/user", "userName", "jdoe", "*")).isFalse();
+        assertThat(checker.isTaken(recon, "managed/user", "userName", "jdoe", "*")).isTrue();
+        assertThat(checker.isTaken(recon, "managed/user", "userName", "mjones", "mjones")).isFalse();
+        assertThat(checker.isTaken(recon, "managed/user", "userName", "mjones", "mjones")).isFalse();
+        assertThat(checker.isTaken(recon, "managed/user", "userName", "mjones", "*")).isTrue();
+        verifyQueries(3);
+
+        // another reconciliation, or a request outside of one, only sees the stored objects
+        assertThat(checker.isTaken(reconContext(), "managed/user", "userName", "jdoe", "*")).isFalse();
+        assertThat(checker.isTaken(new RootContext(), "managed/user", "userName", "jdoe", "*")).isFalse();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnqueryablePropertyFails() throws Exception {
+        checker.isTaken(new RootContext(), "managed/user", "(userName", "jdoe", "*");
+    }
+}
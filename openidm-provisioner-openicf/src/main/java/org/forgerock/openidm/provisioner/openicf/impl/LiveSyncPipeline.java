@@ -0,0 +1,275 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes the deltas of one live synchronization run concurrently.
+ * <p>
+ * Each delta is assigned to one of a fixed number of worker lanes by the hash of its {@code Uid}, and each lane
+ * processes its deltas one at a time in the order they were received, so the changes to one object are applied in
+ * order. The lanes are started once by the provisioner with {@link #startLanes(String, int)} and shared by its runs.
+ * At most {@code maxPending} deltas are queued or in progress at once; beyond that the connector thread
+ * feeding the pipeline waits.
+ * <p>
+ * The sync token only advances to the token of the last delta of the longest completed prefix of the change stream,
+ * so a delta that stops the run, because the {@code SyncFailureHandler} asked for a retry, is picked up again by the
+ * next run. Deltas received after it that were already processed by other lanes are then processed again. When several
+ * deltas stop the run, the failure reported is the one of the earliest delta in the stream, which is retried next.
+ */
+class LiveSyncPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveSyncPipeline.class);
+
+    /** Interval at which a feeder waiting for room in the pipeline checks whether the run was stopped */
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Processes a single delta.
+     */
+    interface DeltaProcessor {
+        /**
+         * Processes a delta, including handling its failure.
+         *
+         * @param syncDelta the delta to process
+         * @param syncRetry set if the delta has to be retried
+         * @return true if the delta was processed or its failure handled, false if the run has to stop and be
+         *         retried from this delta
+         */
+        boolean process(SyncDelta syncDelta, SyncRetry syncRetry);
+    }
+
+    private final ExecutorService[] lanes;
+    private final int maxPending;
+    private final Semaphore pending;
+    private final DeltaProcessor processor;
+
+    /** Sequence number of the next delta received, only used by the feeding thread */
+    private long received;
+
+    // Guarded by this
+    private final TreeMap<Long, SyncToken> completedAhead = new TreeMap<>();
+    private long nextToComplete;
+    private SyncToken lastToken;
+
+    /** Sequence number of the earliest delta that stopped the run; deltas from it on are left for the next run */
+    private volatile long stoppedAt = Long.MAX_VALUE;
+    // Guarded by this, the retry and the unexpected exception of the delta at stoppedAt
+    private SyncRetry syncRetry;
+    private RuntimeException failure;
+
+    /**
+     * Starts the lanes on which the deltas are processed.
+     *
+     * @param name the name of the provisioner, used to name the lane threads
+     * @param workers the number of lanes
+     * @return the lanes, to stop with {@link #stopLanes(ExecutorService[])}
+     */
+    static ExecutorService[] startLanes(String name, int workers) {
+        ExecutorService[] lanes = new ExecutorService[Math.max(1, workers)];
+        for (int i = 0; i < lanes.length; i++) {
+            final String threadName = "livesync-" + name + "-" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return lanes;
+    }
+
+    /**
+     * Stops the lanes, interrupting the deltas in progress.
+     *
+     * @param lanes the lanes started with {@link #startLanes(String, int)}
+     */
+    static void stopLanes(ExecutorService[] lanes) {
+        for (ExecutorService lane : lanes) {
+            lane.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the pipeline of a run.
+     *
+     * @param lanes the lanes to process the deltas on
+     * @param maxPending the maximum number of deltas queued or in progress
+     * @param token the sync token the run started from
+     * @param processor the processor of each delta
+     */
+    LiveSyncPipeline(ExecutorService[] lanes, int maxPending, SyncToken token, DeltaProcessor processor) {
+        this.lanes = lanes;
+        this.maxPending = Math.max(lanes.length, maxPending);
+        this.pending = new Semaphore(this.maxPending);
+        this.processor = processor;
+        this.lastToken = token;
+    }
+
+    /**
+     * Queues a delta on the lane of its object, waiting for room in the pipeline if needed.
+     *
+     * @param syncDelta the delta received from the connector
+     * @return true if the connector should continue with the next delta, false if the run was stopped
+     */
+    boolean submit(final SyncDelta syncDelta) {
+        try {
+            while (!pending.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (isStopped()) {
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop(received, null, null);
+            return false;
+        }
+        if (isStopped()) {
+            pending.release();
+            return false;
+        }
+        final long sequence = received++;
+        final int lane = (syncDelta.getUid().getUidValue().hashCode() & Integer.MAX_VALUE) % lanes.length;
+        try {
+            lanes[lane].execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        // deltas received after the one that stopped the run are left for the next run
+                        if (sequence < stoppedAt) {
+                            SyncRetry deltaRetry = new SyncRetry();
+                            if (processor.process(syncDelta, deltaRetry)) {
+                                completed(sequence, syncDelta.getToken());
+                            } else {
+                                stop(sequence, deltaRetry, null);
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        logger.debug("Failed to process sync delta of {}", syncDelta.getUid(), e);
+                        stop(sequence, null, e);
+                    } finally {
+                        pending.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the lanes were stopped with the provisioner
+            logger.debug("Live sync lanes stopped, leaving sync delta of {} for the next run", syncDelta.getUid());
+            pending.release();
+            stop(sequence, null, null);
+        }
+        return !isStopped();
+    }
+
+    /**
+     * Records the completion of a delta, advancing the last token over the completed prefix of the stream.
+     */
+    private synchronized void completed(long sequence, SyncToken token) {
+        completedAhead.put(sequence, token);
+        while (!completedAhead.isEmpty() && completedAhead.firstKey() == nextToComplete) {
+            lastToken = completedAhead.remove(nextToComplete);
+            nextToComplete++;
+        }
+    }
+
+    /**
+     * Stops the run at a delta: no new deltas are accepted, and the deltas received after it are skipped unless they
+     * already started. The retry and exception of the earliest delta that stopped the run are kept.
+     *
+     * @param sequence the sequence number of the delta to retry in the next run
+     * @param deltaRetry the retry set by the processor of the delta, or null
+     * @param e the unexpected exception thrown while processing the delta, or null
+     */
+    private synchronized void stop(long sequence, SyncRetry deltaRetry, RuntimeException e) {
+        if (sequence < stoppedAt) {
+            stoppedAt = sequence;
+            syncRetry = deltaRetry;
+            failure = e;
+        }
+    }
+
+    /**
+     * @return true if the run was stopped before all its deltas were processed
+     */
+    boolean isStopped() {
+        return stoppedAt != Long.MAX_VALUE;
+    }
+
+    /**
+     * Waits for the queued deltas of the run to complete. The lanes are left running for the next runs.
+     *
+     * @return the token of the last delta of the longest completed prefix of the stream, or the token the run started
+     *         from if no such delta completed
+     */
+    SyncToken await() {
+        try {
+            // every queued or running delta holds a permit until it completes
+            pending.acquire(maxPending);
+            pending.release(maxPending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // the deltas still queued are skipped
+            stop(nextToComplete(), null, null);
+        }
+        return getLastToken();
+    }
+
+    /**
+     * Rethrows the unexpected exception thrown while processing the delta that stopped the run, as it would have been
+     * thrown to the connector by a serial run.
+     *
+     * @throws RuntimeException the exception thrown while processing a delta
+     */
+    synchronized void rethrowFailure() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the retry set by the processor of the earliest delta that stopped the run, which is the delta the next
+     *         run starts from; the retry is not set if the run was not stopped by a delta to retry
+     */
+    synchronized SyncRetry getSyncRetry() {
+        return syncRetry != null ? syncRetry : new SyncRetry();
+    }
+
+    private synchronized long nextToComplete() {
+        return nextToComplete;
+    }
+
+    /**
+     * @return the token of the last delta of the longest completed prefix of the stream
+     */
+    synchronized SyncToken getLastToken() {
+        return lastToken;
+    }
+}
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.lang3.StringUtils;
@@ -136,6 +137,12 @@ public class OpenICFProvisionerService implements ProvisionerService, SingletonR
 
     private static final Logger logger = LoggerFactory.getLogger(OpenICFProvisionerService.class);
 
+    /** Default number of lanes processing live sync deltas; 1 processes them serially */
+    private static final int DEFAULT_LIVE_SYNC_WORKERS = 1;
+
+    /** Default maximum number of live sync deltas queued or in progress in concurrent mode */
+    private static final int DEFAULT_LIVE_SYNC_MAX_PENDING = 1000;
+
     private SimpleSystemIdentifier systemIdentifier = null;
     private OperationHelperBuilder operationHelperBuilder = null;
     private Promise<ConnectorInfo, RuntimeException> connectorFacadeCallback = null;
@@ -143,6 +150,10 @@ public class OpenICFProvisionerService implements ProvisionerService, SingletonR
     private JsonValue jsonConfiguration = null;
     private ConnectorReference connectorReference = null;
     private SyncFailureHandler syncFailureHandler = null;
+    private int liveSyncWorkers = DEFAULT_LIVE_SYNC_WORKERS;
+    private int liveSyncMaxPending = DEFAULT_LIVE_SYNC_MAX_PENDING;
+    /** Lanes processing the live sync deltas concurrently, shared by the runs; null with a single worker */
+    private ExecutorService[] liveSyncLanes = null;
     private String factoryPid = null;
 
     /** use null-object activity logger until/unless ConnectionFactory binder updates it */
@@ -231,6 +242,12 @@ public class OpenICFProvisionerService implements ProvisionerService, SingletonR
             connectorReference = ConnectorUtil.getConnectorReference(jsonConfiguration);
 
             syncFailureHandler = syncFailureHandlerFactory.create(jsonConfiguration.get("syncFailureHandler"));
+            JsonValue liveSyncConfig = jsonConfiguration.get("liveSync");
+            liveSyncWorkers = liveSyncConfig.get("workers").defaultTo(DEFAULT_LIVE_SYNC_WORKERS).asInteger();
+            liveSyncMaxPending = liveSyncConfig.get("maxPending").defaultTo(DEFAULT_LIVE_SYNC_MAX_PENDING).asInteger();
+            if (liveSyncWorkers > 1) {
+                liveSyncLanes = LiveSyncPipeline.startLanes(systemIdentifier.getName(), liveSyncWorkers);
+            }
 
             final OpenICFProvisionerService provisionerService = this;
             connectorInfoProvider.findConnectorInfoAsync(connectorReference).thenOnResult(
@@ -332,6 +349,10 @@ public class OpenICFProvisionerService implements ProvisionerService, SingletonR
             ((LocalConnectorFacadeImpl) connectorFacade.get()).dispose();
         }
         connectorFacade.set(null);
+        if (null != liveSyncLanes) {
+            LiveSyncPipeline.stopLanes(liveSyncLanes);
+            liveSyncLanes = null;
+        }
         logger.info("OpenICF Provisioner Service component {} is deactivated.", systemIdentifier.getName());
         systemIdentifier = null;
     }
@@ -825,140 +846,83 @@ public class OpenICFProvisionerService implements ProvisionerService, SingletonR
                     logger.debug("New LatestSyncToken has been fetched. New token is: {}", token);
                 } else {
                     final SyncToken[] lastToken = new SyncToken[]{token};
-                    final String[] failedRecord = new String[1];
                     OperationOptionsBuilder operationOptionsBuilder =
                             helper.getOperationOptionsBuilder(SyncApiOp.class, null, previousStage);
 
+                    // With more than one worker, deltas are processed concurrently while the connector reads ahead
+                    final ExecutorService[] lanes = liveSyncLanes;
+                    final LiveSyncPipeline pipeline = lanes != null
+                            ? new LiveSyncPipeline(lanes, liveSyncMaxPending, token,
+                                    new LiveSyncPipeline.DeltaProcessor() {
+                                        @Override
+                                        public boolean process(SyncDelta syncDelta, SyncRetry deltaRetry) {
+                                            return processSyncDelta(context, objectType, helper, stage, syncDelta,
+                                                    deltaRetry);
+                                        }
+                                    })
+                            : null;
+
                     try {
                         logger.debug("Execute sync(ObjectClass:{}, SyncToken:{})",
                                 new Object[] { helper.getObjectClass().getObjectClassValue(), token });
-                        SyncToken syncToken = operation.sync(helper.getObjectClass(), token,
-                                new SyncResultsHandler() {
-                                    /**
-                                     * Called to handle a delta in the stream. The Connector framework will call
-                                     * this method multiple times, once for each result.
-                                     * Although this method is callback, the framework will invoke it synchronously.
-                                     * Thus, the framework guarantees that once an application's call to
-                                     * {@link org.identityconnectors.framework.api.operations.SyncApiOp#sync(org.identityconnectors.framework.common.objects.ObjectClass, org.identityconnectors.framework.common.objects.SyncToken, org.identityconnectors.framework.common.objects.SyncResultsHandler, org.identityconnectors.framework.common.objects.OperationOptions)} SyncApiOp#sync() returns,
-                                     * the framework will no longer call this method
-                                     * to handle results from that <code>sync()</code> operation.
-                                     *
-                                     * @param syncDelta The change
-                                     * @return True iff the application wants to continue processing more results.
-                                     * @throws RuntimeException If the application encounters an exception. This will
-                                     * stop iteration and the exception will propagate to the application.
-                                     */
-                                    @SuppressWarnings("fallthrough")
-                                    public boolean handle(SyncDelta syncDelta) {
-                                        try {
-                                            // Q: are we going to encode ids?
-                                            final String resourceId = syncDelta.getUid().getUidValue();
-                                            final String objectTypeName = getObjectTypeName(syncDelta.getObjectClass());
-                                            final String resourceContainer = getSource(objectTypeName == null ? objectType : objectTypeName);
-                                            final JsonValue content = new JsonValue(new LinkedHashMap<String, Object>(2));
-
-                                            //rebuild the OperationHelper if the helper is for the __ALL__ object class
-                                            final OperationHelper syncDeltaOperationHelper = helper.getObjectClass().equals(ObjectClass.ALL)
-                                                    ? operationHelperBuilder.build(objectTypeName, stage, cryptoService)
-                                                    : helper;
-
-                                            switch (syncDelta.getDeltaType()) {
-                                                case CREATE: {
-                                                    JsonValue deltaObject = syncDeltaOperationHelper.build(syncDelta.getObject());
-                                                    content.put("oldValue", null);
-                                                    content.put("newValue", deltaObject.getObject());
-                                                    // TODO import SynchronizationService.Action.notifyCreate and ACTION_PARAM_ constants
-                                                    ActionRequest onCreateRequest = Requests.newActionRequest("sync", "notifyCreate")
-                                                            .setAdditionalParameter("resourceContainer", resourceContainer)
-                                                            .setAdditionalParameter("resourceId", resourceId)
-                                                            .setContent(content);
-                                                    connectionFactory.getConnection().action(context, onCreateRequest);
-
-                                                    activityLogger.log(context, onCreateRequest,
-                                                                    "sync-create", onCreateRequest.getResourcePath(),
-                                                                    deltaObject, deltaObject, Status.SUCCESS);
-                                                    break;
-                                                }
-                                                case UPDATE:
-                                                case CREATE_OR_UPDATE: {
-                                                    JsonValue deltaObject = syncDeltaOperationHelper.build(syncDelta.getObject());
-                                                    content.put("oldValue", null);
-                                                    content.put("newValue", deltaObject.getObject());
-                                                    if (null != syncDelta.getPreviousUid()) {
-                                                        deltaObject.put("_previous-id", syncDelta.getPreviousUid().getUidValue());
-                                                    }
-                                                    // TODO import SynchronizationService.Action.notifyUpdate and ACTION_PARAM_ constants
-                                                    ActionRequest onUpdateRequest = Requests.newActionRequest("sync", "notifyUpdate")
-                                                            .setAdditionalParameter("resourceContainer", resourceContainer)
-                                                            .setAdditionalParameter("resourceId", resourceId)
-                                                            .setContent(content);
-                                                    connectionFactory.getConnection().action(context, onUpdateRequest);
-
-                                                    activityLogger.log(context, onUpdateRequest,
-                                                            "sync-update", onUpdateRequest.getResourcePath(),
-                                                            deltaObject, deltaObject, Status.SUCCESS);
-                                                    break;
-                                                }
-                                                case DELETE:
-                                                    // TODO Pass along the old deltaObject - do we have it?
-                                                    content.put("oldValue", null);
-                                                    // TODO import SynchronizationService.Action.notifyDelete and ACTION_PARAM_ constants
-                                                    ActionRequest onDeleteRequest = Requests.newActionRequest("sync", "notifyDelete")
-                                                            .setAdditionalParameter("resourceContainer", resourceContainer)
-                                                            .setAdditionalParameter("resourceId", resourceId)
-                                                            .setContent(content);
-                                                    connectionFactory.getConnection().action(context, onDeleteRequest);
-
-                                                    activityLogger.log(context, onDeleteRequest,
-                                                            "sync-delete", onDeleteRequest.getResourcePath(),
-                                                            null, null, Status.SUCCESS);
-                                                    break;
+                        final SyncToken syncToken;
+                        try {
+                            syncToken = operation.sync(helper.getObjectClass(), token,
+                                    new SyncResultsHandler() {
+                                        /**
+                                         * Called to handle a delta in the stream. The Connector framework will call
+                                         * this method multiple times, once for each result.
+                                         * Although this method is callback, the framework will invoke it synchronously.
+                                         * Thus, the framework guarantees that once an application's call to
+                                         * {@link org.identityconnectors.framework.api.operations.SyncApiOp#sync(org.identityconnectors.framework.common.objects.ObjectClass, org.identityconnectors.framework.common.objects.SyncToken, org.identityconnectors.framework.common.objects.SyncResultsHandler, org.identityconnectors.framework.common.objects.OperationOptions)} SyncApiOp#sync() returns,
+                                         * the framework will no longer call this method
+                                         * to handle results from that <code>sync()</code> operation.
+                                         *
+                                         * @param syncDelta The change
+                                         * @return True iff the application wants to continue processing more results.
+                                         * @throws RuntimeException If the application encounters an exception. This will
+                                         * stop iteration and the exception will propagate to the application.
+                                         */
+                                        public boolean handle(SyncDelta syncDelta) {
+                                            if (pipeline != null) {
+                                                return pipeline.submit(syncDelta);
                                             }
-                                        } catch (Exception e) {
-                                            failedRecord[0] = SerializerUtil.serializeXmlObject(syncDelta, true);
-                                            logger.debug("Failed to synchronize {} object, handle failure using {}",
-                                                    syncDelta.getUid(), syncFailureHandler, e);
-                                            Map<String, Object> syncFailureMap = new HashMap<>(6);
-                                            syncFailureMap.put("token", syncDelta.getToken().getValue());
-                                            syncFailureMap.put("systemIdentifier", systemIdentifier.getName());
-                                            syncFailureMap.put("objectType", objectType);
-                                            syncFailureMap.put("uid", syncDelta.getUid().getUidValue());
-                                            syncFailureMap.put("failedRecord", failedRecord[0]);
-                                            try {
-                                                syncFailureHandler.invoke(context, syncFailureMap, e);
-                                            } catch (SyncHandlerException syncHandlerException) {
-                                                // Current contract of the failure handler is that throwing this exception indicates 
-                                                // that it should retry for this entry
-                                                syncRetry.setValue(true);
-                                                syncRetry.setThrowable(syncHandlerException);
-                                                logger.debug("Sync failure handler indicated to stop current change set processing until retry handling: {}", 
-                                                        syncHandlerException.getMessage(), syncHandlerException);
+                                            if (processSyncDelta(context, objectType, helper, stage, syncDelta,
+                                                    syncRetry)) {
+                                                // success (either by original sync or by failure handler)
+                                                // Continue the processing of the rest of the result set
+                                                lastToken[0] = syncDelta.getToken();
+                                                return true;
+                                            } else {
+                                                // Stop the processing of this result set. Next retry will start again after last token.
+                                                return false;
                                             }
                                         }
-
-                                        if (syncRetry.getValue()) {
-                                            // Stop the processing of this result set. Next retry will start again after last token.
-                                            return false; 
-                                        } else {
-                                            // success (either by original sync or by failure handler)
-                                            // Continue the processing of the rest of the result set
-                                            lastToken[0] = syncDelta.getToken();
-                                            return true;
-                                        }
-                                    }
-                        }, operationOptionsBuilder.build());
-                        if (syncRetry.getValue()) {
-                            Throwable throwable = syncRetry.getThrowable();
+                            }, operationOptionsBuilder.build());
+                        } finally {
+                            if (pipeline != null) {
+                                // the token only advances over the deltas that completed in order
+                                lastToken[0] = pipeline.await();
+                            }
+                        }
+                        if (pipeline != null) {
+                            pipeline.rethrowFailure();
+                        }
+                        // the pipeline reports the failure of the delta the next run starts from
+                        final SyncRetry retry = pipeline != null ? pipeline.getSyncRetry() : syncRetry;
+                        if (retry.getValue()) {
+                            Throwable throwable = retry.getThrowable();
                             Map<String, Object> lastException = new LinkedHashMap<>(2);
                             lastException.put("throwable", throwable.getMessage());
-                            if (null != failedRecord[0]) {
-                                lastException.put("syncDelta", failedRecord[0]);
+                            if (null != retry.getFailedRecord()) {
+                                lastException.put("syncDelta", retry.getFailedRecord());
                             }
                             stage.put("lastException", lastException);
                             logger.debug("Live synchronization of {} failed on {}",
                                     new Object[] { objectType, systemIdentifier.getName() }, throwable);
                         } else {
-                            if (syncToken != null) {
+                            // a stopped pipeline left deltas unprocessed, which the connector's token would skip
+                            if (syncToken != null && (pipeline == null || !pipeline.isStopped())) {
                                 lastToken[0] = syncToken;
                             }
                         }
@@ -984,6 +948,112 @@ public class OpenICFProvisionerService implements ProvisionerService, SingletonR
         return stage;
     }
 
+    /**
+     * Sends a delta received from the connector to the sync service, handling its failure with the
+     * {@link SyncFailureHandler}.
+     *
+     * @param context the request context associated with the live sync invocation
+     * @param objectType the object type being synchronized
+     * @param helper the operation helper of the object type
+     * @param stage the stage object of the live sync run
+     * @param syncDelta the change to synchronize
+     * @param syncRetry set if the failure handler indicated to retry the delta, with the serialized delta
+     * @return true if the delta was synchronized or its failure handled, false if the run has to stop and be retried
+     *         from this delta
+     */
+    @SuppressWarnings("fallthrough")
+    private boolean processSyncDelta(final Context context, final String objectType, final OperationHelper helper,
+            final JsonValue stage, final SyncDelta syncDelta, final SyncRetry syncRetry) {
+        try {
+            // Q: are we going to encode ids?
+            final String resourceId = syncDelta.getUid().getUidValue();
+            final String objectTypeName = getObjectTypeName(syncDelta.getObjectClass());
+            final String resourceContainer = getSource(objectTypeName == null ? objectType : objectTypeName);
+            final JsonValue content = new JsonValue(new LinkedHashMap<String, Object>(2));
+
+            //rebuild the OperationHelper if the helper is for the __ALL__ object class
+            final OperationHelper syncDeltaOperationHelper = helper.getObjectClass().equals(ObjectClass.ALL)
+                    ? operationHelperBuilder.build(objectTypeName, stage, cryptoService)
+                    : helper;
+
+            switch (syncDelta.getDeltaType()) {
+                case CREATE: {
+                    JsonValue deltaObject = syncDeltaOperationHelper.build(syncDelta.getObject());
+                    content.put("oldValue", null);
+                    content.put("newValue", deltaObject.getObject());
+                    // TODO import SynchronizationService.Action.notifyCreate and ACTION_PARAM_ constants
+                    ActionRequest onCreateRequest = Requests.newActionRequest("sync", "notifyCreate")
+                            .setAdditionalParameter("resourceContainer", resourceContainer)
+                            .setAdditionalParameter("resourceId", resourceId)
+                            .setContent(content);
+                    connectionFactory.getConnection().action(context, onCreateRequest);
+
+                    activityLogger.log(context, onCreateRequest,
+                                    "sync-create", onCreateRequest.getResourcePath(),
+                                    deltaObject, deltaObject, Status.SUCCESS);
+                    break;
+                }
+                case UPDATE:
+                case CREATE_OR_UPDATE: {
+                    JsonValue deltaObject = syncDeltaOperationHelper.build(syncDelta.getObject());
+                    content.put("oldValue", null);
+                    content.put("newValue", deltaObject.getObject());
+                    if (null != syncDelta.getPreviousUid()) {
+                        deltaObject.put("_previous-id", syncDelta.getPreviousUid().getUidValue());
+                    }
+                    // TODO import SynchronizationService.Action.notifyUpdate and ACTION_PARAM_ constants
+                    ActionRequest onUpdateRequest = Requests.newActionRequest("sync", "notifyUpdate")
+                            .setAdditionalParameter("resourceContainer", resourceContainer)
+                            .setAdditionalParameter("resourceId", resourceId)
+                            .setContent(content);
+                    connectionFactory.getConnection().action(context, onUpdateRequest);
+
+                    activityLogger.log(context, onUpdateRequest,
+                            "sync-update", onUpdateRequest.getResourcePath(),
+                            deltaObject, deltaObject, Status.SUCCESS);
+                    break;
+                }
+                case DELETE:
+                    // TODO Pass along the old deltaObject - do we have it?
+                    content.put("oldValue", null);
+                    // TODO import SynchronizationService.Action.notifyDelete and ACTION_PARAM_ constants
+                    ActionRequest onDeleteRequest = Requests.newActionRequest("sync", "notifyDelete")
+                            .setAdditionalParameter("resourceContainer", resourceContainer)
+                            .setAdditionalParameter("resourceId", resourceId)
+                            .setContent(content);
+                    connectionFactory.getConnection().action(context, onDeleteRequest);
+
+                    activityLogger.log(context, onDeleteRequest,
+                            "sync-delete", onDeleteRequest.getResourcePath(),
+                            null, null, Status.SUCCESS);
+                    break;
+            }
+        } catch (Exception e) {
+            final String record = SerializerUtil.serializeXmlObject(syncDelta, true);
+            logger.debug("Failed to synchronize {} object, handle failure using {}",
+                    syncDelta.getUid(), syncFailureHandler, e);
+            Map<String, Object> syncFailureMap = new HashMap<>(6);
+            syncFailureMap.put("token", syncDelta.getToken().getValue());
+            syncFailureMap.put("systemIdentifier", systemIdentifier.getName());
+            syncFailureMap.put("objectType", objectType);
+            syncFailureMap.put("uid", syncDelta.getUid().getUidValue());
+            syncFailureMap.put("failedRecord", record);
+            try {
+                syncFailureHandler.invoke(context, syncFailureMap, e);
+            } catch (SyncHandlerException syncHandlerException) {
+                // Current contract of the failure handler is that throwing this exception indicates 
+                // that it should retry for this entry
+                syncRetry.setValue(true);
+                syncRetry.setThrowable(syncHandlerException);
+                syncRetry.setFailedRecord(record);
+                logger.debug("Sync failure handler indicated to stop current change set processing until retry handling: {}", 
+                        syncHandlerException.getMessage(), syncHandlerException);
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Package level setter to allow unit tests to set the logger.
      * @param activityLogger the new activity logger
@@ -31,9 +31,15 @@ class SyncRetry {
      */
     Throwable throwable;
 
+    /**
+     * The serialized delta that failed, to be retried
+     */
+    String failedRecord;
+
     public SyncRetry() {
         value = false;
         throwable = null;
+        failedRecord = null;
     }
 
     /**
@@ -71,4 +77,22 @@ class SyncRetry {
     public void setThrowable(Throwable throwable) {
         this.throwable = throwable;
     }
+
+    /**
+     * Returns the serialized delta that failed, to be retried.
+     *
+     * @return the serialized delta that failed, or null
+     */
+    public String getFailedRecord() {
+        return failedRecord;
+    }
+
+    /**
+     * Sets the serialized delta that failed, to be retried.
+     *
+     * @param failedRecord the serialized delta that failed
+     */
+    public void setFailedRecord(String failedRecord) {
+        this.failedRecord = failedRecord;
+    }
 }
\ No newline at end of file
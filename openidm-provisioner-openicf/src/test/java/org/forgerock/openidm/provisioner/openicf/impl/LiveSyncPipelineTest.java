@@ -0,0 +1,196 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncDeltaBuilder;
+import org.identityconnectors.framework.common.objects.SyncDeltaType;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the per-object ordering and token tracking of the {@link LiveSyncPipeline}.
+ */
+public class LiveSyncPipelineTest {
+
+    private ExecutorService[] lanes;
+
+    @BeforeMethod
+    public void setUp() {
+        lanes = LiveSyncPipeline.startLanes("test", 4);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        LiveSyncPipeline.stopLanes(lanes);
+    }
+
+    private static SyncDelta delta(int token, String uid) {
+        return new SyncDeltaBuilder()
+                .setToken(new SyncToken(token))
+                .setDeltaType(SyncDeltaType.DELETE)
+                .setObjectClass(ObjectClass.ACCOUNT)
+                .setUid(new Uid(uid))
+                .build();
+    }
+
+    @Test
+    public void testKeepsOrderPerObject() {
+        final Map<String, List<Integer>> processed = new ConcurrentHashMap<>();
+        LiveSyncPipeline pipeline = new LiveSyncPipeline(lanes, 8, new SyncToken(0),
+                new LiveSyncPipeline.DeltaProcessor() {
+                    @Override
+                    public boolean process(SyncDelta syncDelta, SyncRetry syncRetry) {
+                        List<Integer> tokens = processed.get(syncDelta.getUid().getUidValue());
+                        if (tokens == null) {
+                            tokens = Collections.synchronizedList(new ArrayList<Integer>());
+                            processed.put(syncDelta.getUid().getUidValue(), tokens);
+                        }
+                        tokens.add((Integer) syncDelta.getToken().getValue());
+                        return true;
+                    }
+                });
+        for (int i = 1; i <= 200; i++) {
+            assertThat(pipeline.submit(delta(i, "user" + (i % 10)))).isTrue();
+        }
+
+        assertThat(pipeline.await().getValue()).isEqualTo(200);
+        assertThat(pipeline.isStopped()).isFalse();
+        for (int user = 0; user < 10; user++) {
+            List<Integer> tokens = processed.get("user" + user);
+            assertThat(tokens).hasSize(20);
+            for (int i = 1; i < tokens.size(); i++) {
+                assertThat(tokens.get(i)).isGreaterThan(tokens.get(i - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testTokenStopsBeforeRetriedDelta() {
+        LiveSyncPipeline pipeline = new LiveSyncPipeline(lanes, 100, new SyncToken(0),
+                new LiveSyncPipeline.DeltaProcessor() {
+                    @Override
+                    public boolean process(SyncDelta syncDelta, SyncRetry syncRetry) {
+                        // the failure handler asks to retry the 50th delta
+                        return !syncDelta.getToken().getValue().equals(50);
+                    }
+                });
+        for (int i = 1; i <= 100 && pipeline.submit(delta(i, "user" + i)); i++) {
+            // deltas are submitted until the run is stopped
+        }
+
+        assertThat(pipeline.await().getValue()).isEqualTo(49);
+        assertThat(pipeline.isStopped()).isTrue();
+    }
+
+    @Test
+    public void testTokenUnchangedWithoutDeltas() {
+        LiveSyncPipeline pipeline = new LiveSyncPipeline(lanes, 10, new SyncToken(7),
+                new LiveSyncPipeline.DeltaProcessor() {
+                    @Override
+                    public boolean process(SyncDelta syncDelta, SyncRetry syncRetry) {
+                        return true;
+                    }
+                });
+
+        assertThat(pipeline.await().getValue()).isEqualTo(7);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testRethrowsUnexpectedFailure() {
+        LiveSyncPipeline pipeline = new LiveSyncPipeline(lanes, 10, new SyncToken(0),
+                new LiveSyncPipeline.DeltaProcessor() {
+                    @Override
+                    public boolean process(SyncDelta syncDelta, SyncRetry syncRetry) {
+                        throw new IllegalStateException("failure handler failed");
+                    }
+                });
+        pipeline.submit(delta(1, "user"));
+
+        assertThat(pipeline.await().getValue()).isEqualTo(0);
+        pipeline.rethrowFailure();
+    }
+
+    @Test
+    public void testReportsFailureOfEarliestStoppedDelta() {
+        final CountDownLatch laterFailed = new CountDownLatch(1);
+        LiveSyncPipeline pipeline = new LiveSyncPipeline(lanes, 10, new SyncToken(0),
+                new LiveSyncPipeline.DeltaProcessor() {
+                    @Override
+                    public boolean process(SyncDelta syncDelta, SyncRetry syncRetry) {
+                        int token = (Integer) syncDelta.getToken().getValue();
+                        if (token == 1) {
+                            // the first delta fails after the second one
+                            try {
+                                laterFailed.await(10, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        syncRetry.setValue(true);
+                        syncRetry.setThrowable(new IllegalStateException("failed " + token));
+                        syncRetry.setFailedRecord(String.valueOf(token));
+                        laterFailed.countDown();
+                        return false;
+                    }
+                });
+        // on different lanes
+        pipeline.submit(delta(1, "user0"));
+        pipeline.submit(delta(2, "user1"));
+
+        assertThat(pipeline.await().getValue()).isEqualTo(0);
+        assertThat(pipeline.getSyncRetry().getValue()).isTrue();
+        assertThat(pipeline.getSyncRetry().getFailedRecord()).isEqualTo("1");
+    }
+
+    @Test
+    public void testRunsShareLanes() {
+        for (int run = 1; run <= 3; run++) {
+            LiveSyncPipeline pipeline = new LiveSyncPipeline(lanes, 10, new SyncToken(0),
+                    new LiveSyncPipeline.DeltaProcessor() {
+                        @Override
+                        public boolean process(SyncDelta syncDelta, SyncRetry syncRetry) {
+                            return true;
+                        }
+                    });
+            for (int i = 1; i <= 20; i++) {
+                assertThat(pipeline.submit(delta(i, "user" + i))).isTrue();
+            }
+
+            assertThat(pipeline.await().getValue()).isEqualTo(20);
+            assertThat(pipeline.getSyncRetry().getValue()).isFalse();
+        }
+        for (ExecutorService lane : lanes) {
+            assertThat(lane.isShutdown()).isFalse();
+        }
+    }
+}
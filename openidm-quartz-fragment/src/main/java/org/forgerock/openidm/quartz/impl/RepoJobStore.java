@@ -18,17 +18,15 @@ package org.forgerock.openidm.quartz.impl;
 import static org.forgerock.json.JsonValue.*;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.forgerock.json.JsonPointer;
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.JsonValueException;
 import org.forgerock.json.resource.ConnectionFactory;
@@ -38,6 +36,8 @@ import org.forgerock.json.resource.NotFoundException;
 import org.forgerock.json.resource.PreconditionFailedException;
 import org.forgerock.json.resource.Requests;
 import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.json.resource.SortKey;
 import org.forgerock.json.resource.UpdateRequest;
 import org.forgerock.openidm.cluster.ClusterEvent;
 import org.forgerock.openidm.cluster.ClusterEventListener;
@@ -45,6 +45,8 @@ import org.forgerock.openidm.cluster.ClusterManagementService;
 import org.forgerock.openidm.core.IdentityServer;
 import org.forgerock.openidm.repo.RepositoryService;
 import org.forgerock.services.context.Context;
+import org.forgerock.util.annotations.VisibleForTesting;
+import org.forgerock.util.query.QueryFilter;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.ServiceReference;
@@ -70,6 +72,11 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
 
     private static final Logger logger = LoggerFactory.getLogger(RepoJobStore.class);
 
+    /**
+     * Serializes changes to jobs, calendars and the group name lists. Acquiring, firing and releasing triggers does
+     * not take it: each waiting trigger is a separate repo entry, claimed by deleting it at the revision it was read
+     * at, so scheduler threads on this and other instances acquire triggers in parallel.
+     */
     private static final Object lock = new Object();
 
     private static final String SCHEDULER_RESOURCE_PATH = "/scheduler/";
@@ -85,9 +92,19 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
     private static final String JOB_GROUP_NAMES_RESOURCE_PATH = SCHEDULER_RESOURCE_PATH + "jobGroupNames";
     private static final String JOB_PAUSED_GROUP_NAMES_RESOURCE_PATH =
             SCHEDULER_RESOURCE_PATH + "jobPausedGroupNames";
-    private static final String WAITING_TRIGGERS_RESOURCE_PATH = SCHEDULER_RESOURCE_PATH + "waitingTriggers";
-    private static final String ACQUIRED_TRIGGERS_RESOURCE_PATH =
-            SCHEDULER_RESOURCE_PATH + "acquiredTriggers";
+    private static final String WAITING_TRIGGERS_RESOURCE_PATH = SCHEDULER_RESOURCE_PATH + "waiting";
+    private static final String ACQUIRED_TRIGGERS_RESOURCE_PATH = SCHEDULER_RESOURCE_PATH + "acquired";
+
+    /** Fields of the waiting and acquired trigger entries */
+    private static final String TRIGGER_ID = "triggerId";
+    private static final String FIRE_KEY = "fireKey";
+    private static final String INSTANCE_ID = "instanceId";
+
+    /**
+     * The number of waiting triggers read at once when acquiring the next trigger, so a scheduler thread losing the
+     * race for the first one can claim the next without querying again.
+     */
+    private static final int ACQUIRE_CANDIDATES = 10;
 
     /**
      * An identifier used to create unique keys for Jobs and Triggers.
@@ -137,7 +154,7 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
     /**
      * A list of all "blocked" jobs.
      */
-    private List<String> blockedJobs = new ArrayList<>();
+    private List<String> blockedJobs = Collections.synchronizedList(new ArrayList<String>());
 
     /**
      * An AtomicLong used for creating record IDs
@@ -188,6 +205,26 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
         return true;
     }
 
+    /**
+     * Sets the Cluster Management Service, instead of looking it up in the service registry.
+     *
+     * @param clusterManager    the Cluster Management Service
+     */
+    @VisibleForTesting
+    void setClusterManagementService(ClusterManagementService clusterManager) {
+        this.clusterManager = clusterManager;
+    }
+
+    /**
+     * Sets the Repository Service, instead of looking it up in the service registry.
+     *
+     * @param repositoryService the Repository Service
+     */
+    @VisibleForTesting
+    void setRepositoryService(RepositoryService repositoryService) {
+        this.repositoryService = repositoryService;
+    }
+
     private ConnectionFactory connectionFactory;
 
     private RepositoryService getRepositoryService() throws JobPersistenceException {
@@ -237,6 +274,39 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
         return TRIGGERS_RESOURCE_PATH.concat(getTriggerId(group, name));
     }
 
+    /**
+     * Gets the repository ID of a waiting Trigger.
+     *
+     * @param triggerId the Trigger's ID
+     * @return  the repository ID
+     */
+    private static String getWaitingTriggersRepoId(String triggerId) {
+        return WAITING_TRIGGERS_RESOURCE_PATH + "/" + triggerId;
+    }
+
+    /**
+     * Gets the repository ID of a Trigger acquired by an instance.
+     *
+     * @param instanceId    the ID of the instance that acquired the Trigger
+     * @param triggerId     the Trigger's ID
+     * @return  the repository ID
+     */
+    private static String getAcquiredTriggersRepoId(String instanceId, String triggerId) {
+        return ACQUIRED_TRIGGERS_RESOURCE_PATH + "/" + instanceId + UNIQUE_ID_SEPARATOR + triggerId;
+    }
+
+    /**
+     * Gets the key ordering the waiting triggers: by next fire time, then by descending priority. The key has a fixed
+     * width so that it sorts and compares as a string in the same order in every repository.
+     *
+     * @param nextFireTime  the Trigger's next fire time, in milliseconds
+     * @param priority      the Trigger's priority
+     * @return  the key
+     */
+    static String getWaitingTriggerKey(long nextFireTime, int priority) {
+        return String.format("%019d-%010d", Math.max(0L, nextFireTime), (long) Integer.MAX_VALUE - priority);
+    }
+
     /**
      * Gets the repo location for a given group.
      * @param groupName the group.
@@ -488,54 +558,52 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
     @Override
     public Trigger acquireNextTrigger(SchedulingContext context, long noLaterThan)
             throws JobPersistenceException {
-        synchronized (lock) {
-            logger.debug("Attempting to acquire the next trigger");
-            Trigger trigger = null;
-            WaitingTriggers waitingTriggers = null;
-            while (trigger == null && !shutdown) {
-                try {
-                    waitingTriggers = getWaitingTriggers();
-                    trigger = waitingTriggers.getTriggers().first();
-                } catch (NoSuchElementException e1) {
-                    logger.debug("No waiting triggers to acquire");
-                    return null;
+        logger.debug("Attempting to acquire the next trigger");
+        while (!shutdown) {
+            List<ResourceResponse> candidates = getWaitingTriggerCandidates(noLaterThan);
+            if (candidates.isEmpty()) {
+                logger.debug("No waiting triggers to acquire");
+                return null;
+            }
+            for (ResourceResponse candidate : candidates) {
+                // Claim the trigger by removing its waiting entry; on a conflict another thread or node claimed it
+                if (!claimWaitingTrigger(candidate)) {
+                    continue;
                 }
-
-                if (trigger == null) {
-                    logger.debug("No waiting triggers to acquire");
-                    return null;
+                String triggerId = candidate.getContent().get(TRIGGER_ID).asString();
+                TriggerWrapper tw = getTriggerWrapper(getGroupFromId(triggerId), getNameFromId(triggerId));
+                if (tw == null) {
+                    logger.debug("Waiting trigger {} no longer exists, removed", triggerId);
+                    continue;
+                }
+                if (isTriggerAcquired(tw)) {
+                    // A stale waiting entry; the instance holding the trigger makes it wait again once it fires it
+                    logger.debug("Trigger {} is already acquired by instance {}, removed from waiting triggers",
+                            triggerId, tw.getNodeId());
+                    continue;
                 }
+                Trigger trigger = tw.getTrigger();
 
                 Date nextFireTime = trigger.getNextFireTime();
                 if (nextFireTime == null) {
                     logger.debug("Trigger next fire time = null, removing");
-                    removeWaitingTrigger(trigger);
-                    trigger = null;
                     continue;
                 }
 
-                if (noLaterThan > 0) {
-                    if (nextFireTime.getTime() > noLaterThan) {
-                        logger.debug("Trigger fire time {} is later than {}, not acquiring",
-                                nextFireTime, new Date(noLaterThan));
-                        return null;
-                    }
-                }
-
-                if(!removeWaitingTrigger(trigger)) {
-                    trigger = null;
+                if (noLaterThan > 0 && nextFireTime.getTime() > noLaterThan) {
+                    logger.debug("Trigger fire time {} is later than {}, not acquiring",
+                            nextFireTime, new Date(noLaterThan));
+                    addWaitingTrigger(trigger);
                     continue;
                 }
 
-                TriggerWrapper tw = getTriggerWrapper(trigger.getGroup(), trigger.getName());
-
                 if (hasTriggerMisfired(trigger)) {
                     logger.debug("Attempting to process misfired trigger");
                     processTriggerMisfired(tw);
+                    trigger = tw.getTrigger();
                     if (trigger.getNextFireTime() != null) {
                         addWaitingTrigger(trigger);
                     }
-                    trigger = null;
                     continue;
                 }
 
@@ -551,39 +619,48 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
                     throw new JobPersistenceException("Error serializing trigger", e);
                 }
 
-                updateTriggerInRepo(trigger.getGroup(), trigger.getName(), tw, tw.getRevision());
-
+                // Add the acquired entry first, so that a trigger marked as acquired always has one while it is held
                 addAcquiredTrigger(trigger, instanceId);
+                try {
+                    updateTriggerInRepo(trigger.getGroup(), trigger.getName(), tw, tw.getRevision());
+                } catch (JobPersistenceException e) {
+                    removeAcquiredTrigger(trigger, instanceId);
+                    // The trigger changed since it was read, leave it waiting unless another instance acquired it
+                    TriggerWrapper current = getTriggerWrapper(trigger.getGroup(), trigger.getName());
+                    if (current != null && !isTriggerAcquired(current)) {
+                        addWaitingTrigger(current.getTrigger());
+                    }
+                    if (e.getCause() instanceof PreconditionFailedException) {
+                        logger.debug("Trigger {} was changed by another scheduler thread, not acquiring", triggerId);
+                        continue;
+                    }
+                    throw e;
+                }
 
                 logger.debug("Acquired next trigger {} to be fired at {}", trigger.getName(), trigger.getNextFireTime());
-                tw.setNodeId(instanceId);
                 return (Trigger)trigger.clone();
             }
-            logger.debug("No waiting triggers to acquire");
-            return null;
         }
+        logger.debug("No waiting triggers to acquire");
+        return null;
     }
 
-
-
     @Override
     public void releaseAcquiredTrigger(SchedulingContext arg0, Trigger trigger)
             throws JobPersistenceException {
-        synchronized (lock) {
-            TriggerWrapper tw = getTriggerWrapper(trigger.getGroup(), trigger.getName());
-            if (tw == null) {
-                logger.debug("Cannot release acquired trigger {} in group {}, trigger does not exist", trigger.getName(), trigger.getGroup());
-                return;
-            }
-            if (tw.isAcquired()) {
-                tw.setAcquired(false);
-                tw.setNodeId(null);
-                updateTriggerInRepo(trigger.getGroup(), trigger.getName(), tw, tw.getRevision());
-                addWaitingTrigger(trigger);
-                removeAcquiredTrigger(trigger, instanceId);
-            } else {
-                logger.warn("Cannot release acquired trigger {} in group {}, trigger has not been acquired", trigger.getName(), trigger.getGroup());
-            }
+        TriggerWrapper tw = getTriggerWrapper(trigger.getGroup(), trigger.getName());
+        if (tw == null) {
+            logger.debug("Cannot release acquired trigger {} in group {}, trigger does not exist", trigger.getName(), trigger.getGroup());
+            return;
+        }
+        if (tw.isAcquired()) {
+            tw.setAcquired(false);
+            tw.setNodeId(null);
+            updateTriggerInRepo(trigger.getGroup(), trigger.getName(), tw, tw.getRevision());
+            addWaitingTrigger(trigger);
+            removeAcquiredTrigger(trigger, instanceId);
+        } else {
+            logger.warn("Cannot release acquired trigger {} in group {}, trigger has not been acquired", trigger.getName(), trigger.getGroup());
         }
     }
 
@@ -605,21 +682,19 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
     }
 
     private List<TriggerWrapper> getTriggerWrappersForCalendar(String calName) throws JobPersistenceException {
-        synchronized (lock) {
-            ArrayList<TriggerWrapper> trigList = new ArrayList<TriggerWrapper>();
-            String[] groups = getTriggerGroupNames(null);
-            for (String group : groups) {
-                String[] names = getTriggerNames(null, group);
-                for (String name : names) {
-                    TriggerWrapper tw = getTriggerWrapper(group, name);
-                    Trigger trigger = tw.getTrigger();
-                    if (trigger.getCalendarName().equals(calName)) {
-                        trigList.add(tw);
-                    }
+        ArrayList<TriggerWrapper> trigList = new ArrayList<TriggerWrapper>();
+        String[] groups = getTriggerGroupNames(null);
+        for (String group : groups) {
+            String[] names = getTriggerNames(null, group);
+            for (String name : names) {
+                TriggerWrapper tw = getTriggerWrapper(group, name);
+                Trigger trigger = tw.getTrigger();
+                if (trigger.getCalendarName().equals(calName)) {
+                    trigList.add(tw);
                 }
             }
-            return trigList;
         }
+        return trigList;
     }
 
 
@@ -764,19 +839,17 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
     @Override
     public Trigger[] getTriggersForJob(SchedulingContext context, String jobName, String groupName)
             throws JobPersistenceException {
-        synchronized (lock) {
-            String[] triggerNames = getTriggerNames(context, groupName);
-            List<Trigger> triggers = new ArrayList<Trigger>();
-            for (String name : triggerNames) {
-                TriggerWrapper tw = getTriggerWrapper(groupName, name);
-                Trigger trigger = tw.getTrigger();
-                if (trigger.getJobName().equals(jobName)) {
-                    triggers.add(trigger);
-                }
+        String[] triggerNames = getTriggerNames(context, groupName);
+        List<Trigger> triggers = new ArrayList<Trigger>();
+        for (String name : triggerNames) {
+            TriggerWrapper tw = getTriggerWrapper(groupName, name);
+            Trigger trigger = tw.getTrigger();
+            if (trigger.getJobName().equals(jobName)) {
+                triggers.add(trigger);
             }
-            logger.debug("Found {} triggers for group {}", triggers.size(), groupName);
-            return triggers.toArray(new Trigger[triggers.size()]);
         }
+        logger.debug("Found {} triggers for group {}", triggers.size(), groupName);
+        return triggers.toArray(new Trigger[triggers.size()]);
     }
 
     @Override
@@ -1193,39 +1266,35 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
     @Override
     public Calendar retrieveCalendar(SchedulingContext context, String name)
             throws JobPersistenceException {
-        synchronized (lock) {
-            if (name != null) {
-                CalendarWrapper cw = getCalendarWrapper(name);
-                if (cw != null) {
-                    try {
-                        return cw.getCalendar();
-                    } catch (Exception e) {
-                        logger.warn("Error retrieving calendar", e);
-                        throw new JobPersistenceException("Error retrieving calendar", e);
-                    }
+        if (name != null) {
+            CalendarWrapper cw = getCalendarWrapper(name);
+            if (cw != null) {
+                try {
+                    return cw.getCalendar();
+                } catch (Exception e) {
+                    logger.warn("Error retrieving calendar", e);
+                    throw new JobPersistenceException("Error retrieving calendar", e);
                 }
             }
-            return null;
         }
+        return null;
     }
 
     @Override
     public JobDetail retrieveJob(SchedulingContext context, String jobName,
             String jobGroup) throws JobPersistenceException {
-        synchronized (lock) {
-            if (logger.isTraceEnabled()) {
-                logger.trace("Getting job {}", getJobsRepoId(jobGroup, jobName));
-            }
-            JobWrapper jw = getJobWrapper(jobGroup, jobName);
-            if (jw == null) {
-                return null;
-            }
-            try {
-                return jw.getJobDetail();
-            } catch (Exception e) {
-                logger.warn("Error retrieving job", e);
-                throw new JobPersistenceException("Error retrieving job", e);
-            }
+        if (logger.isTraceEnabled()) {
+            logger.trace("Getting job {}", getJobsRepoId(jobGroup, jobName));
+        }
+        JobWrapper jw = getJobWrapper(jobGroup, jobName);
+        if (jw == null) {
+            return null;
+        }
+        try {
+            return jw.getJobDetail();
+        } catch (Exception e) {
+            logger.warn("Error retrieving job", e);
+            throw new JobPersistenceException("Error retrieving job", e);
         }
     }
 
@@ -1251,213 +1320,209 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
 
     public CalendarWrapper getCalendarWrapper(String name)
             throws JobPersistenceException {
-        synchronized (lock) {
-            try {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("Getting calendar {}", getCalendarsRepoId(name));
-                }
-                Map<String, Object> calMap = readFromRepo(getCalendarsRepoId(name)).asMap();
-                if (calMap == null) {
-                    return null;
-                }
-                CalendarWrapper cal = new CalendarWrapper(calMap);
-                return cal;
-            } catch (ResourceException e) {
-                logger.warn("Error retrieving calendar", e);
-                throw new JobPersistenceException("Error retrieving calendar", e);
-            } catch (Exception e) {
-                logger.warn("Error retrieving calendar", e);
-                throw new JobPersistenceException("Error retrieving calendar", e);
+        try {
+            if (logger.isTraceEnabled()) {
+                logger.trace("Getting calendar {}", getCalendarsRepoId(name));
             }
+            Map<String, Object> calMap = readFromRepo(getCalendarsRepoId(name)).asMap();
+            if (calMap == null) {
+                return null;
+            }
+            CalendarWrapper cal = new CalendarWrapper(calMap);
+            return cal;
+        } catch (ResourceException e) {
+            logger.warn("Error retrieving calendar", e);
+            throw new JobPersistenceException("Error retrieving calendar", e);
+        } catch (Exception e) {
+            logger.warn("Error retrieving calendar", e);
+            throw new JobPersistenceException("Error retrieving calendar", e);
         }
     }
 
     @Override
     public Trigger retrieveTrigger(SchedulingContext context, String triggerName, String triggerGroup)
             throws JobPersistenceException {
-        synchronized (lock) {
-            try {
-                TriggerWrapper tw = getTriggerWrapper(triggerGroup, triggerName);
-                if (tw == null) {
-                    return null;
-                }
-                return tw.getTrigger();
-            } catch (Exception e) {
-                logger.warn("Error retrieving trigger", e);
-                throw new JobPersistenceException("Error retrieving trigger", e);
+        try {
+            TriggerWrapper tw = getTriggerWrapper(triggerGroup, triggerName);
+            if (tw == null) {
+                return null;
             }
+            return tw.getTrigger();
+        } catch (Exception e) {
+            logger.warn("Error retrieving trigger", e);
+            throw new JobPersistenceException("Error retrieving trigger", e);
         }
     }
 
     @Override
     public TriggerFiredBundle triggerFired(SchedulingContext context, Trigger trigger)
             throws JobPersistenceException {
-        synchronized (lock) {
-            logger.debug("Trigger {} has fired", trigger.getFullName());
-            TriggerWrapper tw;
-            try {
-                tw = getTriggerWrapper(trigger.getGroup(), trigger.getName());
-            } catch (Exception e) {
-                logger.warn("Error setting trigger fired", e);
-                throw new JobPersistenceException("Error setting trigger fired", e);
-            }
-            if (tw == null) {
-                logger.warn("Error setting trigger fired, trigger does not exist");
+        logger.debug("Trigger {} has fired", trigger.getFullName());
+        TriggerWrapper tw;
+        try {
+            tw = getTriggerWrapper(trigger.getGroup(), trigger.getName());
+        } catch (Exception e) {
+            logger.warn("Error setting trigger fired", e);
+            throw new JobPersistenceException("Error setting trigger fired", e);
+        }
+        if (tw == null) {
+            logger.warn("Error setting trigger fired, trigger does not exist");
+            return null;
+        }
+        if (!tw.isAcquired()) {
+            logger.warn("Error setting trigger fired, trigger was not in acquired state");
+        }
+        Trigger localTrigger;
+        try {
+            localTrigger = tw.getTrigger();
+        } catch (Exception e) {
+            logger.warn("Error setting trigger fired", e);
+            throw new JobPersistenceException("Error setting trigger fired", e);
+        }
+        Calendar triggerCalendar = null;
+        if (localTrigger.getCalendarName() != null) {
+            CalendarWrapper cw = getCalendarWrapper(localTrigger.getCalendarName());
+            if (cw == null) {
+                logger.warn("Error setting trigger fired, cannot find trigger's calendar");
                 return null;
-            }
-            if (!tw.isAcquired()) {
-                logger.warn("Error setting trigger fired, trigger was not in acquired state");
-            }
-            Trigger localTrigger;
-            try {
-                localTrigger = tw.getTrigger();
-            } catch (Exception e) {
-                logger.warn("Error setting trigger fired", e);
-                throw new JobPersistenceException("Error setting trigger fired", e);
-            }
-            Calendar triggerCalendar = null;
-            if (localTrigger.getCalendarName() != null) {
-                CalendarWrapper cw = getCalendarWrapper(localTrigger.getCalendarName());
-                if (cw == null) {
-                    logger.warn("Error setting trigger fired, cannot find trigger's calendar");
-                    return null;
-                } else {
-                    try {
-                        triggerCalendar = cw.getCalendar();
-                    } catch (Exception e) {
-                        logger.warn("Error retrieving calendar", e);
-                        throw new JobPersistenceException("Error retrieving calendar", e);
-                    }
+            } else {
+                try {
+                    triggerCalendar = cw.getCalendar();
+                } catch (Exception e) {
+                    logger.warn("Error retrieving calendar", e);
+                    throw new JobPersistenceException("Error retrieving calendar", e);
                 }
             }
+        }
 
-            Date previousFireTime = trigger.getPreviousFireTime();
-            removeWaitingTrigger(trigger);
+        Date previousFireTime = trigger.getPreviousFireTime();
+        removeWaitingTrigger(trigger);
 
-            localTrigger.triggered(triggerCalendar);
-            tw.updateTrigger(localTrigger);
-            updateTriggerInRepo(localTrigger.getGroup(), localTrigger.getName(), tw, tw.getRevision());
+        localTrigger.triggered(triggerCalendar);
+        tw.updateTrigger(localTrigger);
+        // The trigger can be acquired for its next fire time while the job runs; the acquired entry is kept until
+        // the job completes
+        tw.setAcquired(false);
+        tw.setNodeId(null);
+        updateTriggerInRepo(localTrigger.getGroup(), localTrigger.getName(), tw, tw.getRevision());
 
-            trigger.triggered(triggerCalendar);
+        trigger.triggered(triggerCalendar);
 
-            // Set trigger into the normal/waiting state
-            tw.setState(Trigger.STATE_NORMAL);
-            TriggerFiredBundle tfb = new TriggerFiredBundle(retrieveJob(context, trigger.getJobName(),
-                    trigger.getJobGroup()),
-                    trigger,
-                    triggerCalendar,
-                    false,
-                    new Date(),
-                    trigger.getPreviousFireTime(),
-                    previousFireTime,
-                    trigger.getNextFireTime());
+        // Set trigger into the normal/waiting state
+        tw.setState(Trigger.STATE_NORMAL);
+        TriggerFiredBundle tfb = new TriggerFiredBundle(retrieveJob(context, trigger.getJobName(),
+                trigger.getJobGroup()),
+                trigger,
+                triggerCalendar,
+                false,
+                new Date(),
+                trigger.getPreviousFireTime(),
+                previousFireTime,
+                trigger.getNextFireTime());
 
-            JobDetail job = tfb.getJobDetail();
+        JobDetail job = tfb.getJobDetail();
 
-            if (job.isStateful()) {
-                Trigger[] triggers = getTriggersForJob(context, job.getName(), job.getGroup());
-                for (Trigger t : triggers) {
-                    TriggerWrapper tmpTw = getTriggerWrapper(t.getGroup(), t.getName());
-                    if (tmpTw != null) {
-                        if (tmpTw.getState() == Trigger.STATE_NORMAL || tmpTw.getState() == Trigger.STATE_PAUSED) {
-                            tmpTw.block();
-                        }
-                        // update trigger in repo
-                        updateTriggerInRepo(t.getGroup(), tmpTw.getName(), tmpTw, tmpTw.getRevision());
-                        removeWaitingTrigger(t);
+        if (job.isStateful()) {
+            Trigger[] triggers = getTriggersForJob(context, job.getName(), job.getGroup());
+            for (Trigger t : triggers) {
+                TriggerWrapper tmpTw = getTriggerWrapper(t.getGroup(), t.getName());
+                if (tmpTw != null) {
+                    if (tmpTw.getState() == Trigger.STATE_NORMAL || tmpTw.getState() == Trigger.STATE_PAUSED) {
+                        tmpTw.block();
                     }
+                    // update trigger in repo
+                    updateTriggerInRepo(t.getGroup(), tmpTw.getName(), tmpTw, tmpTw.getRevision());
+                    removeWaitingTrigger(t);
                 }
-                blockedJobs.add(getJobNameKey(job));
-            } else if (localTrigger.getNextFireTime() != null) {
-                addWaitingTrigger(localTrigger);
             }
-            return tfb;
+            blockedJobs.add(getJobNameKey(job));
+        } else if (localTrigger.getNextFireTime() != null) {
+            addWaitingTrigger(localTrigger);
         }
+        return tfb;
     }
 
     @Override
     public void triggeredJobComplete(SchedulingContext context, Trigger trigger,
             JobDetail jobDetail, int triggerInstCode) throws JobPersistenceException {
-        synchronized(lock) {
-            logger.debug("Job {} has completed", jobDetail.getFullName());
-            String jobKey = getJobNameKey(jobDetail);
-            JobWrapper jw = getJobWrapper(jobDetail.getGroup(), jobDetail.getName());
-            JsonValue triggerValue = getTriggerFromRepo(trigger.getGroup(), trigger.getName());
-            TriggerWrapper tw = null;
-            if (triggerValue != null && !triggerValue.isNull()) {
-                tw = new TriggerWrapper(triggerValue);
-            }
+        logger.debug("Job {} has completed", jobDetail.getFullName());
+        String jobKey = getJobNameKey(jobDetail);
+        JobWrapper jw = getJobWrapper(jobDetail.getGroup(), jobDetail.getName());
+        JsonValue triggerValue = getTriggerFromRepo(trigger.getGroup(), trigger.getName());
+        TriggerWrapper tw = null;
+        if (triggerValue != null && !triggerValue.isNull()) {
+            tw = new TriggerWrapper(triggerValue);
+        }
 
-            // Remove the acquired trigger (if acquired)
-            removeAcquiredTrigger(trigger, instanceId);
-            if (tw != null) {
-                tw.setAcquired(false);
-                tw.setNodeId(null);
-            }
+        // Remove the acquired trigger (if acquired)
+        removeAcquiredTrigger(trigger, instanceId);
+        if (tw != null) {
+            tw.setAcquired(false);
+            tw.setNodeId(null);
+        }
 
-            if (jw != null) {
-                JobDetail jd;
-                try {
-                    jd = jw.getJobDetail();
-                } catch (Exception e) {
-                    throw new JobPersistenceException("Error triggering job complete", e);
+        if (jw != null) {
+            JobDetail jd;
+            try {
+                jd = jw.getJobDetail();
+            } catch (Exception e) {
+                throw new JobPersistenceException("Error triggering job complete", e);
+            }
+            if (jd.isStateful()) {
+                JobDataMap newData = jobDetail.getJobDataMap();
+                if (newData != null) {
+                    newData = (JobDataMap)newData.clone();
+                    newData.clearDirtyFlag();
                 }
-                if (jd.isStateful()) {
-                    JobDataMap newData = jobDetail.getJobDataMap();
-                    if (newData != null) {
-                        newData = (JobDataMap)newData.clone();
-                        newData.clearDirtyFlag();
-                    }
-                    jd.setJobDataMap(newData);
-                    blockedJobs.remove(getJobNameKey(jd));
-                    Trigger[] triggers = getTriggersForJob(context, jd.getName(), jd.getGroup());
-                    for (Trigger t : triggers) {
-                        TriggerWrapper tmpTw = getTriggerWrapper(t.getGroup(), t.getName());
-                        if (tmpTw != null) {
-                            if (tmpTw.getState() == Trigger.STATE_BLOCKED) {
-                                tmpTw.unblock();
-                            }
-                            tmpTw.setAcquired(false);
-                            tmpTw.setNodeId(null);
-                            // update trigger in repo
-                            updateTriggerInRepo(t.getGroup(), tmpTw.getName(), tmpTw, tmpTw.getRevision());
-                            if (!tmpTw.isPaused()) {
-                                addWaitingTrigger(t);
-                            }
+                jd.setJobDataMap(newData);
+                blockedJobs.remove(getJobNameKey(jd));
+                Trigger[] triggers = getTriggersForJob(context, jd.getName(), jd.getGroup());
+                for (Trigger t : triggers) {
+                    TriggerWrapper tmpTw = getTriggerWrapper(t.getGroup(), t.getName());
+                    if (tmpTw != null) {
+                        if (tmpTw.getState() == Trigger.STATE_BLOCKED) {
+                            tmpTw.unblock();
+                        }
+                        tmpTw.setAcquired(false);
+                        tmpTw.setNodeId(null);
+                        // update trigger in repo
+                        updateTriggerInRepo(t.getGroup(), tmpTw.getName(), tmpTw, tmpTw.getRevision());
+                        if (!tmpTw.isPaused()) {
+                            addWaitingTrigger(t);
                         }
                     }
-                    schedulerSignaler.signalSchedulingChange(0L);
                 }
-            } else {
-                blockedJobs.remove(jobKey);
+                schedulerSignaler.signalSchedulingChange(0L);
             }
+        } else {
+            blockedJobs.remove(jobKey);
+        }
 
-            if (tw != null) {
-                if (triggerInstCode == Trigger.INSTRUCTION_DELETE_TRIGGER) {
-                    if (trigger.getNextFireTime() == null) {
-                        if (tw.getTrigger().getNextFireTime() == null) {
-                            removeTrigger(context, trigger.getName(), trigger.getGroup());
-                        }
-                    } else {
+        if (tw != null) {
+            if (triggerInstCode == Trigger.INSTRUCTION_DELETE_TRIGGER) {
+                if (trigger.getNextFireTime() == null) {
+                    if (tw.getTrigger().getNextFireTime() == null) {
                         removeTrigger(context, trigger.getName(), trigger.getGroup());
-                        schedulerSignaler.signalSchedulingChange(0L);
                     }
-                } else if (triggerInstCode == Trigger.INSTRUCTION_SET_TRIGGER_COMPLETE) {
-                    tw.setState(Trigger.STATE_COMPLETE);
-                    removeWaitingTrigger(tw.getTrigger());
-                    schedulerSignaler.signalSchedulingChange(0L);
-                } else if (triggerInstCode == Trigger.INSTRUCTION_SET_TRIGGER_ERROR) {
-                    logger.debug("Trigger {} set to ERROR state.", trigger.getFullName());
-                    tw.setState(Trigger.STATE_ERROR);
-                    schedulerSignaler.signalSchedulingChange(0L);
-                } else if (triggerInstCode == Trigger.INSTRUCTION_SET_ALL_JOB_TRIGGERS_ERROR) {
-                    logger.debug("All triggers of Job {} set to ERROR state.", trigger.getFullJobName());
-                    setAllTriggersOfJobToState(trigger.getJobName(), trigger.getJobGroup(), Trigger.STATE_ERROR);
-                    schedulerSignaler.signalSchedulingChange(0L);
-                } else if (triggerInstCode == Trigger.INSTRUCTION_SET_ALL_JOB_TRIGGERS_COMPLETE) {
-                    setAllTriggersOfJobToState(trigger.getJobName(), trigger.getJobGroup(), Trigger.STATE_COMPLETE);
+                } else {
+                    removeTrigger(context, trigger.getName(), trigger.getGroup());
                     schedulerSignaler.signalSchedulingChange(0L);
                 }
+            } else if (triggerInstCode == Trigger.INSTRUCTION_SET_TRIGGER_COMPLETE) {
+                tw.setState(Trigger.STATE_COMPLETE);
+                removeWaitingTrigger(tw.getTrigger());
+                schedulerSignaler.signalSchedulingChange(0L);
+            } else if (triggerInstCode == Trigger.INSTRUCTION_SET_TRIGGER_ERROR) {
+                logger.debug("Trigger {} set to ERROR state.", trigger.getFullName());
+                tw.setState(Trigger.STATE_ERROR);
+                schedulerSignaler.signalSchedulingChange(0L);
+            } else if (triggerInstCode == Trigger.INSTRUCTION_SET_ALL_JOB_TRIGGERS_ERROR) {
+                logger.debug("All triggers of Job {} set to ERROR state.", trigger.getFullJobName());
+                setAllTriggersOfJobToState(trigger.getJobName(), trigger.getJobGroup(), Trigger.STATE_ERROR);
+                schedulerSignaler.signalSchedulingChange(0L);
+            } else if (triggerInstCode == Trigger.INSTRUCTION_SET_ALL_JOB_TRIGGERS_COMPLETE) {
+                setAllTriggersOfJobToState(trigger.getJobName(), trigger.getJobGroup(), Trigger.STATE_COMPLETE);
+                schedulerSignaler.signalSchedulingChange(0L);
             }
         }
 
@@ -1582,227 +1647,265 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
     }
 
     /**
-     * Adds a Trigger to the list of waiting triggers.
+     * Adds a Trigger to the waiting triggers, or updates its next fire time if it is already waiting. A Trigger that
+     * will not fire again is removed from the waiting triggers instead.
      *
      * @param trigger   the Trigger to add
      * @throws JobPersistenceException
-     * @throws ResourceException
      */
     private void addWaitingTrigger(Trigger trigger) throws JobPersistenceException {
-        synchronized (lock) {
-            try {
-                int retries = 0;
-                while (writeRetries == -1 || retries <= writeRetries && !shutdown) {
-                    try {
-                        // update repo
-                        addRepoListName(getTriggerId(trigger.getGroup(), trigger.getName()),
-                                WAITING_TRIGGERS_RESOURCE_PATH, "names");
-                        break;
-                    } catch (PreconditionFailedException e) {
-                        logger.debug("Adding waiting trigger failed {}, retrying", e);
-                        retries++;
-                    }
+        if (trigger.getNextFireTime() == null) {
+            removeWaitingTrigger(trigger);
+            return;
+        }
+        String triggerId = getTriggerId(trigger.getGroup(), trigger.getName());
+        String repoId = getWaitingTriggersRepoId(triggerId);
+        JsonValue waiting = json(object(
+                field(TRIGGER_ID, triggerId),
+                field(FIRE_KEY, getWaitingTriggerKey(trigger.getNextFireTime().getTime(), trigger.getPriority()))));
+        try {
+            int retries = 0;
+            while (writeRetries == -1 || retries <= writeRetries && !shutdown) {
+                try {
+                    getRepositoryService().create(getCreateRequest(repoId, waiting));
+                    break;
+                } catch (PreconditionFailedException e) {
+                    logger.trace("Trigger {} is already waiting, updating its fire time", triggerId);
+                }
+                try {
+                    String rev = getRepositoryService().read(Requests.newReadRequest(repoId)).getRevision();
+                    getRepositoryService().update(Requests.newUpdateRequest(repoId, waiting).setRevision(rev));
+                    break;
+                } catch (PreconditionFailedException | NotFoundException e) {
+                    logger.debug("Adding waiting trigger failed {}, retrying", e);
+                    retries++;
                 }
-            } catch (ResourceException e) {
-                throw new JobPersistenceException("Error adding waiting trigger", e);
             }
+        } catch (ResourceException e) {
+            throw new JobPersistenceException("Error adding waiting trigger", e);
         }
     }
 
     /**
-     * Removes a Trigger from the list of waiting triggers.
+     * Removes a Trigger from the waiting triggers.
      *
      * @param trigger   the Trigger to remove
+     * @return  true if the Trigger was removed, false if it was not waiting
      * @throws JobPersistenceException
-     * @throws ResourceException
      */
     private boolean removeWaitingTrigger(Trigger trigger) throws JobPersistenceException {
-        synchronized (lock) {
+        String repoId = getWaitingTriggersRepoId(getTriggerId(trigger.getGroup(), trigger.getName()));
+        try {
+            return deleteEntry(repoId);
+        } catch (ResourceException e) {
+            throw new JobPersistenceException("Error removing waiting trigger", e);
+        }
+    }
+
+    /**
+     * Deletes a waiting or acquired trigger entry at the revision it is read at, retrying if the entry is updated
+     * or deleted concurrently. Not all repositories accept a wildcard revision on delete.
+     *
+     * @param repoId    the repo id of the entry
+     * @return  true if the entry was deleted, false if it did not exist
+     * @throws ResourceException
+     */
+    private boolean deleteEntry(String repoId) throws ResourceException {
+        int retries = 0;
+        while (true) {
+            String rev;
             try {
-                boolean result = false;
-                int retries = 0;
-                while (writeRetries == -1 || retries <= writeRetries && !shutdown) {
-                    try {
-                        result = removeRepoListName(getTriggerId(trigger.getGroup(), trigger.getName()),
-                                WAITING_TRIGGERS_RESOURCE_PATH, "names");
-                        break;
-                    } catch (PreconditionFailedException e) {
-                        logger.debug("Removing waiting trigger failed {}, retrying", e);
-                        retries++;
-                    }
+                rev = getRepositoryService().read(Requests.newReadRequest(repoId)).getRevision();
+            } catch (NotFoundException e) {
+                return false;
+            }
+            try {
+                getRepositoryService().delete(Requests.newDeleteRequest(repoId).setRevision(rev));
+                return true;
+            } catch (PreconditionFailedException | NotFoundException e) {
+                if (writeRetries != -1 && (retries >= writeRetries || shutdown)) {
+                    throw e;
                 }
-                return result;
-            } catch (ResourceException e) {
-                throw new JobPersistenceException("Error removing waiting trigger", e);
+                logger.debug("Deleting {} failed {}, retrying", repoId, e);
+                retries++;
+            }
+        }
+    }
+
+    /**
+     * Claims a waiting Trigger for this thread by removing its entry, at the revision it was read at, from the
+     * waiting triggers.
+     *
+     * @param waiting   the waiting trigger entry, as returned by a query
+     * @return  true if the Trigger was claimed, false if another thread or instance claimed or rescheduled it first
+     * @throws JobPersistenceException
+     */
+    private boolean claimWaitingTrigger(ResourceResponse waiting) throws JobPersistenceException {
+        String repoId = getWaitingTriggersRepoId(waiting.getId());
+        try {
+            getRepositoryService().delete(Requests.newDeleteRequest(repoId).setRevision(waiting.getRevision()));
+            return true;
+        } catch (NotFoundException | PreconditionFailedException e) {
+            logger.debug("Waiting trigger {} was claimed by another scheduler thread", waiting.getId());
+            return false;
+        } catch (ResourceException e) {
+            throw new JobPersistenceException("Error claiming waiting trigger", e);
+        }
+    }
+
+    /**
+     * Returns the first waiting triggers in the order they are to be acquired: by next fire time, then by descending
+     * priority.
+     *
+     * @param noLaterThan   the latest next fire time of the triggers returned, or 0 for no limit
+     * @return  the waiting trigger entries
+     * @throws JobPersistenceException
+     */
+    private List<ResourceResponse> getWaitingTriggerCandidates(long noLaterThan) throws JobPersistenceException {
+        QueryFilter<JsonPointer> filter = noLaterThan > 0
+                ? QueryFilter.lessThanOrEqualTo(new JsonPointer(FIRE_KEY),
+                        getWaitingTriggerKey(noLaterThan, Integer.MIN_VALUE))
+                : QueryFilter.<JsonPointer>alwaysTrue();
+        try {
+            return getRepositoryService().query(Requests.newQueryRequest(WAITING_TRIGGERS_RESOURCE_PATH)
+                    .setQueryFilter(filter)
+                    .addSortKey(SortKey.ascendingOrder(FIRE_KEY))
+                    .setPageSize(ACQUIRE_CANDIDATES));
+        } catch (ResourceException e) {
+            logger.warn("Error querying waiting triggers", e);
+            throw new JobPersistenceException("Error querying waiting triggers", e);
+        }
+    }
+
+    /**
+     * Returns the IDs of all waiting triggers.
+     *
+     * @return  the Trigger IDs
+     * @throws JobPersistenceException
+     */
+    private Set<String> getWaitingTriggerIds() throws JobPersistenceException {
+        Set<String> triggerIds = new HashSet<>();
+        try {
+            for (ResourceResponse waiting : getRepositoryService().query(
+                    Requests.newQueryRequest(WAITING_TRIGGERS_RESOURCE_PATH)
+                            .setQueryFilter(QueryFilter.<JsonPointer>alwaysTrue()))) {
+                triggerIds.add(waiting.getContent().get(TRIGGER_ID).asString());
             }
+        } catch (ResourceException e) {
+            logger.warn("Error querying waiting triggers", e);
+            throw new JobPersistenceException("Error querying waiting triggers", e);
         }
+        return triggerIds;
     }
 
     /**
-     * Adds a Trigger to the list of acquired triggers.
+     * Adds a Trigger to the acquired triggers of an instance.
      *
      * @param trigger    the Trigger to add
      * @param instanceId the instance ID
      * @throws JobPersistenceException
-     * @throws ResourceException
      */
     private void addAcquiredTrigger(Trigger trigger, String instanceId) throws JobPersistenceException {
-        synchronized (lock) {
-            try {
-                logger.debug("Adding acquired trigger {} for instance {}", trigger.getName(), instanceId);
-                int retries = 0;
-                while (writeRetries == -1 || retries <= writeRetries && !shutdown) {
-                    try {
-                        addRepoListName(getTriggerId(trigger.getGroup(), trigger.getName()),
-                                ACQUIRED_TRIGGERS_RESOURCE_PATH, instanceId);
-                        break;
-                    } catch (PreconditionFailedException e) {
-                        logger.debug("Adding acquired trigger failed {}, retrying", e);
-                        retries++;
-                    }
-                }
-            } catch (ResourceException e) {
-                throw new JobPersistenceException("Error adding waiting trigger", e);
-            }
+        logger.debug("Adding acquired trigger {} for instance {}", trigger.getName(), instanceId);
+        String triggerId = getTriggerId(trigger.getGroup(), trigger.getName());
+        try {
+            getRepositoryService().create(getCreateRequest(getAcquiredTriggersRepoId(instanceId, triggerId),
+                    json(object(field(TRIGGER_ID, triggerId), field(INSTANCE_ID, instanceId)))));
+        } catch (PreconditionFailedException e) {
+            logger.debug("Trigger {} is already acquired by instance {}", triggerId, instanceId);
+        } catch (ResourceException e) {
+            throw new JobPersistenceException("Error adding acquired trigger", e);
         }
     }
 
     /**
-     * Removes a Trigger from the list of acquired triggers.
+     * Removes a Trigger from the acquired triggers of an instance.
      *
      * @param trigger    the Trigger to remove
      * @param instanceId the instance ID
+     * @return  true if the Trigger was removed, false if it was not acquired by the instance
      * @throws JobPersistenceException
-     * @throws ResourceException
      */
     private boolean removeAcquiredTrigger(Trigger trigger, String instanceId) throws JobPersistenceException {
-        synchronized (lock) {
-            try {
-                logger.debug("Removing acquired trigger {} for instance {}", trigger.getName(), instanceId);
-                boolean result = false;
-                int retries = 0;
-                while (writeRetries == -1 || retries <= writeRetries && !shutdown) {
-                    try {
-                        result = removeRepoListName(getTriggerId(trigger.getGroup(), trigger.getName()),
-                                ACQUIRED_TRIGGERS_RESOURCE_PATH, instanceId);
-                        break;
-                    } catch (PreconditionFailedException e) {
-                        logger.debug("Removing acquired trigger failed {}, retrying", e);
-                        retries++;
-                    }
-                }
-                return result;
-            } catch (ResourceException e) {
-                throw new JobPersistenceException("Error removing waiting trigger", e);
-            }
+        logger.debug("Removing acquired trigger {} for instance {}", trigger.getName(), instanceId);
+        String repoId = getAcquiredTriggersRepoId(instanceId, getTriggerId(trigger.getGroup(), trigger.getName()));
+        try {
+            return deleteEntry(repoId);
+        } catch (ResourceException e) {
+            throw new JobPersistenceException("Error removing acquired trigger", e);
         }
     }
 
     /**
-     * Returns the an AcquiredTriggers object which wraps the List of all triggers in the "acquired" state
+     * Returns all triggers in the "acquired" state for an instance.
      *
      * @param instanceId    the ID of the instance that acquired the triggers
-     * @return  the WaitingTriggers object
+     * @return  the acquired triggers
      * @throws JobPersistenceException
      */
-    private AcquiredTriggers getAcquiredTriggers(String instanceId) throws JobPersistenceException {
-        List<Trigger> acquiredTriggers = new ArrayList<Trigger>();
-        List<String> acquiredTriggerIds = new ArrayList<String>();
-        String repoId = ACQUIRED_TRIGGERS_RESOURCE_PATH;
-        String revision = null;
-        JsonValue map;
+    private List<Trigger> getAcquiredTriggers(String instanceId) throws JobPersistenceException {
+        List<Trigger> acquiredTriggers = new ArrayList<>();
         try {
-            try {
-                map = getRepositoryService().read(Requests.newReadRequest(repoId)).getContent();
-            } catch (NotFoundException e) {
-                logger.trace("repo list {} not found, lets create it", "names");
-                map = null;
-            }
-            if (map == null || map.isNull()) {
-                map = json(object(field(instanceId, acquiredTriggerIds)));
-                // create in repo
-                map = getRepositoryService().create(getCreateRequest(repoId, map)).getContent();
-                revision = map.get("_rev").asString();
-            } else {
-                // else check if list exists in map
-                acquiredTriggerIds = map.get(instanceId).asList(String.class);
-                revision = map.get("_rev").asString();
-                if (acquiredTriggerIds == null) {
-                    acquiredTriggerIds = new ArrayList<>();
-                    map.put(instanceId, acquiredTriggerIds);
-                    JsonValue updatedValue = getRepositoryService().update(
-                            Requests.newUpdateRequest(repoId, map).setRevision(revision)).getContent();
-                    revision = updatedValue.get("_rev").asString();
-                }
-            }
-            for (String id : acquiredTriggerIds) {
+            for (ResourceResponse acquired : getRepositoryService().query(
+                    Requests.newQueryRequest(ACQUIRED_TRIGGERS_RESOURCE_PATH)
+                            .setQueryFilter(QueryFilter.equalTo(new JsonPointer(INSTANCE_ID), instanceId)))) {
+                String id = acquired.getContent().get(TRIGGER_ID).asString();
                 TriggerWrapper tw = getTriggerWrapper(getGroupFromId(id), getNameFromId(id));
                 if (tw == null) {
-                    logger.warn("Could not add {} to list of waiting Triggers. Trigger not found in repo", id);
+                    logger.warn("Could not add {} to list of acquired Triggers. Trigger not found in repo", id);
                 } else {
-                    logger.trace("Found acquired trigger {} in group {}", tw.getName(),tw.getGroup());
+                    logger.trace("Found acquired trigger {} in group {}", tw.getName(), tw.getGroup());
                     acquiredTriggers.add(tw.getTrigger());
                 }
             }
-            return new AcquiredTriggers(acquiredTriggers, revision);
+            return acquiredTriggers;
         } catch (ResourceException e) {
-            logger.warn("Error initializing waiting triggers", e);
-            throw new JobPersistenceException("Error initializing waiting triggers", e);
+            logger.warn("Error reading acquired triggers", e);
+            throw new JobPersistenceException("Error reading acquired triggers", e);
         }
     }
 
     /**
-     * Returns the a WaitingTriggers object which wraps the Tree of all triggers in the "waiting" state
+     * Returns true if a Trigger is held by an instance: its wrapper is marked as acquired and the acquiring instance
+     * still has it in its acquired triggers. A wrapper left marked as acquired by an instance that has since been
+     * recovered is not held.
      *
-     * @return  the WaitingTriggers object
+     * @param tw    the wrapped Trigger, as read from the repository
+     * @return  true if the Trigger is acquired, false otherwise
      * @throws JobPersistenceException
      */
-    private WaitingTriggers getWaitingTriggers() throws JobPersistenceException {
-        TreeSet<Trigger> waitingTriggers = new TreeSet<>(new TriggerComparator());
-        List<String> waitingTriggersRepoList = null;
-        final String repoId = WAITING_TRIGGERS_RESOURCE_PATH;
-        String revision = null;
-        JsonValue map;
+    private boolean isTriggerAcquired(TriggerWrapper tw) throws JobPersistenceException {
+        if (!tw.isAcquired() || tw.getNodeId() == null) {
+            return false;
+        }
         try {
-            try {
-                map = getRepositoryService().read(Requests.newReadRequest(repoId)).getContent();
-            } catch (NotFoundException e) {
-                logger.debug("repo list {} not found, lets create it", "names");
-                map = null;
-            }
-            if (map == null || map.isNull()) {
-                map = json(object());
-                waitingTriggersRepoList = new ArrayList<>();
-                map.put("names", waitingTriggersRepoList);
-                // create in repo
-                map = getRepositoryService().create(getCreateRequest(repoId, map)).getContent();
-                revision = map.get("_rev").asString();
-            } else {
-                // else check if list exists in map
-                waitingTriggersRepoList = map.get("names").asList(String.class);
-                revision = map.get("_rev").asString();
-                if (waitingTriggersRepoList == null) {
-                    waitingTriggersRepoList = new ArrayList<>();
-                    map.put("names", waitingTriggersRepoList);
-                    JsonValue updatedValue = getRepositoryService().update(Requests.newUpdateRequest(repoId, map)
-                                    .setRevision(revision)).getContent();
-                    revision = updatedValue.get("_rev").asString();
-                }
-            }
-            for (String id : waitingTriggersRepoList) {
-                TriggerWrapper tw = getTriggerWrapper(getGroupFromId(id), getNameFromId(id));
-                if (tw == null) {
-                    logger.warn("Could not add {} to list of waiting Triggers. Trigger not found in repo", id);
-                } else {
-                    logger.debug("Found waiting trigger {} in group {}", tw.getName(),tw.getGroup());
-                    waitingTriggers.add(tw.getTrigger());
-                }
+            return !readFromRepo(getAcquiredTriggersRepoId(tw.getNodeId(),
+                    getTriggerId(tw.getGroup(), tw.getName()))).isNull();
+        } catch (ResourceException e) {
+            logger.warn("Error reading acquired trigger", e);
+            throw new JobPersistenceException("Error reading acquired trigger", e);
+        }
+    }
+
+    /**
+     * Returns the IDs of the triggers acquired by any instance.
+     *
+     * @return  the Trigger IDs
+     * @throws JobPersistenceException
+     */
+    private Set<String> getAcquiredTriggerIds() throws JobPersistenceException {
+        Set<String> triggerIds = new HashSet<>();
+        try {
+            for (ResourceResponse acquired : getRepositoryService().query(
+                    Requests.newQueryRequest(ACQUIRED_TRIGGERS_RESOURCE_PATH)
+                            .setQueryFilter(QueryFilter.<JsonPointer>alwaysTrue()))) {
+                triggerIds.add(acquired.getContent().get(TRIGGER_ID).asString());
             }
-            return new WaitingTriggers(waitingTriggers, revision);
         } catch (ResourceException e) {
-            logger.warn("Error initializing waiting triggers", e);
-            throw new JobPersistenceException("Error initializing waiting triggers", e);
+            logger.warn("Error reading acquired triggers", e);
+            throw new JobPersistenceException("Error reading acquired triggers", e);
         }
+        return triggerIds;
     }
 
     /**
@@ -1946,14 +2049,12 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
      * @throws JobPersistenceException
      */
     private JsonValue getTriggerFromRepo(String group, String name) throws JobPersistenceException {
-        synchronized (lock) {
-            try {
-                logger.trace("Getting trigger {} in group {} from repo", name, group);
-                return readFromRepo(getTriggersRepoId(group, name));
-            } catch (ResourceException e) {
-                logger.warn("Error getting trigger from repo", e);
-                throw new JobPersistenceException("Error getting trigger from repo", e);
-            }
+        try {
+            logger.trace("Getting trigger {} in group {} from repo", name, group);
+            return readFromRepo(getTriggersRepoId(group, name));
+        } catch (ResourceException e) {
+            logger.warn("Error getting trigger from repo", e);
+            throw new JobPersistenceException("Error getting trigger from repo", e);
         }
     }
 
@@ -1967,19 +2068,17 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
      */
     private void updateTriggerInRepo(String group, String name, TriggerWrapper tw, String rev)
             throws JobPersistenceException {
-        synchronized (lock) {
-            try {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("Getting trigger {}", getTriggersRepoId(group, name));
-                }
-                String repoId = getTriggersRepoId(group, name);
-                UpdateRequest r = Requests.newUpdateRequest(repoId, tw.getValue());
-                r.setRevision(rev);
-                getRepositoryService().update(r);
-            } catch (ResourceException e) {
-                logger.warn("Error updating trigger in repo", e);
-                throw new JobPersistenceException("Error updating trigger in repo", e);
+        try {
+            if (logger.isTraceEnabled()) {
+                logger.trace("Getting trigger {}", getTriggersRepoId(group, name));
             }
+            String repoId = getTriggersRepoId(group, name);
+            UpdateRequest r = Requests.newUpdateRequest(repoId, tw.getValue());
+            r.setRevision(rev);
+            getRepositoryService().update(r);
+        } catch (ResourceException e) {
+            logger.warn("Error updating trigger in repo", e);
+            throw new JobPersistenceException("Error updating trigger in repo", e);
         }
     }
 
@@ -2042,12 +2141,13 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
         Calendar calendar = retrieveCalendar(null, trigger.getCalendarName());
         trigger.updateAfterMisfire(calendar);
         triggerWrapper.updateTrigger(trigger);
+        if (trigger.getNextFireTime() == null) {
+            triggerWrapper.setState(Trigger.STATE_COMPLETE);
+        }
+        // update trigger in repo, once: the wrapper's revision is stale after an update
         updateTriggerInRepo(trigger.getGroup(), trigger.getName(), triggerWrapper, triggerWrapper.getRevision());
         if (trigger.getNextFireTime() == null) {
             schedulerSignaler.notifySchedulerListenersFinalized(trigger);
-            triggerWrapper.setState(Trigger.STATE_COMPLETE);
-            // update trigger in repo
-            updateTriggerInRepo(trigger.getGroup(), trigger.getName(), triggerWrapper, triggerWrapper.getRevision());
             removeWaitingTrigger(trigger);
         }
     }
@@ -2071,43 +2171,48 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
             try {
                 logger.trace("Cleaning up instance");
                 
-                // Get the list of all stored triggers
-                List<Trigger> storedTriggers = new ArrayList<>();
-                String[] groupNames = getTriggerGroupNames(null);
-                for (String groupName : groupNames) {
-                    String[] triggerNames = getTriggerNames(null, groupName);
-                    for (String triggerName : triggerNames) {
-                        storedTriggers.add(getTriggerWrapper(groupName, triggerName).getTrigger());
-                    }
-                }
+                // Ignore triggers which are already waiting, or acquired by another instance.
+                Set<String> ignoredTriggerIds = getWaitingTriggerIds();
+                ignoredTriggerIds.addAll(getAcquiredTriggerIds());
 
-                // Ignore triggers which are already present in the waiting list.
-                WaitingTriggers wt = getWaitingTriggers();
-                TreeSet<Trigger> waitingTriggers = wt.getTriggers();
-                for (Trigger t : waitingTriggers) {
-                    storedTriggers.remove(t);
-                }
-                
                 // Process and release any triggers which are acquired
-                AcquiredTriggers at = getAcquiredTriggers(instanceId);
-                List<Trigger> acquiredTriggers = at.getTriggers();
+                List<Trigger> acquiredTriggers = getAcquiredTriggers(instanceId);
                 for (Trigger t : acquiredTriggers) {
-                    if (hasTriggerMisfired(t)) {
+                    ignoredTriggerIds.remove(getTriggerId(t.getGroup(), t.getName()));
+                    TriggerWrapper tw = getTriggerWrapper(t.getGroup(), t.getName());
+                    if (tw == null) {
+                        removeAcquiredTrigger(t, instanceId);
+                        continue;
+                    }
+                    Trigger stored = tw.getTrigger();
+                    if (stored.getNextFireTime() != null && hasTriggerMisfired(stored)) {
                         logger.trace("Trigger {} has misfired", t.getName());
-                        processTriggerMisfired(getTriggerWrapper(t.getGroup(), t.getName()));
-                        if (t.getNextFireTime() != null) {
-                            // Remove the trigger from the "acquired" triggers list
-                            removeAcquiredTrigger(t, instanceId);
-                        }
-                    } else {
+                        tw.setAcquired(false);
+                        tw.setNodeId(null);
+                        processTriggerMisfired(tw);
+                        // Remove the trigger from the "acquired" triggers list, it is made waiting below
+                        removeAcquiredTrigger(t, instanceId);
+                    } else if (tw.isAcquired()) {
                         releaseAcquiredTrigger(null, t);
+                    } else {
+                        // The trigger fired before, but its job did not complete
+                        removeAcquiredTrigger(t, instanceId);
                     }
                 }
-                
-                // Add remaining triggers to the "waiting" triggers tree
-                for (Trigger t : storedTriggers) {
-                    logger.trace("Adding trigger {} waitingTriggers", t.getName());
-                    addWaitingTrigger(t);
+
+                // Add remaining triggers to the "waiting" triggers, unless another instance acquired them since
+                String[] groupNames = getTriggerGroupNames(null);
+                for (String groupName : groupNames) {
+                    String[] triggerNames = getTriggerNames(null, groupName);
+                    for (String triggerName : triggerNames) {
+                        TriggerWrapper tw = getTriggerWrapper(groupName, triggerName);
+                        if (tw == null || ignoredTriggerIds.contains(getTriggerId(groupName, triggerName))
+                                || isTriggerAcquired(tw)) {
+                            continue;
+                        }
+                        logger.trace("Adding trigger {} waitingTriggers", triggerName);
+                        addWaitingTrigger(tw.getTrigger());
+                    }
                 }
             } catch (JobPersistenceException e) {
                 logger.warn("Error initializing RepoJobStore", e);
@@ -2115,90 +2220,6 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
         }
     }
 
-    /**
-     * A Comparator used to compare two Triggers
-     */
-    protected class TriggerComparator implements Comparator<Trigger> {
-
-        public int compare(Trigger t1, Trigger t2) {
-            // First compare by nextFireTime()
-            int result = t1.compareTo(t2);
-            if (result == 0) {
-                // If that didn't work, compare by priority
-                result = t2.getPriority() - t1.getPriority();
-                if (result == 0) {
-                    // If that didn't work, compare by name and group
-                    result = t1.getFullName().compareTo(t2.getFullName());
-                }
-            }
-            return result;
-        }
-    }
-
-    /**
-     * A wrapper for the tree of waiting triggers
-     */
-    protected class WaitingTriggers {
-
-        private TreeSet<Trigger> triggers;
-        private String revision;
-
-        public WaitingTriggers(TreeSet<Trigger> triggers, String rev) {
-            this.triggers = triggers;
-            revision = rev;
-        }
-
-        public TreeSet<Trigger> getTriggers() {
-            return triggers;
-        }
-
-        public String getRevision() {
-            return revision;
-        }
-
-        public void setRevision(String rev) {
-            revision = rev;
-        }
-
-        public List<String> getTriggerNamesList() {
-            List<String> names = new ArrayList<String>();
-            Iterator<Trigger> iterator = triggers.iterator();
-            while (iterator.hasNext()) {
-                Trigger t = iterator.next();
-                names.add(getTriggerId(t.getGroup(), t.getName()));
-            }
-            return names;
-        }
-
-    }
-
-    /**
-     * A wrapper for the list of acquired triggers
-     */
-    protected class AcquiredTriggers {
-
-        private List<Trigger> triggers;
-        private String revision;
-
-        public AcquiredTriggers(List<Trigger> triggers, String revision) {
-            this.triggers = triggers;
-            this.revision = revision;
-        }
-
-        public String getRevision() {
-            return revision;
-        }
-
-        public List<Trigger> getTriggers() {
-            return triggers;
-        }
-
-        public void setRevision(String rev) {
-            revision = rev;
-        }
-
-    }
-
     public SchedulerSignaler getSchedulerSignaler() {
         return schedulerSignaler;
     }
@@ -2214,9 +2235,9 @@ public class RepoJobStore implements JobStore, ClusterEventListener {
         case RECOVERY_INITIATED:
             try {
                 // Free acquired triggers
-                AcquiredTriggers triggers = getAcquiredTriggers(eventInstanceId);
-                logger.debug("Found {} acquired triggers while recovering instance {}", triggers.getTriggers().size(), eventInstanceId);
-                for (Trigger trigger : triggers.getTriggers()) {
+                List<Trigger> triggers = getAcquiredTriggers(eventInstanceId);
+                logger.debug("Found {} acquired triggers while recovering instance {}", triggers.size(), eventInstanceId);
+                for (Trigger trigger : triggers) {
                     boolean removed = false;
                     int retry = 0;
                     // Remove the acquired trigger
@@ -25,30 +25,49 @@
 
 package org.forgerock.openidm.quartz.impl;
 
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.assertj.core.api.Assertions;
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.resource.CreateRequest;
+import org.forgerock.json.resource.DeleteRequest;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.openidm.cluster.ClusterEvent;
+import org.forgerock.openidm.cluster.ClusterEventType;
+import org.forgerock.openidm.cluster.ClusterManagementService;
+import org.forgerock.util.query.QueryFilter;
 import org.quartz.JobDetail;
 import org.quartz.SimpleTrigger;
 import org.quartz.Trigger;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
 
 /**
  * Tests {@link RepoJobStore}
  */
 public class TestRepoJobstore {
 
+    private static final String WAITING = "scheduler/waiting";
+    private static final String ACQUIRED = "scheduler/acquired";
+
     private RepoJobStore jobStore;
     private SimpleSignaler signaler;
+    private InterleavingRepositoryService repo;
 
     @BeforeMethod
     public void setUp() {
         signaler = new SimpleSignaler();
-        jobStore = new RepoJobStore();
-        //jobStore.setRepositoryService(Resources.newCollection(new MemoryBackend()));
-        jobStore.setSchedulerSignaler(signaler);
+        repo = new InterleavingRepositoryService();
+        jobStore = newJobStore("node1");
     }
 
     @AfterMethod
@@ -56,6 +75,211 @@ public class TestRepoJobstore {
         jobStore = null;
     }
 
+    private RepoJobStore newJobStore(String instanceId) {
+        RepoJobStore store = new RepoJobStore();
+        store.setRepositoryService(repo);
+        store.setClusterManagementService(mock(ClusterManagementService.class));
+        store.setInstanceId(instanceId);
+        store.setSchedulerSignaler(signaler);
+        return store;
+    }
+
+    private Trigger storeJobAndTrigger(long startTime) throws Exception {
+        JobDetail job = new JobDetail("job1", "group1", SimpleJob.class);
+        Trigger trigger = new SimpleTrigger("trigger1", "group1", job.getName(), job.getGroup(),
+                new Date(startTime), null, SimpleTrigger.REPEAT_INDEFINITELY, 60000);
+        trigger.computeFirstFireTime(null);
+        jobStore.storeJobAndTrigger(null, job, trigger);
+        return trigger;
+    }
+
+    private List<ResourceResponse> getEntries(String resourcePath) throws ResourceException {
+        return repo.query(Requests.newQueryRequest(resourcePath).setQueryFilter(QueryFilter.<JsonPointer>alwaysTrue()));
+    }
+
+    private TriggerWrapper getTriggerWrapper(Trigger trigger) throws ResourceException {
+        return new TriggerWrapper(repo.read(Requests.newReadRequest(
+                RepoJobStore.getTriggersRepoId(trigger.getGroup(), trigger.getName()))).getContent());
+    }
+
+    @Test
+    public void testAcquireClaimConflict() throws Exception {
+        long now = System.currentTimeMillis();
+        Trigger trigger = storeJobAndTrigger(now);
+        final RepoJobStore node2 = newJobStore("node2");
+        final ResourceResponse waiting = getEntries(WAITING).get(0);
+        final Trigger[] acquiredByNode2 = new Trigger[1];
+
+        // node1 claims the waiting entry; node2 acquires the trigger from a stale waiting entry before node1 marks
+        // the trigger as acquired
+        repo.interleave(ACQUIRED, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                repo.create(Requests.newCreateRequest(WAITING, waiting.getId(), waiting.getContent()));
+                acquiredByNode2[0] = node2.acquireNextTrigger(null, 0);
+                return null;
+            }
+        });
+
+        Assertions.assertThat(jobStore.acquireNextTrigger(null, now + 1000)).isNull();
+        Assertions.assertThat(acquiredByNode2[0].getFullName()).isEqualTo(trigger.getFullName());
+        Assertions.assertThat(getTriggerWrapper(trigger).getNodeId()).isEqualTo("node2");
+        Assertions.assertThat(getEntries(WAITING)).isEmpty();
+        Assertions.assertThat(getEntries(ACQUIRED)).hasSize(1);
+        Assertions.assertThat(getEntries(ACQUIRED).get(0).getId()).startsWith("node2");
+    }
+
+    @Test
+    public void testStaleWaitingTriggerIsNotAcquired() throws Exception {
+        long now = System.currentTimeMillis();
+        Trigger trigger = storeJobAndTrigger(now);
+        ResourceResponse waiting = getEntries(WAITING).get(0);
+        Assertions.assertThat(jobStore.acquireNextTrigger(null, now + 1000).getFullName())
+                .isEqualTo(trigger.getFullName());
+
+        // a waiting entry re-added while node1 holds the trigger is dropped by the next claim
+        repo.create(Requests.newCreateRequest(WAITING, waiting.getId(), waiting.getContent()));
+        Assertions.assertThat(newJobStore("node2").acquireNextTrigger(null, now + 1000)).isNull();
+        Assertions.assertThat(getEntries(WAITING)).isEmpty();
+        Assertions.assertThat(getTriggerWrapper(trigger).getNodeId()).isEqualTo("node1");
+    }
+
+    @Test
+    public void testReleaseAcquiredTrigger() throws Exception {
+        long now = System.currentTimeMillis();
+        Trigger trigger = storeJobAndTrigger(now);
+        Trigger acquired = jobStore.acquireNextTrigger(null, now + 1000);
+
+        jobStore.releaseAcquiredTrigger(null, acquired);
+
+        Assertions.assertThat(getTriggerWrapper(trigger).isAcquired()).isFalse();
+        Assertions.assertThat(getEntries(ACQUIRED)).isEmpty();
+        Assertions.assertThat(getEntries(WAITING)).hasSize(1);
+        Assertions.assertThat(newJobStore("node2").acquireNextTrigger(null, now + 1000).getFullName())
+                .isEqualTo(trigger.getFullName());
+    }
+
+    @Test
+    public void testRemoveTriggerUpdatedConcurrently() throws Exception {
+        long now = System.currentTimeMillis();
+        final Trigger trigger = storeJobAndTrigger(now);
+        final ResourceResponse waiting = getEntries(WAITING).get(0);
+
+        // the waiting entry is updated between reading its revision and deleting it
+        repo.interleave(WAITING, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                repo.update(Requests.newUpdateRequest(WAITING + "/" + waiting.getId(), waiting.getContent()));
+                return null;
+            }
+        });
+
+        Assertions.assertThat(jobStore.removeTrigger(null, trigger.getName(), trigger.getGroup())).isTrue();
+        Assertions.assertThat(getEntries(WAITING)).isEmpty();
+        Assertions.assertThat(jobStore.acquireNextTrigger(null, now + 1000)).isNull();
+    }
+
+    @Test
+    public void testFiredTriggerIsAcquiredAgain() throws Exception {
+        long now = System.currentTimeMillis();
+        Trigger trigger = storeJobAndTrigger(now);
+        Trigger acquired = jobStore.acquireNextTrigger(null, now + 1000);
+
+        jobStore.triggerFired(null, acquired);
+
+        // the job is running, the trigger waits for its next fire time and can be acquired by another instance
+        Assertions.assertThat(getTriggerWrapper(trigger).isAcquired()).isFalse();
+        Assertions.assertThat(getEntries(WAITING)).hasSize(1);
+        Assertions.assertThat(newJobStore("node2").acquireNextTrigger(null, now + 120000).getNextFireTime())
+                .isEqualTo(new Date(trigger.getStartTime().getTime() + 60000));
+    }
+
+    @Test
+    public void testAcquireMisfiredTrigger() throws Exception {
+        long now = System.currentTimeMillis();
+        Trigger trigger = storeJobAndTrigger(now - 3600000);
+
+        Trigger acquired = jobStore.acquireNextTrigger(null, now + 120000);
+
+        Assertions.assertThat(signaler.getMisfiredCount()).isEqualTo(1);
+        Assertions.assertThat(acquired.getFullName()).isEqualTo(trigger.getFullName());
+        Assertions.assertThat(acquired.getNextFireTime().getTime()).isGreaterThanOrEqualTo(now);
+        Assertions.assertThat(getTriggerWrapper(trigger).isAcquired()).isTrue();
+    }
+
+    @Test
+    public void testCleanUpMisfiredAcquiredTrigger() throws Exception {
+        long now = System.currentTimeMillis();
+        Trigger trigger = storeJobAndTrigger(now - 30000);
+        jobStore.setMisfireThreshold(3600000);
+        Assertions.assertThat(jobStore.acquireNextTrigger(null, now)).isNotNull();
+
+        // node1 restarts after the acquired trigger misfired
+        RepoJobStore restarted = newJobStore("node1");
+        restarted.schedulerStarted();
+
+        Assertions.assertThat(signaler.getMisfiredCount()).isEqualTo(1);
+        Assertions.assertThat(getTriggerWrapper(trigger).isAcquired()).isFalse();
+        Assertions.assertThat(getTriggerWrapper(trigger).getTrigger().getNextFireTime().getTime())
+                .isGreaterThanOrEqualTo(now);
+        Assertions.assertThat(getEntries(ACQUIRED)).isEmpty();
+        Assertions.assertThat(getEntries(WAITING)).hasSize(1);
+    }
+
+    @Test
+    public void testCleanUpSkipsTriggersAcquiredByOtherInstances() throws Exception {
+        long now = System.currentTimeMillis();
+        Trigger trigger = storeJobAndTrigger(now);
+        Assertions.assertThat(jobStore.acquireNextTrigger(null, now + 1000)).isNotNull();
+
+        newJobStore("node2").schedulerStarted();
+
+        Assertions.assertThat(getEntries(WAITING)).isEmpty();
+        Assertions.assertThat(getTriggerWrapper(trigger).getNodeId()).isEqualTo("node1");
+    }
+
+    @Test
+    public void testRecoverInstance() throws Exception {
+        long now = System.currentTimeMillis();
+        Trigger trigger = storeJobAndTrigger(now);
+        Assertions.assertThat(jobStore.acquireNextTrigger(null, now + 1000)).isNotNull();
+        ClusterManagementService clusterManager = mock(ClusterManagementService.class);
+        RepoJobStore node2 = newJobStore("node2");
+        node2.setClusterManagementService(clusterManager);
+
+        Assertions.assertThat(node2.acquireNextTrigger(null, now + 1000)).isNull();
+        Assertions.assertThat(node2.handleEvent(new ClusterEvent(ClusterEventType.RECOVERY_INITIATED, "node1")))
+                .isTrue();
+
+        verify(clusterManager).renewRecoveryLease("node1");
+        Assertions.assertThat(getEntries(ACQUIRED)).isEmpty();
+        // the trigger is still marked as acquired by the failed instance, but that instance no longer holds it
+        Assertions.assertThat(getTriggerWrapper(trigger).getNodeId()).isEqualTo("node1");
+        Assertions.assertThat(node2.acquireNextTrigger(null, now + 1000).getFullName())
+                .isEqualTo(trigger.getFullName());
+        Assertions.assertThat(getTriggerWrapper(trigger).getNodeId()).isEqualTo("node2");
+    }
+
+    @Test
+    public void testWaitingTriggerKeyOrder() {
+        long now = System.currentTimeMillis();
+        String early = RepoJobStore.getWaitingTriggerKey(now, Trigger.DEFAULT_PRIORITY);
+        String earlyHighPriority = RepoJobStore.getWaitingTriggerKey(now, Trigger.DEFAULT_PRIORITY + 1);
+        String late = RepoJobStore.getWaitingTriggerKey(now + 1, Integer.MAX_VALUE);
+        String noLaterThanEarly = RepoJobStore.getWaitingTriggerKey(now, Integer.MIN_VALUE);
+
+        // triggers are acquired by next fire time, then by descending priority
+        Assertions.assertThat(earlyHighPriority.compareTo(early)).isLessThan(0);
+        Assertions.assertThat(early.compareTo(late)).isLessThan(0);
+        Assertions.assertThat(RepoJobStore.getWaitingTriggerKey(999, 0).compareTo(
+                RepoJobStore.getWaitingTriggerKey(1000, 0))).isLessThan(0);
+        // the bound used to acquire triggers firing no later than a time includes every priority
+        Assertions.assertThat(early.compareTo(noLaterThanEarly)).isLessThan(0);
+        Assertions.assertThat(RepoJobStore.getWaitingTriggerKey(now, Integer.MIN_VALUE + 1)
+                .compareTo(noLaterThanEarly)).isLessThan(0);
+        Assertions.assertThat(late.compareTo(noLaterThanEarly)).isGreaterThan(0);
+    }
+
     @SuppressWarnings("unchecked")
     public void disabletestStoreRetrieveRemoveTrigger() throws Exception {
         Trigger trigger = new SimpleTrigger("trigger1", "group1", new Date());
@@ -165,5 +389,48 @@ public class TestRepoJobstore {
         signaler.clear();
     }*/
 
-
+    /**
+     * A {@link TestRepositoryService} which runs an action before the next object is created in or deleted from a
+     * container, to interleave the calls of two instances.
+     */
+    private static class InterleavingRepositoryService extends TestRepositoryService {
+
+        private String container;
+        private Callable<Void> action;
+
+        void interleave(String container, Callable<Void> action) {
+            this.container = container;
+            this.action = action;
+        }
+
+        @Override
+        public ResourceResponse create(CreateRequest request) throws ResourceException {
+            if (request.getResourcePath().equals(container)) {
+                runAction();
+            }
+            return super.create(request);
+        }
+
+        @Override
+        public ResourceResponse delete(DeleteRequest request) throws ResourceException {
+            if (request.getResourcePath().startsWith(container + "/")) {
+                runAction();
+            }
+            return super.delete(request);
+        }
+
+        private void runAction() throws ResourceException {
+            if (action != null) {
+                Callable<Void> interleaved = action;
+                action = null;
+                try {
+                    interleaved.call();
+                } catch (ResourceException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.quartz.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ConflictException;
+import org.forgerock.json.resource.CreateRequest;
+import org.forgerock.json.resource.DeleteRequest;
+import org.forgerock.json.resource.NotFoundException;
+import org.forgerock.json.resource.PreconditionFailedException;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.ReadRequest;
+import org.forgerock.json.resource.Request;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.json.resource.Responses;
+import org.forgerock.json.resource.UpdateRequest;
+import org.forgerock.openidm.filter.JsonValueFilterVisitor;
+import org.forgerock.openidm.repo.BatchResult;
+import org.forgerock.openidm.repo.RepositoryService;
+import org.forgerock.openidm.repo.util.Batches;
+import org.forgerock.openidm.util.JsonUtil;
+
+/**
+ * An in-memory {@link RepositoryService} with the revision semantics of the repositories: creating an existing object
+ * and updating or deleting an object at another revision fail with a {@link PreconditionFailedException}, and the
+ * wildcard revision is rejected as by the OrientDB repository.
+ */
+class TestRepositoryService implements RepositoryService {
+
+    private final Map<String, JsonValue> objects = new TreeMap<>();
+    private long revisions = 0;
+
+    @Override
+    public synchronized ResourceResponse create(CreateRequest request) throws ResourceException {
+        String id = request.getNewResourceId();
+        String path = request.getResourcePath() + "/" + id;
+        if (objects.containsKey(path)) {
+            throw new PreconditionFailedException("Object " + path + " already exists");
+        }
+        return store(path, id, request.getContent());
+    }
+
+    @Override
+    public synchronized ResourceResponse read(ReadRequest request) throws ResourceException {
+        return toResponse(get(request.getResourcePath()));
+    }
+
+    @Override
+    public synchronized ResourceResponse update(UpdateRequest request) throws ResourceException {
+        JsonValue current = get(request.getResourcePath());
+        checkRevision(request.getResourcePath(), current, request.getRevision());
+        return store(request.getResourcePath(), current.get("_id").asString(), request.getContent());
+    }
+
+    @Override
+    public synchronized ResourceResponse delete(DeleteRequest request) throws ResourceException {
+        JsonValue current = get(request.getResourcePath());
+        checkRevision(request.getResourcePath(), current, request.getRevision());
+        objects.remove(request.getResourcePath());
+        return toResponse(current);
+    }
+
+    @Override
+    public synchronized List<ResourceResponse> query(QueryRequest request) throws ResourceException {
+        String prefix = request.getResourcePath() + "/";
+        List<JsonValue> matches = new ArrayList<>();
+        for (Map.Entry<String, JsonValue> object : objects.entrySet()) {
+            if (object.getKey().startsWith(prefix) && object.getKey().indexOf('/', prefix.length()) < 0
+                    && request.getQueryFilter().accept(new JsonValueFilterVisitor(), object.getValue())) {
+                matches.add(object.getValue().copy());
+            }
+        }
+        Collections.sort(matches, JsonUtil.getComparator(request.getSortKeys()));
+        List<ResourceResponse> results = new ArrayList<>();
+        for (JsonValue match : matches) {
+            if (request.getPageSize() > 0 && results.size() == request.getPageSize()) {
+                break;
+            }
+            results.add(toResponse(match));
+        }
+        return results;
+    }
+
+    @Override
+    public List<BatchResult> batch(List<? extends Request> requests) throws ResourceException {
+        return Batches.performSequentially(this, requests);
+    }
+
+    private JsonValue get(String path) throws NotFoundException {
+        JsonValue object = objects.get(path);
+        if (object == null) {
+            throw new NotFoundException("Object " + path + " not found");
+        }
+        return object;
+    }
+
+    private void checkRevision(String path, JsonValue current, String revision) throws ResourceException {
+        if ("*".equals(revision)) {
+            // as the OrientDB repository, which parses the revision as a version number
+            throw new ConflictException("Revision " + revision + " of " + path + " is not a version number");
+        }
+        if (revision != null && !revision.equals(current.get("_rev").asString())) {
+            throw new PreconditionFailedException("Object " + path + " is not at revision " + revision);
+        }
+    }
+
+    private ResourceResponse store(String path, String id, JsonValue content) {
+        JsonValue object = content.copy();
+        object.put("_id", id);
+        object.put("_rev", String.valueOf(++revisions));
+        objects.put(path, object);
+        return toResponse(object);
+    }
+
+    private ResourceResponse toResponse(JsonValue object) {
+        JsonValue content = object.copy();
+        return Responses.newResourceResponse(content.get("_id").asString(), content.get("_rev").asString(), content);
+    }
+}
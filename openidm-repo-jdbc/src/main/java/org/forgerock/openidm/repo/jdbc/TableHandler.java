@@ -36,6 +36,7 @@ import org.forgerock.json.resource.ForbiddenException;
 import org.forgerock.json.resource.InternalServerErrorException;
 import org.forgerock.json.resource.NotFoundException;
 import org.forgerock.json.resource.PreconditionFailedException;
+import org.forgerock.json.resource.QueryResourceHandler;
 import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.json.resource.ResourceException;
 import org.forgerock.util.query.QueryFilter;
@@ -157,6 +158,24 @@ public interface TableHandler {
     public List<Map<String, Object>> query(String type, Map<String, Object> params, Connection connection)
                 throws SQLException, ResourceException;
 
+    /**
+     * Performs the query on the specified object, handing each result to the handler as it is read from the
+     * database rather than returning the complete result at once.
+     *
+     * @param type identifies the object to query.
+     * @param params the parameters of the query to perform.
+     * @param connection
+     * @param fetchSize hint for the number of rows to fetch from the database at once, 0 for the driver default
+     * @param handler the handler receiving the results; returning false stops the query
+     * @return the number of results handed to the handler
+     * @throws BadRequestException if the specified params contain invalid arguments, e.g. a query id that is not
+     * configured, a query expression that is invalid, or missing query substitution tokens.
+     * @throws InternalServerErrorException if the operation failed because of a (possibly transient) failure
+     * @throws java.sql.SQLException
+     */
+    public int query(String type, Map<String, Object> params, Connection connection, int fetchSize,
+            QueryResourceHandler handler) throws SQLException, ResourceException;
+
     /**
      * Performs the command on the specified target and returns the number of affected objects
      * <p>
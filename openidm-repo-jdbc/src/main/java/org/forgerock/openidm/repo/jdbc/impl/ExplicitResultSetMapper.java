@@ -30,13 +30,15 @@ import java.util.TreeSet;
 import org.forgerock.json.JsonPointer;
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.resource.InternalServerErrorException;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.openidm.crypto.CryptoService;
 import org.forgerock.openidm.util.Accessor;
 import org.forgerock.openidm.util.JsonUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 /**
  * ResultSet Mapper for Explicit Mappings
@@ -68,11 +70,6 @@ class ExplicitResultSetMapper implements ResultSetMapper {
      */
     private final List<ColumnMapping> columnMappings;
 
-    /**
-     * Jackson parser
-     */
-    private final ObjectMapper mapper = new ObjectMapper();
-
     /**
      * Quick access to mapping for MVCC revision
      */
@@ -104,12 +101,12 @@ class ExplicitResultSetMapper implements ResultSetMapper {
                         throw new InternalServerErrorException("CryptoService unavailable");
                     }
                     if (JsonUtil.isEncrypted((String) value)) {
-                        value = convertToJson(entry.dbColName, "encrypted", (String) value, Map.class).asMap();
+                        value = convertToJson(entry.dbColName, "encrypted", (String) value, ObjectMappers.OBJECT_READER).asMap();
                     }
                 } else if (ColumnMapping.TYPE_JSON_MAP.equals(entry.dbColType)) {
-                    value = convertToJson(entry.dbColName, entry.dbColType, rs.getString(entry.dbColName), Map.class).asMap();
+                    value = convertToJson(entry.dbColName, entry.dbColType, rs.getString(entry.dbColName), ObjectMappers.OBJECT_READER).asMap();
                 } else if (ColumnMapping.TYPE_JSON_LIST.equals(entry.dbColType)) {
-                    value = convertToJson(entry.dbColName, entry.dbColType, rs.getString(entry.dbColName), List.class).asList();
+                    value = convertToJson(entry.dbColName, entry.dbColType, rs.getString(entry.dbColName), ObjectMappers.LIST_READER).asList();
                 } else {
                     throw new InternalServerErrorException("Unsupported DB column type " + entry.dbColType);
                 }
@@ -123,10 +120,10 @@ class ExplicitResultSetMapper implements ResultSetMapper {
         return mappedResult;
     }
 
-    private <T> JsonValue convertToJson(String name, String nameType, String value, Class<T> valueType) throws InternalServerErrorException {
+    private JsonValue convertToJson(String name, String nameType, String value, ObjectReader reader) throws InternalServerErrorException {
         if (value != null) {
             try {
-                return new JsonValue(mapper.readValue(value, valueType));
+                return new JsonValue(reader.readValue(value));
             } catch (IOException e) {
                 throw new InternalServerErrorException("Unable to map " + nameType + " value for " + name, e);
             }
@@ -182,13 +179,35 @@ class ExplicitResultSetMapper implements ResultSetMapper {
      */
     @Override
     public List<Map<String, Object>> mapToObject(ResultSet rs, String queryId, String type, Map<String, Object> params) throws SQLException, InternalServerErrorException {
-        List<Map<String, Object>> result = new ArrayList<>();
+        final List<Map<String, Object>> result = new ArrayList<>();
+        mapToObject(rs, queryId, type, params, new QueryResourceHandler() {
+            @Override
+            public boolean handleResource(ResourceResponse resource) {
+                result.add(resource.getContent().asMap());
+                return true;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Maps the ResultSet row by row to the OpenIDM object, only holding on to the current row.
+     *
+     * @return the number of rows handed to the handler
+     */
+    @Override
+    public int mapToObject(ResultSet rs, String queryId, String type, Map<String, Object> params,
+            QueryResourceHandler handler) throws SQLException, InternalServerErrorException {
         Set<String> names = ExplicitResultSetMapper.getColumnNames(rs);
+        int count = 0;
         while (rs.next()) {
             JsonValue obj = mapToJsonValue(rs, names);
-            result.add(obj.asMap());
+            count++;
+            if (!handler.handleResource(GenericResultSetMapper.toResourceResponse(obj.asMap()))) {
+                break;
+            }
         }
-        return result;
+        return count;
     }
 
     /**
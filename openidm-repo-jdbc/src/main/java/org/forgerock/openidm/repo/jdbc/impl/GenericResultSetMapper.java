@@ -15,37 +15,30 @@
  */
 package org.forgerock.openidm.repo.jdbc.impl;
 
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.forgerock.json.JsonPointer;
 import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.ResourceResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 /**
  * ResultSet Mapper for Generic Mappings
  */
 public class GenericResultSetMapper implements ResultSetMapper {
     static final Logger logger = LoggerFactory.getLogger(GenericResultSetMapper.class);
 
-    /** Jackson parser */
-    private final ObjectMapper mapper = new ObjectMapper();
-
-    /** Type information for the Jackson parser */
-    TypeReference<LinkedHashMap<String, Object>> typeRef = new TypeReference<LinkedHashMap<String, Object>>() {
-    };
-    
     /**
      * Maps the ResultSet to a raw List of mapped rows.
      * 
@@ -82,7 +75,25 @@ public class GenericResultSetMapper implements ResultSetMapper {
      */
     @Override
     public List<Map<String, Object>> mapToObject(ResultSet rs, String queryId, String type, Map<String, Object> params) throws SQLException, IOException {
-        List<Map<String, Object>> result = new ArrayList<>();
+        final List<Map<String, Object>> result = new ArrayList<>();
+        mapToObject(rs, queryId, type, params, new QueryResourceHandler() {
+            @Override
+            public boolean handleResource(ResourceResponse resource) {
+                result.add(resource.getContent().asMap());
+                return true;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Maps the ResultSet row by row to the OpenIDM object, only holding on to the current row.
+     *
+     * @return the number of rows handed to the handler
+     */
+    @Override
+    public int mapToObject(ResultSet rs, String queryId, String type, Map<String, Object> params,
+            QueryResourceHandler handler) throws SQLException, IOException {
         ResultSetMetaData rsMetaData = rs.getMetaData();
         boolean hasFullObject = hasColumn(rsMetaData, "fullobject");
         boolean hasId = false;
@@ -97,15 +108,15 @@ public class GenericResultSetMapper implements ResultSetMapper {
             hasPropValue = hasColumn(rsMetaData, "propvalue");
             hasTotal = hasColumn(rsMetaData, "total");
         }
+        int count = 0;
         while (rs.next()) {
+            Map<String, Object> obj;
             if (hasFullObject) {
-                String objString = rs.getString("fullobject");
-                Map<String, Object> obj = mapper.readValue(objString, typeRef);
+                obj = ObjectMappers.readObject(rs, "fullobject");
                 // TODO: remove data logging
                 logger.trace("Query result for queryId: {} type: {} converted obj: {}", new Object[]{queryId, type, obj});
-                result.add(obj);
             } else {
-                Map<String, Object> obj = new HashMap<String, Object>();
+                obj = new HashMap<String, Object>();
                 if (hasId) {
                     obj.put("_id", rs.getString("objectid"));
                 }
@@ -123,10 +134,23 @@ public class GenericResultSetMapper implements ResultSetMapper {
                     JsonValue wrapped = new JsonValue(obj);
                     wrapped.put(pointer, propValue);
                 }
-                result.add(obj);
+            }
+            count++;
+            if (!handler.handleResource(toResourceResponse(obj))) {
+                break;
             }
         }
-        return result;
+        return count;
+    }
+
+    /**
+     * Wraps a mapped row as resource, taking id and revision from the row itself.
+     *
+     * @param obj the mapped row
+     * @return the resource wrapping the row
+     */
+    static ResourceResponse toResourceResponse(Map<String, Object> obj) {
+        return newResourceResponse((String) obj.get("_id"), (String) obj.get("_rev"), new JsonValue(obj));
     }
     
     /**
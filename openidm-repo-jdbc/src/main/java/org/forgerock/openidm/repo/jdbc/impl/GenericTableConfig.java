@@ -26,6 +26,8 @@ class GenericTableConfig {
     public String propertiesTableName;
     public boolean searchableDefault;
     public GenericPropertiesConfig properties;
+    // Whether updates only write the searchable properties that changed, rather than re-writing all of them
+    public boolean incrementalPropertyUpdates;
 
     public boolean isSearchable(JsonPointer propPointer) {
 
@@ -59,6 +61,8 @@ class GenericTableConfig {
         cfg.propertiesTableName = tableConfig.get("propertiesTable").required().asString();
         cfg.searchableDefault = tableConfig.get("searchableDefault").defaultTo(Boolean.TRUE).asBoolean();
         cfg.properties = GenericPropertiesConfig.parse(tableConfig.get("properties"));
+        cfg.incrementalPropertyUpdates =
+                tableConfig.get("incrementalPropertyUpdates").defaultTo(Boolean.FALSE).asBoolean();
 
         return cfg;
     }
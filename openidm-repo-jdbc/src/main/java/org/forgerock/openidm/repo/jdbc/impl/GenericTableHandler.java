@@ -29,9 +29,11 @@ import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import org.apache.commons.lang3.StringUtils;
 import org.forgerock.json.JsonPointer;
@@ -39,6 +41,7 @@ import org.forgerock.json.JsonValue;
 import org.forgerock.json.resource.InternalServerErrorException;
 import org.forgerock.json.resource.NotFoundException;
 import org.forgerock.json.resource.PreconditionFailedException;
+import org.forgerock.json.resource.QueryResourceHandler;
 import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.json.resource.ResourceException;
 import org.forgerock.json.resource.SortKey;
@@ -51,9 +54,6 @@ import org.forgerock.util.query.QueryFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 /**
  * Handling of tables in a generic (not object specific) layout
  *
@@ -75,14 +75,12 @@ public class GenericTableHandler implements TableHandler {
     final String propTableName;
     final String dbSchemaName;
 
-    // Jackson parser
-    final ObjectMapper mapper = new ObjectMapper();
-    // Type information for the Jackson parser
-    final TypeReference<LinkedHashMap<String,Object>> typeRef = new TypeReference<LinkedHashMap<String,Object>>() {};
-
     final TableQueries queries;
     
     final GenericResultSetMapper genericResultMapper = new GenericResultSetMapper();
+
+    // Shared cache of objecttypes ids
+    final ObjectTypeIdCache typeIdCache;
     
     Map<QueryDefinition, String> queryMap;
 
@@ -99,6 +97,8 @@ public class GenericTableHandler implements TableHandler {
         DELETEQUERYSTR,
         PROPCREATEQUERYSTR,
         PROPDELETEQUERYSTR,
+        PROPUPDATEQUERYSTR,
+        PROPDELETEBYKEYQUERYSTR,
         QUERYALLIDS
     }
 
@@ -142,6 +142,8 @@ public class GenericTableHandler implements TableHandler {
             this.sqlExceptionHandler = sqlExceptionHandler;
         }
 
+        typeIdCache = ObjectTypeIdCache.forTable(dbSchemaName == null ? "objecttypes" : dbSchemaName + ".objecttypes");
+
         queries = new TableQueries(this, mainTableName, propTableName, dbSchemaName, getSearchableLength(), genericResultMapper);
         queryMap = Collections.unmodifiableMap(initializeQueryMap());
         queries.setConfiguredQueries(queriesConfig, commandsConfig, queryMap);
@@ -192,6 +194,8 @@ public class GenericTableHandler implements TableHandler {
         // Object properties table
         result.put(QueryDefinition.PROPCREATEQUERYSTR, "INSERT INTO " + propertyTable + " ( " + mainTableName + "_id, propkey, proptype, propvalue) VALUES (?,?,?,?)");
         result.put(QueryDefinition.PROPDELETEQUERYSTR, "DELETE prop FROM " + propertyTable + " prop INNER JOIN " + mainTable + " obj ON prop." + mainTableName + "_id = obj.id INNER JOIN " + typeTable + " objtype ON obj.objecttypes_id = objtype.id WHERE objtype.objecttype = ? AND obj.objectid = ?");
+        result.put(QueryDefinition.PROPUPDATEQUERYSTR, "UPDATE " + propertyTable + " SET proptype = ?, propvalue = ? WHERE " + mainTableName + "_id = ? AND propkey = ?");
+        result.put(QueryDefinition.PROPDELETEBYKEYQUERYSTR, "DELETE FROM " + propertyTable + " WHERE " + mainTableName + "_id = ? AND propkey = ?");
         // Default object queries
         String tableVariable =  dbSchemaName == null ? "${_mainTable}" : "${_dbSchema}.${_mainTable}";
         result.put(QueryDefinition.QUERYALLIDS, "SELECT obj.objectid FROM " + tableVariable + " obj INNER JOIN " + typeTable + " objtype ON obj.objecttypes_id = objtype.id WHERE objtype.objecttype = ${_resource}");
@@ -247,7 +251,7 @@ public class GenericTableHandler implements TableHandler {
             String rev = "0";
             obj.put(Constants.OBJECT_ID, localId); // Save the id in the object
             obj.put("_rev", rev); // Save the rev in the object, and return the changed rev from the create.
-            String objString = mapper.writeValueAsString(obj);
+            String objString = ObjectMappers.WRITER.writeValueAsString(obj);
 
             logger.trace("Populating statement {} with params {}, {}, {}, {}",
                     queryMap.get(QueryDefinition.CREATEQUERYSTR), typeId, localId, rev, objString);
@@ -330,15 +334,9 @@ public class GenericTableHandler implements TableHandler {
                 if (entry.isMap() || entry.isList()) {
                     batchingCount = writeValueProperties(fullId, dbId, localId, entry, connection, propCreateStatement, batchingCount);
                 } else {
-                    String propvalue = null;
-                    Object val = entry.getObject();
-                    if (val != null) {
-                        propvalue = StringUtils.left(val.toString(), getSearchableLength());
-                    }
-                    String proptype = null;
-                    if (propvalue != null) {
-                        proptype = entry.getObject().getClass().getName(); // TODO: proper type info
-                    }
+                    ValueProperty prop = toValueProperty(entry);
+                    String proptype = prop.type;
+                    String propvalue = prop.value;
                     if (logger.isTraceEnabled()) {
                         logger.trace("Populating statement {} with params {}, {}, {}, {}, {}",
                                 queryMap.get(QueryDefinition.PROPCREATEQUERYSTR), dbId, localId, propkey, proptype, propvalue);
@@ -390,6 +388,7 @@ public class GenericTableHandler implements TableHandler {
 
     // Ensure type is in objecttypes table and get its assigned id
     // Callers should note that this may commit a transaction and start a new one if a new type gets added
+    // Known types are served from the shared ObjectTypeIdCache without a DB round trip
     long getTypeId(String type, Connection connection) throws SQLException, InternalServerErrorException {
         Exception detectedEx = null;
         long typeId = readTypeId(type, connection);
@@ -413,15 +412,20 @@ public class GenericTableHandler implements TableHandler {
     }
 
     /**
+     * Looks up the id of a type, from the shared cache if it has been read before.
+     *
      * @param type       the object type URI
      * @param connection the DB connection
      * @return the typeId for the given type if exists, or -1 if does not exist
      * @throws java.sql.SQLException
      */
     long readTypeId(String type, Connection connection) throws SQLException {
-        long typeId = -1;
+        long typeId = typeIdCache.get(type);
+        if (typeId >= 0) {
+            logger.trace("Type: {}, cached id: {}", type, typeId);
+            return typeId;
+        }
 
-        Map<String, Object> result = null;
         ResultSet rs = null;
         PreparedStatement readTypeStatement = null;
         try {
@@ -436,6 +440,7 @@ public class GenericTableHandler implements TableHandler {
             if (rs.next()) {
                 typeId = rs.getLong(Constants.RAW_ID);
                 logger.debug("Type: {}, id: {}", type, typeId);
+                typeIdCache.put(type, typeId);
             }
         } finally {
             CleanupHelper.loggedClose(rs);
@@ -518,7 +523,6 @@ public class GenericTableHandler implements TableHandler {
         obj.put("_rev", newRev); // Save the rev in the object, and return the changed rev from the create.
 
         PreparedStatement updateStatement = null;
-        PreparedStatement deletePropStatement = null;
         try {
             JsonValue result = new JsonValue(readForUpdate(fullId, type, localId, connection));
             String existingRev = result.get(Constants.RAW_OBJECT_REV).asString();
@@ -530,7 +534,6 @@ public class GenericTableHandler implements TableHandler {
                 throw new PreconditionFailedException("Update rejected as current Object revision " + existingRev + " is different than expected by caller (" + rev + "), the object has changed since retrieval.");
             }
             updateStatement = getPreparedStatement(connection, QueryDefinition.UPDATEQUERYSTR);
-            deletePropStatement = getPreparedStatement(connection, QueryDefinition.PROPDELETEQUERYSTR);
 
             // Support changing object identifier
             String newLocalId = (String) obj.get(Constants.OBJECT_ID);
@@ -540,7 +543,7 @@ public class GenericTableHandler implements TableHandler {
                 newLocalId = localId; // If it hasn't changed, use the existing ID
                 obj.put(Constants.OBJECT_ID, newLocalId); // Ensure the ID is saved in the object
             }
-            String objString = mapper.writeValueAsString(obj);
+            String objString = ObjectMappers.WRITER.writeValueAsString(obj);
 
             logger.trace("Populating prepared statement {} for {} {} {} {} {}", updateStatement, fullId, newLocalId, newRev, objString, dbId);
             updateStatement.setString(1, newLocalId);
@@ -555,18 +558,225 @@ public class GenericTableHandler implements TableHandler {
             }
 
             JsonValue jv = new JsonValue(obj);
-            // TODO: only update what changed?
+            updateValueProperties(fullId, type, localId, dbId, result, jv, connection);
+        } finally {
+            CleanupHelper.loggedClose(updateStatement);
+        }
+    }
+
+    /**
+     * Brings the properties table in line with an updated resource.
+     * <p>
+     * By default all properties of the resource are deleted and re-inserted. If the table is configured with
+     * {@code incrementalPropertyUpdates} the previously stored object is compared with the updated one, and only the
+     * properties that were added, removed or changed are written.
+     *
+     * @param fullId the full URI of the resource the belongs to
+     * @param type the resource type
+     * @param localId the local identifier of the resource these properties belong to
+     * @param dbId the generated identifier to link the properties table with the main table (foreign key)
+     * @param existing the raw row of the resource as read by {@link #readForUpdate}
+     * @param value the JSON value of the updated resource
+     * @param connection the DB connection
+     * @throws SQLException if the update failed
+     * @throws IOException if the previously stored object could not be parsed
+     */
+    void updateValueProperties(String fullId, String type, String localId, long dbId, JsonValue existing,
+            JsonValue value, Connection connection) throws SQLException, IOException {
+        if (cfg.incrementalPropertyUpdates) {
+            Map<String, Object> existingObj = ObjectMappers.readObject(existing.get(Constants.RAW_FULLOBJECT).getObject());
+            if (existingObj != null) {
+                syncValueProperties(fullId, dbId, new JsonValue(existingObj), value, connection);
+                return;
+            }
+            logger.debug("No stored object available for {}, re-writing all properties", fullId);
+        }
+
+        PreparedStatement deletePropStatement = getPreparedStatement(connection, QueryDefinition.PROPDELETEQUERYSTR);
+        try {
             logger.trace("Populating prepared statement {} for {} {} {}", deletePropStatement, fullId, type, localId);
             deletePropStatement.setString(1, type);
             deletePropStatement.setString(2, localId);
             logger.debug("Update properties del statement: {}", deletePropStatement);
             int deleteCount = deletePropStatement.executeUpdate();
             logger.trace("Deleted child rows: {} for: {}", deleteCount, fullId);
-            writeValueProperties(fullId, dbId, localId, jv, connection);
         } finally {
-            CleanupHelper.loggedClose(updateStatement);
             CleanupHelper.loggedClose(deletePropStatement);
         }
+        writeValueProperties(fullId, dbId, localId, value, connection);
+    }
+
+    /**
+     * Writes only the difference between the searchable properties of the stored and the updated resource.
+     *
+     * @param fullId the full URI of the resource the belongs to
+     * @param dbId the generated identifier to link the properties table with the main table (foreign key)
+     * @param existingValue the JSON value of the resource as currently stored
+     * @param value the JSON value of the updated resource
+     * @param connection the DB connection
+     * @throws SQLException if a delete, insert or update failed
+     */
+    private void syncValueProperties(String fullId, long dbId, JsonValue existingValue, JsonValue value,
+            Connection connection) throws SQLException {
+        Map<String, ValueProperty> existingProps = new HashMap<>();
+        collectValueProperties(existingValue, existingProps);
+        Map<String, ValueProperty> props = new LinkedHashMap<>();
+        collectValueProperties(value, props);
+
+        PreparedStatement propDeleteStatement = null;
+        PreparedStatement propCreateStatement = null;
+        PreparedStatement propUpdateStatement = null;
+        int deleteCount = 0;
+        int createCount = 0;
+        int updateCount = 0;
+        try {
+            for (String propkey : existingProps.keySet()) {
+                if (!props.containsKey(propkey)) {
+                    if (propDeleteStatement == null) {
+                        propDeleteStatement = getPreparedStatement(connection, QueryDefinition.PROPDELETEBYKEYQUERYSTR);
+                    }
+                    logger.trace("Deleting objectproperty id: {} propkey: {}", fullId, propkey);
+                    propDeleteStatement.setLong(1, dbId);
+                    propDeleteStatement.setString(2, propkey);
+                    deleteCount = executeOrBatch(propDeleteStatement, deleteCount);
+                }
+            }
+            for (Map.Entry<String, ValueProperty> entry : props.entrySet()) {
+                String propkey = entry.getKey();
+                ValueProperty prop = entry.getValue();
+                ValueProperty existingProp = existingProps.get(propkey);
+                if (existingProp == null) {
+                    if (propCreateStatement == null) {
+                        propCreateStatement = getPreparedStatement(connection, QueryDefinition.PROPCREATEQUERYSTR);
+                    }
+                    logger.trace("Inserting objectproperty id: {} propkey: {} proptype: {}, propvalue: {}",
+                            fullId, propkey, prop.type, prop.value);
+                    propCreateStatement.setLong(1, dbId);
+                    propCreateStatement.setString(2, propkey);
+                    propCreateStatement.setString(3, prop.type);
+                    propCreateStatement.setString(4, prop.value);
+                    createCount = executeOrBatch(propCreateStatement, createCount);
+                } else if (!existingProp.equals(prop)) {
+                    if (propUpdateStatement == null) {
+                        propUpdateStatement = getPreparedStatement(connection, QueryDefinition.PROPUPDATEQUERYSTR);
+                    }
+                    logger.trace("Updating objectproperty id: {} propkey: {} proptype: {}, propvalue: {}",
+                            fullId, propkey, prop.type, prop.value);
+                    propUpdateStatement.setString(1, prop.type);
+                    propUpdateStatement.setString(2, prop.value);
+                    propUpdateStatement.setLong(3, dbId);
+                    propUpdateStatement.setString(4, propkey);
+                    updateCount = executeOrBatch(propUpdateStatement, updateCount);
+                }
+            }
+            if (deleteCount > 0) {
+                executeBatch(propDeleteStatement);
+            }
+            if (createCount > 0) {
+                executeBatch(propCreateStatement);
+            }
+            if (updateCount > 0) {
+                executeBatch(propUpdateStatement);
+            }
+        } finally {
+            CleanupHelper.loggedClose(propDeleteStatement);
+            CleanupHelper.loggedClose(propCreateStatement);
+            CleanupHelper.loggedClose(propUpdateStatement);
+        }
+    }
+
+    /**
+     * Collects the searchable properties of a JSON value keyed by their propkey, trimmed and typed the same way as
+     * they are written by {@link #writeValueProperties(String, long, String, JsonValue, Connection)}.
+     *
+     * @param value the JSON value to collect the properties of
+     * @param properties the map to populate
+     */
+    private void collectValueProperties(JsonValue value, Map<String, ValueProperty> properties) {
+        for (JsonValue entry : value) {
+            JsonPointer propPointer = entry.getPointer();
+            if (cfg.isSearchable(propPointer)) {
+                if (entry.isMap() || entry.isList()) {
+                    collectValueProperties(entry, properties);
+                } else {
+                    properties.put(propPointer.toString(), toValueProperty(entry));
+                }
+            }
+        }
+    }
+
+    /**
+     * Either adds the populated statement to the batch, executing the batch once the max limit is reached,
+     * or executes it immediately if batching is not enabled.
+     *
+     * @param statement the populated prepared statement
+     * @param batchingCount the current number of statements batched and not yet executed
+     * @return the number of statements batched and not yet executed
+     * @throws SQLException if the execution failed
+     */
+    private int executeOrBatch(PreparedStatement statement, int batchingCount) throws SQLException {
+        logger.debug("Executing: {}", statement);
+        if (!enableBatching) {
+            statement.executeUpdate();
+            return 0;
+        }
+        statement.addBatch();
+        if (++batchingCount >= maxBatchSize) {
+            executeBatch(statement);
+            return 0;
+        }
+        return batchingCount;
+    }
+
+    private void executeBatch(PreparedStatement statement) throws SQLException {
+        int[] numUpdates = statement.executeBatch();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Batch update of objectproperties updated: {}", Arrays.asList(numUpdates));
+        }
+        statement.clearBatch();
+    }
+
+    private ValueProperty toValueProperty(JsonValue entry) {
+        String propvalue = null;
+        Object val = entry.getObject();
+        if (val != null) {
+            propvalue = StringUtils.left(val.toString(), getSearchableLength());
+        }
+        String proptype = null;
+        if (propvalue != null) {
+            proptype = val.getClass().getName(); // TODO: proper type info
+        }
+        return new ValueProperty(proptype, propvalue);
+    }
+
+    /**
+     * The type and (trimmed) value of a single row in the properties table.
+     */
+    private static final class ValueProperty {
+        final String type;
+        final String value;
+
+        ValueProperty(String type, String value) {
+            this.type = type;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ValueProperty)) {
+                return false;
+            }
+            ValueProperty other = (ValueProperty) o;
+            return Objects.equals(type, other.type) && Objects.equals(value, other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, value);
+        }
     }
 
     /**
@@ -623,6 +833,12 @@ public class GenericTableHandler implements TableHandler {
         return queries.query(type, params, connection);
     }
 
+    @Override
+    public int query(String type, Map<String, Object> params, Connection connection, int fetchSize,
+            QueryResourceHandler handler) throws ResourceException {
+        return queries.query(type, params, connection, fetchSize, handler);
+    }
+
     @Override
     public Integer command(String type, Map<String, Object> params, Connection connection) throws SQLException, ResourceException {
         return queries.command(type, params, connection);
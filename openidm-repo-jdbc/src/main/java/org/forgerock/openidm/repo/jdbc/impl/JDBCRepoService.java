@@ -37,10 +37,14 @@ import static org.forgerock.openidm.repo.QueryConstants.SORT_KEYS;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -77,20 +81,25 @@ import org.forgerock.json.resource.QueryRequest;
 import org.forgerock.json.resource.QueryResourceHandler;
 import org.forgerock.json.resource.QueryResponse;
 import org.forgerock.json.resource.ReadRequest;
+import org.forgerock.json.resource.Request;
 import org.forgerock.json.resource.RequestHandler;
 import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourcePath;
 import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.SortKey;
 import org.forgerock.json.resource.UpdateRequest;
 import org.forgerock.openidm.config.enhanced.EnhancedConfig;
 import org.forgerock.openidm.config.enhanced.InvalidException;
 import org.forgerock.openidm.core.ServerConstants;
 import org.forgerock.openidm.crypto.CryptoService;
+import org.forgerock.openidm.repo.BatchResult;
 import org.forgerock.openidm.repo.RepoBootService;
 import org.forgerock.openidm.repo.RepositoryService;
 import org.forgerock.openidm.repo.jdbc.DatabaseType;
 import org.forgerock.openidm.repo.jdbc.ErrorType;
 import org.forgerock.openidm.repo.jdbc.TableHandler;
+import org.forgerock.openidm.repo.util.Batches;
 import org.forgerock.openidm.util.Accessor;
 import org.forgerock.util.promise.Promise;
 import org.osgi.framework.BundleContext;
@@ -116,12 +125,14 @@ public class JDBCRepoService implements RequestHandler, RepoBootService, Reposit
 
     public static final String PID = "org.forgerock.openidm.repo.jdbc";
     private static final String ACTION_COMMAND = "command";
+    private static final String ACTION_BATCH = "batch";
 
     // Keys in the JSON configuration
     public static final String CONFIG_USE_DATASOURCE = "useDataSource";
     public static final String CONFIG_DB_TYPE = "dbType";
     public static final String CONFIG_MAX_TX_RETRY = "maxTxRetry";
     public static final String CONFIG_MAX_BATCH_SIZE = "maxBatchSize";
+    public static final String CONFIG_QUERY_FETCH_SIZE = "queryFetchSize";
 
     Map<String, TableHandler> tableHandlers;
     TableHandler defaultTableHandler;
@@ -130,6 +141,8 @@ public class JDBCRepoService implements RequestHandler, RepoBootService, Reposit
 
     private JsonValue config;
     private int maxTxRetry = 5;
+    /** Number of results read per chunk of a query, 0 to read all results at once */
+    int queryFetchSize = 0;
 
     /** CryptoService for detecting whether a value is encrypted */
     @Reference
@@ -212,6 +225,7 @@ public class JDBCRepoService implements RequestHandler, RepoBootService, Reposit
     @Deactivate
     void deactivate(ComponentContext compContext) {
         logger.debug("Deactivating Service {}", compContext);
+        ObjectTypeIdCache.invalidateAll();
         logger.info("Repository stopped.");
     }
 
@@ -564,6 +578,321 @@ public class JDBCRepoService implements RequestHandler, RepoBootService, Reposit
         return result;
     }
 
+    /**
+     * Performs the create, update and delete requests in a single transaction, retrying the whole batch up to
+     * {@code maxTxRetry} times on retryable failures.
+     * <p>
+     * Each request runs within its own savepoint, so a request that fails is rolled back and reported in its result
+     * without affecting the others. Consecutive creates of the same type on an explicitly mapped table are written
+     * with a single JDBC statement batch.
+     *
+     * @param requests the create, update and delete requests to perform
+     * @return one result per request, in request order
+     * @throws ResourceException if the batch as a whole failed
+     */
+    @Override
+    public List<BatchResult> batch(List<? extends Request> requests) throws ResourceException {
+        List<BatchResult> results = new ArrayList<>(requests.size());
+        if (requests.isEmpty()) {
+            return results;
+        }
+
+        Connection connection = null;
+        Integer previousIsolationLevel = null;
+        boolean retry;
+        int tryCount = 0;
+        do {
+            retry = false;
+            ++tryCount;
+            results.clear();
+            // The request being performed, whose table handler interprets a failure
+            Request current = null;
+            try {
+                connection = getConnection();
+                connection.setAutoCommit(true);
+                // Resolve any new object types before the transaction starts, as adding one commits
+                prepareTypeIds(requests, connection);
+
+                previousIsolationLevel = connection.getTransactionIsolation();
+                connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+                connection.setAutoCommit(false);
+
+                int index = 0;
+                while (index < requests.size()) {
+                    current = requests.get(index);
+                    int end = endOfCreateBatch(requests, index);
+                    if (end - index > 1) {
+                        Savepoint savepoint = connection.setSavepoint();
+                        try {
+                            results.addAll(createAll(requests.subList(index, end), connection));
+                            index = end;
+                            continue;
+                        } catch (SQLException ex) {
+                            if (isRetryable(current, ex, connection)) {
+                                throw ex;
+                            }
+                            // Fall back to individual creates to find out which ones failed
+                            logger.debug("Batched create failed, retrying creates individually", ex);
+                            connection.rollback(savepoint);
+                        } catch (IOException ex) {
+                            logger.debug("Batched create failed, retrying creates individually", ex);
+                            connection.rollback(savepoint);
+                        }
+                    }
+                    for (; index < end; index++) {
+                        current = requests.get(index);
+                        results.add(batchItem(current, connection));
+                    }
+                }
+
+                connection.commit();
+                logger.debug("Committed batch of {} requests", requests.size());
+            } catch (SQLException ex) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("SQL Exception in batch of {} requests with error code {}, sql state {}",
+                            requests.size(), ex.getErrorCode(), ex.getSQLState(), ex);
+                }
+                rollback(connection);
+                if (isRetryable(current != null ? current : requests.get(0), ex, connection)) {
+                    if (tryCount <= maxTxRetry) {
+                        retry = true;
+                        logger.debug("Retryable exception encountered, retry attempt {} of {} : {}", tryCount, maxTxRetry, ex.getMessage());
+                    }
+                }
+                if (!retry) {
+                    throw new InternalServerErrorException("Batch failed after " + tryCount + " attempts: "
+                            + ex.getMessage(), ex);
+                }
+            } catch (ResourceException ex) {
+                logger.debug("ResourceException in batch of {} requests", requests.size(), ex);
+                rollback(connection);
+                throw ex;
+            } catch (RuntimeException ex) {
+                logger.debug("Runtime Exception in batch of {} requests", requests.size(), ex);
+                rollback(connection);
+                throw new InternalServerErrorException(
+                        "Batch failed with unexpected failure: " + ex.getMessage(), ex);
+            } finally {
+                if (connection != null) {
+                    try {
+                        if (previousIsolationLevel != null) {
+                            connection.setTransactionIsolation(previousIsolationLevel);
+                        }
+                    } catch (SQLException ex) {
+                        logger.warn("Failure in resetting connection isolation level ", ex);
+                    }
+                    CleanupHelper.loggedClose(connection);
+                }
+            }
+        } while (retry);
+
+        return results;
+    }
+
+    /**
+     * Performs a single request of a batch within its own savepoint.
+     *
+     * @return the result of the request
+     * @throws SQLException if the request failed in a way that requires the whole batch to be retried
+     */
+    private BatchResult batchItem(Request request, Connection connection) throws SQLException {
+        Savepoint savepoint = connection.setSavepoint();
+        try {
+            if (request instanceof CreateRequest) {
+                return BatchResult.success(request, create((CreateRequest) request, connection));
+            } else if (request instanceof UpdateRequest) {
+                return BatchResult.success(request, update((UpdateRequest) request, connection));
+            } else if (request instanceof DeleteRequest) {
+                return BatchResult.success(request, delete((DeleteRequest) request, connection));
+            } else {
+                throw Batches.unsupportedRequest(request);
+            }
+        } catch (ResourceException ex) {
+            logger.debug("ResourceException in batched {} of {}", request.getRequestType(), request.getResourcePath(), ex);
+            connection.rollback(savepoint);
+            return BatchResult.failure(request, ex);
+        } catch (IOException ex) {
+            logger.debug("IO Exception in batched {} of {}", request.getRequestType(), request.getResourcePath(), ex);
+            connection.rollback(savepoint);
+            return BatchResult.failure(request,
+                    new InternalServerErrorException("Conversion of object failed", ex));
+        } catch (SQLException ex) {
+            if (isRetryable(request, ex, connection)) {
+                throw ex;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("SQL Exception in batched {} of {} with error code {}, sql state {}",
+                        request.getRequestType(), request.getResourcePath(), ex.getErrorCode(), ex.getSQLState(), ex);
+            }
+            connection.rollback(savepoint);
+            TableHandler handler = getBatchTableHandler(request);
+            if (request instanceof CreateRequest
+                    && handler != null && handler.isErrorType(ex, ErrorType.DUPLICATE_KEY)) {
+                return BatchResult.failure(request, new PreconditionFailedException(
+                        "Create rejected as Object with same ID already exists and was detected. "
+                                + "(" + ex.getErrorCode() + "-" + ex.getSQLState() + ")"
+                                + ex.getMessage(), ex));
+            }
+            return BatchResult.failure(request, new InternalServerErrorException(
+                    "Batched " + request.getRequestType() + " failed (" + ex.getErrorCode() + "-" + ex.getSQLState()
+                            + "): " + ex.getMessage(), ex));
+        }
+    }
+
+    /**
+     * Determines the end of a run of creates starting at the given index that can be written as one JDBC batch,
+     * i.e. creates with distinct identifiers of the same type on an explicitly mapped table.
+     *
+     * @return the (exclusive) end index of the run, at least {@code start + 1}
+     */
+    private int endOfCreateBatch(List<? extends Request> requests, int start) {
+        Request first = requests.get(start);
+        if (!(first instanceof CreateRequest) || first.getResourcePathObject().isEmpty()
+                || !(getTableHandler(first.getResourcePath()) instanceof MappedTableHandler)) {
+            return start + 1;
+        }
+        Set<String> ids = new HashSet<>();
+        int end = start;
+        while (end < requests.size()) {
+            Request request = requests.get(end);
+            if (!(request instanceof CreateRequest)
+                    || !first.getResourcePath().equals(request.getResourcePath())) {
+                break;
+            }
+            String newResourceId = ((CreateRequest) request).getNewResourceId();
+            if (newResourceId != null && !ids.add(newResourceId)) {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Creates a run of requests determined by {@link #endOfCreateBatch(List, int)} with a single statement batch.
+     */
+    private List<BatchResult> createAll(List<? extends Request> requests, Connection connection)
+            throws SQLException, IOException {
+        String type = requests.get(0).getResourcePath();
+        Map<String, Map<String, Object>> objs = new LinkedHashMap<>();
+        for (Request request : requests) {
+            CreateRequest createRequest = (CreateRequest) request;
+            objs.put(newLocalId(createRequest), createRequest.getContent().asMap());
+        }
+
+        ((MappedTableHandler) getTableHandler(type)).createAll(type, objs, connection);
+
+        List<BatchResult> results = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            JsonValue obj = ((CreateRequest) request).getContent();
+            results.add(BatchResult.success(request, newResourceResponse(
+                    obj.get(FIELD_CONTENT_ID).asString(), obj.get(FIELD_CONTENT_REVISION).asString(), obj)));
+        }
+        return results;
+    }
+
+    /**
+     * Looks up (and if required adds) the object types of all creates on generic tables.
+     */
+    private void prepareTypeIds(List<? extends Request> requests, Connection connection)
+            throws SQLException, InternalServerErrorException {
+        Set<String> types = new HashSet<>();
+        for (Request request : requests) {
+            if (request instanceof CreateRequest && !request.getResourcePathObject().isEmpty()
+                    && types.add(request.getResourcePath())) {
+                TableHandler handler = getTableHandler(request.getResourcePath());
+                if (handler instanceof GenericTableHandler) {
+                    ((GenericTableHandler) handler).getTypeId(request.getResourcePath(), connection);
+                }
+            }
+        }
+    }
+
+    private ResourceResponse create(CreateRequest request, Connection connection)
+            throws SQLException, IOException, ResourceException {
+        if (request.getResourcePathObject().isEmpty()) {
+            throw new BadRequestException(
+                    "The repository requires clients to supply a type for the object to create.");
+        }
+        final String type = request.getResourcePath();
+        final String localId = newLocalId(request);
+        final JsonValue obj = request.getContent();
+
+        getRequiredTableHandler(type).create(type + "/" + localId, type, localId, obj.asMap(), connection);
+        return newResourceResponse(obj.get(FIELD_CONTENT_ID).asString(), obj.get(FIELD_CONTENT_REVISION).asString(), obj);
+    }
+
+    private ResourceResponse update(UpdateRequest request, Connection connection)
+            throws SQLException, IOException, ResourceException {
+        if (request.getResourcePathObject().size() < 2) {
+            throw new BadRequestException(
+                    "The repository requires clients to supply an identifier for the object to update.");
+        }
+        final String type = request.getResourcePathObject().parent().toString();
+        final String localId = request.getResourcePathObject().leaf();
+        final TableHandler handler = getRequiredTableHandler(type);
+
+        final JsonValue obj = request.getContent();
+        final String rev = request.getRevision() != null && !"".equals(request.getRevision())
+                ? request.getRevision()
+                : handler.read(request.getResourcePath(), type, localId, connection).getRevision();
+
+        handler.update(request.getResourcePath(), type, localId, rev, obj.asMap(), connection);
+        return newResourceResponse(obj.get(FIELD_CONTENT_ID).defaultTo(localId).asString(),
+                obj.get(FIELD_CONTENT_REVISION).asString(), obj);
+    }
+
+    private ResourceResponse delete(DeleteRequest request, Connection connection)
+            throws SQLException, IOException, ResourceException {
+        if (request.getResourcePathObject().size() < 2) {
+            throw new BadRequestException(
+                    "The repository requires clients to supply an identifier for the object to delete.");
+        }
+        if (request.getRevision() == null) {
+            throw new ConflictException(
+                    "Object passed into delete does not have revision it expects set.");
+        }
+        final String type = request.getResourcePathObject().parent().toString();
+        final String localId = request.getResourcePathObject().leaf();
+        final TableHandler handler = getRequiredTableHandler(type);
+
+        ResourceResponse result = handler.read(request.getResourcePath(), type, localId, connection);
+        handler.delete(request.getResourcePath(), type, localId, request.getRevision(), connection);
+        return result;
+    }
+
+    private String newLocalId(CreateRequest request) {
+        return (request.getNewResourceId() == null || request.getNewResourceId().isEmpty())
+                ? UUID.randomUUID().toString() // Generate ID server side.
+                : request.getNewResourceId();
+    }
+
+    private TableHandler getRequiredTableHandler(String type) throws ResourceException {
+        TableHandler handler = getTableHandler(type);
+        if (handler == null) {
+            throw newResourceException(ResourceException.INTERNAL_ERROR,
+                    "No handler configured for resource type " + type);
+        }
+        return handler;
+    }
+
+    /**
+     * Determines the table handler of the resource a batched request operates on.
+     *
+     * @return the table handler, or {@code null} if none is configured for the resource type
+     */
+    private TableHandler getBatchTableHandler(Request request) {
+        ResourcePath path = request.getResourcePathObject();
+        return getTableHandler(request instanceof CreateRequest || path.size() < 2
+                ? path.toString()
+                : path.parent().toString());
+    }
+
+    private boolean isRetryable(Request request, SQLException ex, Connection connection) {
+        TableHandler handler = getBatchTableHandler(request);
+        return handler != null && handler.isRetryable(ex, connection);
+    }
+
     @Override
     public Promise<ResourceResponse, ResourceException> handlePatch(Context context, PatchRequest request) {
         return new NotSupportedException("Patch operations are not supported").asPromise();
@@ -602,10 +931,7 @@ public class JDBCRepoService implements RequestHandler, RepoBootService, Reposit
             // Once cookie is processed Queries.query() can rely on the offset.
             request.setPagedResultsOffset(firstResultIndex);
 
-            List<ResourceResponse> results = query(request);
-            for (ResourceResponse result : results) {
-                handler.handleResource(result);
-            }
+            final int handledCount = query(request, handler);
 
             /*
              * Execute additional -count query if we are paging
@@ -652,10 +978,10 @@ public class JDBCRepoService implements RequestHandler, RepoBootService, Reposit
                         break;
                 }
 
-                if (results.size() < requestPageSize) {
+                if (handledCount < requestPageSize) {
                     nextCookie = null;
                 } else {
-                    final int remainingResults = resultCount - (firstResultIndex + results.size());
+                    final int remainingResults = resultCount - (firstResultIndex + handledCount);
                     if (remainingResults == 0) {
                         nextCookie = null;
                     } else {
@@ -681,6 +1007,84 @@ public class JDBCRepoService implements RequestHandler, RepoBootService, Reposit
 
     @Override
     public List<ResourceResponse> query(QueryRequest request) throws ResourceException {
+        final List<ResourceResponse> results = new ArrayList<>();
+        query(request, new QueryResourceHandler() {
+            @Override
+            public boolean handleResource(ResourceResponse resource) {
+                results.add(resource);
+                return true;
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Queries the repository in chunks of {@value #CONFIG_QUERY_FETCH_SIZE} results, handing each chunk to the
+     * handler once it has been read and its connection released.
+     * <p>
+     * The handler may make nested repo calls, e.g. to fetch relationships or from onRetrieve scripts, which need a
+     * connection of their own, while no more than a chunk of results is held in memory. The chunks are read as
+     * pages of the query in a stable order, so they may not reflect a single snapshot of the repository. Only query
+     * filters can be paged by the repository: query ids and expressions, or all queries if no fetch size is
+     * configured, are read at once.
+     *
+     * @param request the query request
+     * @param handler the handler receiving the results; returning false stops the query
+     * @return the number of results handed to the handler
+     * @throws ResourceException if the query failed
+     */
+    int query(QueryRequest request, QueryResourceHandler handler) throws ResourceException {
+        if (queryFetchSize <= 0 || request.getQueryFilter() == null) {
+            int count = 0;
+            for (ResourceResponse resource : queryChunk(request)) {
+                count++;
+                if (!handler.handleResource(resource)) {
+                    break;
+                }
+            }
+            return count;
+        }
+
+        final QueryRequest chunkRequest = Requests.copyOfQueryRequest(request);
+        if (chunkRequest.getSortKeys().isEmpty()) {
+            // without an order the chunks could skip or repeat results
+            chunkRequest.addSortKey(SortKey.ascendingOrder(FIELD_CONTENT_ID));
+        }
+        final boolean paged = request.getPageSize() > 0;
+        final int firstResultIndex = paged ? request.getPagedResultsOffset() : 0;
+        final int maxResults = paged ? request.getPageSize() : Integer.MAX_VALUE;
+
+        int count = 0;
+        while (count < maxResults) {
+            final int chunkSize = Math.min(queryFetchSize, maxResults - count);
+            chunkRequest.setPageSize(chunkSize);
+            chunkRequest.setPagedResultsOffset(firstResultIndex + count);
+            final List<ResourceResponse> chunk = queryChunk(chunkRequest);
+            for (ResourceResponse resource : chunk) {
+                count++;
+                if (!handler.handleResource(resource)) {
+                    return count;
+                }
+            }
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads the results of a query, or of a page of it, on a connection of its own which is released before
+     * returning.
+     * <p>
+     * If a {@value #CONFIG_QUERY_FETCH_SIZE} is configured the query runs in a read-only transaction, as some
+     * drivers (e.g. PostgreSQL) only use a cursor to fetch the rows in chunks when auto-commit is off.
+     *
+     * @param request the query request
+     * @return the results
+     * @throws ResourceException if the query failed
+     */
+    private List<ResourceResponse> queryChunk(QueryRequest request) throws ResourceException {
         String fullId = request.getResourcePath();
         String type = trimStartingSlash(fullId);
         logger.trace("Full id: {} Extracted type: {}", fullId, type);
@@ -693,7 +1097,9 @@ public class JDBCRepoService implements RequestHandler, RepoBootService, Reposit
         params.put(PAGED_RESULTS_OFFSET, request.getPagedResultsOffset());
         params.put(SORT_KEYS, request.getSortKeys());  
 
+        final List<ResourceResponse> results = new ArrayList<>();
         Connection connection = null;
+        final boolean useCursor = queryFetchSize > 0;
         try {
             TableHandler tableHandler = getTableHandler(type);
             if (tableHandler == null) {
@@ -701,18 +1107,16 @@ public class JDBCRepoService implements RequestHandler, RepoBootService, Reposit
                         "No handler configured for resource type " + type);
             }
             connection = getConnection();
-            connection.setAutoCommit(true); // Ensure we do not implicitly
-                                            // start transaction isolation
-
-            List<Map<String, Object>> docs = tableHandler.query(type, params, connection);
-            List<ResourceResponse> results = new ArrayList<>();
-            for (Map<String, Object> resultMap : docs) {
-                String id = (String) resultMap.get("_id");
-                String rev = (String) resultMap.get("_rev");
-                JsonValue value = new JsonValue(resultMap);
-                ResourceResponse resultResource = newResourceResponse(id, rev, value);
-                results.add(resultResource);
-            }
+            // Ensure we do not implicitly start transaction isolation, unless needed to fetch using a cursor
+            connection.setAutoCommit(!useCursor);
+
+            tableHandler.query(type, params, connection, queryFetchSize, new QueryResourceHandler() {
+                @Override
+                public boolean handleResource(ResourceResponse resource) {
+                    results.add(resource);
+                    return true;
+                }
+            });
             return results;
         } catch (SQLException ex) {
             if (logger.isDebugEnabled()) {
@@ -724,6 +1128,10 @@ public class JDBCRepoService implements RequestHandler, RepoBootService, Reposit
             logger.debug("ResourceException in query of {}", fullId, ex);
             throw ex;
         } finally {
+            if (useCursor && connection != null) {
+                // Nothing was written, just end the transaction holding the cursor
+                rollback(connection);
+            }
             CleanupHelper.loggedClose(connection);
         }
     }
@@ -733,6 +1141,8 @@ public class JDBCRepoService implements RequestHandler, RepoBootService, Reposit
         try {
             if (ACTION_COMMAND.equalsIgnoreCase(request.getAction())) {
                 return command(request).asPromise();
+            } else if (ACTION_BATCH.equalsIgnoreCase(request.getAction())) {
+                return batch(request).asPromise();
             } else {
                 throw new NotSupportedException("Action operations are not supported");
             }
@@ -743,6 +1153,50 @@ public class JDBCRepoService implements RequestHandler, RepoBootService, Reposit
         }
     }
 
+    /**
+     * Performs the batch of requests in the content of the action, relative to the action's resource path.
+     * <p>
+     * The content is of the form
+     * <pre>
+     * { "requests" : [
+     *     { "operation" : "create", "_id" : "optional-id", "content" : { ... } },
+     *     { "operation" : "update", "_id" : "id", "_rev" : "0", "content" : { ... } },
+     *     { "operation" : "delete", "_id" : "id", "_rev" : "0" } ] }
+     * </pre>
+     * and the response lists the {@link BatchResult#toJsonValue() results} in request order.
+     *
+     * @param request the batch action request
+     * @return the results of the batched requests
+     * @throws ResourceException on failure to perform the batch as a whole
+     */
+    private ActionResponse batch(ActionRequest request) throws ResourceException {
+        final ResourcePath resourcePath = request.getResourcePathObject();
+        final List<Request> requests = new ArrayList<>();
+        for (JsonValue item : request.getContent().get("requests").required().expect(List.class)) {
+            final String operation = item.get("operation").required().asString();
+            final String id = item.get(FIELD_CONTENT_ID).asString();
+            final String rev = item.get(FIELD_CONTENT_REVISION).asString();
+            if ("create".equalsIgnoreCase(operation)) {
+                requests.add(Requests.newCreateRequest(resourcePath, id, item.get("content").required().copy()));
+            } else if ("update".equalsIgnoreCase(operation)) {
+                item.get(FIELD_CONTENT_ID).required();
+                requests.add(Requests.newUpdateRequest(resourcePath.child(id),
+                        item.get("content").required().copy()).setRevision(rev));
+            } else if ("delete".equalsIgnoreCase(operation)) {
+                item.get(FIELD_CONTENT_ID).required();
+                requests.add(Requests.newDeleteRequest(resourcePath.child(id)).setRevision(rev));
+            } else {
+                throw new BadRequestException("Unsupported batch operation " + operation);
+            }
+        }
+
+        final List<Object> results = new ArrayList<>(requests.size());
+        for (BatchResult result : batch(requests)) {
+            results.add(result.toJsonValue().getObject());
+        }
+        return newActionResponse(new JsonValue(results));
+    }
+
     /**
      * Performs the repo command defined by the {@code request).
      *
@@ -886,12 +1340,15 @@ public class JDBCRepoService implements RequestHandler, RepoBootService, Reposit
             JsonValue genericCommands = config.get("commands").get("genericTables");
 
             tableHandlers = new ConcurrentHashMap<>();
+            // The (re-)configured repository may point to a different database
+            ObjectTypeIdCache.invalidateAll();
 
             databaseType = config.get(CONFIG_DB_TYPE)
                     .defaultTo(DatabaseType.ANSI_SQL99.name())
                     .as(enumConstant(DatabaseType.class));
             maxTxRetry = config.get(CONFIG_MAX_TX_RETRY).defaultTo(5).asInteger();
             int maxBatchSize = config.get(CONFIG_MAX_BATCH_SIZE).defaultTo(100).asInteger();
+            queryFetchSize = config.get(CONFIG_QUERY_FETCH_SIZE).defaultTo(0).asInteger();
 
             JsonValue defaultMapping = config.get("resourceMapping").get("default");
             if (!defaultMapping.isNull()) {
@@ -94,7 +94,6 @@ public class MSSQLTableHandler extends GenericTableHandler {
         obj.put(Constants.OBJECT_REV, newRev); // Save the rev in the object, and return the changed rev from the create.
 
         PreparedStatement updateStatement = null;
-        PreparedStatement deletePropStatement = null;
         try {
             JsonValue result = new JsonValue(readForUpdate(fullId, type, localId, connection));
             String existingRev = result.get(Constants.RAW_OBJECT_REV).asString();
@@ -110,7 +109,6 @@ public class MSSQLTableHandler extends GenericTableHandler {
                         + "the object has changed since retrieval.");
             }
             updateStatement = getPreparedStatement(connection, QueryDefinition.UPDATEQUERYSTR);
-            deletePropStatement = getPreparedStatement(connection, QueryDefinition.PROPDELETEQUERYSTR);
             // Support changing object identifier
             String newLocalId = (String) obj.get(Constants.OBJECT_ID);
             if (newLocalId != null && !localId.equals(newLocalId)) {
@@ -119,7 +117,7 @@ public class MSSQLTableHandler extends GenericTableHandler {
                 newLocalId = localId; // If it hasn't changed, use the existing ID
                 obj.put(Constants.OBJECT_ID, newLocalId); // Ensure the ID is saved in the object
             }
-            String objString = mapper.writeValueAsString(obj);
+            String objString = ObjectMappers.WRITER.writeValueAsString(obj);
 
             logger.trace("Populating prepared statement {} for {} {} {} {} {} {}",
                     updateStatement, fullId, newLocalId, newRev, objString, dbId, existingRev);
@@ -138,17 +136,9 @@ public class MSSQLTableHandler extends GenericTableHandler {
             }
 
             JsonValue jv = new JsonValue(obj);
-            // TODO: only update what changed?
-            logger.trace("Populating prepared statement {} for {} {} {}", deletePropStatement, fullId, type, localId);
-            deletePropStatement.setString(1, type);
-            deletePropStatement.setString(2, localId);
-            logger.debug("Update properties del statement: {}", deletePropStatement);
-            int deleteCount = deletePropStatement.executeUpdate();
-            logger.trace("Deleted child rows: {} for: {}", deleteCount, fullId);
-            writeValueProperties(fullId, dbId, localId, jv, connection);
+            updateValueProperties(fullId, type, localId, dbId, result, jv, connection);
         } finally {
             CleanupHelper.loggedClose(updateStatement);
-            CleanupHelper.loggedClose(deletePropStatement);
         }
     }
 
@@ -27,6 +27,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +41,7 @@ import org.forgerock.json.resource.BadRequestException;
 import org.forgerock.json.resource.InternalServerErrorException;
 import org.forgerock.json.resource.NotFoundException;
 import org.forgerock.json.resource.PreconditionFailedException;
+import org.forgerock.json.resource.QueryResourceHandler;
 import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.json.resource.ResourceException;
 import org.forgerock.json.resource.SortKey;
@@ -57,8 +59,6 @@ import org.forgerock.util.query.QueryFilterVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 /**
  * Handling of tables in a generic (not object specific) layout
  */
@@ -79,7 +79,6 @@ public class MappedTableHandler implements TableHandler {
     // in the order they need populating in create and update queries
     List<JsonPointer> tokenReplacementPropPointers = new ArrayList<>();
 
-    ObjectMapper mapper = new ObjectMapper();
     final TableQueries queries;
 
     String readQueryStr;
@@ -264,6 +263,34 @@ public class MappedTableHandler implements TableHandler {
         }
     }
 
+    /**
+     * Creates several objects of the same type with a single JDBC statement batch.
+     *
+     * @param type the type of the objects to create
+     * @param objs the contents of the objects to create, keyed by their local identifier
+     * @param connection the DB connection
+     * @throws SQLException if the batch failed
+     * @throws IOException if the conversion of an object failed
+     */
+    public void createAll(String type, Map<String, Map<String, Object>> objs, Connection connection)
+            throws SQLException, IOException {
+        PreparedStatement createStatement =
+                queries.getPreparedStatement(connection, createQueryStr);
+        try {
+            for (Map.Entry<String, Map<String, Object>> entry : objs.entrySet()) {
+                create(type + "/" + entry.getKey(), type, entry.getKey(), entry.getValue(), connection,
+                        createStatement, true);
+            }
+            logger.debug("Executing batch of {} creates: {}", objs.size(), createStatement);
+            int[] numUpdates = createStatement.executeBatch();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Batch create of {} updated: {}", type, Arrays.asList(numUpdates));
+            }
+        } finally {
+            CleanupHelper.loggedClose(createStatement);
+        }
+    }
+
     /**
      * Adds the option to batch more than one create statement
      *
@@ -335,7 +362,7 @@ public class MappedTableHandler implements TableHandler {
                             "Value for col {} from {} is getting Stringified from type {} to store in a STRING column as value: {}",
                             colPos, propPointer, rawValue.getClass(), rawValue);
                 }
-                propValue = mapper.writeValueAsString(rawValue.getObject());
+                propValue = ObjectMappers.WRITER.writeValueAsString(rawValue.getObject());
                 unmappedObjFields.remove(propPointer);
             }
 
@@ -474,6 +501,12 @@ public class MappedTableHandler implements TableHandler {
         return queries.query(type, params, connection);
     }
 
+    @Override
+    public int query(String type, Map<String, Object> params, Connection connection, int fetchSize,
+            QueryResourceHandler handler) throws ResourceException {
+        return queries.query(type, params, connection, fetchSize, handler);
+    }
+
     @Override
     public Integer command(String type, Map<String, Object> params, Connection connection) throws SQLException, ResourceException {
         return queries.command(type, params, connection);
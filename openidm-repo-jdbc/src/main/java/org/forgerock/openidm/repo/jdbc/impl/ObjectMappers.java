@@ -0,0 +1,98 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.repo.jdbc.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Jackson readers and writers shared by the JDBC repository.
+ * <p>
+ * {@link ObjectReader} and {@link ObjectWriter} instances are immutable and thread-safe, and resolve their
+ * (de)serializers once rather than on every call, so a single instance per target type serves all handlers.
+ */
+final class ObjectMappers {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Reads JSON objects, preserving the order of their fields */
+    static final ObjectReader OBJECT_READER = MAPPER.readerFor(new TypeReference<LinkedHashMap<String, Object>>() {});
+
+    /** Reads JSON arrays */
+    static final ObjectReader LIST_READER = MAPPER.readerFor(List.class);
+
+    /** Writes any JSON value */
+    static final ObjectWriter WRITER = MAPPER.writer();
+
+    private ObjectMappers() {
+    }
+
+    /**
+     * Parses a JSON object stored in a character column, reading it straight from the driver's character stream
+     * rather than from an intermediate String holding the complete column.
+     *
+     * @param rs the result set positioned at the row to read
+     * @param columnName the name of the column holding the JSON object
+     * @return the parsed object
+     * @throws SQLException if the column could not be read
+     * @throws IOException if the column is empty or could not be parsed
+     */
+    static Map<String, Object> readObject(ResultSet rs, String columnName) throws SQLException, IOException {
+        Reader reader = rs.getCharacterStream(columnName);
+        if (reader == null) {
+            throw new IOException("No JSON object stored in column " + columnName);
+        }
+        try {
+            return OBJECT_READER.readValue(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parses a JSON object from a raw column value as returned by {@link ResultSet#getObject(int)}.
+     *
+     * @param value the column value, a String or a driver specific character type (e.g. CLOB)
+     * @return the parsed object, or {@code null} if the value is {@code null}
+     * @throws SQLException if reading a CLOB failed
+     * @throws IOException if the value could not be parsed
+     */
+    static Map<String, Object> readObject(Object value) throws SQLException, IOException {
+        if (value == null) {
+            return null;
+        } else if (value instanceof Clob) {
+            Reader reader = ((Clob) value).getCharacterStream();
+            try {
+                return OBJECT_READER.readValue(reader);
+            } finally {
+                reader.close();
+            }
+        } else {
+            return OBJECT_READER.readValue(value.toString());
+        }
+    }
+}
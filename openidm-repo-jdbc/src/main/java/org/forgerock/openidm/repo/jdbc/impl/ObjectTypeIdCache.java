@@ -0,0 +1,94 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.repo.jdbc.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide cache of the ids assigned to object types in the {@code objecttypes} table.
+ * <p>
+ * Object type ids are never reassigned once committed, so all generic table handlers using the same
+ * {@code objecttypes} table share one cache. Only ids that have been read back from the database are cached,
+ * concurrent population of the same type therefore always settles on the same value.
+ * The cache is cleared whenever the repository is (re-)initialized.
+ */
+final class ObjectTypeIdCache {
+    private static final Logger logger = LoggerFactory.getLogger(ObjectTypeIdCache.class);
+
+    /** Caches keyed by the (schema qualified) objecttypes table name */
+    private static final ConcurrentMap<String, ObjectTypeIdCache> caches = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Long> typeIds = new ConcurrentHashMap<>();
+
+    private ObjectTypeIdCache() {
+    }
+
+    /**
+     * Gets the cache shared by all handlers using the given objecttypes table.
+     *
+     * @param typeTable the (schema qualified) objecttypes table name
+     * @return the shared cache
+     */
+    static ObjectTypeIdCache forTable(String typeTable) {
+        ObjectTypeIdCache cache = caches.get(typeTable);
+        if (cache == null) {
+            ObjectTypeIdCache created = new ObjectTypeIdCache();
+            cache = caches.putIfAbsent(typeTable, created);
+            if (cache == null) {
+                cache = created;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Drops all cached type ids, e.g. because the repository got reconfigured and may point to another database.
+     */
+    static void invalidateAll() {
+        for (ObjectTypeIdCache cache : caches.values()) {
+            cache.typeIds.clear();
+        }
+        logger.debug("Cleared objecttypes id caches");
+    }
+
+    /**
+     * @param type the object type URI
+     * @return the cached id for the type, or -1 if not cached
+     */
+    long get(String type) {
+        Long typeId = typeIds.get(type);
+        return typeId == null ? -1 : typeId;
+    }
+
+    /**
+     * Caches the committed id of a type.
+     *
+     * @param type the object type URI
+     * @param typeId the id as read from the objecttypes table
+     */
+    void put(String type, long typeId) {
+        Long existing = typeIds.putIfAbsent(type, typeId);
+        if (existing != null && existing != typeId) {
+            // Should not happen, unless the table got modified outside of OpenIDM; trust the latest read
+            logger.warn("Object type {} changed its id from {} to {}", type, existing, typeId);
+            typeIds.put(type, typeId);
+        }
+    }
+}
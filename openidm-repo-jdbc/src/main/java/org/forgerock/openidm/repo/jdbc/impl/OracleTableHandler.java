@@ -61,10 +61,14 @@ public class OracleTableHandler extends GenericTableHandler {
     @Override
     public void create(String fullId, String type, String localId, Map<String, Object> obj, Connection connection)
             throws SQLException, IOException, InternalServerErrorException {
-        connection.setAutoCommit(true);
-        long typeId = getTypeId(type, connection);
+        long typeId = typeIdCache.get(type);
+        if (typeId < 0) {
+            // Only leave the current transaction if the type may need to be created
+            connection.setAutoCommit(true);
+            typeId = getTypeId(type, connection);
 
-        connection.setAutoCommit(false);
+            connection.setAutoCommit(false);
+        }
 
         PreparedStatement createStatement = null;
         try {
@@ -77,7 +81,7 @@ public class OracleTableHandler extends GenericTableHandler {
             String rev = "0";
             obj.put("_id", localId); // Save the id in the object
             obj.put("_rev", rev); // Save the rev in the object, and return the changed rev from the create.
-            String objString = mapper.writeValueAsString(obj);
+            String objString = ObjectMappers.WRITER.writeValueAsString(obj);
 
             logger.trace("Populating statement {} with params {}, {}, {}, {}",
                     createStatement, typeId, localId, rev, objString);
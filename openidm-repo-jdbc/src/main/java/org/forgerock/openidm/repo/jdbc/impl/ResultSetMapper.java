@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.forgerock.json.resource.InternalServerErrorException;
+import org.forgerock.json.resource.QueryResourceHandler;
 
 /**
  * Handles the conversion of ResultSets into Object set results
@@ -32,6 +33,16 @@ public interface ResultSetMapper {
     List<Map<String, Object>> mapToObject(ResultSet rs, String queryId, String type, Map<String, Object> params)
             throws SQLException, IOException, InternalServerErrorException;
 
+    /**
+     * Maps the ResultSet row by row, handing each mapped row to the handler before the next row is read.
+     * <p>
+     * Mapping stops early if the handler does not want any more results.
+     *
+     * @return the number of rows handed to the handler
+     */
+    int mapToObject(ResultSet rs, String queryId, String type, Map<String, Object> params,
+            QueryResourceHandler handler) throws SQLException, IOException, InternalServerErrorException;
+
     List<Map<String, Object>> mapToRawObject(ResultSet rs) throws SQLException,
             IOException, InternalServerErrorException;
 }
@@ -41,7 +41,9 @@ import org.forgerock.json.JsonPointer;
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.resource.BadRequestException;
 import org.forgerock.json.resource.InternalServerErrorException;
+import org.forgerock.json.resource.QueryResourceHandler;
 import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.openidm.core.ServerConstants;
 import org.forgerock.openidm.repo.jdbc.TableHandler;
 import org.forgerock.openidm.repo.jdbc.impl.CleanupHelper;
@@ -284,7 +286,98 @@ public class TableQueries {
     public List<Map<String, Object>> query(final String type, Map<String, Object> params, Connection con)
             throws ResourceException {
 
-        List<Map<String, Object>> result = null;
+        final List<Map<String, Object>> result = new ArrayList<>();
+        query(type, params, con, 0, new QueryResourceHandler() {
+            @Override
+            public boolean handleResource(ResourceResponse resource) {
+                result.add(resource.getContent().asMap());
+                return true;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Execute a query the same way as {@link #query(String, Map, Connection)}, but hand each result to the
+     * handler as soon as it is read instead of collecting them.
+     * <p>
+     * Together with a fetch size, this keeps the memory used by the query flat regardless of the size of its
+     * result. Note that some drivers only honour the fetch size under specific conditions, e.g. PostgreSQL
+     * requires auto-commit to be disabled and MySQL requires {@code useCursorFetch=true} on the connection URL.
+     *
+     * @param type
+     *            the resource component name targeted by the URI
+     * @param params
+     *            the parameters which include the query id, or the query
+     *            expression, as well as the token key/value pairs to replace in
+     *            the query
+     * @param con
+     *            a handle to a database connection for exclusive use
+     *            by the query method whilst it is executing.
+     * @param fetchSize
+     *            the number of rows to fetch from the database at once, or 0 to use the driver default
+     * @param handler
+     *            the handler to receive the results
+     * @return the number of results handed to the handler
+     * @throws BadRequestException
+     *             if the passed request parameters are invalid, e.g. missing
+     *             query id or query expression or tokens.
+     * @throws InternalServerErrorException
+     *             if the preparing or executing the query fails because of
+     *             configuration or DB issues
+     */
+    public int query(final String type, Map<String, Object> params, Connection con, int fetchSize,
+            QueryResourceHandler handler) throws ResourceException {
+
+        final PreparedStatement foundQuery = prepareQuery(type, params, con);
+        final String queryId = (String) params.get(QUERY_ID);
+
+        Name eventName = getEventName(queryId);
+        EventEntry measure = Publisher.start(eventName, foundQuery, null);
+        ResultSet rs = null;
+        try {
+            if (fetchSize > 0) {
+                foundQuery.setFetchSize(fetchSize);
+            }
+            rs = foundQuery.executeQuery();
+            int count = resultMapper.mapToObject(rs, queryId, type, params, handler);
+            measure.setResult(count);
+            return count;
+        } catch (SQLException ex) {
+            logger.debug("DB reported failure executing query " +
+                            "{} with params: {} error code: {} sqlstate: {} message: {}",
+                    foundQuery.toString(), params, ex.getErrorCode(), ex.getSQLState(), ex.getMessage(), ex);
+            throw new InternalServerErrorException("DB reported failure executing query.");
+        } catch (IOException ex) {
+            throw new InternalServerErrorException("Failed to convert result objects for query "
+                    + foundQuery.toString() + " with params: " + params + " message: "
+                    + ex.getMessage(), ex);
+        } finally {
+            CleanupHelper.loggedClose(rs);
+            CleanupHelper.loggedClose(foundQuery);
+            measure.end();
+        }
+    }
+
+    /**
+     * Resolves the query requested by the params to a populated statement, ready to be executed.
+     *
+     * @param type
+     *            the resource component name targeted by the URI
+     * @param params
+     *            the parameters which include the query id, or the query
+     *            expression, as well as the token key/value pairs to replace in
+     *            the query
+     * @param con
+     *            the database connection to prepare the statement for
+     * @return the statement for the caller to execute and close
+     * @throws BadRequestException
+     *             if the passed request parameters are invalid
+     * @throws InternalServerErrorException
+     *             if the DB failed to prepare the statement
+     */
+    private PreparedStatement prepareQuery(final String type, Map<String, Object> params, Connection con)
+            throws ResourceException {
         params.put(ServerConstants.RESOURCE_NAME, type);
 
         // If paged results are requested then decode the cookie in order to determine
@@ -338,29 +431,7 @@ public class TableQueries {
                     queryDescription, params, ex.getErrorCode(), ex.getSQLState(), ex.getMessage(), ex);
             throw new InternalServerErrorException("DB reported failure preparing query.");
         }
-
-        Name eventName = getEventName(queryId);
-        EventEntry measure = Publisher.start(eventName, foundQuery, null);
-        ResultSet rs = null;
-        try {
-            rs = foundQuery.executeQuery();
-            result = resultMapper.mapToObject(rs, queryId, type, params);
-            measure.setResult(result);
-        } catch (SQLException ex) {
-            logger.debug("DB reported failure executing query " +
-                            "{} with params: {} error code: {} sqlstate: {} message: {}",
-                    foundQuery.toString(), params, ex.getErrorCode(), ex.getSQLState(), ex.getMessage(), ex);
-            throw new InternalServerErrorException("DB reported failure executing query.");
-        } catch (IOException ex) {
-            throw new InternalServerErrorException("Failed to convert result objects for query "
-                    + foundQuery.toString() + " with params: " + params + " message: "
-                    + ex.getMessage(), ex);
-        } finally {
-            CleanupHelper.loggedClose(rs);
-            CleanupHelper.loggedClose(foundQuery);
-            measure.end();
-        }
-        return result;
+        return foundQuery;
     }
 
     public Integer command(final String type, Map<String, Object> params, Connection con)
@@ -0,0 +1,110 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.repo.jdbc.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.ResourceResponse;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the row by row mapping of the {@link GenericResultSetMapper}.
+ */
+public class GenericResultSetMapperTest {
+
+    private ResultSet fullObjectResultSet() throws Exception {
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnName(1)).thenReturn("fullobject");
+
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getMetaData()).thenReturn(metaData);
+        when(rs.next()).thenReturn(true, true, true, false);
+        when(rs.getCharacterStream("fullobject")).thenReturn(
+                new StringReader("{\"_id\":\"1\",\"_rev\":\"0\",\"name\":\"a\"}"),
+                new StringReader("{\"_id\":\"2\",\"_rev\":\"3\",\"name\":\"b\"}"),
+                new StringReader("{\"_id\":\"3\",\"_rev\":\"0\",\"name\":\"c\"}"));
+        return rs;
+    }
+
+    @Test
+    public void testMapToObjectStreamsRows() throws Exception {
+        // given
+        final List<ResourceResponse> handled = new ArrayList<>();
+        QueryResourceHandler handler = new QueryResourceHandler() {
+            @Override
+            public boolean handleResource(ResourceResponse resource) {
+                handled.add(resource);
+                return true;
+            }
+        };
+
+        // when
+        int count = new GenericResultSetMapper().mapToObject(fullObjectResultSet(), "query-all", "managed/user",
+                Collections.<String, Object>emptyMap(), handler);
+
+        // then
+        assertThat(count).isEqualTo(3);
+        assertThat(handled).hasSize(3);
+        assertThat(handled.get(1).getId()).isEqualTo("2");
+        assertThat(handled.get(1).getRevision()).isEqualTo("3");
+        assertThat(handled.get(1).getContent().get("name").asString()).isEqualTo("b");
+    }
+
+    @Test
+    public void testMapToObjectStopsWhenHandlerIsDone() throws Exception {
+        // given
+        ResultSet rs = fullObjectResultSet();
+        QueryResourceHandler handler = new QueryResourceHandler() {
+            @Override
+            public boolean handleResource(ResourceResponse resource) {
+                return !"2".equals(resource.getId());
+            }
+        };
+
+        // when
+        int count = new GenericResultSetMapper().mapToObject(rs, "query-all", "managed/user",
+                Collections.<String, Object>emptyMap(), handler);
+
+        // then
+        assertThat(count).isEqualTo(2);
+        verify(rs, times(2)).next();
+    }
+
+    @Test
+    public void testMapToObjectList() throws Exception {
+        // when
+        List<Map<String, Object>> result = new GenericResultSetMapper().mapToObject(fullObjectResultSet(),
+                "query-all", "managed/user", Collections.<String, Object>emptyMap());
+
+        // then
+        assertThat(result).hasSize(3);
+        assertThat(result.get(2).get("name")).isEqualTo("c");
+    }
+}
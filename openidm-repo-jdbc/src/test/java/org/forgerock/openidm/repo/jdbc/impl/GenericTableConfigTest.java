@@ -74,6 +74,24 @@ public class GenericTableConfigTest {
 
     }
 
+    @Test
+    public void testIncrementalPropertyUpdates() throws Exception {
+        String defaultCfgStr =
+            "    {" +
+            "        'mainTable' : 'managedobjects'," +
+            "        'propertiesTable' : 'managedobjectproperties'" +
+            "    }";
+        Assert.assertFalse(GenericTableConfig.parse(parseJson(defaultCfgStr)).incrementalPropertyUpdates);
+
+        String cfgStr =
+            "    {" +
+            "        'mainTable' : 'managedobjects'," +
+            "        'propertiesTable' : 'managedobjectproperties'," +
+            "        'incrementalPropertyUpdates' : true" +
+            "    }";
+        Assert.assertTrue(GenericTableConfig.parse(parseJson(cfgStr)).incrementalPropertyUpdates);
+    }
+
     private JsonValue parseJson(String json) throws IOException {
         ObjectMapper mapper = new ObjectMapper();
         mapper.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
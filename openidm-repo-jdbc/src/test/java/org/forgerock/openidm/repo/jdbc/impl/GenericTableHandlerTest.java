@@ -0,0 +1,246 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.repo.jdbc.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.forgerock.json.JsonValue;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the properties table written by the {@link GenericTableHandler} on an in-memory H2 database in MySQL mode,
+ * in particular the incremental update of the properties of an updated object.
+ */
+public class GenericTableHandlerTest {
+
+    private static final String TYPE = "managed/user";
+
+    private static final String[] SCHEMA = {
+        "CREATE SCHEMA IF NOT EXISTS openidm",
+        "CREATE TABLE openidm.objecttypes ("
+                + "id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY, "
+                + "objecttype VARCHAR(255) NULL, "
+                + "UNIQUE (objecttype))",
+        "CREATE TABLE openidm.genericobjects ("
+                + "id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY, "
+                + "objecttypes_id BIGINT NOT NULL, "
+                + "objectid VARCHAR(255) NOT NULL, "
+                + "rev VARCHAR(38) NOT NULL, "
+                + "fullobject CLOB NULL, "
+                + "UNIQUE (objecttypes_id, objectid), "
+                + "FOREIGN KEY (objecttypes_id) REFERENCES openidm.objecttypes (id) ON DELETE CASCADE)",
+        "CREATE TABLE openidm.genericobjectproperties ("
+                + "genericobjects_id BIGINT NOT NULL, "
+                + "propkey VARCHAR(255) NOT NULL, "
+                + "proptype VARCHAR(32) NULL, "
+                + "propvalue VARCHAR(2000) NULL, "
+                + "FOREIGN KEY (genericobjects_id) REFERENCES openidm.genericobjects (id) ON DELETE CASCADE)"
+    };
+
+    private static final String LONG_VALUE = repeat('x', GenericTableHandler.DEFAULT_SEARCHABLE_LENGTH + 100);
+
+    private Connection connection;
+
+    @BeforeMethod
+    public void setUp() throws SQLException {
+        // the type ids of a previous test are gone with its database
+        ObjectTypeIdCache.invalidateAll();
+        connection = DriverManager.getConnection("jdbc:h2:mem:generictablehandlertest;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+        }
+        connection.setAutoCommit(false);
+    }
+
+    @AfterMethod
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    @DataProvider
+    public Object[][] maxBatchSizes() {
+        return new Object[][] { { 1 }, { 100 } };
+    }
+
+    private static GenericTableHandler newTableHandler(boolean incrementalPropertyUpdates, int maxBatchSize) {
+        JsonValue tableConfig = json(object(
+                field("mainTable", "genericobjects"),
+                field("propertiesTable", "genericobjectproperties"),
+                field("searchableDefault", Boolean.TRUE),
+                field("incrementalPropertyUpdates", incrementalPropertyUpdates)));
+        return new GenericTableHandler(tableConfig, "openidm", json(object()), json(object()), maxBatchSize, null);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static JsonValue user() {
+        return json(object(
+                field("userName", "bjensen"),
+                field("mail", "bjensen@example.com"),
+                field("description", "To be removed"),
+                field("active", Boolean.TRUE),
+                field("loginCount", 1),
+                field("roles", array("openidm-authorized", "openidm-admin")),
+                field("notes", LONG_VALUE),
+                field("address", object(field("city", "Grenoble"), field("country", "France")))));
+    }
+
+    private static JsonValue updatedUser() {
+        return json(object(
+                field("userName", "bjensen"),
+                field("mail", "babs@example.com"),
+                field("active", "false"),
+                field("loginCount", 2L),
+                field("roles", array("openidm-authorized")),
+                // the same searchable prefix, the change is beyond it
+                field("notes", LONG_VALUE + "y"),
+                field("address", object(field("city", "Bristol"), field("postalCode", "BS1"))),
+                field("telephoneNumber", "555-1234")));
+    }
+
+    /**
+     * @return the rows of the properties table for an object, by propkey as type and value
+     */
+    private Map<String, String> properties(String localId) throws SQLException {
+        Map<String, String> properties = new TreeMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT prop.propkey, prop.proptype, prop.propvalue FROM openidm.genericobjectproperties prop "
+                        + "INNER JOIN openidm.genericobjects obj ON prop.genericobjects_id = obj.id "
+                        + "WHERE obj.objectid = ?")) {
+            statement.setString(1, localId);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    assertThat(properties.put(rs.getString(1), rs.getString(2) + ":" + rs.getString(3)))
+                            .as("duplicate row for " + rs.getString(1))
+                            .isNull();
+                }
+            }
+        }
+        return properties;
+    }
+
+    private void create(GenericTableHandler handler, String localId, JsonValue object) throws Exception {
+        handler.create(TYPE + "/" + localId, TYPE, localId, object.asMap(), connection);
+        connection.commit();
+    }
+
+    private void update(GenericTableHandler handler, String localId, String rev, JsonValue object) throws Exception {
+        handler.update(TYPE + "/" + localId, TYPE, localId, rev, object.asMap(), connection);
+        connection.commit();
+    }
+
+    @Test(dataProvider = "maxBatchSizes")
+    public void testIncrementalUpdate(int maxBatchSize) throws Exception {
+        GenericTableHandler handler = newTableHandler(true, maxBatchSize);
+        create(handler, "1", user());
+        assertThat(properties("1")).contains(
+                entry("/description", "java.lang.String:To be removed"),
+                entry("/roles/1", "java.lang.String:openidm-admin"),
+                entry("/notes", "java.lang.String:" + LONG_VALUE.substring(0,
+                        GenericTableHandler.DEFAULT_SEARCHABLE_LENGTH)));
+
+        update(handler, "1", "0", updatedUser());
+
+        Map<String, String> properties = properties("1");
+        // deleted
+        assertThat(properties).doesNotContainKeys("/description", "/roles/1", "/address/country");
+        // inserted
+        assertThat(properties).contains(
+                entry("/telephoneNumber", "java.lang.String:555-1234"),
+                entry("/address/postalCode", "java.lang.String:BS1"));
+        // changed value
+        assertThat(properties).contains(
+                entry("/mail", "java.lang.String:babs@example.com"),
+                entry("/address/city", "java.lang.String:Bristol"),
+                entry("/_rev", "java.lang.String:1"));
+        // changed type
+        assertThat(properties).contains(
+                entry("/active", "java.lang.String:false"),
+                entry("/loginCount", "java.lang.Long:2"));
+        // unchanged, including the value whose change is beyond the searchable length
+        assertThat(properties).contains(
+                entry("/userName", "java.lang.String:bjensen"),
+                entry("/roles/0", "java.lang.String:openidm-authorized"),
+                entry("/notes", "java.lang.String:" + LONG_VALUE.substring(0,
+                        GenericTableHandler.DEFAULT_SEARCHABLE_LENGTH)));
+    }
+
+    @Test(dataProvider = "maxBatchSizes")
+    public void testIncrementalUpdateWritesSamePropertiesAsFullUpdate(int maxBatchSize) throws Exception {
+        GenericTableHandler incremental = newTableHandler(true, maxBatchSize);
+        GenericTableHandler full = newTableHandler(false, maxBatchSize);
+        create(full, "1", user());
+        create(incremental, "2", user());
+
+        update(incremental, "2", "0", updatedUser());
+        update(full, "1", "0", updatedUser());
+
+        Map<String, String> expected = properties("1");
+        Map<String, String> actual = properties("2");
+        expected.remove("/_id");
+        actual.remove("/_id");
+        assertThat(actual).isEqualTo(expected);
+
+        // and back, removing the properties inserted by the first update
+        update(incremental, "2", "1", user());
+        update(full, "1", "1", user());
+
+        expected = properties("1");
+        actual = properties("2");
+        expected.remove("/_id");
+        actual.remove("/_id");
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    public void testIncrementalUpdateWithoutChanges() throws Exception {
+        GenericTableHandler handler = newTableHandler(true, 1);
+        create(handler, "1", user());
+        Map<String, String> created = properties("1");
+
+        update(handler, "1", "0", user());
+
+        created.put("/_rev", "java.lang.String:1");
+        assertThat(properties("1")).isEqualTo(created);
+    }
+}
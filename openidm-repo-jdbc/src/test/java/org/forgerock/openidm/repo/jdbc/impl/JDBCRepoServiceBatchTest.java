@@ -0,0 +1,167 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.repo.jdbc.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.forgerock.json.resource.InternalServerErrorException;
+import org.forgerock.json.resource.PreconditionFailedException;
+import org.forgerock.json.resource.Request;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.openidm.repo.BatchResult;
+import org.forgerock.openidm.repo.jdbc.ErrorType;
+import org.forgerock.openidm.repo.jdbc.TableHandler;
+import org.mockito.InOrder;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests performing batches of requests in a single transaction of the {@link JDBCRepoService}.
+ */
+public class JDBCRepoServiceBatchTest {
+
+    private Connection connection;
+    private TableHandler handler;
+    private JDBCRepoService repo;
+    private int connections;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        connection = mock(Connection.class);
+        when(connection.getTransactionIsolation()).thenReturn(Connection.TRANSACTION_REPEATABLE_READ);
+        when(connection.setSavepoint()).thenReturn(mock(Savepoint.class), mock(Savepoint.class),
+                mock(Savepoint.class), mock(Savepoint.class));
+        handler = mock(TableHandler.class);
+        when(handler.read(anyString(), anyString(), anyString(), any(Connection.class)))
+                .thenReturn(newResourceResponse("2", "0", json(object())));
+        connections = 0;
+        repo = new JDBCRepoService() {
+            @Override
+            Connection getConnection() {
+                connections++;
+                return connection;
+            }
+        };
+        // only the links are mapped, there is no handler for config
+        repo.tableHandlers = new ConcurrentHashMap<>();
+        repo.tableHandlers.put("link", handler);
+    }
+
+    private List<Request> requests() {
+        return Arrays.<Request>asList(
+                Requests.newCreateRequest("link", "1", json(object(field("linkType", "test")))),
+                Requests.newUpdateRequest("link/2", json(object(field("linkType", "test")))).setRevision("0"),
+                Requests.newDeleteRequest("link/2").setRevision("1"));
+    }
+
+    @Test
+    public void testPerformsBatchInOneTransaction() throws Exception {
+        List<BatchResult> results = repo.batch(requests());
+
+        assertThat(results).hasSize(3);
+        for (BatchResult result : results) {
+            assertThat(result.isSuccess()).isTrue();
+        }
+        InOrder transaction = inOrder(connection, handler);
+        transaction.verify(connection).setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        transaction.verify(connection).setAutoCommit(false);
+        transaction.verify(handler).create(eq("link/1"), eq("link"), eq("1"), anyMapOf(String.class, Object.class),
+                eq(connection));
+        transaction.verify(handler).update(eq("link/2"), eq("link"), eq("2"), eq("0"),
+                anyMapOf(String.class, Object.class), eq(connection));
+        transaction.verify(handler).delete("link/2", "link", "2", "1", connection);
+        transaction.verify(connection).commit();
+        transaction.verify(connection).setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        transaction.verify(connection).close();
+        verify(connection, never()).rollback();
+    }
+
+    @Test
+    public void testRollsBackFailedRequestToItsSavepoint() throws Exception {
+        SQLException duplicate = new SQLException("Duplicate entry", "23000", 1062);
+        doThrow(duplicate).when(handler).create(eq("link/1"), eq("link"), eq("1"),
+                anyMapOf(String.class, Object.class), eq(connection));
+        when(handler.isErrorType(duplicate, ErrorType.DUPLICATE_KEY)).thenReturn(true);
+
+        List<BatchResult> results = repo.batch(requests());
+
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0).isSuccess()).isFalse();
+        assertThat(results.get(0).getException()).isInstanceOf(PreconditionFailedException.class);
+        assertThat(results.get(1).isSuccess()).isTrue();
+        assertThat(results.get(2).isSuccess()).isTrue();
+        // only the work of the failed request is undone, the rest of the batch is committed
+        verify(connection).rollback(any(Savepoint.class));
+        verify(connection, never()).rollback();
+        verify(connection).commit();
+    }
+
+    @Test
+    public void testRetriesBatchOnRetryableFailure() throws Exception {
+        SQLException deadlock = new SQLException("Deadlock found", "40001", 1213);
+        doThrow(deadlock).doNothing().when(handler).delete("link/2", "link", "2", "1", connection);
+        when(handler.isRetryable(deadlock, connection)).thenReturn(true);
+
+        List<BatchResult> results = repo.batch(requests());
+
+        assertThat(connections).isEqualTo(2);
+        assertThat(results).hasSize(3);
+        for (BatchResult result : results) {
+            assertThat(result.isSuccess()).isTrue();
+        }
+        verify(connection).rollback();
+        verify(connection).commit();
+        verify(handler, times(2)).create(eq("link/1"), eq("link"), eq("1"), anyMapOf(String.class, Object.class),
+                eq(connection));
+    }
+
+    @Test(expectedExceptions = InternalServerErrorException.class)
+    public void testGivesUpAfterMaxRetries() throws Exception {
+        SQLException deadlock = new SQLException("Deadlock found", "40001", 1213);
+        doThrow(deadlock).when(handler).delete("link/2", "link", "2", "1", connection);
+        when(handler.isRetryable(deadlock, connection)).thenReturn(true);
+
+        try {
+            repo.batch(requests());
+        } finally {
+            // the first attempt and the default 5 retries
+            assertThat(connections).isEqualTo(6);
+            verify(connection, never()).commit();
+        }
+    }
+}
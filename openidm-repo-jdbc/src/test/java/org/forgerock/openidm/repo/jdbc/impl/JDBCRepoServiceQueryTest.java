@@ -0,0 +1,167 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.repo.jdbc.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+import static org.forgerock.openidm.repo.QueryConstants.PAGED_RESULTS_OFFSET;
+import static org.forgerock.openidm.repo.QueryConstants.PAGE_SIZE;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.openidm.repo.jdbc.TableHandler;
+import org.forgerock.services.context.RootContext;
+import org.forgerock.util.query.QueryFilter;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests reading the results of queries of the {@link JDBCRepoService} in chunks.
+ */
+public class JDBCRepoServiceQueryTest {
+
+    private static final int RESULTS = 95;
+    private static final int CHUNK_SIZE = 10;
+
+    private JDBCRepoService repo;
+    private int connections;
+    private boolean connectionOpen;
+    /** Results read from the database and not yet handed to the query handler */
+    private int held;
+    private int maxHeld;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        final Connection connection = mock(Connection.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                connectionOpen = false;
+                return null;
+            }
+        }).when(connection).close();
+
+        // the table holds RESULTS objects and honours the page size and offset of the query
+        TableHandler handler = mock(TableHandler.class);
+        when(handler.query(anyString(), anyMapOf(String.class, Object.class), any(Connection.class), anyInt(),
+                any(QueryResourceHandler.class))).thenAnswer(new Answer<Integer>() {
+                    @Override
+                    public Integer answer(InvocationOnMock invocation) {
+                        Map<?, ?> params = (Map<?, ?>) invocation.getArguments()[1];
+                        QueryResourceHandler resultHandler = (QueryResourceHandler) invocation.getArguments()[4];
+                        int pageSize = (Integer) params.get(PAGE_SIZE);
+                        int offset = pageSize > 0 ? (Integer) params.get(PAGED_RESULTS_OFFSET) : 0;
+                        int end = pageSize > 0 ? Math.min(RESULTS, offset + pageSize) : RESULTS;
+                        for (int i = offset; i < end; i++) {
+                            held++;
+                            maxHeld = Math.max(maxHeld, held);
+                            resultHandler.handleResource(newResourceResponse(String.valueOf(i), "0", json(object())));
+                        }
+                        return Math.max(0, end - offset);
+                    }
+                });
+
+        connections = 0;
+        held = 0;
+        maxHeld = 0;
+        repo = new JDBCRepoService() {
+            @Override
+            Connection getConnection() {
+                connections++;
+                connectionOpen = true;
+                return connection;
+            }
+        };
+        repo.tableHandlers = new ConcurrentHashMap<>();
+        repo.tableHandlers.put("managed/user", handler);
+        repo.queryFetchSize = CHUNK_SIZE;
+    }
+
+    private QueryRequest queryFilterRequest() {
+        return Requests.newQueryRequest("managed/user").setQueryFilter(QueryFilter.<JsonPointer>alwaysTrue());
+    }
+
+    /**
+     * @return the ids of the results handed to the handler, which checks that the connection has been released
+     */
+    private List<String> query(QueryRequest request) throws Exception {
+        final List<String> ids = new ArrayList<>();
+        repo.handleQuery(new RootContext(), request, new QueryResourceHandler() {
+            @Override
+            public boolean handleResource(ResourceResponse resource) {
+                assertThat(connectionOpen).as("connection released before handling results").isFalse();
+                held--;
+                ids.add(resource.getId());
+                return true;
+            }
+        }).getOrThrow();
+        return ids;
+    }
+
+    @Test
+    public void testHoldsNoMoreThanChunkOfResults() throws Exception {
+        List<String> ids = query(queryFilterRequest());
+
+        assertThat(ids).hasSize(RESULTS);
+        assertThat(ids.get(0)).isEqualTo("0");
+        assertThat(ids.get(RESULTS - 1)).isEqualTo(String.valueOf(RESULTS - 1));
+        assertThat(maxHeld).isEqualTo(CHUNK_SIZE);
+        // 9 full chunks and the last of 5 results
+        assertThat(connections).isEqualTo(10);
+    }
+
+    @Test
+    public void testReadsRequestedPageInChunks() throws Exception {
+        List<String> ids = query(queryFilterRequest().setPageSize(25).setPagedResultsOffset(30));
+
+        assertThat(ids).hasSize(25);
+        assertThat(ids.get(0)).isEqualTo("30");
+        assertThat(ids.get(24)).isEqualTo("54");
+        assertThat(maxHeld).isEqualTo(CHUNK_SIZE);
+        assertThat(connections).isEqualTo(3);
+    }
+
+    @Test
+    public void testReadsAllResultsAtOnceWithoutFetchSize() throws Exception {
+        repo.queryFetchSize = 0;
+
+        List<String> ids = query(queryFilterRequest());
+
+        assertThat(ids).hasSize(RESULTS);
+        assertThat(maxHeld).isEqualTo(RESULTS);
+        assertThat(connections).isEqualTo(1);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.repo.jdbc.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test of ObjectTypeIdCache
+ */
+public class ObjectTypeIdCacheTest {
+
+    @Test
+    public void testSharedPerTypeTable() {
+        ObjectTypeIdCache cache = ObjectTypeIdCache.forTable("openidm.objecttypes");
+        cache.put("managed/user", 3);
+
+        assertThat(ObjectTypeIdCache.forTable("openidm.objecttypes")).isSameAs(cache);
+        assertThat(ObjectTypeIdCache.forTable("openidm.objecttypes").get("managed/user")).isEqualTo(3);
+        assertThat(ObjectTypeIdCache.forTable("other.objecttypes").get("managed/user")).isEqualTo(-1);
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        ObjectTypeIdCache cache = ObjectTypeIdCache.forTable("objecttypes");
+        cache.put("managed/role", 7);
+
+        ObjectTypeIdCache.invalidateAll();
+
+        assertThat(cache.get("managed/role")).isEqualTo(-1);
+    }
+}
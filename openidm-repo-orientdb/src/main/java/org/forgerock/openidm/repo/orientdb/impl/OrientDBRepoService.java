@@ -61,6 +61,7 @@ import org.forgerock.json.resource.QueryRequest;
 import org.forgerock.json.resource.QueryResourceHandler;
 import org.forgerock.json.resource.QueryResponse;
 import org.forgerock.json.resource.ReadRequest;
+import org.forgerock.json.resource.Request;
 import org.forgerock.json.resource.RequestHandler;
 import org.forgerock.json.resource.Requests;
 import org.forgerock.json.resource.ResourceResponse;
@@ -69,12 +70,14 @@ import org.forgerock.json.resource.UpdateRequest;
 import org.forgerock.openidm.config.enhanced.EnhancedConfig;
 import org.forgerock.openidm.core.IdentityServer;
 import org.forgerock.openidm.core.ServerConstants;
+import org.forgerock.openidm.repo.BatchResult;
 import org.forgerock.openidm.repo.QueryConstants;
 import org.forgerock.openidm.repo.RepoBootService;
 import org.forgerock.openidm.repo.RepositoryService;
 import org.forgerock.openidm.repo.orientdb.impl.query.Commands;
 import org.forgerock.openidm.repo.orientdb.impl.query.PredefinedQueries;
 import org.forgerock.openidm.repo.orientdb.impl.query.Queries;
+import org.forgerock.openidm.repo.util.Batches;
 import org.forgerock.util.Reject;
 import org.forgerock.util.promise.Promise;
 import org.osgi.service.component.ComponentContext;
@@ -630,6 +633,14 @@ public class OrientDBRepoService implements RequestHandler, RepositoryService, R
 
     }
 
+    /**
+     * Performs the requests one by one, each in its own transaction.
+     */
+    @Override
+    public List<BatchResult> batch(List<? extends Request> requests) throws ResourceException {
+        return Batches.performSequentially(this, requests);
+    }
+
     @Override
     public List<ResourceResponse> query(final QueryRequest request) throws ResourceException {
         List<ResourceResponse> results = new ArrayList<ResourceResponse>();
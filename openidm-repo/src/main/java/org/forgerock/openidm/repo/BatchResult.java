@@ -0,0 +1,104 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.repo;
+
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.Request;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+
+/**
+ * The outcome of a single request performed as part of {@link RepositoryService#batch(java.util.List)}.
+ * Holds either the resulting resource or the exception the request failed with.
+ */
+public final class BatchResult {
+
+    private final Request request;
+    private final ResourceResponse response;
+    private final ResourceException exception;
+
+    private BatchResult(Request request, ResourceResponse response, ResourceException exception) {
+        this.request = request;
+        this.response = response;
+        this.exception = exception;
+    }
+
+    /**
+     * Creates the result of a successful request.
+     *
+     * @param request the request performed
+     * @param response the created, updated or deleted resource
+     * @return the batch result
+     */
+    public static BatchResult success(Request request, ResourceResponse response) {
+        return new BatchResult(request, response, null);
+    }
+
+    /**
+     * Creates the result of a failed request.
+     *
+     * @param request the request performed
+     * @param exception the reason the request failed
+     * @return the batch result
+     */
+    public static BatchResult failure(Request request, ResourceException exception) {
+        return new BatchResult(request, null, exception);
+    }
+
+    /**
+     * @return the request this is the result of
+     */
+    public Request getRequest() {
+        return request;
+    }
+
+    /**
+     * @return whether the request succeeded
+     */
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    /**
+     * @return the resulting resource, or {@code null} if the request failed
+     */
+    public ResourceResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * @return the exception the request failed with, or {@code null} if it succeeded
+     */
+    public ResourceException getException() {
+        return exception;
+    }
+
+    /**
+     * Renders the result as JSON, either {@code {"success": true, "result": <resource>}} or
+     * {@code {"success": false, "error": <exception>}}.
+     *
+     * @return the JSON representation of this result
+     */
+    public JsonValue toJsonValue() {
+        return isSuccess()
+                ? json(object(field("success", true), field("result", response.getContent().getObject())))
+                : json(object(field("success", false), field("error", exception.toJsonValue().getObject())));
+    }
+}
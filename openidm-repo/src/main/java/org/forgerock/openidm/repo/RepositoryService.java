@@ -29,6 +29,7 @@ import org.forgerock.json.resource.CreateRequest;
 import org.forgerock.json.resource.DeleteRequest;
 import org.forgerock.json.resource.QueryRequest;
 import org.forgerock.json.resource.ReadRequest;
+import org.forgerock.json.resource.Request;
 import org.forgerock.json.resource.ResourceException;
 import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.json.resource.UpdateRequest;
@@ -106,4 +107,18 @@ public interface RepositoryService {
      *             if an error was encountered during query
      */
     public List<ResourceResponse> query(QueryRequest request) throws ResourceException;
+
+    /**
+     * Performs a batch of create, update and delete requests, in order.
+     * <p/>
+     * Implementations may perform the whole batch in a single transaction. A failure of an individual
+     * request does not fail the batch, but is reported in the result for that request.
+     *
+     * @param requests
+     *            the create, update and delete requests to perform
+     * @return one result per request, in the order of the requests
+     * @throws ResourceException
+     *             if the batch as a whole could not be performed
+     */
+    public List<BatchResult> batch(List<? extends Request> requests) throws ResourceException;
 }
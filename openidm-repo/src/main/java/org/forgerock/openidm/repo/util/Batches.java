@@ -0,0 +1,74 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.repo.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.json.resource.BadRequestException;
+import org.forgerock.json.resource.CreateRequest;
+import org.forgerock.json.resource.DeleteRequest;
+import org.forgerock.json.resource.Request;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.UpdateRequest;
+import org.forgerock.openidm.repo.BatchResult;
+import org.forgerock.openidm.repo.RepositoryService;
+
+/**
+ * Utility methods for repository batches.
+ */
+public final class Batches {
+
+    private Batches() {
+    }
+
+    /**
+     * Performs a batch one request at a time through the single-request methods of the repository.
+     * For repositories without native batch support.
+     *
+     * @param repo the repository to perform the requests against
+     * @param requests the create, update and delete requests
+     * @return one result per request, in request order
+     */
+    public static List<BatchResult> performSequentially(RepositoryService repo, List<? extends Request> requests) {
+        List<BatchResult> results = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            try {
+                if (request instanceof CreateRequest) {
+                    results.add(BatchResult.success(request, repo.create((CreateRequest) request)));
+                } else if (request instanceof UpdateRequest) {
+                    results.add(BatchResult.success(request, repo.update((UpdateRequest) request)));
+                } else if (request instanceof DeleteRequest) {
+                    results.add(BatchResult.success(request, repo.delete((DeleteRequest) request)));
+                } else {
+                    throw unsupportedRequest(request);
+                }
+            } catch (ResourceException e) {
+                results.add(BatchResult.failure(request, e));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @param request the request that is not a create, update or delete
+     * @return the exception to report for a request that can not be part of a batch
+     */
+    public static BadRequestException unsupportedRequest(Request request) {
+        return new BadRequestException("Repository batches only support create, update and delete requests, not "
+                + request.getRequestType());
+    }
+}
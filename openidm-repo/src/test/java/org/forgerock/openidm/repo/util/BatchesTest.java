@@ -0,0 +1,99 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.repo.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.forgerock.json.resource.BadRequestException;
+import org.forgerock.json.resource.CreateRequest;
+import org.forgerock.json.resource.DeleteRequest;
+import org.forgerock.json.resource.NotFoundException;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.ReadRequest;
+import org.forgerock.json.resource.Request;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.json.resource.UpdateRequest;
+import org.forgerock.openidm.repo.BatchResult;
+import org.forgerock.openidm.repo.RepositoryService;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the sequential fallback for repository batches.
+ */
+public class BatchesTest {
+
+    /** Creates succeed, deletes fail as not found. */
+    private final RepositoryService repo = new RepositoryService() {
+        @Override
+        public ResourceResponse create(CreateRequest request) throws ResourceException {
+            return newResourceResponse(request.getNewResourceId(), "0", request.getContent());
+        }
+
+        @Override
+        public ResourceResponse read(ReadRequest request) throws ResourceException {
+            throw new NotFoundException();
+        }
+
+        @Override
+        public ResourceResponse update(UpdateRequest request) throws ResourceException {
+            throw new NotFoundException();
+        }
+
+        @Override
+        public ResourceResponse delete(DeleteRequest request) throws ResourceException {
+            throw new NotFoundException();
+        }
+
+        @Override
+        public List<ResourceResponse> query(QueryRequest request) throws ResourceException {
+            throw new NotFoundException();
+        }
+
+        @Override
+        public List<BatchResult> batch(List<? extends Request> requests) throws ResourceException {
+            return Batches.performSequentially(this, requests);
+        }
+    };
+
+    @Test
+    public void testPerformSequentially() throws Exception {
+        List<Request> requests = Arrays.<Request>asList(
+                Requests.newCreateRequest("link", "1", json(object(field("linkType", "test")))),
+                Requests.newDeleteRequest("link/2").setRevision("0"),
+                Requests.newReadRequest("link/1"));
+
+        List<BatchResult> results = repo.batch(requests);
+
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0).isSuccess()).isTrue();
+        assertThat(results.get(0).getResponse().getId()).isEqualTo("1");
+        assertThat(results.get(0).toJsonValue().get("result").get("linkType").asString()).isEqualTo("test");
+        assertThat(results.get(1).isSuccess()).isFalse();
+        assertThat(results.get(1).getException()).isInstanceOf(NotFoundException.class);
+        assertThat(results.get(1).toJsonValue().get("error").get("code").asInteger()).isEqualTo(404);
+        assertThat(results.get(2).getException()).isInstanceOf(BadRequestException.class);
+        assertThat(results.get(2).getRequest()).isSameAs(requests.get(2));
+    }
+}
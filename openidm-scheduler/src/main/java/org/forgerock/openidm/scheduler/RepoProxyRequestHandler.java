@@ -15,19 +15,31 @@
  */
 package org.forgerock.openidm.scheduler;
 
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
 import org.forgerock.json.resource.AbstractRequestHandler;
 import org.forgerock.json.resource.ConnectionFactory;
+import org.forgerock.json.resource.QueryRequest;
 import org.forgerock.json.resource.ReadRequest;
 import org.forgerock.json.resource.Requests;
 import org.forgerock.json.resource.ResourceException;
 import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.services.context.Context;
 import org.forgerock.util.promise.Promise;
+import org.forgerock.util.query.QueryFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Proxies a read request over the {@link ConnectionFactory}.
+ * Proxies a read request over the {@link ConnectionFactory} to a repo collection of trigger entries, returning the
+ * trigger IDs of the entries grouped under the value of a field, or under {@code names} if no field is given.
  */
 class RepoProxyRequestHandler extends AbstractRequestHandler {
     private static final Logger logger = LoggerFactory.getLogger(RepoProxyRequestHandler.class);
@@ -41,27 +53,47 @@ class RepoProxyRequestHandler extends AbstractRequestHandler {
      */
     static final String ACQUIRED_TRIGGERS_RESOURCE_PATH = "/acquiredTriggers";
 
+    private static final String TRIGGER_ID = "triggerId";
+    private static final String NAMES = "names";
+
     private final String resource;
+    private final String groupField;
     private final ConnectionFactory connectionFactory;
 
     /**
      * Constructs a {@link RepoProxyRequestHandler} given a resource location and a {@link ConnectionFactory}.
      * @param resource the resource location to send the requests.
+     * @param groupField the field of the entries to group the trigger IDs by, or null to list them under names.
      * @param connectionFactory the {@link ConnectionFactory} to send the requests over.
      */
-    RepoProxyRequestHandler(final String resource, final ConnectionFactory connectionFactory) {
+    RepoProxyRequestHandler(final String resource, final String groupField,
+            final ConnectionFactory connectionFactory) {
         this.resource = resource;
+        this.groupField = groupField;
         this.connectionFactory = connectionFactory;
     }
 
     @Override
     public Promise<ResourceResponse, ResourceException> handleRead(Context context, ReadRequest readRequest) {
-        final ReadRequest request = Requests.newReadRequest(resource);
+        final QueryRequest request = Requests.newQueryRequest(resource)
+                .setQueryFilter(QueryFilter.<JsonPointer>alwaysTrue());
+        final List<ResourceResponse> entries = new ArrayList<>();
         try {
-            return connectionFactory.getConnection().readAsync(context, request);
+            connectionFactory.getConnection().query(context, request, entries);
         } catch (final ResourceException e) {
             logger.error("Query failed for location: {}", resource, e);
             return e.asPromise();
         }
+        final JsonValue result = json(object());
+        for (final ResourceResponse entry : entries) {
+            final String group = groupField != null
+                    ? entry.getContent().get(groupField).asString()
+                    : NAMES;
+            if (!result.isDefined(group)) {
+                result.put(group, new ArrayList<String>());
+            }
+            result.get(group).add(entry.getContent().get(TRIGGER_ID).asString());
+        }
+        return newResourceResponse(readRequest.getResourcePath(), null, result).asPromise();
     }
 }
@@ -118,9 +118,9 @@ public class SchedulerService implements RequestHandler {
 
     private static final String SCHEDULER_REPO_RESOURCE_PATH = "/repo/scheduler/";
 
-    private static final String WAITING_TRIGGERS_REPO_RESOURCE_PATH = SCHEDULER_REPO_RESOURCE_PATH + "waitingTriggers";
+    private static final String WAITING_TRIGGERS_REPO_RESOURCE_PATH = SCHEDULER_REPO_RESOURCE_PATH + "waiting";
 
-    private static final String ACQUIRED_TRIGGERS_REPO_RESOURCE_PATH = SCHEDULER_REPO_RESOURCE_PATH + "acquiredTriggers";
+    private static final String ACQUIRED_TRIGGERS_REPO_RESOURCE_PATH = SCHEDULER_REPO_RESOURCE_PATH + "acquired";
 
     /**
      * Supported actions on the scheduler service.
@@ -221,9 +221,10 @@ public class SchedulerService implements RequestHandler {
         router.addRoute(STARTS_WITH, Router.uriTemplate(TRIGGER_RESOURCE_PATH),
                 new TriggerRequestHandler(connectionFactory));
         router.addRoute(STARTS_WITH, Router.uriTemplate(WAITING_TRIGGERS_RESOURCE_PATH),
-                new RepoProxyRequestHandler(WAITING_TRIGGERS_REPO_RESOURCE_PATH, connectionFactory));
+                new RepoProxyRequestHandler(WAITING_TRIGGERS_REPO_RESOURCE_PATH, null, connectionFactory));
         router.addRoute(STARTS_WITH, Router.uriTemplate(ACQUIRED_TRIGGERS_RESOURCE_PATH),
-                new RepoProxyRequestHandler(ACQUIRED_TRIGGERS_REPO_RESOURCE_PATH, connectionFactory));
+                new RepoProxyRequestHandler(ACQUIRED_TRIGGERS_REPO_RESOURCE_PATH, "instanceId",
+                        connectionFactory));
     }
 
     @Deactivate
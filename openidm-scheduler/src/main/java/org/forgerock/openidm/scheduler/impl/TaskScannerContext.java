@@ -11,11 +11,14 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Portions copyright 2012-2015 ForgeRock AS.
+ * Portions copyright 2012-2016 ForgeRock AS.
  */
 
 package org.forgerock.openidm.scheduler.impl;
 
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
 import static org.forgerock.json.JsonValueFunctions.pointer;
 
 import java.util.LinkedHashMap;
@@ -38,6 +41,12 @@ import org.joda.time.ReadablePeriod;
  */
 public class TaskScannerContext {
 
+    /** Default number of objects queried per page of the scan */
+    static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /** Resource path of the persisted states of the runs, next to the scheduler state in the repository */
+    static final String RUN_STATE_RESOURCE_PATH = "repo/scheduler/taskscan";
+
     enum TaskScannerState {
         INITIALIZED,
         ACTIVE,
@@ -50,11 +59,15 @@ public class TaskScannerContext {
     private String scriptName;
     private JsonValue params;
     private Context context;
-    private boolean canceled = false;
+    private volatile boolean canceled = false;
     private TaskScannerStatistic statistics;
-    private TaskScannerState state;
+    private volatile TaskScannerState state;
     private ScriptEntry scriptEntry;
 
+    /** _id of the last object of the pages processed, in the scan query results sorted by _id */
+    private volatile String checkpoint = null;
+    private volatile int pagesCompleted = 0;
+
     public TaskScannerContext(String invokerName,
                               String scriptName,
                               JsonValue params,
@@ -84,8 +97,51 @@ public class TaskScannerContext {
         statistics.queryStart();
     }
 
-    public void endQuery() {
-        statistics.queryEnd();
+    public void endQuery(long waitedMillis) {
+        statistics.queryEnd(waitedMillis);
+    }
+
+    /**
+     * Records that the objects of a page of the scan query results were processed.
+     *
+     * @param lastId the _id of the last object of the page, or null if the scan query results are not read by _id
+     */
+    public void pageCompleted(String lastId) {
+        if (lastId != null) {
+            checkpoint = lastId;
+        }
+        pagesCompleted++;
+    }
+
+    /**
+     * Makes this run start from the checkpoint of a cancelled or interrupted run of the same scan, rather than from
+     * the first page of the scan query results.
+     *
+     * @param checkpoint the checkpoint of the interrupted run, or null to start from the first page
+     */
+    public void resumeFrom(String checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * @return the _id of the last object processed in the scan query results sorted by _id, or null if none was
+     */
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Returns the state of this run to persist, from which the run can be resumed after a restart or a failover.
+     *
+     * @return the name, configuration, state and checkpoint of the run
+     */
+    public JsonValue getRunState() {
+        return json(object(
+                field("scanName", scriptName),
+                field("invokerName", invokerName),
+                field("params", params.getObject()),
+                field("state", state.toString()),
+                field("checkpoint", checkpoint)));
     }
 
     public void cancel() {
@@ -201,6 +257,16 @@ public class TaskScannerContext {
         return numParams.asInteger();
     }
 
+    /**
+     * Returns the number of objects queried per page of the scan. The objects of a page are processed before the next
+     * page is queried, and 0 queries all the objects at once.
+     *
+     * @return the page size of the scan query
+     */
+    public int getPageSize() {
+        return params.get("pageSize").defaultTo(DEFAULT_PAGE_SIZE).asInteger();
+    }
+
     public TaskScannerStatistic getStatistics() {
         return this.statistics;
     }
@@ -212,6 +278,8 @@ public class TaskScannerContext {
         progress.put("total", statistics.getNumberOfTasksToProcess());
         progress.put("successes", statistics.getNumberOfTasksSucceeded());
         progress.put("failures", statistics.getNumberOfTasksFailed());
+        progress.put("pages", pagesCompleted);
+        progress.put("checkpoint", checkpoint);
         return progress;
     }
 
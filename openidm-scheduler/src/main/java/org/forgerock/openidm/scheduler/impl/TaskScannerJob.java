@@ -16,14 +16,14 @@
 
 package org.forgerock.openidm.scheduler.impl;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 import javax.script.ScriptException;
 
@@ -35,9 +35,11 @@ import org.forgerock.json.resource.ConnectionFactory;
 import org.forgerock.json.resource.PreconditionFailedException;
 import org.forgerock.json.resource.QueryRequest;
 import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.QueryResponse;
 import org.forgerock.json.resource.Requests;
 import org.forgerock.json.resource.ResourceException;
 import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.json.resource.SortKey;
 import org.forgerock.json.resource.UpdateRequest;
 import org.forgerock.openidm.core.ServerConstants;
 import org.forgerock.openidm.quartz.impl.ExecutionException;
@@ -46,6 +48,7 @@ import org.forgerock.openidm.util.DateUtil;
 import org.forgerock.openidm.util.RequestUtil;
 import org.forgerock.script.Script;
 import org.forgerock.script.ScriptEntry;
+import org.forgerock.util.query.QueryFilter;
 import org.joda.time.DateTime;
 import org.joda.time.ReadablePeriod;
 import org.slf4j.Logger;
@@ -55,8 +58,13 @@ public class TaskScannerJob {
     private final static Logger logger = LoggerFactory.getLogger(TaskScannerJob.class);
     private final static DateUtil DATE_UTIL = DateUtil.getDateUtil(ServerConstants.TIME_ZONE_UTC);
 
+    /** Number of objects per thread that can wait to be processed */
+    private final static int QUEUED_PER_THREAD = 2;
+
     private ConnectionFactory connectionFactory;
     private TaskScannerContext taskScannerContext;
+    /** Revision of the state of the run saved in the repository, null if it is not saved */
+    private String runStateRevision;
 
     public TaskScannerJob(ConnectionFactory connectionFactory, TaskScannerContext context)
             throws ExecutionException {
@@ -105,7 +113,18 @@ public class TaskScannerJob {
 
     /**
      * Performs the task associated with the task scanner event.
-     * Runs the query and executes the script across each resulting object.
+     * Runs the query a page at a time and executes the script across each resulting object.
+     * <p>
+     * The objects of a page are dispatched to the executor as the query returns them, with at most
+     * {@value #QUEUED_PER_THREAD} objects per thread waiting to be processed, and the next page is only queried once
+     * the objects of the page were processed.
+     * <p>
+     * A scan query filter sorted by _id reads each page from the _id of the last object of the previous page, which
+     * is checkpointed after each page with the state of the run in the repository, so that a run that was cancelled
+     * or interrupted, also by a restart or a failover, can be resumed from it. Other scan queries are read by offset:
+     * objects completed by the scan usually leave the results of the scan query, so the offset of the next page only
+     * advances over the objects left incomplete; if completed objects show up again on the next page, they are
+     * skipped and the offset advances over whole pages from then on. These runs are resumed from the first page.
      *
      * @param executor ExecutorService in which to invoke this task.
      * @throws ExecutionException
@@ -116,52 +135,85 @@ public class TaskScannerJob {
         logger.info("Task {} started from {} with script {}",
                 new Object[] { taskScannerContext.getTaskScanID(), taskScannerContext.getInvokerName(), taskScannerContext.getScriptName() });
 
-        JsonValue results;
-        taskScannerContext.startQuery();
+        final QueryRequest scanQuery;
         try {
-            results = fetchAllObjects();
-        } catch (ResourceException e1) {
-            throw new ExecutionException("Error during query", e1);
-        }
-        taskScannerContext.endQuery();
-        Integer maxRecords = taskScannerContext.getMaxRecords();
-        if (maxRecords == null) {
-            taskScannerContext.setNumberOfTasksToProcess(results.size());
-        } else {
-            taskScannerContext.setNumberOfTasksToProcess(Math.min(results.size(), maxRecords));
+            scanQuery = buildScanQuery();
+        } catch (ResourceException e) {
+            throw new ExecutionException("Error during query", e);
         }
-        logger.debug("TaskScan {} query results: {}", taskScannerContext.getInvokerName(), results.size());
-        // TODO jump out early if it's empty?
-
-        // Split and prune the result set according to our max and if we're synchronous or not
-        List<JsonValue> resultSets = splitResultsOverThreads(results, taskScannerContext.getNumberOfThreads(), maxRecords);
-        logger.debug("Split result set into {} units", resultSets.size());
-
-        List<Callable<Object>> todo = new ArrayList<Callable<Object>>();
-        for (final JsonValue result : resultSets) {
-            Runnable command = new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        performTaskOverSet(result);
-                    } catch (Exception ex) {
-                        logger.warn("Taskscanner failed with unexpected exception", ex);
-                    }
+        final boolean readById = scanQuery.getQueryFilter() != null && isSortedById(scanQuery);
+        final int pageSize = taskScannerContext.getPageSize();
+        final Integer maxRecords = taskScannerContext.getMaxRecords();
+        final Semaphore pending = new Semaphore(taskScannerContext.getNumberOfThreads() * QUEUED_PER_THREAD);
+
+        String lastId = readById ? taskScannerContext.getCheckpoint() : null;
+        int offset = 0;
+        int dispatched = 0;
+        boolean completedLeaveResults = true;
+        Set<String> completedOnPreviousPage = Collections.emptySet();
+        saveRunState();
+        while (!taskScannerContext.isCanceled() && (maxRecords == null || dispatched < maxRecords)) {
+            final QueryRequest request = Requests.copyOfQueryRequest(scanQuery);
+            if (lastId != null) {
+                request.setQueryFilter(QueryFilter.and(scanQuery.getQueryFilter(),
+                        QueryFilter.greaterThan(new JsonPointer(ResourceResponse.FIELD_CONTENT_ID), lastId)));
+            }
+            if (pageSize > 0) {
+                request.setPageSize(pageSize);
+                request.setPagedResultsOffset(offset);
+            }
+            final ScanPage page = new ScanPage(executor, pending,
+                    maxRecords == null ? Integer.MAX_VALUE : maxRecords - dispatched, completedOnPreviousPage);
+            QueryResponse response = null;
+            taskScannerContext.startQuery();
+            try {
+                response = connectionFactory.getConnection().query(taskScannerContext.getContext(), request, page);
+            } catch (ResourceException e) {
+                page.awaitCompletion();
+                taskScannerContext.interrupted();
+                saveRunState();
+                throw new ExecutionException("Error during query", e);
+            } finally {
+                taskScannerContext.endQuery(page.waitedMillis);
+            }
+            if (!page.awaitCompletion()) {
+                taskScannerContext.interrupted();
+                logger.warn("Task scan '" + taskScannerContext.getTaskScanID() + "' interrupted");
+                break;
+            }
+            if (taskScannerContext.isCanceled()) {
+                // objects of the page may have been skipped, keep the checkpoint at its start
+                break;
+            }
+            dispatched += page.dispatched;
+            if (readById) {
+                lastId = page.lastId != null ? page.lastId : lastId;
+            } else {
+                if (page.revisited > 0) {
+                    completedLeaveResults = false;
                 }
-            };
-            todo.add(Executors.callable(command));
+                offset += completedLeaveResults ? page.received - page.completed.size() : page.received;
+                completedOnPreviousPage = completedLeaveResults ? page.completed : Collections.<String>emptySet();
+            }
+            taskScannerContext.pageCompleted(lastId);
+            saveRunState();
+            logger.debug("TaskScan {} processed a page of {} objects, next page after {} at offset {}",
+                    new Object[] { taskScannerContext.getInvokerName(), page.received, lastId, offset });
+
+            // a page that is not full, or that the resource did not limit to the page size, is the last one
+            if (pageSize <= 0 || page.received != pageSize || page.limitReached
+                    || response.getPagedResultsCookie() == null) {
+                break;
+            }
         }
 
-        try {
-            executor.invokeAll(todo);
-        } catch (InterruptedException e) {
-            // Mark it interrupted
-            taskScannerContext.interrupted();
-            logger.warn("Task scan '" + taskScannerContext.getTaskScanID() + "' interrupted");
-        }
         // Don't mark the job as completed if its been deactivated
         if (!taskScannerContext.isInactive()) {
             taskScannerContext.endJob();
+            // a completed run is not resumed
+            deleteRunState();
+        } else {
+            saveRunState();
         }
 
         logger.info("Task '{}' completed. Total time: {}ms. Query time: {}ms. Progress: {}",
@@ -172,95 +224,200 @@ public class TaskScannerJob {
         });
     }
 
-    private List<JsonValue> splitResultsOverThreads(JsonValue results, int numberOfThreads, Integer max) {
-        List<List<Object>> resultSets = new ArrayList<List<Object>>();
-        for (int i = 0; i < numberOfThreads; i++) {
-            resultSets.add(new ArrayList<Object>());
+    /**
+     * Dispatches the objects of a page of the scan query results to the executor as the query returns them.
+     */
+    private class ScanPage implements QueryResourceHandler {
+        private final ExecutorService executor;
+        private final Semaphore pending;
+        private final int limit;
+        private final Set<String> completedOnPreviousPage;
+
+        /** Objects of this page completed by the scan */
+        final Set<String> completed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        /** Objects returned by the query, only used by the querying thread */
+        int received = 0;
+        int dispatched = 0;
+        int revisited = 0;
+        /** _id of the last object returned by the query and dispatched or skipped */
+        String lastId = null;
+        boolean limitReached = false;
+        long waitedMillis = 0;
+
+        ScanPage(ExecutorService executor, Semaphore pending, int limit, Set<String> completedOnPreviousPage) {
+            this.executor = executor;
+            this.pending = pending;
+            this.limit = limit;
+            this.completedOnPreviousPage = completedOnPreviousPage;
         }
 
-        int i = 0;
-        for (JsonValue obj : results) {
-            if (max != null && i >= max) {
-                break;
+        @Override
+        public boolean handleResource(ResourceResponse resource) {
+            if (taskScannerContext.isCanceled()) {
+                return false;
+            }
+            received++;
+            final JsonValue input = resource.getContent();
+            final String id = input.get("_id").asString();
+            if (completedOnPreviousPage.contains(id)) {
+                revisited++;
+                lastId = id;
+                return true;
+            }
+            long waitStart = System.currentTimeMillis();
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                received--;
+                return false;
             }
-            resultSets.get(i % numberOfThreads).add(obj.getObject());
-            i++;
+            waitedMillis += System.currentTimeMillis() - waitStart;
+            lastId = id;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (performTaskOverObject(input)) {
+                            completed.add(id);
+                        }
+                    } catch (Exception ex) {
+                        logger.warn("Taskscanner failed with unexpected exception", ex);
+                    } finally {
+                        pending.release();
+                    }
+                }
+            });
+            dispatched++;
+            taskScannerContext.getStatistics().addTasksToProcess(1);
+            limitReached = dispatched >= limit;
+            return !limitReached;
         }
 
-        List<JsonValue> jsonSets = new ArrayList<JsonValue>();
-        for (List<Object> set : resultSets) {
-            jsonSets.add(new JsonValue(set));
+        /**
+         * Waits for the objects dispatched from this page to be processed.
+         *
+         * @return false if the thread was interrupted while waiting
+         */
+        boolean awaitCompletion() {
+            int permits = taskScannerContext.getNumberOfThreads() * QUEUED_PER_THREAD;
+            try {
+                pending.acquire(permits);
+                pending.release(permits);
+                return !Thread.currentThread().isInterrupted();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
         }
-
-        return jsonSets;
     }
 
-    private void performTaskOverSet(JsonValue results)
+    /**
+     * Processes an object of the scan query results, unless it was started by a scan that has not timed out yet.
+     *
+     * @param input the object
+     * @return true if the object was completed
+     * @throws ExecutionException
+     */
+    private boolean performTaskOverObject(JsonValue input)
                     throws ExecutionException {
-        for (JsonValue input : results) {
-            if (taskScannerContext.isCanceled()) {
-                logger.info("Task '" + taskScannerContext.getTaskScanID() + "' cancelled. Terminating execution.");
-                break; // Jump out quick since we've cancelled the job
-            }
-            // Check if this object has a STARTED time already
-            JsonValue startTime = input.get(taskScannerContext.getStartField());
-            String startTimeString = null;
-            if (startTime != null && !startTime.isNull()) {
-                startTimeString = startTime.asString();
-                DateTime startedTime = DATE_UTIL.parseTimestamp(startTimeString);
-
-                // Skip if the startTime + interval has not been passed
-                ReadablePeriod period = taskScannerContext.getRecoveryTimeout();
-                DateTime expirationDate = startedTime.plus(period);
-                if (expirationDate.isAfterNow()) {
-                    logger.debug("Object already started and has not expired. Started at: {}. Timeout: {}. Expires at: {}",
-                            new Object[] {
-                            DATE_UTIL.formatDateTime(startedTime),
-                            period,
-                            DATE_UTIL.formatDateTime(expirationDate)});
-                    continue;
-                }
+        if (taskScannerContext.isCanceled()) {
+            logger.debug("Task '{}' cancelled. Skipping {}", taskScannerContext.getTaskScanID(), input.get("_id"));
+            return false;
+        }
+        // Check if this object has a STARTED time already
+        JsonValue startTime = input.get(taskScannerContext.getStartField());
+        String startTimeString = null;
+        if (startTime != null && !startTime.isNull()) {
+            startTimeString = startTime.asString();
+            DateTime startedTime = DATE_UTIL.parseTimestamp(startTimeString);
+
+            // Skip if the startTime + interval has not been passed
+            ReadablePeriod period = taskScannerContext.getRecoveryTimeout();
+            DateTime expirationDate = startedTime.plus(period);
+            if (expirationDate.isAfterNow()) {
+                logger.debug("Object already started and has not expired. Started at: {}. Timeout: {}. Expires at: {}",
+                        new Object[] {
+                        DATE_UTIL.formatDateTime(startedTime),
+                        period,
+                        DATE_UTIL.formatDateTime(expirationDate)});
+                return false;
             }
+        }
 
-            try {
-                claimAndExecScript(input, startTimeString);
-            } catch (ResourceException e) {
-                throw new ExecutionException("Error during claim and execution phase", e);
-            }
+        try {
+            return claimAndExecScript(input, startTimeString);
+        } catch (ResourceException e) {
+            throw new ExecutionException("Error during claim and execution phase", e);
         }
     }
 
     /**
-     * Flatten a list of parameters and perform a query to fetch all objects from storage.
+     * Flatten a list of parameters and build the query fetching the objects to scan from storage.
      *
-     * @return JsonValue containing a list of all the retrieved objects
+     * @return the scan query
      * @throws ResourceException
      */
-    private JsonValue fetchAllObjects() throws ResourceException {
+    private QueryRequest buildScanQuery() throws ResourceException {
         JsonValue flatParams = flattenJson(taskScannerContext.getScanValue());
         ConfigMacroUtil.expand(flatParams);
-        return performQuery(taskScannerContext.getObjectID(), flatParams);
+        QueryRequest request =
+                RequestUtil.buildQueryRequestFromParameterMap(taskScannerContext.getObjectID(), flatParams.asMap());
+        // the pages are read by _id, or by offset, which needs the results in the same order on every query
+        if (request.getSortKeys().isEmpty()) {
+            request.addSortKey(SortKey.ascendingOrder(ResourceResponse.FIELD_CONTENT_ID));
+        }
+        return request;
     }
 
     /**
-     * Performs a query on a resource and returns the result set
-     * @param resourceID the identifier of the resource to query
-     * @param params parameters to supply to the query
-     * @return the set of results from the performed query
-     * @throws ResourceException
+     * @return true if the query results are sorted by ascending _id only
      */
-    private JsonValue performQuery(String resourceID, JsonValue params) throws ResourceException {
-        final JsonValue queryResults = new JsonValue(new ArrayList<Map<String, Object>>());;
-
-        QueryRequest request = RequestUtil.buildQueryRequestFromParameterMap(resourceID, params.asMap());
-        connectionFactory.getConnection().query(taskScannerContext.getContext(), request, new QueryResourceHandler() {
-            @Override
-            public boolean handleResource(ResourceResponse resource) {
-                queryResults.add(resource.getContent().getObject());
-                return true;
+    private static boolean isSortedById(QueryRequest request) {
+        return request.getSortKeys().size() == 1
+                && request.getSortKeys().get(0).isAscendingOrder()
+                && request.getSortKeys().get(0).getField().equals(new JsonPointer(ResourceResponse.FIELD_CONTENT_ID));
+    }
+
+    /**
+     * Saves the state of the run in the repository, so that the run can be resumed from its checkpoint when it is
+     * no longer held in memory. A failure to save the state is logged without failing the run.
+     */
+    private void saveRunState() {
+        String id = taskScannerContext.getTaskScanID();
+        try {
+            ResourceResponse saved;
+            if (runStateRevision == null) {
+                saved = connectionFactory.getConnection().create(taskScannerContext.getContext(),
+                        Requests.newCreateRequest(TaskScannerContext.RUN_STATE_RESOURCE_PATH, id,
+                                taskScannerContext.getRunState()));
+            } else {
+                saved = connectionFactory.getConnection().update(taskScannerContext.getContext(),
+                        Requests.newUpdateRequest(TaskScannerContext.RUN_STATE_RESOURCE_PATH, id,
+                                taskScannerContext.getRunState()).setRevision(runStateRevision));
             }
-        });
-        return queryResults;
+            runStateRevision = saved.getRevision();
+        } catch (ResourceException e) {
+            logger.warn("Failed to save the state of task scan {}", id, e);
+        }
+    }
+
+    /**
+     * Deletes the saved state of the run from the repository.
+     */
+    private void deleteRunState() {
+        if (runStateRevision == null) {
+            return;
+        }
+        String id = taskScannerContext.getTaskScanID();
+        try {
+            connectionFactory.getConnection().delete(taskScannerContext.getContext(),
+                    Requests.newDeleteRequest(TaskScannerContext.RUN_STATE_RESOURCE_PATH, id)
+                            .setRevision(runStateRevision));
+            runStateRevision = null;
+        } catch (ResourceException e) {
+            logger.warn("Failed to delete the state of task scan {}", id, e);
+        }
     }
 
     /**
@@ -353,7 +510,7 @@ public class TaskScannerJob {
         return performRead(retrieveFullID(resourceID, id));
     }
 
-    private void claimAndExecScript(JsonValue input, String expectedStartDateStr)
+    private boolean claimAndExecScript(JsonValue input, String expectedStartDateStr)
             throws ExecutionException, ResourceException {
         String id = input.get("_id").required().asString();
         boolean claimedTask = false;
@@ -386,9 +543,7 @@ public class TaskScannerJob {
                     }
             }
         } while (retryClaimTask && !taskScannerContext.isCanceled());
-        if (claimedTask) {
-            execScript(_input);
-        }
+        return claimedTask && execScript(_input);
     }
 
     /**
@@ -400,10 +555,11 @@ public class TaskScannerJob {
      *   <b>"input"</b> contains the supplied object
      *
      * @param input value to input to the script
+     * @return true if the script completed the task
      * @throws ExecutionException
      * @throws ResourceException
      */
-    private void execScript(JsonValue input)
+    private boolean execScript(JsonValue input)
             throws ExecutionException, ResourceException {
         ScriptEntry script = taskScannerContext.getScriptEntry();
 
@@ -424,6 +580,7 @@ public class TaskScannerJob {
                    _input = updateValueWithObject(resourceID, _input, taskScannerContext.getCompletedField(), DATE_UTIL.now());
                    taskScannerContext.getStatistics().taskSucceded();
                    logger.debug("Updated CompletedField: {}", _input);
+                   return true;
                 } else {
                     taskScannerContext.getStatistics().taskFailed();
                 }
@@ -436,6 +593,7 @@ public class TaskScannerJob {
                 throw new ExecutionException(msg, se);
             }
         }
+        return false;
     }
 
     /**
@@ -196,6 +196,9 @@ public class TaskScannerService implements RequestHandler, ScheduledService {
         } else {
             // operation on individual resource
             TaskScannerContext foundRun = taskScanRuns.get(request.getResourcePath());
+            if ("resume".equalsIgnoreCase(action)) {
+                return resume(context, request.getResourcePath(), foundRun);
+            }
             if (foundRun == null) {
                 return new NotFoundException("Task with id '" + request.getResourcePath() + "' not found.").asPromise();
             }
@@ -219,6 +222,77 @@ public class TaskScannerService implements RequestHandler, ScheduledService {
         return newActionResponse(new JsonValue(result)).asPromise();
     }
 
+    /**
+     * Performs the "resume" action, starting a new run of a cancelled or interrupted run from its checkpoint. A run
+     * that is no longer held in memory, after a restart or when it ran on another node, is resumed from its state
+     * saved in the repository.
+     *
+     * @param context the context of the new run
+     * @param id the identifier of the run to resume
+     * @param run the run to resume if it is held in memory, or null
+     * @return the identifiers of the new run and of the resumed run, and the checkpoint resumed from
+     */
+    private Promise<ActionResponse, ResourceException> resume(Context context, String id, TaskScannerContext run) {
+        try {
+            ResourceResponse runState = readRunState(context, id);
+            String scanName;
+            JsonValue params;
+            String checkpoint;
+            if (run != null) {
+                if (!run.isCanceled() && !run.hasError()) {
+                    throw new BadRequestException("Task '" + id + "' was neither cancelled nor interrupted");
+                }
+                scanName = run.getScriptName();
+                params = run.getParams();
+                checkpoint = run.getCheckpoint();
+            } else if (runState != null) {
+                scanName = runState.getContent().get("scanName").required().asString();
+                params = runState.getContent().get("params").required();
+                checkpoint = runState.getContent().get("checkpoint").asString();
+            } else {
+                throw new NotFoundException("Task with id '" + id + "' not found.");
+            }
+
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            result.put("_id", startTaskScanJob(context, "REST", scanName, params, checkpoint));
+            result.put("resumed", id);
+            result.put("checkpoint", checkpoint);
+            result.put("action", "resume");
+            if (runState != null) {
+                // the new run saves a state of its own
+                deleteRunState(context, runState);
+            }
+            return newActionResponse(new JsonValue(result)).asPromise();
+        } catch (ExecutionException e) {
+            logger.warn(e.getMessage());
+            return new BadRequestException(e.getMessage(), e).asPromise();
+        } catch (ResourceException e) {
+            return e.asPromise();
+        }
+    }
+
+    /**
+     * @return the state of a run saved in the repository, or null if none is
+     */
+    private ResourceResponse readRunState(Context context, String id) throws ResourceException {
+        try {
+            return connectionFactory.getConnection().read(context,
+                    Requests.newReadRequest(TaskScannerContext.RUN_STATE_RESOURCE_PATH, id));
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    private void deleteRunState(Context context, ResourceResponse runState) {
+        try {
+            connectionFactory.getConnection().delete(context,
+                    Requests.newDeleteRequest(TaskScannerContext.RUN_STATE_RESOURCE_PATH, runState.getId())
+                            .setRevision(runState.getRevision()));
+        } catch (ResourceException e) {
+            logger.warn("Failed to delete the state of task scan {}", runState.getId(), e);
+        }
+    }
+
     /**
      * Performs the "execute" action, executing a supplied configuration
      *
@@ -249,6 +323,22 @@ public class TaskScannerService implements RequestHandler, ScheduledService {
     }
 
     private String startTaskScanJob(Context context, String invokerName, String scriptName, JsonValue params) throws ExecutionException {
+        return startTaskScanJob(context, invokerName, scriptName, params, null);
+    }
+
+    /**
+     * Starts a run of a task scan.
+     *
+     * @param context the context of the run
+     * @param invokerName the name of the invoker of the run
+     * @param scriptName the name of the task scan
+     * @param params the task scan configuration
+     * @param checkpoint the checkpoint of a cancelled or interrupted run to resume from, or null to scan from the start
+     * @return the identifier of the run
+     * @throws ExecutionException if the run failed to start, or failed when waiting for its completion
+     */
+    private String startTaskScanJob(Context context, String invokerName, String scriptName, JsonValue params,
+            String checkpoint) throws ExecutionException {
         TaskScannerContext taskScannerContext = null;
 
         try {
@@ -256,6 +346,7 @@ public class TaskScannerService implements RequestHandler, ScheduledService {
             ScriptEntry script = scriptRegistry.takeScript(scriptConfig);
 
             taskScannerContext = new TaskScannerContext(invokerName, scriptName, params, context, script);
+            taskScannerContext.resumeFrom(checkpoint);
         } catch (ScriptException e) {
             throw new ExecutionException(e);
         }
@@ -31,7 +31,8 @@ public class TaskScannerStatistic {
     private long jobEndTime;
     private long queryStartTime;
     private long queryEndTime;
-    private int numberToProcess = 0;
+    private long queryDuration;
+    private volatile int numberToProcess = 0;
 
     // Note: These should be the only ones used during the thread executions
     private AtomicInteger numSuccessful;
@@ -66,12 +67,21 @@ public class TaskScannerStatistic {
         queryStartTime = System.currentTimeMillis();
     }
 
-    public void queryEnd() {
+    /**
+     * Ends the timing of a page of the scan query, adding it to the query duration.
+     *
+     * @param waitedMillis the time the query spent waiting for the results to be processed, not counted
+     */
+    public void queryEnd(long waitedMillis) {
         queryEndTime = System.currentTimeMillis();
+        queryDuration += queryEndTime - queryStartTime - waitedMillis;
     }
 
+    /**
+     * @return the total duration of the pages of the scan query
+     */
     public long getQueryDuration() {
-        return queryEndTime - queryStartTime;
+        return queryDuration;
     }
 
     public void taskSucceded() {
@@ -105,4 +115,13 @@ public class TaskScannerStatistic {
     public void setNumberOfTasksToProcess(int numberToProcess) {
         this.numberToProcess = numberToProcess;
     }
+
+    /**
+     * Adds the objects of a page of the scan query to the number of tasks to process.
+     *
+     * @param number the number of objects dispatched from the page
+     */
+    public void addTasksToProcess(int number) {
+        this.numberToProcess += number;
+    }
 }
@@ -0,0 +1,239 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.scheduler.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Router.uriTemplate;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ConnectionFactory;
+import org.forgerock.json.resource.MemoryBackend;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.json.resource.Resources;
+import org.forgerock.json.resource.Router;
+import org.forgerock.json.resource.SortKey;
+import org.forgerock.script.Script;
+import org.forgerock.script.ScriptEntry;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.forgerock.util.query.QueryFilter;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the paged scan of {@link TaskScannerJob}.
+ */
+public class TaskScannerJobTest {
+
+    private static final String USERS = "managed/user";
+    private static final int NUMBER_OF_USERS = 25;
+    private static final JsonPointer COMPLETED = new JsonPointer("/sunset/task-completed");
+
+    private Router router;
+    private ConnectionFactory connectionFactory;
+    private ScriptEntry scriptEntry;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        router = spy(new Router());
+        router.addRoute(uriTemplate(USERS), new MemoryBackend());
+        router.addRoute(uriTemplate(TaskScannerContext.RUN_STATE_RESOURCE_PATH), new MemoryBackend());
+        connectionFactory = Resources.newInternalConnectionFactory(router);
+        for (int i = 0; i < NUMBER_OF_USERS; i++) {
+            connectionFactory.getConnection().create(new RootContext(),
+                    Requests.newCreateRequest(USERS, String.format("user-%02d", i),
+                            json(object(field("sunset", object(field("date", "2016-01-01T00:00:00.000Z")))))));
+        }
+
+        Script script = mock(Script.class);
+        when(script.eval()).thenReturn(Boolean.TRUE);
+        scriptEntry = mock(ScriptEntry.class);
+        when(scriptEntry.getScript(any(Context.class))).thenReturn(script);
+    }
+
+    private TaskScannerContext newTaskScan(String queryFilter, Integer maxRecords) throws Exception {
+        JsonValue params = json(object(
+                field("waitForCompletion", true),
+                field("numberOfThreads", 3),
+                field("pageSize", 10),
+                field("scan", object(
+                        field("object", USERS),
+                        field("_queryFilter", queryFilter),
+                        field("taskState", object(
+                                field("started", "/sunset/task-started"),
+                                field("completed", COMPLETED.toString())))))));
+        if (maxRecords != null) {
+            params.put("maxRecords", maxRecords);
+        }
+        return new TaskScannerContext("test", "taskscan/sunset", params, new RootContext(), scriptEntry);
+    }
+
+    private List<JsonValue> completedUsers() throws Exception {
+        List<ResourceResponse> users = new ArrayList<>();
+        connectionFactory.getConnection().query(new RootContext(),
+                Requests.newQueryRequest(USERS).setQueryFilter(QueryFilter.<JsonPointer>alwaysTrue()), users);
+        List<JsonValue> completed = new ArrayList<>();
+        for (ResourceResponse user : users) {
+            JsonValue completedTime = user.getContent().get(COMPLETED);
+            if (completedTime != null && !completedTime.isNull()) {
+                completed.add(user.getContent());
+            }
+        }
+        return completed;
+    }
+
+    @Test
+    public void testCompletedObjectsLeavingTheResults() throws Exception {
+        TaskScannerContext taskScan = newTaskScan("!(/sunset/task-completed pr)", null);
+
+        new TaskScannerJob(connectionFactory, taskScan).startTask();
+
+        assertThat(taskScan.isCompleted()).isTrue();
+        assertThat(taskScan.getStatistics().getNumberOfTasksSucceeded()).isEqualTo(NUMBER_OF_USERS);
+        assertThat(taskScan.getStatistics().getNumberOfTasksToProcess()).isEqualTo(NUMBER_OF_USERS);
+        assertThat(taskScan.getProgress().get("pages")).isEqualTo(3);
+        assertThat(taskScan.getCheckpoint()).isEqualTo("user-24");
+        assertThat(completedUsers()).hasSize(NUMBER_OF_USERS);
+    }
+
+    @Test
+    public void testCompletedObjectsStayingInTheResults() throws Exception {
+        TaskScannerContext taskScan = newTaskScan("true", null);
+
+        new TaskScannerJob(connectionFactory, taskScan).startTask();
+
+        // each page is read from the last _id of the previous one, the objects are not processed twice
+        assertThat(taskScan.getStatistics().getNumberOfTasksSucceeded()).isEqualTo(NUMBER_OF_USERS);
+        assertThat(taskScan.getProgress().get("pages")).isEqualTo(3);
+        assertThat(taskScan.getCheckpoint()).isEqualTo("user-24");
+        assertThat(completedUsers()).hasSize(NUMBER_OF_USERS);
+    }
+
+    @Test
+    public void testPagesSortedById() throws Exception {
+        TaskScannerContext taskScan = newTaskScan("true", null);
+
+        new TaskScannerJob(connectionFactory, taskScan).startTask();
+
+        // the pages are read by _id, so the scan query is sorted when its configuration does not sort it
+        ArgumentCaptor<QueryRequest> queries = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(router, atLeastOnce()).handleQuery(any(Context.class), queries.capture(),
+                any(QueryResourceHandler.class));
+        for (QueryRequest query : queries.getAllValues()) {
+            assertThat(query.getSortKeys()).hasSize(1);
+            SortKey sortKey = query.getSortKeys().get(0);
+            assertThat(sortKey.getField()).isEqualTo(new JsonPointer("_id"));
+            assertThat(sortKey.isAscendingOrder()).isTrue();
+        }
+    }
+
+    @Test
+    public void testMaxRecords() throws Exception {
+        TaskScannerContext taskScan = newTaskScan("true", 12);
+
+        new TaskScannerJob(connectionFactory, taskScan).startTask();
+
+        assertThat(taskScan.getStatistics().getNumberOfTasksSucceeded()).isEqualTo(12);
+        assertThat(taskScan.getProgress().get("total")).isEqualTo(12);
+        assertThat(completedUsers()).hasSize(12);
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        TaskScannerContext taskScan = newTaskScan("true", null);
+        taskScan.resumeFrom("user-19");
+
+        new TaskScannerJob(connectionFactory, taskScan).startTask();
+
+        assertThat(taskScan.getStatistics().getNumberOfTasksSucceeded()).isEqualTo(NUMBER_OF_USERS - 20);
+        assertThat(taskScan.getCheckpoint()).isEqualTo("user-24");
+        assertThat(completedUsers()).hasSize(NUMBER_OF_USERS - 20);
+    }
+
+    @Test
+    public void testResumeFromCheckpointAfterObjectsWereAdded() throws Exception {
+        TaskScannerContext taskScan = newTaskScan("true", null);
+        taskScan.resumeFrom("user-19");
+        // objects added ahead of the checkpoint do not shift it
+        for (int i = 0; i < 5; i++) {
+            connectionFactory.getConnection().create(new RootContext(),
+                    Requests.newCreateRequest(USERS, String.format("user-0%da", i), json(object())));
+        }
+
+        new TaskScannerJob(connectionFactory, taskScan).startTask();
+
+        assertThat(taskScan.getStatistics().getNumberOfTasksSucceeded()).isEqualTo(NUMBER_OF_USERS - 20);
+    }
+
+    @Test
+    public void testSavesStateOfCancelledRun() throws Exception {
+        final TaskScannerContext taskScan = newTaskScan("true", null);
+        Script script = mock(Script.class);
+        when(script.eval()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                if (taskScan.getProgress().get("pages").equals(2)) {
+                    taskScan.cancel();
+                }
+                return Boolean.TRUE;
+            }
+        });
+        when(scriptEntry.getScript(any(Context.class))).thenReturn(script);
+
+        new TaskScannerJob(connectionFactory, taskScan).startTask();
+
+        JsonValue runState = connectionFactory.getConnection().read(new RootContext(),
+                Requests.newReadRequest(TaskScannerContext.RUN_STATE_RESOURCE_PATH, taskScan.getTaskScanID()))
+                .getContent();
+        assertThat(runState.get("scanName").asString()).isEqualTo("taskscan/sunset");
+        assertThat(runState.get("state").asString()).isEqualTo("CANCELLED");
+        // the third page was cancelled, the scan resumes after the second
+        assertThat(runState.get("checkpoint").asString()).isEqualTo("user-19");
+        assertThat(runState.get("params").get("pageSize").asInteger()).isEqualTo(10);
+    }
+
+    @Test
+    public void testDeletesStateOfCompletedRun() throws Exception {
+        TaskScannerContext taskScan = newTaskScan("true", null);
+
+        new TaskScannerJob(connectionFactory, taskScan).startTask();
+
+        List<ResourceResponse> runStates = new ArrayList<>();
+        connectionFactory.getConnection().query(new RootContext(),
+                Requests.newQueryRequest(TaskScannerContext.RUN_STATE_RESOURCE_PATH)
+                        .setQueryFilter(QueryFilter.<JsonPointer>alwaysTrue()), runStates);
+        assertThat(runStates).isEmpty();
+    }
+}
@@ -125,13 +125,25 @@ public abstract class AbstractScriptedService implements ScriptCustomizer, Scrip
             scriptEntry.addScriptListener(this);
             scriptName = scriptEntry.getName();
             embeddedHandler = new ScriptedRequestHandler(scriptEntry, getScriptCustomizer());
-            selfRegistration = context.registerService(RequestHandler.class, embeddedHandler, getProperties());
+            selfRegistration =
+                    context.registerService(RequestHandler.class, getRequestHandler(embeddedHandler), getProperties());
         } catch (ScriptException e) {
             final String factoryPid = configuration.get(ServerConstants.CONFIG_FACTORY_PID).defaultTo("").asString();
             throw new ComponentException("Failed to take script: " + factoryPid, e);
         }
     }
 
+    /**
+     * Returns the request handler to register for the service, by default the handler evaluating the script.
+     * Services may decorate it to handle some of their requests without evaluating the script.
+     *
+     * @param scriptedHandler the handler evaluating the script
+     * @return the request handler to register
+     */
+    protected RequestHandler getRequestHandler(final ScriptedRequestHandler scriptedHandler) {
+        return scriptedHandler;
+    }
+
     protected void updateScriptHandler(final JsonValue configuration) {
         try {
             ScriptEntry scriptEntry = scriptRegistry.takeScript(configuration);
@@ -177,8 +189,8 @@ public abstract class AbstractScriptedService implements ScriptCustomizer, Scrip
                         selfRegistration =
                                 getBundleContext().registerService(
                                         RequestHandler.class,
-                                        new ScriptedRequestHandler(scriptEntry,
-                                                getScriptCustomizer()), getProperties());
+                                        getRequestHandler(new ScriptedRequestHandler(scriptEntry,
+                                                getScriptCustomizer())), getProperties());
                     }
                 }
             }
@@ -0,0 +1,252 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.script.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.script.ScriptEntry;
+import org.forgerock.script.source.SourceUnit;
+
+/**
+ * Bounded cache of the entries of the inline scripts, those configured with a {@code source} rather than a
+ * {@code file} or a {@code name}, taken from the {@link ScriptRegistryService}.
+ * <p>
+ * Scripts are keyed by their type and a digest of their whole configuration, so that scripts with the same source
+ * but other globals or parameters get their own entries. The least recently used script is evicted once the cache
+ * holds {@link #getMaxSize()} scripts.
+ */
+public class CompiledScriptCache implements CompiledScriptCacheMBean {
+
+    /** Name of the MBean of the cache */
+    static final String MBEAN_NAME = "org.forgerock.openidm.script:type=CompiledScriptCache";
+
+    /** Default maximum number of scripts cached */
+    static final int DEFAULT_MAX_SIZE = 1000;
+
+    private volatile int maxSize;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile int warmedUpScripts;
+
+    /** The script entries by key, least recently used first, guarded by itself */
+    private final Map<String, ScriptEntry> entries = new LinkedHashMap<String, ScriptEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ScriptEntry> eldest) {
+            if (size() > maxSize) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxSize the maximum number of scripts cached
+     */
+    CompiledScriptCache(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * Tells whether a script configuration is cached by the cache, that is whether it is an inline script.
+     *
+     * @param scriptConfig the script configuration
+     * @return true if the configuration has a source but neither a name nor a file
+     */
+    static boolean isCacheable(JsonValue scriptConfig) {
+        return scriptConfig.get(SourceUnit.ATTR_NAME).isNull()
+                && scriptConfig.get("file").isNull()
+                && scriptConfig.get(SourceUnit.ATTR_SOURCE).isString();
+    }
+
+    /**
+     * Returns the key of a script configuration: its type and a digest of the configuration, whatever the order of
+     * its properties.
+     *
+     * @param scriptConfig the script configuration
+     * @return the key
+     */
+    static String key(JsonValue scriptConfig) {
+        final StringBuilder canonical = new StringBuilder();
+        appendCanonical(canonical, scriptConfig.getObject());
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            return scriptConfig.get(SourceUnit.ATTR_TYPE).asString() + ":" + DatatypeConverter.printHexBinary(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is a required implementation.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void appendCanonical(StringBuilder canonical, Object value) {
+        if (value instanceof Map) {
+            canonical.append('{');
+            for (Map.Entry<?, ?> entry : new TreeMap<>((Map<?, ?>) value).entrySet()) {
+                canonical.append(JsonValue.json(entry.getKey()).toString()).append(':');
+                appendCanonical(canonical, entry.getValue());
+                canonical.append(',');
+            }
+            canonical.append('}');
+        } else if (value instanceof Collection) {
+            canonical.append('[');
+            for (Object element : (Collection<?>) value) {
+                appendCanonical(canonical, element);
+                canonical.append(',');
+            }
+            canonical.append(']');
+        } else {
+            canonical.append(JsonValue.json(value).toString());
+        }
+    }
+
+    /**
+     * Returns a cached script, counting a hit or a miss.
+     *
+     * @param key the key of the script configuration
+     * @return the script entry, or null if it is not cached
+     */
+    ScriptEntry get(String key) {
+        final ScriptEntry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches a script, evicting the least recently used script if the cache is full.
+     *
+     * @param key the key of the script configuration
+     * @param entry the script entry
+     */
+    void put(String key, ScriptEntry entry) {
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Discards all the cached scripts, as their engines were configured again.
+     */
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Sets the maximum number of scripts cached, evicting the least recently used scripts beyond it.
+     *
+     * @param maxSize the maximum number of scripts cached
+     */
+    void setMaxSize(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        synchronized (entries) {
+            final Iterator<String> keys = entries.keySet().iterator();
+            while (entries.size() > this.maxSize && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Records the number of scripts compiled by a warm-up.
+     *
+     * @param scripts the number of scripts compiled
+     */
+    void setWarmedUpScripts(int scripts) {
+        warmedUpScripts = scripts;
+    }
+
+    /**
+     * Finds the script configurations in a configuration, that is the objects with a {@code type} and either a
+     * {@code source} or a {@code file}, as in mappings, managed object hooks and custom endpoints.
+     *
+     * @param config the configuration to search
+     * @param scripts the list to add the script configurations found to
+     */
+    static void findScripts(JsonValue config, List<JsonValue> scripts) {
+        if (config.isMap()) {
+            if (config.get(SourceUnit.ATTR_TYPE).isString()
+                    && (config.get(SourceUnit.ATTR_SOURCE).isString() || config.get("file").isString())) {
+                scripts.add(config);
+                return;
+            }
+            for (String key : config.keys()) {
+                findScripts(config.get(key), scripts);
+            }
+        } else if (config.isList()) {
+            for (JsonValue element : config) {
+                findScripts(element, scripts);
+            }
+        }
+    }
+
+    @Override
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public int getWarmedUpScripts() {
+        return warmedUpScripts;
+    }
+}
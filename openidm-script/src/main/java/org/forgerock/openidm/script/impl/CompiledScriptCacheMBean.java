@@ -0,0 +1,58 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openidm.script.impl;
+
+/**
+ * Provides JMX access to the cache of the inline scripts taken from the {@link ScriptRegistryService}.
+ */
+public interface CompiledScriptCacheMBean {
+
+    /**
+     * Gets the number of scripts in the cache.
+     * @return the number of cached scripts.
+     */
+    int getSize();
+
+    /**
+     * Gets the maximum number of scripts in the cache.
+     * @return the capacity of the cache.
+     */
+    int getMaxSize();
+
+    /**
+     * Gets the number of scripts taken from the cache.
+     * @return the number of hits.
+     */
+    long getHits();
+
+    /**
+     * Gets the number of scripts compiled because they were not in the cache.
+     * @return the number of misses.
+     */
+    long getMisses();
+
+    /**
+     * Gets the number of scripts evicted from the cache to make room for others.
+     * @return the number of evictions.
+     */
+    long getEvictions();
+
+    /**
+     * Gets the number of scripts compiled by the last warm-up of the cache.
+     * @return the number of warmed up scripts.
+     */
+    int getWarmedUpScripts();
+}
@@ -20,6 +20,8 @@ import static org.forgerock.json.resource.Responses.newActionResponse;
 import static org.forgerock.util.promise.Promises.newResultPromise;
 
 import java.io.File;
+import java.io.FilenameFilter;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -33,6 +35,9 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.script.ScriptException;
 import javax.script.SimpleBindings;
 import javax.xml.bind.DatatypeConverter;
@@ -53,9 +58,11 @@ import org.apache.felix.scr.annotations.Service;
 import org.forgerock.audit.events.AuditEvent;
 import org.forgerock.openidm.router.IDMConnectionFactory;
 import org.forgerock.openidm.script.ResourceFunctions;
+import org.forgerock.openidm.util.JsonUtil;
 import org.forgerock.openidm.util.Scripts;
 import org.forgerock.openidm.script.ScriptExecutor;
 import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.JsonValueException;
 import org.forgerock.json.crypto.JsonCrypto;
@@ -182,6 +189,16 @@ public class ScriptRegistryService extends ScriptRegistryImpl implements Request
     private static final String SOURCE_TYPE = "type";
     private static final String SOURCE_GLOBALS = "globals";
 
+    private static final String CACHE = "cache";
+    private static final String CACHE_MAX_SIZE = "maxSize";
+    private static final String CACHE_WARM_UP = "warmUp";
+
+    /** System property of the directory of the configuration files, as read by the configuration service */
+    private static final String OPENIDM_FILEINSTALL_DIR = "openidm.fileinstall.dir";
+
+    /** Time to wait for the warm-up of the script cache to stop when the service is deactivated */
+    private static final long WARM_UP_STOP_MILLIS = 5000;
+
     /** Enhanced configuration service. */
     @Reference(policy = ReferencePolicy.DYNAMIC)
     private volatile EnhancedConfig enhancedConfig;
@@ -190,6 +207,12 @@ public class ScriptRegistryService extends ScriptRegistryImpl implements Request
     private final ConcurrentMap<String, Object> openidm = new ConcurrentHashMap<String, Object>();
     private static final ConcurrentMap<String, Object> propertiesCache = new ConcurrentHashMap<String, Object>();
 
+    /** The inline scripts taken, so that taking them again does not compile them again */
+    private final CompiledScriptCache compiledScripts = new CompiledScriptCache(CompiledScriptCache.DEFAULT_MAX_SIZE);
+
+    /** The thread warming up the script cache, if one was started; guarded by this */
+    private Thread warmUpThread;
+
     private enum Action {
         compile, eval
     }
@@ -279,6 +302,9 @@ public class ScriptRegistryService extends ScriptRegistryImpl implements Request
         // Initialize the registry in ScriptUtil
         Scripts.init(this);
 
+        registerCacheMBean();
+        configureCache(configuration.get(CACHE));
+
         logger.info("OpenIDM Script Service component is activated.");
     }
 
@@ -291,6 +317,7 @@ public class ScriptRegistryService extends ScriptRegistryImpl implements Request
         Scripts.init(null);
         
         propertiesCache.clear();
+        compiledScripts.clear();
         Set<String> keys =
                 null != getBindings() ? new HashSet<String>(getBindings().keySet()) : Collections
                         .<String> emptySet();
@@ -317,12 +344,16 @@ public class ScriptRegistryService extends ScriptRegistryImpl implements Request
         
         // Initialize the registry in ScriptUtil
         Scripts.init(this);
+
+        configureCache(configuration.get(CACHE));
         
         logger.info("OpenIDM Script Service component is modified.");
     }
 
     @Deactivate
     protected void deactivate(ComponentContext context) {
+        stopWarmUp();
+
         // Clear the registry in ScriptUtil
         Scripts.init(null);
         
@@ -330,11 +361,142 @@ public class ScriptRegistryService extends ScriptRegistryImpl implements Request
             manifestWatcher.stop();
         }
         propertiesCache.clear();
+        compiledScripts.clear();
+        unregisterCacheMBean();
         openidm.clear();
         setBindings(null);
         logger.info("OpenIDM Script Service component is deactivated.");
     }
 
+    /**
+     * Sizes the cache of inline scripts and, unless {@code warmUp} is false, compiles in the background the scripts
+     * of the mappings, managed objects and custom endpoints configured in {@code sync.json}, {@code managed.json}
+     * and {@code endpoint-*.json}, so that their first evaluation, such as in the first reconciliation, does not pay
+     * for their compilation. No warm-up is started while a previous one is still running.
+     *
+     * @param cacheConfig the {@code cache} configuration of the script service
+     */
+    private synchronized void configureCache(JsonValue cacheConfig) {
+        compiledScripts.setMaxSize(cacheConfig.get(CACHE_MAX_SIZE).defaultTo(CompiledScriptCache.DEFAULT_MAX_SIZE)
+                .asInteger());
+        if (!cacheConfig.get(CACHE_WARM_UP).defaultTo(true).asBoolean()) {
+            return;
+        }
+        if (warmUpThread != null && warmUpThread.isAlive()) {
+            logger.debug("The script cache is already being warmed up");
+            return;
+        }
+        final File confDir =
+                IdentityServer.getFileForProjectPath(System.getProperty(OPENIDM_FILEINSTALL_DIR, "conf"));
+        warmUpThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                warmUp(confDir);
+            }
+        }, "script-warmup");
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
+    }
+
+    /**
+     * Interrupts the warm-up of the script cache, if one is running, and waits for it to stop.
+     */
+    private void stopWarmUp() {
+        final Thread warmUp;
+        synchronized (this) {
+            warmUp = warmUpThread;
+            warmUpThread = null;
+        }
+        if (warmUp == null) {
+            return;
+        }
+        warmUp.interrupt();
+        try {
+            warmUp.join(WARM_UP_STOP_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (warmUp.isAlive()) {
+            logger.warn("The warm-up of the script cache did not stop within {} ms", WARM_UP_STOP_MILLIS);
+        }
+    }
+
+    /**
+     * Takes and compiles the scripts configured in the configuration files of a directory.
+     *
+     * @param confDir the configuration directory
+     */
+    void warmUp(File confDir) {
+        final File[] files = confDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return "sync.json".equals(name) || "managed.json".equals(name)
+                        || (name.startsWith("endpoint-") && name.endsWith(".json"));
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        final List<JsonValue> scripts = new ArrayList<>();
+        for (File file : files) {
+            try {
+                CompiledScriptCache.findScripts(JsonUtil.parseURL(file.toURI().toURL()), scripts);
+            } catch (Exception e) {
+                logger.debug("Skipping the scripts of {} while warming up the script cache", file, e);
+            }
+        }
+        int compiled = 0;
+        for (JsonValue script : scripts) {
+            if (Thread.currentThread().isInterrupted()) {
+                logger.debug("Warm-up of the script cache interrupted after compiling {} scripts", compiled);
+                return;
+            }
+            try {
+                ScriptEntry scriptEntry = takeScript(script);
+                if (scriptEntry.isActive()) {
+                    scriptEntry.getScript(new RootContext());
+                    compiled++;
+                }
+            } catch (Exception e) {
+                logger.debug("Failed to compile script {} while warming up the script cache", script, e);
+            }
+        }
+        compiledScripts.setWarmedUpScripts(compiled);
+        logger.info("Compiled {} of the {} scripts configured in {} configuration files",
+                compiled, scripts.size(), files.length);
+    }
+
+    private void registerCacheMBean() {
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(CompiledScriptCache.MBEAN_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(compiledScripts, objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to register the MBean of the script cache", e);
+        }
+    }
+
+    private void unregisterCacheMBean() {
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(CompiledScriptCache.MBEAN_NAME);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to unregister the MBean of the script cache", e);
+        }
+    }
+
+    /**
+     * @return the cache of the inline scripts taken
+     */
+    CompiledScriptCache getCompiledScripts() {
+        return compiledScripts;
+    }
+
     public void setConnectionFactory(IDMConnectionFactory connectionFactory) {
         openidm.put("create", ResourceFunctions.newCreateFunction(connectionFactory));
         openidm.put("read", ResourceFunctions.newReadFunction(connectionFactory));
@@ -557,6 +719,15 @@ public class ScriptRegistryService extends ScriptRegistryImpl implements Request
 
     @Override
     public ScriptEntry takeScript(JsonValue script) throws ScriptException {
+        String cacheKey = null;
+        if (CompiledScriptCache.isCacheable(script)) {
+            cacheKey = CompiledScriptCache.key(script);
+            ScriptEntry cached = compiledScripts.get(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
         JsonValue scriptConfig = script.clone();
         if (scriptConfig.get(SourceUnit.ATTR_NAME).isNull()) {
             JsonValue file = scriptConfig.get(SOURCE_FILE);
@@ -600,6 +771,9 @@ public class ScriptRegistryService extends ScriptRegistryImpl implements Request
                 scriptEntry.put(key, globals.get(key).getObject());
             }
         }
+        if (cacheKey != null) {
+            compiledScripts.put(cacheKey, scriptEntry);
+        }
         return scriptEntry;
     }
     
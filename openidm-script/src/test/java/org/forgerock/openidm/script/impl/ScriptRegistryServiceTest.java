@@ -43,8 +43,13 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class ScriptRegistryServiceTest {
@@ -144,4 +149,149 @@ public class ScriptRegistryServiceTest {
         assertThat(result.isString()).isTrue();
         assertThat(result.asString()).isEqualTo("valuexformed");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTakeInlineScriptFromCache() throws Exception {
+        //given
+        final ScriptRegistryService scriptRegistryService = new ScriptRegistryService();
+        final CompiledScriptCache cache = scriptRegistryService.getCompiledScripts();
+
+        //when
+        ScriptEntry first = scriptRegistryService.takeScript(json(object(
+                field("type", getLanguageName()),
+                field("source", "content.key;"))));
+        ScriptEntry second = scriptRegistryService.takeScript(json(object(
+                field("source", "content.key;"),
+                field("type", getLanguageName()))));
+
+        //then
+        assertThat(second).isSameAs(first);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCachedInlineScriptsKeepTheirGlobals() throws Exception {
+        //given
+        final ScriptRegistryService scriptRegistryService = new ScriptRegistryService();
+
+        //when
+        ScriptEntry first = scriptRegistryService.takeScript(json(object(
+                field("type", getLanguageName()),
+                field("source", "content.key;"),
+                field("globals", object(field("globalKey", "first"))))));
+        ScriptEntry second = scriptRegistryService.takeScript(json(object(
+                field("type", getLanguageName()),
+                field("source", "content.key;"),
+                field("globals", object(field("globalKey", "second"))))));
+
+        //then
+        assertThat(second).isNotSameAs(first);
+        assertThat(first.get("globalKey")).isEqualTo("first");
+        assertThat(second.get("globalKey")).isEqualTo("second");
+    }
+
+    @Test
+    public void testCacheEvictsLeastRecentlyUsedScript() throws Exception {
+        //given
+        final ScriptRegistryService scriptRegistryService = new ScriptRegistryService();
+        final CompiledScriptCache cache = scriptRegistryService.getCompiledScripts();
+        cache.setMaxSize(2);
+        final JsonValue a = json(object(field("type", getLanguageName()), field("source", "'a';")));
+        final JsonValue b = json(object(field("type", getLanguageName()), field("source", "'b';")));
+        final JsonValue c = json(object(field("type", getLanguageName()), field("source", "'c';")));
+
+        //when
+        ScriptEntry entryA = scriptRegistryService.takeScript(a);
+        scriptRegistryService.takeScript(b);
+        scriptRegistryService.takeScript(a);
+        scriptRegistryService.takeScript(c);
+
+        //then
+        assertThat(cache.getSize()).isEqualTo(2);
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(scriptRegistryService.takeScript(a)).isSameAs(entryA);
+        assertThat(cache.getHits()).isEqualTo(2);
+        scriptRegistryService.takeScript(b);
+        assertThat(cache.getMisses()).isEqualTo(4);
+    }
+
+    @Test
+    public void testFindScripts() throws Exception {
+        //given
+        final JsonValue sync = json(object(field("mappings", array(object(
+                field("name", "systemLdapAccounts_managedUser"),
+                field("correlationQuery", object(
+                        field("type", "text/javascript"),
+                        field("source", "var qry = {'_queryFilter': 'true'}; qry"))),
+                field("properties", array(
+                        object(field("source", "mail"), field("target", "mail")),
+                        object(field("target", "displayName"), field("transform", object(
+                                field("type", "groovy"),
+                                field("file", "script/displayName.groovy"),
+                                field("globals", object(
+                                        field("type", "ignored"),
+                                        field("source", "ignored")))))))))))));
+        final List<JsonValue> scripts = new ArrayList<>();
+
+        //when
+        CompiledScriptCache.findScripts(sync, scripts);
+
+        //then
+        assertThat(scripts).hasSize(2);
+        assertThat(scripts.get(0).get("type").asString()).isEqualTo("text/javascript");
+        assertThat(scripts.get(1).get("file").asString()).isEqualTo("script/displayName.groovy");
+    }
+
+    @Test
+    public void testWarmUpTakesConfiguredInlineScripts() throws Exception {
+        //given
+        final ScriptRegistryService scriptRegistryService = new ScriptRegistryService();
+        final File confDir = Files.createTempDirectory("conf").toFile();
+        confDir.deleteOnExit();
+        final String condition = "{ \"type\" : \"" + getLanguageName() + "\", \"source\" : \"true;\" }";
+        writeFile(confDir, "sync.json", "{ \"mappings\" : [ { \"validSource\" : " + condition + " } ] }");
+        writeFile(confDir, "endpoint-echo.json", "{ \"context\" : \"endpoint/echo\", \"type\" : \""
+                + getLanguageName() + "\", \"source\" : \"request;\" }");
+        writeFile(confDir, "audit.json", "{ \"filter\" : " + condition + " }");
+
+        //when
+        scriptRegistryService.warmUp(confDir);
+
+        //then
+        final CompiledScriptCache cache = scriptRegistryService.getCompiledScripts();
+        assertThat(cache.getSize()).isEqualTo(2);
+        scriptRegistryService.takeScript(json(object(
+                field("type", getLanguageName()),
+                field("source", "true;"))));
+        assertThat(cache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void testInterruptedWarmUpStops() throws Exception {
+        //given
+        final ScriptRegistryService scriptRegistryService = new ScriptRegistryService();
+        final File confDir = Files.createTempDirectory("conf").toFile();
+        confDir.deleteOnExit();
+        writeFile(confDir, "endpoint-echo.json", "{ \"context\" : \"endpoint/echo\", \"type\" : \""
+                + getLanguageName() + "\", \"source\" : \"request;\" }");
+
+        //when
+        Thread.currentThread().interrupt();
+        try {
+            scriptRegistryService.warmUp(confDir);
+        } finally {
+            Thread.interrupted();
+        }
+
+        //then
+        assertThat(scriptRegistryService.getCompiledScripts().getSize()).isEqualTo(0);
+    }
+
+    private static void writeFile(File dir, String name, String content) throws Exception {
+        final File file = new File(dir, name);
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
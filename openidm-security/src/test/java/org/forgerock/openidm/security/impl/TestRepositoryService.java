@@ -26,10 +26,13 @@ import org.forgerock.json.resource.QueryRequest;
 import org.forgerock.json.resource.QueryResourceHandler;
 import org.forgerock.json.resource.QueryResponse;
 import org.forgerock.json.resource.ReadRequest;
+import org.forgerock.json.resource.Request;
 import org.forgerock.json.resource.ResourceException;
 import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.json.resource.UpdateRequest;
+import org.forgerock.openidm.repo.BatchResult;
 import org.forgerock.openidm.repo.RepositoryService;
+import org.forgerock.openidm.repo.util.Batches;
 import org.forgerock.services.context.RootContext;
 import org.forgerock.util.promise.Promise;
 
@@ -99,4 +102,9 @@ class TestRepositoryService implements RepositoryService {
             throw new InternalServerErrorException("Unable to query objects in repo", e);
         }
     }
+
+    @Override
+    public List<BatchResult> batch(List<? extends Request> requests) throws ResourceException {
+        return Batches.performSequentially(this, requests);
+    }
 }
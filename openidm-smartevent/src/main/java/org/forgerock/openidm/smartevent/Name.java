@@ -64,9 +64,14 @@ public class Name {
      */
     enum PublisherType {BLOCKING, DISRUPTOR};
 
+    /**
+     * Maximum number of event names kept, and of event names statistics are kept for
+     */
+    public final static int MAX_NAMES = Integer.valueOf(System.getProperty("openidm.smartevent.maxevents", "1000"));
+
     // Holds the event stringified name to the Name instance mapping
     static LoadingCache<String, Name> names = CacheBuilder.newBuilder()
-            .maximumSize(Integer.valueOf(System.getProperty("openidm.smartevent.maxevents", "1000")))
+            .maximumSize(MAX_NAMES)
             .build(
                     new CacheLoader<String, Name>() {
                         @Override
@@ -16,55 +16,23 @@
 
 package org.forgerock.openidm.smartevent.core;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-
 import org.forgerock.openidm.smartevent.EventEntry;
 import org.forgerock.openidm.smartevent.Name;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 /**
- * Publisher that uses the blocking linked queue to process events.
+ * Publisher that records events into the statistics on the thread ending them.
+ * 
+ * The statistics are lock-free, so unlike handing the events to a consumer
+ * thread over a blocking queue, ending an event neither allocates nor waits on
+ * other threads.
  */
 public class BlockingPublisher implements PluggablePublisher {
 
-    private final static Logger logger = LoggerFactory.getLogger(BlockingPublisher.class);
-
     private static StatisticsHandler statisticsHandler = new StatisticsHandler(null);
-        
-    /**
-     * Queue max size 
-     */
-    private final static int QUEUE_CAPACITY = (1024 * 2);
 
-    private static BlockingQueue<EventEntry> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
-    
-    private static Runnable consumer = new Runnable() {
-
-        @Override
-        public void run() {
-            try {
-                while (true) {
-                    EventEntry entry = queue.take();
-                    statisticsHandler.onEvent(entry, -1, true);
-                }
-            } catch (InterruptedException ex) {
-                logger.debug("Stop processing event queue: {}", ex.getMessage());
-                // Allow the processing to stop 
-            }
-        }
-    };
-    
     private final static PluggablePublisher INSTANCE = new BlockingPublisher();
-    
-    private Thread consumerThread;
-  
+
     private BlockingPublisher() {
-        consumerThread = new Thread(consumer);
-        consumerThread.start();
-        logger.debug("Consumer thread started");
     }
     
     /**
@@ -98,10 +66,6 @@ public class BlockingPublisher implements PluggablePublisher {
      * @inheritDoc
      */
     public final void end(Name eventName, EventEntry entry) {
-        try {
-            queue.put(entry);
-        } catch (InterruptedException ex) {
-            // Ignore not being able to collect event data
-        }
+        statisticsHandler.onEvent(entry, -1, true);
     }
 }
@@ -0,0 +1,324 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.smartevent.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free histogram of event durations in nanoseconds.
+ * <p>
+ * Durations are counted in log-linear buckets, as in HdrHistogram: values below {@value #SUB_BUCKETS} have a bucket
+ * each, and every further power of two is split into {@value #HALF_SUB_BUCKETS} buckets, so a percentile is reported
+ * within about 6% of the recorded value. Durations above {@link #MAX_VALUE} are counted in the last bucket.
+ * <p>
+ * Recording a duration is a few atomic increments on a stripe of counters. A histogram starts with a single stripe,
+ * and a thread that finds its counters contended by another thread moves to a stripe of its own, up to a number of
+ * stripes, so threads ending events concurrently rarely contend while a histogram recorded by a single thread at a
+ * time stays small. Only reading a {@link Snapshot} sums the stripes.
+ */
+public class LatencyHistogram {
+
+    /** Number of bits of precision kept for each value */
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;
+
+    /** Largest duration told apart from longer ones, about 73 minutes */
+    static final long MAX_VALUE = (1L << 42) - 1;
+
+    /** Number of buckets needed to count the values up to {@link #MAX_VALUE} */
+    static final int BUCKETS = bucketIndex(MAX_VALUE) + 1;
+
+    /** Position of the count of recorded values, after the buckets of a stripe */
+    private static final int COUNT = BUCKETS;
+    /** Position of the sum of recorded values, after the buckets of a stripe */
+    private static final int TOTAL = BUCKETS + 1;
+
+    /** Maximum number of stripes, a power of two so a thread's stripe is picked with a mask */
+    private static final int STRIPES =
+            Math.min(8, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1) << 1));
+
+    /** The stripes, allocated on contention; a thread whose stripe is not allocated records in the first one */
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+    private final AtomicLong max = new AtomicLong();
+
+    /** The snapshot the last interval ended with, guarded by this */
+    private Snapshot intervalStart = Snapshot.EMPTY;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        stripes.set(0, new AtomicLongArray(BUCKETS + 2));
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanoseconds the duration in nanoseconds, negative durations are ignored
+     */
+    public void record(long nanoseconds) {
+        if (nanoseconds < 0) {
+            return;
+        }
+        int index = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null) {
+            stripe = stripes.get(0);
+        }
+        stripe.incrementAndGet(bucketIndex(Math.min(nanoseconds, MAX_VALUE)));
+        stripe.addAndGet(TOTAL, nanoseconds);
+        long count = stripe.get(COUNT);
+        if (!stripe.compareAndSet(COUNT, count, count + 1)) {
+            stripe.incrementAndGet(COUNT);
+            // contended: record in a stripe of this thread's own from now on
+            if (stripes.get(index) == null) {
+                stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS + 2));
+            }
+        }
+        long currentMax = max.get();
+        while (nanoseconds > currentMax && !max.compareAndSet(currentMax, nanoseconds)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @return the number of durations recorded
+     */
+    public long getCount() {
+        return sum(COUNT);
+    }
+
+    /**
+     * @return the sum of the durations recorded, in nanoseconds
+     */
+    public long getTotal() {
+        return sum(TOTAL);
+    }
+
+    private long sum(int index) {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (stripe != null) {
+                sum += stripe.get(index);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of stripes allocated
+     */
+    int getStripeCount() {
+        int count = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            if (stripes.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sums the stripes into a snapshot of all the durations recorded since the histogram was created or reset.
+     * Durations recorded while the snapshot is taken may or may not be included.
+     *
+     * @return the snapshot
+     */
+    public Snapshot getSnapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        long total = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null) {
+                continue;
+            }
+            count += stripe.get(COUNT);
+            total += stripe.get(TOTAL);
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return new Snapshot(counts, count, total, max.get());
+    }
+
+    /**
+     * Returns a snapshot of the durations recorded since the previous call, so that a collector polling at a fixed
+     * rate gets the distribution of each interval. The maximum of an interval snapshot is the upper bound of the
+     * highest bucket counted in the interval.
+     *
+     * @return the snapshot of the durations recorded since the previous interval
+     */
+    public synchronized Snapshot getIntervalSnapshot() {
+        Snapshot current = getSnapshot();
+        Snapshot interval = current.since(intervalStart);
+        intervalStart = current;
+        return interval;
+    }
+
+    /**
+     * Discards the recorded durations. Durations recorded while the histogram is reset may be partially kept.
+     */
+    public synchronized void reset() {
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null) {
+                continue;
+            }
+            for (int i = 0; i < stripe.length(); i++) {
+                stripe.set(i, 0);
+            }
+        }
+        max.set(0);
+        intervalStart = Snapshot.EMPTY;
+    }
+
+    /**
+     * @return the index of the bucket counting a value
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // shift so the value keeps its SUB_BUCKET_BITS most significant bits, the top one being set
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the highest value counted by a bucket
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKETS - 1;
+        long lowest = (long) (index - shift * HALF_SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Immutable distribution of the durations recorded by a {@link LatencyHistogram}.
+     */
+    public static class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(new long[BUCKETS], 0, 0, 0);
+
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * @return the number of durations recorded
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the sum of the durations recorded, in nanoseconds
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * @return the mean duration in nanoseconds, or -1 if no duration was recorded
+         */
+        public long getMean() {
+            return count > 0 ? total / count : -1;
+        }
+
+        /**
+         * @return the longest duration recorded in nanoseconds, or 0 if none was recorded
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the duration that the given percentage of the recorded durations do not exceed, accurate to the
+         * precision of the buckets.
+         *
+         * @param percentile the percentile, from 0 to 100, e.g. 99.9
+         * @return the duration in nanoseconds, or -1 if no duration was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            long recorded = 0;
+            for (long bucket : counts) {
+                recorded += bucket;
+            }
+            if (recorded == 0) {
+                return -1;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(100d, Math.max(0d, percentile)) / 100d * recorded));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    long value = highestValue(i);
+                    return max > 0 ? Math.min(value, max) : value;
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Returns the number of recorded durations not exceeding a bound, counting only the buckets entirely below
+         * it, so the count can be short by the durations in the one bucket the bound falls into.
+         *
+         * @param nanoseconds the bound in nanoseconds
+         * @return the number of durations up to the bound
+         */
+        public long getCountAtOrBelow(long nanoseconds) {
+            long below = 0;
+            for (int i = 0; i < counts.length && highestValue(i) <= nanoseconds; i++) {
+                below += counts[i];
+            }
+            return below;
+        }
+
+        /**
+         * @return the distribution of the durations recorded after the earlier snapshot
+         */
+        Snapshot since(Snapshot earlier) {
+            long[] interval = new long[BUCKETS];
+            int highest = -1;
+            for (int i = 0; i < BUCKETS; i++) {
+                // counts only go backwards if the histogram was reset in between
+                interval[i] = Math.max(0, counts[i] - earlier.counts[i]);
+                if (interval[i] > 0) {
+                    highest = i;
+                }
+            }
+            return new Snapshot(interval, Math.max(0, count - earlier.count), Math.max(0, total - earlier.total),
+                    highest >= 0 ? Math.min(highestValue(highest), max) : 0);
+        }
+    }
+}
@@ -19,23 +19,72 @@ package org.forgerock.openidm.smartevent.core;
 /**
  * Holds monitoring and statistics info
  * 
+ * The durations are kept in a lock-free {@link LatencyHistogram}, so events can
+ * be recorded from any number of threads without synchronization.
  */
 public class MonitoringInfo {
 
-    public long totalInvokes;
-    public long totalTime;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    /**
+     * Record the duration of an event
+     * 
+     * @param nanoseconds the duration of the event in nanoseconds
+     */
+    public void record(long nanoseconds) {
+        histogram.record(nanoseconds);
+    }
+
+    /**
+     * @return the number of events recorded
+     */
+    public long getTotalInvokes() {
+        return histogram.getCount();
+    }
+
+    /**
+     * @return the sum of the durations of the events recorded, in nanoseconds
+     */
+    public long getTotalTime() {
+        return histogram.getTotal();
+    }
+
+    /**
+     * @return the distribution of the durations recorded since the last reset
+     */
+    public LatencyHistogram.Snapshot getSnapshot() {
+        return histogram.getSnapshot();
+    }
+
+    /**
+     * @return the distribution of the durations recorded since the previous
+     *         call
+     */
+    public LatencyHistogram.Snapshot getIntervalSnapshot() {
+        return histogram.getIntervalSnapshot();
+    }
 
     /**
      * Reset the statistics
      */
     public void reset() {
-        totalInvokes = 0;
-        totalTime = 0;
+        histogram.reset();
     }
 
     public String toString() {
-        return "Invocations: " + totalInvokes + " total time: "
-                + StatisticsHandler.formatNsAsMs(totalTime) + " mean: "
-                + StatisticsHandler.formatNsAsMs(totalInvokes > 0 ? totalTime / totalInvokes : -1);
+        return format(histogram.getSnapshot());
+    }
+
+    /**
+     * Format the summary of a distribution of event durations
+     */
+    static String format(LatencyHistogram.Snapshot snapshot) {
+        return "Invocations: " + snapshot.getCount() + " total time: "
+                + StatisticsHandler.formatNsAsMs(snapshot.getTotal()) + " mean: "
+                + StatisticsHandler.formatNsAsMs(snapshot.getMean()) + " p50: "
+                + StatisticsHandler.formatNsAsMs(snapshot.getValueAtPercentile(50)) + " p99: "
+                + StatisticsHandler.formatNsAsMs(snapshot.getValueAtPercentile(99)) + " p999: "
+                + StatisticsHandler.formatNsAsMs(snapshot.getValueAtPercentile(99.9)) + " max: "
+                + StatisticsHandler.formatNsAsMs(snapshot.getMax());
     }
 }
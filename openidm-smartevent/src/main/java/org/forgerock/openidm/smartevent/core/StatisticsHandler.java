@@ -19,13 +19,16 @@ package org.forgerock.openidm.smartevent.core;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.cache.CacheBuilder;
 import com.lmax.disruptor.RingBuffer;
 
 import org.forgerock.openidm.smartevent.EventEntry;
@@ -37,9 +40,10 @@ import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.dsl.Disruptor;
 
 /**
- * Event handler for monitoring and statistics Expects a single thread assigned
- * to gather the statistics
+ * Event handler for monitoring and statistics
  * 
+ * The statistics are kept per event name in lock-free histograms, so events
+ * may be recorded from any number of threads while they are read over JMX.
  */
 public class StatisticsHandler implements EventHandler<DisruptorReferringEventEntry>,
         StatisticsHandlerMBean {
@@ -50,15 +54,24 @@ public class StatisticsHandler implements EventHandler<DisruptorReferringEventEn
 
     final static NumberFormat MILLISEC_FORMAT = new DecimalFormat("###,###,##0.### ms");
 
+    /**
+     * All the handlers created, one per publisher type in use
+     */
+    private final static List<StatisticsHandler> handlers = new CopyOnWriteArrayList<>();
+
     /**
      * Access to the ring buffer for monitoring/history display purposes
      */
     Disruptor<DisruptorReferringEventEntry> disruptor;
 
     /**
-     * Keep track of monitoring data per event Name
+     * Keep track of monitoring data per event Name, for at most {@link Name#MAX_NAMES} names: event names can hold
+     * resource paths, so the statistics of the least recently used names are evicted
      */
-    public Map<String, MonitoringInfo> map = new HashMap<>();
+    public final ConcurrentMap<String, MonitoringInfo> map = CacheBuilder.newBuilder()
+            .maximumSize(Name.MAX_NAMES)
+            .<String, MonitoringInfo>build()
+            .asMap();
 
     // Regular statistics logging option
     private ScheduledExecutorService logScheduler;
@@ -72,6 +85,7 @@ public class StatisticsHandler implements EventHandler<DisruptorReferringEventEn
     public StatisticsHandler(Disruptor<DisruptorReferringEventEntry> disruptor) {
 
         this.disruptor = disruptor;
+        handlers.add(this);
 
         javax.management.MBeanServer mbs =
                 java.lang.management.ManagementFactory.getPlatformMBeanServer();
@@ -126,6 +140,22 @@ public class StatisticsHandler implements EventHandler<DisruptorReferringEventEn
         }
     }
 
+    /**
+     * Get the distribution of the durations of each event name, as recorded by
+     * all the publishers, for exporting the statistics without formatting them
+     * 
+     * @return a map from Stringified event name to its statistics
+     */
+    public static Map<String, LatencyHistogram.Snapshot> getSnapshots() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+        for (StatisticsHandler handler : handlers) {
+            for (Map.Entry<String, MonitoringInfo> entry : handler.map.entrySet()) {
+                snapshots.put(entry.getKey(), entry.getValue().getSnapshot());
+            }
+        }
+        return snapshots;
+    }
+
     /**
      * @inheritDoc
      */
@@ -137,6 +167,35 @@ public class StatisticsHandler implements EventHandler<DisruptorReferringEventEn
         return stats;
     }
 
+    /**
+     * @inheritDoc
+     */
+    public Map<String, String> getIntervalTotals() {
+        Map<String, String> stats = new TreeMap<>();
+        for (Map.Entry<String, MonitoringInfo> entry : map.entrySet()) {
+            stats.put(entry.getKey(), MonitoringInfo.format(entry.getValue().getIntervalSnapshot()));
+        }
+        return stats;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    public Map<String, Long> getPercentiles(String eventName) {
+        MonitoringInfo entry = map.get(eventName);
+        if (entry == null) {
+            throw new IllegalArgumentException("Event name " + eventName
+                    + " does not match an existing name.");
+        }
+        LatencyHistogram.Snapshot snapshot = entry.getSnapshot();
+        Map<String, Long> percentiles = new TreeMap<>();
+        percentiles.put("p50", snapshot.getValueAtPercentile(50));
+        percentiles.put("p99", snapshot.getValueAtPercentile(99));
+        percentiles.put("p999", snapshot.getValueAtPercentile(99.9));
+        percentiles.put("max", snapshot.getMax());
+        return percentiles;
+    }
+
     /**
      * @inheritDoc
      */
@@ -255,13 +314,7 @@ public class StatisticsHandler implements EventHandler<DisruptorReferringEventEn
          * += diff; ++info.totalInvokes;
          */
 
-        MonitoringInfo entry = map.get(eventEntry.eventName.asString());
-        if (entry == null) {
-            entry = new MonitoringInfo();
-            map.put(eventEntry.eventName.asString(), entry);
-        }
-        entry.totalTime += diff;
-        entry.totalInvokes++;
+        getMonitoringInfo(eventEntry.eventName).record(diff);
     }
 
     // TODO: more research on latency of batched end time option
@@ -294,13 +347,7 @@ public class StatisticsHandler implements EventHandler<DisruptorReferringEventEn
         EventEntryImpl eventEntry = (EventEntryImpl) eventEntryParam;
         long diff = eventEntry.endTime - eventEntry.startTime;
 
-        MonitoringInfo entry = map.get(eventEntry.eventName.asString());
-        if (entry == null) {
-            entry = new MonitoringInfo();
-            map.put(eventEntry.eventName.asString(), entry);
-        }
-        entry.totalTime += diff;
-        entry.totalInvokes++;
+        getMonitoringInfo(eventEntry.eventName).record(diff);
         if (endOfBatch) {
             newBatch = true;
         } else {
@@ -308,6 +355,21 @@ public class StatisticsHandler implements EventHandler<DisruptorReferringEventEn
         }
     }
 
+    /**
+     * Get the monitoring data of an event name, adding it on its first event
+     */
+    private MonitoringInfo getMonitoringInfo(Name eventName) {
+        MonitoringInfo entry = map.get(eventName.asString());
+        if (entry == null) {
+            entry = new MonitoringInfo();
+            MonitoringInfo existing = map.putIfAbsent(eventName.asString(), entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        return entry;
+    }
+
     /**
      * Helper to format nanosecond difference in human readable ms if a negative
      * value is passed, returns "N/A"
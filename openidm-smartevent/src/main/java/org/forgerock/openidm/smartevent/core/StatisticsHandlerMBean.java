@@ -32,6 +32,23 @@ public interface StatisticsHandlerMBean {
      */
     Map<String, String> getTotals();
 
+    /**
+     * @return The statistics of the events ended since the previous call,
+     *         so a collector polling at a fixed rate gets the statistics of
+     *         each interval
+     */
+    Map<String, String> getIntervalTotals();
+
+    /**
+     * Get the p50, p99 and p999 percentiles and the maximum of the durations
+     * of an event, in nanoseconds
+     * 
+     * @param eventName
+     *            the event name in Stringified notation
+     * @return a map from percentile name to duration
+     */
+    Map<String, Long> getPercentiles(String eventName);
+
     /**
      * @return the recent history of events, mapping from start time to the
      *         event detail
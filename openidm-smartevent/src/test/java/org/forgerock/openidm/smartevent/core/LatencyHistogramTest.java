@@ -0,0 +1,109 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.smartevent.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the buckets, percentiles and interval snapshots of the {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverValues() {
+        for (long value = 0; value < 100000; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertThat(LatencyHistogram.highestValue(index)).isGreaterThanOrEqualTo(value);
+            if (index > 0) {
+                assertThat(LatencyHistogram.highestValue(index - 1)).isLessThan(value);
+            }
+        }
+        assertThat(LatencyHistogram.bucketIndex(LatencyHistogram.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKETS - 1);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertThat(snapshot.getCount()).isEqualTo(1000);
+        assertThat(snapshot.getTotal()).isEqualTo(500500000L);
+        assertThat(snapshot.getMax()).isEqualTo(1000000);
+        assertThat(snapshot.getValueAtPercentile(50)).isBetween(500000L, 530000L);
+        assertThat(snapshot.getValueAtPercentile(99)).isBetween(990000L, 1000000L);
+        assertThat(snapshot.getValueAtPercentile(99.9)).isBetween(999000L, 1000000L);
+        assertThat(new LatencyHistogram().getSnapshot().getValueAtPercentile(50)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testIntervalSnapshots() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.record(200);
+        assertThat(histogram.getIntervalSnapshot().getCount()).isEqualTo(2);
+
+        histogram.record(5000);
+        LatencyHistogram.Snapshot interval = histogram.getIntervalSnapshot();
+        assertThat(interval.getCount()).isEqualTo(1);
+        assertThat(interval.getTotal()).isEqualTo(5000);
+        assertThat(interval.getValueAtPercentile(50)).isBetween(5000L, 5200L);
+
+        assertThat(histogram.getIntervalSnapshot().getCount()).isZero();
+        assertThat(histogram.getSnapshot().getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testUncontendedRecordingUsesOneStripe() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 0; i < 10000; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.getStripeCount()).isEqualTo(1);
+        assertThat(histogram.getCount()).isEqualTo(10000);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int threads = 4;
+        final int iterations = 10000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < iterations; i++) {
+                        histogram.record(i);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+
+        assertThat(histogram.getCount()).isEqualTo(threads * iterations);
+        assertThat(histogram.getSnapshot().getMax()).isEqualTo(iterations - 1);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.audit.util;
+
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.openidm.core.IdentityServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the results of a query as they are returned, to record them in the activity log once the query completes.
+ * <p>
+ * By default only a summary is kept: the number of results and the ids of the first {@code sampleSize} results, so
+ * the memory held for the activity log does not grow with the size of the result set. Setting
+ * {@value #OPENIDM_AUDIT_QUERY_RESULTS} to {@code full} keeps every result, as logged before.
+ * <pre>
+ *     {
+ *         "resultCount": 2500,
+ *         "ids": [ "bjensen", "scarter", ... ],
+ *         "truncated": true
+ *     }
+ * </pre>
+ */
+public class QueryResultSummary {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryResultSummary.class);
+
+    /** Property selecting what the activity log records of a query result: {@code summary} or {@code full} */
+    public static final String OPENIDM_AUDIT_QUERY_RESULTS = "openidm.audit.queryResults";
+
+    /** Property holding the number of result ids recorded in a summary */
+    public static final String OPENIDM_AUDIT_QUERY_RESULTS_SAMPLE_SIZE = "openidm.audit.queryResults.sampleSize";
+
+    /** Default number of result ids recorded in a summary */
+    public static final int DEFAULT_SAMPLE_SIZE = 100;
+
+    private static final String FULL = "full";
+
+    /**
+     * The properties, read once when the first summary is created from them.
+     */
+    private static final class Settings {
+        static final boolean FULL_RESULTS = FULL.equalsIgnoreCase(
+                IdentityServer.getInstance().getProperty(OPENIDM_AUDIT_QUERY_RESULTS, "summary"));
+        static final int SAMPLE_SIZE = parseSampleSize(
+                IdentityServer.getInstance().getProperty(OPENIDM_AUDIT_QUERY_RESULTS_SAMPLE_SIZE));
+    }
+
+    private final boolean full;
+    private final int sampleSize;
+    private final List<Object> sample = new ArrayList<>();
+    private int count;
+
+    /**
+     * Creates a summary according to the {@value #OPENIDM_AUDIT_QUERY_RESULTS} and
+     * {@value #OPENIDM_AUDIT_QUERY_RESULTS_SAMPLE_SIZE} properties.
+     */
+    public QueryResultSummary() {
+        this(Settings.FULL_RESULTS, Settings.SAMPLE_SIZE);
+    }
+
+    /**
+     * Creates a summary.
+     *
+     * @param full whether to keep every result rather than a summary
+     * @param sampleSize the number of result ids recorded in a summary
+     */
+    public QueryResultSummary(boolean full, int sampleSize) {
+        this.full = full;
+        this.sampleSize = Math.max(0, sampleSize);
+    }
+
+    /**
+     * Parses the {@value #OPENIDM_AUDIT_QUERY_RESULTS_SAMPLE_SIZE} property.
+     *
+     * @param value the value of the property, or null if it is not set
+     * @return the sample size, or {@link #DEFAULT_SAMPLE_SIZE} if the value is not set or not a number
+     */
+    static int parseSampleSize(String value) {
+        if (value == null) {
+            return DEFAULT_SAMPLE_SIZE;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid {} '{}', using {}", OPENIDM_AUDIT_QUERY_RESULTS_SAMPLE_SIZE, value,
+                    DEFAULT_SAMPLE_SIZE);
+            return DEFAULT_SAMPLE_SIZE;
+        }
+    }
+
+    /**
+     * Records a query result.
+     *
+     * @param id the id of the result
+     * @param content the content of the result, kept only if every result is kept
+     */
+    public void add(String id, Map<String, Object> content) {
+        count++;
+        if (full) {
+            sample.add(content);
+        } else if (sample.size() < sampleSize) {
+            sample.add(id);
+        }
+    }
+
+    /**
+     * @return the number of results recorded
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the results, if every result is kept, otherwise the summary of the results
+     */
+    public JsonValue toJsonValue() {
+        if (full) {
+            return json(sample);
+        }
+        return json(object(
+                field("resultCount", count),
+                field("ids", sample),
+                field("truncated", count > sample.size())));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openidm.audit.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.object;
+
+import org.forgerock.json.JsonValue;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link QueryResultSummary}.
+ */
+public class QueryResultSummaryTest {
+
+    @Test
+    public void testSummaryKeepsBoundedSampleOfIds() {
+        QueryResultSummary summary = new QueryResultSummary(false, 2);
+        summary.add("a", object(field("name", "a")));
+        summary.add("b", object(field("name", "b")));
+        summary.add("c", object(field("name", "c")));
+
+        JsonValue logged = summary.toJsonValue();
+        assertThat(summary.getCount()).isEqualTo(3);
+        assertThat(logged.get("resultCount").asInteger()).isEqualTo(3);
+        assertThat(logged.get("ids").asList(String.class)).containsExactly("a", "b");
+        assertThat(logged.get("truncated").asBoolean()).isTrue();
+    }
+
+    @Test
+    public void testSummaryOfSmallResult() {
+        QueryResultSummary summary = new QueryResultSummary(false, 2);
+        summary.add("a", object(field("name", "a")));
+
+        JsonValue logged = summary.toJsonValue();
+        assertThat(logged.get("ids").asList(String.class)).containsExactly("a");
+        assertThat(logged.get("truncated").asBoolean()).isFalse();
+    }
+
+    @Test
+    public void testParseSampleSize() {
+        assertThat(QueryResultSummary.parseSampleSize("20")).isEqualTo(20);
+        assertThat(QueryResultSummary.parseSampleSize(null)).isEqualTo(QueryResultSummary.DEFAULT_SAMPLE_SIZE);
+        assertThat(QueryResultSummary.parseSampleSize("twenty")).isEqualTo(QueryResultSummary.DEFAULT_SAMPLE_SIZE);
+    }
+
+    @Test
+    public void testFullKeepsEveryResult() {
+        QueryResultSummary summary = new QueryResultSummary(true, 1);
+        summary.add("a", object(field("name", "a")));
+        summary.add("b", object(field("name", "b")));
+
+        JsonValue logged = summary.toJsonValue();
+        assertThat(logged.isList()).isTrue();
+        assertThat(logged.size()).isEqualTo(2);
+        assertThat(logged.get(1).get("name").asString()).isEqualTo("b");
+    }
+}